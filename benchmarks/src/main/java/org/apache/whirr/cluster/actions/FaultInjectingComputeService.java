@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.RunNodesException;
+import org.jclouds.compute.RunScriptOnNodesException;
+import org.jclouds.compute.domain.ExecResponse;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.Template;
+import org.jclouds.compute.options.RunScriptOptions;
+import org.jclouds.scriptbuilder.domain.Statement;
+
+/**
+ * Wraps a {@link ComputeService} and makes some of its operations fail at
+ * configured rates:
+ * <ul>
+ * <li>nodes that fail to start, reported in a partial
+ * {@link RunNodesException}</li>
+ * <li>nodes that hang while starting, and are reported as failed once the
+ * node start timeout has passed</li>
+ * <li>scripts that fail on some nodes, reported in a
+ * {@link RunScriptOnNodesException}</li>
+ * <li>calls that are rejected because the API's rate limit has been
+ * exceeded</li>
+ * </ul>
+ * Failed and hung nodes are still running in the wrapped service, so they
+ * must be destroyed by the caller. Node failures can also be injected a
+ * fixed number of times, which gives the same faults on every run.
+ */
+public class FaultInjectingComputeService {
+
+  /**
+   * The rate of each kind of fault, as a probability per node or per call.
+   */
+  public static class Faults {
+    double nodeFailureRate;
+    int nodeFailureCount;
+    double nodeHangRate;
+    long nodeHangMillis = 20 * 60 * 1000;
+    double scriptFailureRate;
+    double rateLimitRate;
+
+    public Faults nodeFailures(double rate) {
+      this.nodeFailureRate = rate;
+      return this;
+    }
+
+    /**
+     * Make the first <code>count</code> nodes that are started fail,
+     * whatever the rate.
+     */
+    public Faults firstNodeFailures(int count) {
+      this.nodeFailureCount = count;
+      return this;
+    }
+
+    /**
+     * @param millis the time after which a hung node is reported as failed,
+     * in simulated milliseconds
+     */
+    public Faults nodeHangs(double rate, long millis) {
+      this.nodeHangRate = rate;
+      this.nodeHangMillis = millis;
+      return this;
+    }
+
+    public Faults scriptFailures(double rate) {
+      this.scriptFailureRate = rate;
+      return this;
+    }
+
+    public Faults rateLimitErrors(double rate) {
+      this.rateLimitRate = rate;
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("node failures %s (first %d), node hangs %s, "
+          + "script failures %s, rate limit errors %s", nodeFailureRate,
+          nodeFailureCount, nodeHangRate, scriptFailureRate, rateLimitRate);
+    }
+  }
+
+  private final Faults faults;
+  private final double timeScale;
+  private final Random random;
+  private final AtomicInteger nodeFailuresLeft;
+  private final ConcurrentMap<String, AtomicLong> injected =
+    Maps.newConcurrentMap();
+
+  /**
+   * @param timeScale the real time that passes for each unit of simulated
+   * time
+   */
+  public FaultInjectingComputeService(Faults faults, double timeScale,
+      long seed) {
+    this.faults = faults;
+    this.timeScale = timeScale;
+    this.random = new Random(seed);
+    this.nodeFailuresLeft = new AtomicInteger(faults.nodeFailureCount);
+  }
+
+  public ComputeService wrap(final ComputeService delegate) {
+    return (ComputeService) Proxy.newProxyInstance(
+        ComputeService.class.getClassLoader(),
+        new Class<?>[] { ComputeService.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            return FaultInjectingComputeService.this.invoke(delegate, method,
+                args);
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object invoke(ComputeService delegate, Method method, Object[] args)
+      throws Throwable {
+    String name = method.getName();
+    boolean nodeOperation = name.startsWith("createNodes")
+      || name.startsWith("runScript") || name.startsWith("destroyNode")
+      || name.startsWith("listNodes");
+    if (nodeOperation && happens(faults.rateLimitRate)) {
+      count("rate limit error");
+      throw new IllegalStateException("RequestLimitExceeded: Request limit "
+          + "exceeded in call to " + name);
+    }
+    Object result;
+    try {
+      result = method.invoke(delegate, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+    if ("createNodesInGroup".equals(name)) {
+      return failNodes((String) args[0], (Integer) args[1],
+          find(Template.class, args), (Set<NodeMetadata>) result);
+    } else if ("runScriptOnNodesMatching".equals(name)) {
+      return failScripts(find(Statement.class, args),
+          find(RunScriptOptions.class, args),
+          (Map<NodeMetadata, ExecResponse>) result);
+    }
+    return result;
+  }
+
+  private Set<NodeMetadata> failNodes(String group, int count,
+      Template template, Set<NodeMetadata> nodes)
+      throws InterruptedException, RunNodesException {
+    Set<NodeMetadata> successful = Sets.newLinkedHashSet();
+    Map<NodeMetadata, Throwable> failed = Maps.newLinkedHashMap();
+    boolean hung = false;
+    for (NodeMetadata node : nodes) {
+      if (takeNodeFailure() || happens(faults.nodeFailureRate)) {
+        count("node failure");
+        failed.put(node, new IllegalStateException("Node " + node.getId()
+            + " failed to start"));
+      } else if (happens(faults.nodeHangRate)) {
+        count("node hang");
+        hung = true;
+        failed.put(node, new TimeoutException("Node " + node.getId()
+            + " did not start within " + faults.nodeHangMillis + " ms"));
+      } else {
+        successful.add(node);
+      }
+    }
+    if (hung) {
+      // the hung nodes are waited for in parallel, until the timeout
+      Thread.sleep((long) (faults.nodeHangMillis * timeScale));
+    }
+    if (!failed.isEmpty()) {
+      throw new RunNodesException(group, count, template, successful,
+          Maps.<Object, Exception>newHashMap(), failed);
+    }
+    return successful;
+  }
+
+  private Map<NodeMetadata, ExecResponse> failScripts(Statement script,
+      RunScriptOptions options, Map<NodeMetadata, ExecResponse> responses)
+      throws RunScriptOnNodesException {
+    Map<NodeMetadata, ExecResponse> successful = Maps.newLinkedHashMap();
+    Map<NodeMetadata, Throwable> failed = Maps.newLinkedHashMap();
+    for (Map.Entry<NodeMetadata, ExecResponse> entry : responses.entrySet()) {
+      if (happens(faults.scriptFailureRate)) {
+        count("script failure");
+        failed.put(entry.getKey(), new IllegalStateException(
+            "Script failed on node " + entry.getKey().getId()));
+      } else {
+        successful.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!failed.isEmpty()) {
+      throw new RunScriptOnNodesException(script, options, successful,
+          Maps.<Object, Exception>newHashMap(), failed);
+    }
+    return successful;
+  }
+
+  private static <T> T find(Class<T> type, Object[] args) {
+    for (Object arg : args) {
+      if (type.isInstance(arg)) {
+        return type.cast(arg);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return whether one of the fixed number of node failures is left, and
+   * take it if so.
+   */
+  private boolean takeNodeFailure() {
+    while (true) {
+      int left = nodeFailuresLeft.get();
+      if (left <= 0) {
+        return false;
+      }
+      if (nodeFailuresLeft.compareAndSet(left, left - 1)) {
+        return true;
+      }
+    }
+  }
+
+  private boolean happens(double rate) {
+    return rate > 0 && random.nextDouble() < rate;
+  }
+
+  private void count(String fault) {
+    AtomicLong count = injected.get(fault);
+    if (count == null) {
+      AtomicLong newCount = new AtomicLong();
+      count = injected.putIfAbsent(fault, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * @return the number of faults of each kind that have been injected.
+   */
+  public SortedMap<String, Long> getInjectedFaults() {
+    SortedMap<String, Long> counts = Maps.newTreeMap();
+    for (Map.Entry<String, AtomicLong> entry : injected.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return counts;
+  }
+
+}
@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.whirr.cluster.actions.FaultInjectingComputeService.Faults;
+import org.apache.whirr.cluster.actions.SimulatedLaunchBenchmark.Result;
+import org.apache.whirr.net.DnsUtil;
+import org.apache.whirr.net.HostsFile;
+import org.apache.whirr.service.ClusterSpec;
+import org.jclouds.compute.ComputeService;
+
+/**
+ * Launches simulated clusters while injecting faults, and measures how long
+ * each launch takes to recover compared with a launch without faults.
+ * <p>
+ * Each scenario injects one kind of fault, or all of them, through a
+ * {@link FaultInjectingComputeService} around a {@link SimulatedCloud}. DNS
+ * lookups go to a {@link SimulatedDnsServer}, which drops queries in the DNS
+ * scenario. For each scenario the report gives the outcome of the launch,
+ * the time it took, the extra time over the baseline, the number of node
+ * start attempts and destroys, the nodes left running that are not part of
+ * the cluster, and the faults that were injected.
+ * <p>
+ * Besides the <code>whirr.simulation.*</code> system properties of
+ * {@link SimulatedLaunchBenchmark}, these system properties are used:
+ * <ul>
+ * <li><code>whirr.recovery.size</code> - the cluster size, default 100</li>
+ * <li><code>whirr.recovery.scenarios</code> - the scenarios to run, default
+ * all of them</li>
+ * <li><code>whirr.recovery.rate</code> - the fault rate, default 0.05</li>
+ * <li><code>whirr.recovery.max-startup-retries</code> - default 1</li>
+ * <li><code>whirr.recovery.max-percent-failures</code> - the percentage of
+ * workers that may fail to start, default 10</li>
+ * <li><code>whirr.recovery.dns-timeout</code> - the DNS timeout in seconds
+ * of simulated time, default 5. Like the other latencies it is scaled by the
+ * time scale, so that the simulated times in the report include it
+ * correctly.</li>
+ * </ul>
+ */
+public class FaultRecoveryBenchmark {
+
+  private static final String PREFIX = "whirr.recovery.";
+
+  /**
+   * A set of faults to inject.
+   */
+  static class Scenario {
+    final String name;
+    final Faults faults;
+    final double dnsDropRate;
+
+    Scenario(String name, Faults faults, double dnsDropRate) {
+      this.name = name;
+      this.faults = faults;
+      this.dnsDropRate = dnsDropRate;
+    }
+  }
+
+  static Map<String, Scenario> getScenarios(double rate) {
+    Map<String, Scenario> scenarios = Maps.newLinkedHashMap();
+    add(scenarios, new Scenario("baseline", new Faults(), 0));
+    add(scenarios, new Scenario("node-failures",
+        new Faults().nodeFailures(rate), 0));
+    add(scenarios, new Scenario("hung-nodes",
+        new Faults().nodeHangs(rate, 20 * 60 * 1000), 0));
+    add(scenarios, new Scenario("script-failures",
+        new Faults().scriptFailures(rate), 0));
+    add(scenarios, new Scenario("rate-limit-errors",
+        new Faults().rateLimitErrors(rate), 0));
+    add(scenarios, new Scenario("dns-timeouts", new Faults(), rate));
+    add(scenarios, new Scenario("all", new Faults().nodeFailures(rate)
+        .nodeHangs(rate, 20 * 60 * 1000).scriptFailures(rate)
+        .rateLimitErrors(rate), rate));
+    return scenarios;
+  }
+
+  private static void add(Map<String, Scenario> scenarios, Scenario scenario) {
+    scenarios.put(scenario.name, scenario);
+  }
+
+  /**
+   * The measurements of a launch with faults.
+   */
+  static class Recovery {
+    Scenario scenario;
+    Result result;
+    long leakedNodes;
+    Map<String, Long> faults;
+    long droppedQueries;
+  }
+
+  public static void main(String[] args) throws Exception {
+    SimulatedCloud.Settings settings = SimulatedLaunchBenchmark.getSettings();
+    int size = Integer.getInteger(PREFIX + "size", 100);
+    double rate = Double.parseDouble(System.getProperty(PREFIX + "rate",
+        "0.05"));
+    Map<String, Scenario> scenarios = getScenarios(rate);
+    List<String> names = Lists.newArrayList(Splitter.on(',').trimResults()
+        .omitEmptyStrings().split(System.getProperty(PREFIX + "scenarios",
+            Joiner.on(',').join(scenarios.keySet()))));
+    if (!names.contains("baseline")) {
+      names.add(0, "baseline");
+    }
+
+    PrintStream out = System.out;
+    out.println("Simulation: " + settings);
+
+    // warm up class loading and the JIT
+    SimulatedLaunchBenchmark.launch(settings, 2);
+
+    List<Recovery> recoveries = Lists.newArrayList();
+    for (String name : names) {
+      Scenario scenario = scenarios.get(name);
+      if (scenario == null) {
+        throw new IllegalArgumentException("Unknown scenario " + name);
+      }
+      recoveries.add(run(settings, scenario, size));
+    }
+    print(out, settings, recoveries);
+  }
+
+  static ClusterSpec newClusterSpec(int size) throws Exception {
+    Configuration config = SimulatedLaunchBenchmark.newConfiguration(size);
+    config.setProperty(
+        ClusterSpec.Property.MAX_STARTUP_RETRIES.getConfigName(),
+        Integer.getInteger(PREFIX + "max-startup-retries", 1));
+    config.setProperty(ClusterSpec.Property
+        .INSTANCE_TEMPLATES_MAX_PERCENT_FAILURES.getConfigName(),
+        Integer.getInteger(PREFIX + "max-percent-failures", 10) + " "
+        + SimulatedLaunchBenchmark.WORKER_ROLE);
+    config.setProperty(HostsFile.GENERATE_HOSTS_FILE, true);
+    return ClusterSpec.withTemporaryKeys(config);
+  }
+
+  /**
+   * @return the real time that a DNS lookup waits for a dropped query, which
+   * is the simulated timeout scaled like every other latency.
+   */
+  static long getDnsTimeoutMillis(SimulatedCloud.Settings settings) {
+    return Math.max(1, Math.round(Integer.getInteger(PREFIX + "dns-timeout",
+        5) * 1000 * settings.getTimeScale()));
+  }
+
+  static Recovery run(SimulatedCloud.Settings settings, Scenario scenario,
+      int size) throws Exception {
+    return run(settings, scenario, newClusterSpec(size));
+  }
+
+  static Recovery run(SimulatedCloud.Settings settings, Scenario scenario,
+      ClusterSpec clusterSpec) throws Exception {
+    SimulatedCloud cloud = new SimulatedCloud(settings);
+    final FaultInjectingComputeService injector =
+      new FaultInjectingComputeService(scenario.faults,
+          settings.getTimeScale(), settings.seed);
+    SimulatedComputeServiceContextFactory factory =
+      new SimulatedComputeServiceContextFactory(cloud) {
+        @Override
+        protected ComputeService wrap(ComputeService stub) {
+          return injector.wrap(super.wrap(stub));
+        }
+      };
+    SimulatedDnsServer dns = new SimulatedDnsServer(scenario.dnsDropRate,
+        settings.seed);
+    DnsUtil.setResolver(dns.newResolver(getDnsTimeoutMillis(settings)));
+    Recovery recovery = new Recovery();
+    recovery.scenario = scenario;
+    try {
+      recovery.result = SimulatedLaunchBenchmark.launch(clusterSpec, cloud,
+          factory);
+    } finally {
+      DnsUtil.setResolver(null);
+      dns.close();
+      cloud.shutdown();
+    }
+    int running = cloud.getNodes().size();
+    // nodes that failed to start within the allowed percentage are not in
+    // the cluster, so compare against the cluster rather than the request
+    recovery.leakedNodes = recovery.result.failure == null
+      ? running - recovery.result.instances : running;
+    recovery.faults = injector.getInjectedFaults();
+    recovery.droppedQueries = dns.getDroppedQueryCount();
+    return recovery;
+  }
+
+  static void print(PrintStream out, SimulatedCloud.Settings settings,
+      List<Recovery> recoveries) {
+    double baseline = 0;
+    out.println();
+    out.println(String.format("%-18s %-8s %10s %12s %12s %8s %9s %7s  %s",
+        "scenario", "outcome", "wall (s)", "sim. (s)", "overhead", "starts",
+        "destroys", "leaked", "faults"));
+    for (Recovery recovery : recoveries) {
+      Result result = recovery.result;
+      double simulated = result.getWallMillis() / 1000.0
+        / settings.getTimeScale();
+      if ("baseline".equals(recovery.scenario.name)) {
+        baseline = simulated;
+      }
+      Map<String, Long> faults = Maps.newTreeMap();
+      faults.putAll(recovery.faults);
+      if (recovery.droppedQueries > 0) {
+        faults.put("dns timeout", recovery.droppedQueries);
+      }
+      out.println(String.format("%-18s %-8s %10.2f %12.0f %12.0f %8d %9d %7d  %s",
+          recovery.scenario.name, result.failure == null ? "ok" : "failed",
+          result.getWallMillis() / 1000.0, simulated, simulated - baseline,
+          count(result, "createNodesInGroup"), count(result, "destroyNode"),
+          recovery.leakedNodes,
+          Joiner.on(", ").withKeyValueSeparator("=").join(faults)));
+    }
+    out.println();
+    for (Recovery recovery : recoveries) {
+      if (recovery.result.failure != null) {
+        out.println(String.format("%s failed: %s", recovery.scenario.name,
+            recovery.result.failure));
+      }
+    }
+  }
+
+  private static long count(Result result, String api) {
+    Long count = result.calls.get(api);
+    return count == null ? 0 : count;
+  }
+
+}
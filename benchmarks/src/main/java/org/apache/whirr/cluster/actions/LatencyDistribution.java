@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Random;
+
+/**
+ * A distribution of the latency of a simulated cloud operation, in
+ * milliseconds.
+ * <p>
+ * Distributions are written as <code>&lt;type&gt;:&lt;parameters&gt;</code>,
+ * for example <code>fixed:1000</code>, <code>uniform:500:1500</code>,
+ * <code>exponential:1000</code> (the mean) or <code>lognormal:1000:0.5</code>
+ * (the median and the standard deviation of the log).
+ */
+public abstract class LatencyDistribution {
+
+  public abstract long sample(Random random);
+
+  public static LatencyDistribution parse(final String spec) {
+    final String[] parts = spec.split(":");
+    final String type = parts[0];
+    if ("fixed".equals(type)) {
+      checkParameters(spec, parts, 1);
+      return fixed(Long.parseLong(parts[1]));
+    } else if ("uniform".equals(type)) {
+      checkParameters(spec, parts, 2);
+      final long min = Long.parseLong(parts[1]);
+      final long max = Long.parseLong(parts[2]);
+      checkArgument(min <= max, "Invalid range in '%s'", spec);
+      return new LatencyDistribution() {
+        @Override
+        public long sample(Random random) {
+          return min + (long) (random.nextDouble() * (max - min));
+        }
+        @Override
+        public String toString() {
+          return spec;
+        }
+      };
+    } else if ("exponential".equals(type)) {
+      checkParameters(spec, parts, 1);
+      final double mean = Double.parseDouble(parts[1]);
+      return new LatencyDistribution() {
+        @Override
+        public long sample(Random random) {
+          return (long) (-mean * Math.log(1 - random.nextDouble()));
+        }
+        @Override
+        public String toString() {
+          return spec;
+        }
+      };
+    } else if ("lognormal".equals(type)) {
+      checkParameters(spec, parts, 2);
+      final double mu = Math.log(Double.parseDouble(parts[1]));
+      final double sigma = Double.parseDouble(parts[2]);
+      return new LatencyDistribution() {
+        @Override
+        public long sample(Random random) {
+          return (long) Math.exp(mu + sigma * random.nextGaussian());
+        }
+        @Override
+        public String toString() {
+          return spec;
+        }
+      };
+    }
+    throw new IllegalArgumentException("Unknown latency distribution '"
+        + spec + "'");
+  }
+
+  public static LatencyDistribution fixed(final long millis) {
+    return new LatencyDistribution() {
+      @Override
+      public long sample(Random random) {
+        return millis;
+      }
+      @Override
+      public String toString() {
+        return "fixed:" + millis;
+      }
+    };
+  }
+
+  private static void checkParameters(String spec, String[] parts,
+      int expected) {
+    checkArgument(parts.length == expected + 1,
+        "Expected %s parameter(s) in '%s'", expected, spec);
+  }
+
+}
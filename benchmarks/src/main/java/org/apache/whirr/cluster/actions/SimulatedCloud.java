@@ -0,0 +1,412 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.ExecResponse;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.compute.domain.NodeState;
+import org.jclouds.compute.domain.Template;
+import org.jclouds.domain.Credentials;
+import org.jclouds.scriptbuilder.domain.OsFamily;
+import org.jclouds.scriptbuilder.domain.Statement;
+
+/**
+ * A simulated cloud, in which nodes are created and scripts are run by
+ * sleeping for times drawn from configurable latency distributions.
+ * <p>
+ * {@link #wrap(ComputeService)} wraps a {@link ComputeService}, normally
+ * one from the jclouds <code>stub</code> provider, which answers template
+ * and metadata calls offline. Node creation, script runs, node listing and
+ * node destruction are handled by the simulation, which keeps the state of
+ * the nodes so that it is shared by every wrapped service.
+ * <p>
+ * Every call that would go to the provider's API is counted. The state of a
+ * node that is being created is polled, as jclouds does, and each poll is a
+ * call. Any call may be throttled, in which case it is delayed.
+ * <p>
+ * Every node creation, script run and call draws from a generator of its
+ * own, seeded from the simulation's seed and the operation, so a seeded
+ * simulation makes the same draws whichever threads run the operations.
+ */
+public class SimulatedCloud {
+
+  /**
+   * The parameters of the simulation. Latencies are in milliseconds of
+   * simulated time, which is converted to real time by multiplying by the
+   * time scale.
+   */
+  public static class Settings {
+    LatencyDistribution nodeCreation = LatencyDistribution.parse(
+        "lognormal:60000:0.4");
+    LatencyDistribution scriptRun = LatencyDistribution.parse(
+        "lognormal:90000:0.3");
+    LatencyDistribution throttling = LatencyDistribution.parse(
+        "exponential:2000");
+    double throttleProbability = 0.0;
+    long pollPeriod = 5000;
+    double timeScale = 0.001;
+    int userThreads = 0;
+    long seed = 0;
+
+    public Settings nodeCreation(LatencyDistribution nodeCreation) {
+      this.nodeCreation = nodeCreation;
+      return this;
+    }
+
+    public Settings scriptRun(LatencyDistribution scriptRun) {
+      this.scriptRun = scriptRun;
+      return this;
+    }
+
+    public Settings throttling(double probability,
+        LatencyDistribution latency) {
+      this.throttleProbability = probability;
+      this.throttling = latency;
+      return this;
+    }
+
+    public Settings pollPeriod(long pollPeriod) {
+      this.pollPeriod = pollPeriod;
+      return this;
+    }
+
+    public Settings timeScale(double timeScale) {
+      this.timeScale = timeScale;
+      return this;
+    }
+
+    /**
+     * @param userThreads the number of threads used to create nodes and run
+     * scripts, or 0 for as many as there are nodes, like the jclouds
+     * <code>jclouds.user-threads</code> property
+     */
+    public Settings userThreads(int userThreads) {
+      this.userThreads = userThreads;
+      return this;
+    }
+
+    public Settings seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public double getTimeScale() {
+      return timeScale;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("node creation %s, script run %s, throttling %s "
+          + "with probability %s, poll period %d, time scale %s, "
+          + "user threads %d", nodeCreation, scriptRun, throttling,
+          throttleProbability, pollPeriod, timeScale, userThreads);
+    }
+  }
+
+  private final Settings settings;
+  private final ExecutorService userExecutor;
+  private final ConcurrentMap<String, NodeMetadata> nodes =
+    Maps.newConcurrentMap();
+  private final ConcurrentMap<String, AtomicLong> calls =
+    Maps.newConcurrentMap();
+  private final AtomicLong throttledCalls = new AtomicLong();
+  private final AtomicInteger nextNode = new AtomicInteger();
+  private final AtomicLong scriptRuns = new AtomicLong();
+
+  public SimulatedCloud(Settings settings) {
+    this.settings = settings;
+    this.userExecutor = settings.userThreads > 0
+      ? Executors.newFixedThreadPool(settings.userThreads)
+      : Executors.newCachedThreadPool();
+  }
+
+  public Settings getSettings() {
+    return settings;
+  }
+
+  /**
+   * @return a compute service that uses this simulation for the operations
+   * on nodes, and <code>delegate</code> for everything else.
+   */
+  public ComputeService wrap(final ComputeService delegate) {
+    return (ComputeService) Proxy.newProxyInstance(
+        ComputeService.class.getClassLoader(),
+        new Class<?>[] { ComputeService.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            return SimulatedCloud.this.invoke(delegate, method, args);
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object invoke(ComputeService delegate, Method method, Object[] args)
+      throws Throwable {
+    String name = method.getName();
+    if ("createNodesInGroup".equals(name)) {
+      return createNodes((String) args[0], (Integer) args[1],
+          find(Template.class, args));
+    } else if ("runScriptOnNodesMatching".equals(name)) {
+      return runScript((Predicate<NodeMetadata>) args[0], args[1]);
+    } else if ("destroyNode".equals(name)) {
+      call(name);
+      nodes.remove(args[0]);
+      return null;
+    } else if ("destroyNodesMatching".equals(name)) {
+      call(name);
+      Set<NodeMetadata> destroyed = Sets.newLinkedHashSet();
+      for (NodeMetadata node : matching((Predicate<NodeMetadata>) args[0])) {
+        nodes.remove(node.getId());
+        destroyed.add(node);
+      }
+      return destroyed;
+    } else if ("listNodes".equals(name)) {
+      call(name);
+      return Sets.newLinkedHashSet(nodes.values());
+    } else if ("listNodesDetailsMatching".equals(name)) {
+      call(name);
+      return Sets.newLinkedHashSet(matching(
+          (Predicate<? super NodeMetadata>) args[0]));
+    } else if ("getNodeMetadata".equals(name)) {
+      call(name);
+      return nodes.get(args[0]);
+    }
+    if (method.getDeclaringClass() == ComputeService.class) {
+      call(name);
+    }
+    try {
+      return method.invoke(delegate, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static <T> T find(Class<T> type, Object[] args) {
+    for (Object arg : args) {
+      if (type.isInstance(arg)) {
+        return type.cast(arg);
+      }
+    }
+    return null;
+  }
+
+  private List<NodeMetadata> matching(
+      Predicate<? super NodeMetadata> predicate) {
+    List<NodeMetadata> matching = Lists.newArrayList();
+    for (NodeMetadata node : nodes.values()) {
+      if (predicate.apply(node)) {
+        matching.add(node);
+      }
+    }
+    return matching;
+  }
+
+  private Set<NodeMetadata> createNodes(final String group, int count,
+      final Template template) throws InterruptedException {
+    call("createNodesInGroup");
+    List<Future<NodeMetadata>> futures = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      futures.add(userExecutor.submit(new Callable<NodeMetadata>() {
+        @Override
+        public NodeMetadata call() throws InterruptedException {
+          NodeMetadata node = newNode(group, template);
+          Random random = random(node.getId(), 0);
+          poll(settings.nodeCreation.sample(random));
+          nodes.put(node.getId(), node);
+          // the bootstrap script is run over SSH, so it makes no API calls
+          sleep(settings.scriptRun.sample(random));
+          return node;
+        }
+      }));
+    }
+    Set<NodeMetadata> created = Sets.newLinkedHashSet();
+    for (Future<NodeMetadata> future : futures) {
+      created.add(get(future));
+    }
+    return created;
+  }
+
+  private NodeMetadata newNode(String group, Template template) {
+    int n = nextNode.incrementAndGet();
+    String id = "sim-" + n;
+    NodeMetadataBuilder builder = new NodeMetadataBuilder()
+      .ids(id)
+      .name(group + "-" + n)
+      .group(group)
+      .state(NodeState.RUNNING)
+      .publicAddresses(Lists.newArrayList(address(54, n)))
+      .privateAddresses(Lists.newArrayList(address(10, n)))
+      .credentials(new Credentials("root", "simulated"));
+    if (template != null) {
+      builder.location(template.getLocation())
+        .imageId(template.getImage().getId());
+    }
+    return builder.build();
+  }
+
+  private static String address(int network, int n) {
+    return String.format("%d.%d.%d.%d", network, (n >> 16) & 0xff,
+        (n >> 8) & 0xff, n & 0xff);
+  }
+
+  private Map<NodeMetadata, ExecResponse> runScript(
+      Predicate<NodeMetadata> filter, final Object script)
+      throws InterruptedException {
+    call("listNodesDetailsMatching");
+    Map<NodeMetadata, Future<ExecResponse>> futures = Maps.newLinkedHashMap();
+    for (NodeMetadata node : matching(filter)) {
+      final Random random = random(node.getId(),
+          scriptRuns.incrementAndGet());
+      futures.put(node, userExecutor.submit(new Callable<ExecResponse>() {
+        @Override
+        public ExecResponse call() throws InterruptedException {
+          // jclouds renders the script for each node
+          if (script instanceof Statement) {
+            ((Statement) script).render(OsFamily.UNIX);
+          }
+          sleep(settings.scriptRun.sample(random));
+          return new ExecResponse("", "", 0);
+        }
+      }));
+    }
+    Map<NodeMetadata, ExecResponse> responses = Maps.newLinkedHashMap();
+    for (Map.Entry<NodeMetadata, Future<ExecResponse>> entry :
+        futures.entrySet()) {
+      responses.put(entry.getKey(), get(entry.getValue()));
+    }
+    return responses;
+  }
+
+  private static <T> T get(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Wait for a node to be created, polling its state.
+   */
+  private void poll(long latency) throws InterruptedException {
+    long remaining = latency;
+    do {
+      long wait = Math.min(remaining, settings.pollPeriod);
+      sleep(wait);
+      remaining -= wait;
+      call("getNodeMetadata");
+    } while (remaining > 0);
+  }
+
+  /**
+   * Count a call to the provider's API, and delay it if it is throttled.
+   */
+  private void call(String api) throws InterruptedException {
+    AtomicLong count = calls.get(api);
+    if (count == null) {
+      AtomicLong newCount = new AtomicLong();
+      count = calls.putIfAbsent(api, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    long n = count.incrementAndGet();
+    if (settings.throttleProbability > 0) {
+      Random random = random(api, n);
+      if (random.nextDouble() < settings.throttleProbability) {
+        throttledCalls.incrementAndGet();
+        sleep(settings.throttling.sample(random));
+      }
+    }
+  }
+
+  /**
+   * @return a generator for the <code>n</code>th operation on
+   * <code>subject</code>, such as a node or an API, seeded from the
+   * simulation's seed.
+   */
+  private Random random(String subject, long n) {
+    long seed = settings.seed;
+    seed = 31 * seed + subject.hashCode();
+    seed = 31 * seed + n;
+    // spread the bits, since generators with nearby seeds start out alike
+    seed = (seed ^ (seed >>> 33)) * 0xff51afd7ed558ccdL;
+    seed = (seed ^ (seed >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return new Random(seed ^ (seed >>> 33));
+  }
+
+  private void sleep(long simulatedMillis) throws InterruptedException {
+    long millis = (long) (simulatedMillis * settings.timeScale);
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+
+  /**
+   * @return the number of calls made to each API, by name.
+   */
+  public SortedMap<String, Long> getCallCounts() {
+    SortedMap<String, Long> counts = Maps.newTreeMap();
+    for (Map.Entry<String, AtomicLong> entry : calls.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return counts;
+  }
+
+  public long getThrottledCallCount() {
+    return throttledCalls.get();
+  }
+
+  public Map<String, NodeMetadata> getNodes() {
+    return ImmutableMap.copyOf(nodes);
+  }
+
+  public void shutdown() {
+    userExecutor.shutdownNow();
+  }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Module;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.ComputeServiceContext;
+import org.jclouds.compute.ComputeServiceContextFactory;
+
+/**
+ * A {@link ComputeServiceContextFactory} that creates contexts for the
+ * jclouds <code>stub</code> provider, whatever provider is asked for, and
+ * whose compute services are wrapped by a {@link SimulatedCloud}.
+ */
+public class SimulatedComputeServiceContextFactory
+    extends ComputeServiceContextFactory {
+
+  private final SimulatedCloud cloud;
+  private final AtomicInteger contexts = new AtomicInteger();
+
+  public SimulatedComputeServiceContextFactory(SimulatedCloud cloud)
+      throws IOException {
+    this.cloud = cloud;
+  }
+
+  @Override
+  public ComputeServiceContext createContext(String provider,
+      String identity, String credential, Iterable<? extends Module> modules,
+      Properties overrides) {
+    contexts.incrementAndGet();
+    // the stub provider needs no SSH or logging modules
+    final ComputeServiceContext context = super.createContext("stub",
+        identity, credential, ImmutableSet.<Module>of(), overrides);
+    final ComputeService computeService = wrap(context.getComputeService());
+    return (ComputeServiceContext) Proxy.newProxyInstance(
+        ComputeServiceContext.class.getClassLoader(),
+        new Class<?>[] { ComputeServiceContext.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            if ("getComputeService".equals(method.getName())) {
+              return computeService;
+            }
+            try {
+              return method.invoke(context, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+  }
+
+  /**
+   * @return the compute service to use in place of that of the stub
+   * provider.
+   */
+  protected ComputeService wrap(ComputeService stub) {
+    return cloud.wrap(stub);
+  }
+
+  /**
+   * @return the number of contexts that have been created.
+   */
+  public int getContextCount() {
+    return contexts.get();
+  }
+
+}
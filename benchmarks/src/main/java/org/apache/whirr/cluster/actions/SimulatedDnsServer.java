@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+
+/**
+ * A DNS server on the loopback interface that has no records, and that
+ * ignores a configured fraction of the queries it receives, so that the
+ * clients time out.
+ */
+public class SimulatedDnsServer {
+
+  private final DatagramSocket socket;
+  private final double dropRate;
+  private final Random random;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread thread;
+
+  public SimulatedDnsServer(double dropRate, long seed) throws IOException {
+    this.socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+    this.dropRate = dropRate;
+    this.random = new Random(seed);
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        serve();
+      }
+    }, "simulated-dns");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * @return a resolver that queries this server, and that gives up after
+   * <code>timeoutMillis</code>.
+   */
+  public SimpleResolver newResolver(long timeoutMillis) throws IOException {
+    SimpleResolver resolver = new SimpleResolver("127.0.0.1");
+    resolver.setPort(socket.getLocalPort());
+    resolver.setTimeout((int) (timeoutMillis / 1000),
+        (int) (timeoutMillis % 1000));
+    return resolver;
+  }
+
+  private void serve() {
+    byte[] buffer = new byte[512];
+    while (!socket.isClosed()) {
+      try {
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        socket.receive(packet);
+        if (dropRate > 0 && random.nextDouble() < dropRate) {
+          dropped.incrementAndGet();
+          continue;
+        }
+        byte[] query = new byte[packet.getLength()];
+        System.arraycopy(packet.getData(), packet.getOffset(), query, 0,
+            query.length);
+        byte[] answer = answer(new Message(query)).toWire();
+        socket.send(new DatagramPacket(answer, answer.length,
+            packet.getSocketAddress()));
+      } catch (SocketException e) {
+        // the socket was closed
+      } catch (IOException e) {
+        // a malformed query, which is ignored
+      }
+    }
+  }
+
+  /**
+   * @return an empty answer to <code>query</code>.
+   */
+  private static Message answer(Message query) {
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setFlag(Flags.QR);
+    response.getHeader().setFlag(Flags.RA);
+    response.getHeader().setRcode(Rcode.NOERROR);
+    Record question = query.getQuestion();
+    if (question != null) {
+      response.addRecord(question, Section.QUESTION);
+    }
+    return response;
+  }
+
+  public long getDroppedQueryCount() {
+    return dropped.get();
+  }
+
+  public void close() {
+    socket.close();
+  }
+
+}
@@ -0,0 +1,344 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.cluster.actions;
+
+import static org.apache.whirr.service.RolePredicates.role;
+import static org.jclouds.scriptbuilder.domain.Statements.appendFile;
+import static org.jclouds.scriptbuilder.domain.Statements.call;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.net.HostsFile;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterActionEvent;
+import org.apache.whirr.service.ClusterActionHandler;
+import org.apache.whirr.service.ClusterActionHandlerSupport;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.ClusterSpec.InstanceTemplate;
+
+/**
+ * Launches simulated clusters of increasing size through the real
+ * {@link BootstrapClusterAction} and {@link ConfigureClusterAction}, using
+ * a {@link SimulatedCloud} in place of a cloud provider, and reports how the
+ * launch scales. It runs offline.
+ * <p>
+ * The simulation is controlled by system properties:
+ * <ul>
+ * <li><code>whirr.simulation.sizes</code> - the cluster sizes to launch,
+ * default <code>10,100,1000,5000</code></li>
+ * <li><code>whirr.simulation.node-creation</code> - the
+ * {@link LatencyDistribution} of node creation</li>
+ * <li><code>whirr.simulation.script-run</code> - the distribution of
+ * script run times</li>
+ * <li><code>whirr.simulation.throttle-probability</code> and
+ * <code>whirr.simulation.throttling</code> - the probability that an API call
+ * is throttled, and the distribution of the delay when it is</li>
+ * <li><code>whirr.simulation.poll-period</code> - how often the state of a
+ * node is polled while it is created</li>
+ * <li><code>whirr.simulation.time-scale</code> - the real time that passes
+ * for each unit of simulated time, default 0.001</li>
+ * <li><code>whirr.simulation.user-threads</code> - the size of the jclouds
+ * user thread pool, default 0 (unbounded)</li>
+ * </ul>
+ */
+public class SimulatedLaunchBenchmark {
+
+  private static final String PREFIX = "whirr.simulation.";
+
+  static final String MASTER_ROLE = "simulated-master";
+  static final String WORKER_ROLE = "simulated-worker";
+
+  /**
+   * A handler that adds statements like those of the Hadoop handlers.
+   */
+  static class SimulatedHandler extends ClusterActionHandlerSupport {
+    private final String role;
+
+    SimulatedHandler(String role) {
+      this.role = role;
+    }
+
+    @Override
+    public String getRole() {
+      return role;
+    }
+
+    @Override
+    protected void beforeBootstrap(ClusterActionEvent event) {
+      addStatement(event, call("install_java"));
+      addStatement(event, call("prepare_disks"));
+      addStatement(event, call("install_" + role.replace('-', '_')));
+    }
+
+    @Override
+    protected void beforeConfigure(ClusterActionEvent event) {
+      Cluster cluster = event.getCluster();
+      Instance master = cluster.getInstanceMatching(role(MASTER_ROLE));
+      List<String> lines = Lists.newArrayList();
+      for (int i = 0; i < 100; i++) {
+        lines.add(String.format("key.%d=%s", i,
+            master.getPrivateAddress().getHostAddress()));
+      }
+      addStatement(event, appendFile("/tmp/" + role + ".properties", lines));
+      addStatement(event, call("configure_" + role.replace('-', '_'),
+          master.getPrivateAddress().getHostAddress()));
+    }
+  }
+
+  /**
+   * The measurements of one launch.
+   */
+  static class Result {
+    int size;
+    int instances;
+    long bootstrapMillis;
+    long configureMillis;
+    int peakThreads;
+    long startedThreads;
+    long peakHeapBytes;
+    int contexts;
+    Map<String, Long> calls;
+    long throttledCalls;
+    Exception failure;
+
+    /**
+     * Record a launch that failed in the phase that started at
+     * <code>bootstrapped</code>, or in bootstrap if that is
+     * <code>start</code>.
+     */
+    void failed(Exception e, long start, long bootstrapped) {
+      failure = e;
+      long end = System.currentTimeMillis();
+      if (bootstrapped == start) {
+        bootstrapMillis = end - start;
+      } else {
+        configureMillis = end - bootstrapped;
+      }
+    }
+
+    long getWallMillis() {
+      return bootstrapMillis + configureMillis;
+    }
+
+    long getTotalCalls() {
+      long total = 0;
+      for (long count : calls.values()) {
+        total += count;
+      }
+      return total;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    SimulatedCloud.Settings settings = getSettings();
+    List<Integer> sizes = Lists.newArrayList();
+    for (String size : Splitter.on(',').trimResults().omitEmptyStrings()
+        .split(System.getProperty(PREFIX + "sizes", "10,100,1000,5000"))) {
+      sizes.add(Integer.parseInt(size));
+    }
+    PrintStream out = System.out;
+    out.println("Simulation: " + settings);
+
+    // warm up class loading and the JIT, so the first size is not penalized
+    launch(settings, 2);
+
+    List<Result> results = Lists.newArrayList();
+    for (int size : sizes) {
+      results.add(launch(settings, size));
+    }
+    print(out, settings, results);
+  }
+
+  static SimulatedCloud.Settings getSettings() {
+    SimulatedCloud.Settings settings = new SimulatedCloud.Settings();
+    String value = System.getProperty(PREFIX + "node-creation");
+    if (value != null) {
+      settings.nodeCreation(LatencyDistribution.parse(value));
+    }
+    value = System.getProperty(PREFIX + "script-run");
+    if (value != null) {
+      settings.scriptRun(LatencyDistribution.parse(value));
+    }
+    value = System.getProperty(PREFIX + "throttling");
+    settings.throttling(Double.parseDouble(
+        System.getProperty(PREFIX + "throttle-probability", "0")),
+        value == null ? settings.throttling : LatencyDistribution.parse(value));
+    value = System.getProperty(PREFIX + "poll-period");
+    if (value != null) {
+      settings.pollPeriod(Long.parseLong(value));
+    }
+    value = System.getProperty(PREFIX + "time-scale");
+    if (value != null) {
+      settings.timeScale(Double.parseDouble(value));
+    }
+    value = System.getProperty(PREFIX + "user-threads");
+    if (value != null) {
+      settings.userThreads(Integer.parseInt(value));
+    }
+    value = System.getProperty(PREFIX + "seed");
+    if (value != null) {
+      settings.seed(Long.parseLong(value));
+    }
+    return settings;
+  }
+
+  /**
+   * @return the configuration of a cluster with one master and
+   * <code>size - 1</code> workers.
+   */
+  static Configuration newConfiguration(int size) {
+    Configuration config = new PropertiesConfiguration();
+    config.setProperty(ClusterSpec.Property.CLUSTER_NAME.getConfigName(),
+        "simulated-" + size);
+    config.setProperty(ClusterSpec.Property.SERVICE_NAME.getConfigName(),
+        "simulated");
+    config.setProperty(ClusterSpec.Property.PROVIDER.getConfigName(), "stub");
+    config.setProperty(ClusterSpec.Property.IDENTITY.getConfigName(),
+        "identity");
+    config.setProperty(ClusterSpec.Property.CREDENTIAL.getConfigName(),
+        "credential");
+    config.setProperty(ClusterSpec.Property.INSTANCE_TEMPLATES.getConfigName(),
+        Lists.newArrayList("1 " + MASTER_ROLE,
+            (size - 1) + " " + WORKER_ROLE));
+    // the simulated addresses have no DNS entries
+    config.setProperty(HostsFile.GENERATE_HOSTS_FILE, false);
+    return config;
+  }
+
+  static Map<String, ClusterActionHandler> newHandlerMap() {
+    Map<String, ClusterActionHandler> handlerMap = Maps.newHashMap();
+    handlerMap.put(MASTER_ROLE, new SimulatedHandler(MASTER_ROLE));
+    handlerMap.put(WORKER_ROLE, new SimulatedHandler(WORKER_ROLE));
+    return handlerMap;
+  }
+
+  static Result launch(SimulatedCloud.Settings settings, int size)
+      throws Exception {
+    SimulatedCloud cloud = new SimulatedCloud(settings);
+    try {
+      return launch(ClusterSpec.withTemporaryKeys(newConfiguration(size)),
+          cloud, new SimulatedComputeServiceContextFactory(cloud));
+    } finally {
+      cloud.shutdown();
+    }
+  }
+
+  /**
+   * Bootstrap and configure a cluster, and measure the launch.
+   */
+  static Result launch(ClusterSpec clusterSpec, SimulatedCloud cloud,
+      SimulatedComputeServiceContextFactory factory)
+      throws IOException, InterruptedException {
+    Map<String, ClusterActionHandler> handlerMap = newHandlerMap();
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    List<MemoryPoolMXBean> heapPools = Lists.newArrayList();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+    System.gc();
+    threads.resetPeakThreadCount();
+    for (MemoryPoolMXBean pool : heapPools) {
+      pool.resetPeakUsage();
+    }
+    long startedBefore = threads.getTotalStartedThreadCount();
+
+    Result result = new Result();
+    for (InstanceTemplate template : clusterSpec.getInstanceTemplates()) {
+      result.size += template.getNumberOfInstances();
+    }
+    long start = System.currentTimeMillis();
+    long bootstrapped = start;
+    try {
+      Cluster cluster = new BootstrapClusterAction(factory, handlerMap)
+        .execute(clusterSpec, null);
+      bootstrapped = System.currentTimeMillis();
+      result.bootstrapMillis = bootstrapped - start;
+      result.instances = cluster.getInstances().size();
+      new ConfigureClusterAction(factory, handlerMap)
+        .execute(clusterSpec, cluster);
+      result.configureMillis = System.currentTimeMillis() - bootstrapped;
+    } catch (IOException e) {
+      result.failed(e, start, bootstrapped);
+    } catch (RuntimeException e) {
+      result.failed(e, start, bootstrapped);
+    }
+
+    result.peakThreads = threads.getPeakThreadCount();
+    result.startedThreads = threads.getTotalStartedThreadCount()
+      - startedBefore;
+    for (MemoryPoolMXBean pool : heapPools) {
+      result.peakHeapBytes += pool.getPeakUsage().getUsed();
+    }
+    result.contexts = factory.getContextCount();
+    result.calls = cloud.getCallCounts();
+    result.throttledCalls = cloud.getThrottledCallCount();
+    return result;
+  }
+
+  static void print(PrintStream out, SimulatedCloud.Settings settings,
+      List<Result> results) {
+    out.println();
+    out.println(String.format("%8s %12s %12s %12s %9s %9s %10s %9s %10s %10s",
+        "nodes", "wall (s)", "bootstrap", "configure", "peak thr",
+        "started", "heap (MB)", "contexts", "API calls", "throttled"));
+    for (Result result : results) {
+      out.println(String.format(
+          "%8d %12.2f %12.2f %12.2f %9d %9d %10.1f %9d %10d %10d",
+          result.size, result.getWallMillis() / 1000.0,
+          result.bootstrapMillis / 1000.0, result.configureMillis / 1000.0,
+          result.peakThreads, result.startedThreads,
+          result.peakHeapBytes / (1024.0 * 1024.0), result.contexts,
+          result.getTotalCalls(), result.throttledCalls));
+    }
+    out.println();
+    out.println(String.format("Simulated wall-clock time is the measured "
+        + "time divided by the time scale (%s).", settings.getTimeScale()));
+    for (Result result : results) {
+      out.println(String.format("%d nodes: %.0f simulated seconds; "
+          + "API calls %s", result.size,
+          result.getWallMillis() / 1000.0 / settings.getTimeScale(),
+          Joiner.on(", ").withKeyValueSeparator("=").join(result.calls)));
+    }
+    for (Result result : results) {
+      if (result.failure != null) {
+        out.println(String.format("%d nodes failed: %s", result.size,
+            result.failure));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.apache.whirr.service.RolePredicates.anyRoleIn;
+import static org.apache.whirr.service.RolePredicates.onlyRolesIn;
+import static org.apache.whirr.service.RolePredicates.role;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.whirr.service.Cluster.Instance;
+import org.jclouds.domain.Credentials;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for building a {@link Cluster} and selecting its instances by
+ * role, as the cluster action handlers do for every instance they
+ * configure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClusterBenchmark {
+
+  static final String MASTER_ROLE = "hadoop-namenode";
+  static final String WORKER_ROLE = "hadoop-datanode";
+
+  private static final Set<String> MASTER_ROLES =
+    ImmutableSet.of(MASTER_ROLE, "hadoop-jobtracker");
+  private static final Set<String> WORKER_ROLES =
+    ImmutableSet.of(WORKER_ROLE, "hadoop-tasktracker");
+
+  @Param({"10", "100", "1000", "5000"})
+  public int size;
+
+  private Set<Instance> instances;
+  private Cluster cluster;
+
+  @Setup
+  public void setUp() throws UnknownHostException {
+    instances = newInstances(size);
+    cluster = new Cluster(instances);
+  }
+
+  /**
+   * @return one master instance and <code>size - 1</code> worker instances
+   * with Hadoop roles and distinct addresses.
+   */
+  static Set<Instance> newInstances(int size) throws UnknownHostException {
+    Credentials credentials = new Credentials("user", "secret");
+    Set<Instance> instances = Sets.newLinkedHashSet();
+    for (int i = 0; i < size; i++) {
+      byte[] address = new byte[] { 10, (byte) (i >> 16), (byte) (i >> 8),
+          (byte) i };
+      byte[] publicAddress = new byte[] { 54, (byte) (i >> 16),
+          (byte) (i >> 8), (byte) i };
+      instances.add(new Instance(credentials,
+          i == 0 ? MASTER_ROLES : WORKER_ROLES,
+          InetAddress.getByAddress(publicAddress),
+          InetAddress.getByAddress(address), "i-" + i));
+    }
+    return instances;
+  }
+
+  @Benchmark
+  public Cluster newCluster() {
+    return new Cluster(instances);
+  }
+
+  @Benchmark
+  public Set<Instance> getInstancesInRole() {
+    return cluster.getInstancesInRole(WORKER_ROLE);
+  }
+
+  @Benchmark
+  public Instance getInstanceMatchingRole() {
+    return cluster.getInstanceMatching(role(MASTER_ROLE));
+  }
+
+  @Benchmark
+  public Set<Instance> getInstancesMatchingAnyRoleIn() {
+    return cluster.getInstancesMatching(anyRoleIn(MASTER_ROLES));
+  }
+
+  @Benchmark
+  public Set<Instance> getInstancesMatchingOnlyRolesIn() {
+    return cluster.getInstancesMatching(onlyRolesIn(WORKER_ROLES));
+  }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.ClusterSpec.InstanceTemplate;
+import org.apache.whirr.service.ClusterSpec.Property;
+import org.apache.whirr.ssh.KeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for creating a {@link ClusterSpec} from a recipe, which is done
+ * at the start of every CLI command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClusterSpecBenchmark {
+
+  private Configuration recipe;
+  private CompositeConfiguration templates;
+
+  @Setup
+  public void setUp() throws Exception {
+    Map<String, File> keys = KeyPair.generateTemporaryFiles();
+    recipe = new PropertiesConfiguration();
+    recipe.setProperty(Property.CLUSTER_NAME.getConfigName(), "benchmark");
+    recipe.setProperty(Property.SERVICE_NAME.getConfigName(), "hadoop");
+    recipe.setProperty(Property.PROVIDER.getConfigName(), "stub");
+    recipe.setProperty(Property.IDENTITY.getConfigName(), "identity");
+    recipe.setProperty(Property.CREDENTIAL.getConfigName(), "credential");
+    recipe.setProperty(Property.INSTANCE_TEMPLATES.getConfigName(),
+        "1 hadoop-namenode+hadoop-jobtracker,"
+        + "100 hadoop-datanode+hadoop-tasktracker");
+    recipe.setProperty(
+        Property.INSTANCE_TEMPLATES_MINIMUM_NUMBER_OF_INSTANCES.getConfigName(),
+        "90 hadoop-datanode+hadoop-tasktracker");
+    recipe.setProperty(Property.PRIVATE_KEY_FILE.getConfigName(),
+        keys.get("private").getAbsolutePath());
+    recipe.setProperty(Property.PUBLIC_KEY_FILE.getConfigName(),
+        keys.get("public").getAbsolutePath());
+    recipe.setProperty("hadoop-common.io.file.buffer.size", 65536);
+    recipe.setProperty("hadoop-hdfs.dfs.block.size", 134217728);
+    recipe.setProperty("hadoop-mapreduce.mapred.child.java.opts", "-Xmx1g");
+
+    templates = new CompositeConfiguration();
+    templates.addConfiguration(recipe);
+  }
+
+  @Benchmark
+  public ClusterSpec newClusterSpec() throws ConfigurationException {
+    return new ClusterSpec(recipe);
+  }
+
+  @Benchmark
+  public List<InstanceTemplate> parseInstanceTemplates() {
+    return InstanceTemplate.parse(templates);
+  }
+
+}
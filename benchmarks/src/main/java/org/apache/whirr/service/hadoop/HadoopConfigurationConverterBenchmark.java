@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for converting a Hadoop configuration into the lines of a
+ * <code>*-site.xml</code> file, which is done for each configuration file of
+ * each node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HadoopConfigurationConverterBenchmark {
+
+  @Param({"20", "200"})
+  public int properties;
+
+  private Configuration config;
+
+  @Setup
+  public void setUp() {
+    config = new PropertiesConfiguration();
+    for (int i = 0; i < properties; i++) {
+      config.setProperty("mapred.property." + i, "value-" + i);
+      if (i % 10 == 0) {
+        config.setProperty("mapred.property." + i + ".final", "true");
+      }
+    }
+  }
+
+  @Benchmark
+  public List<String> asLinesInFile() {
+    return HadoopConfigurationConverter.asLinesInFile(config);
+  }
+
+  @Benchmark
+  public List<String> asHashedLinesInFile() {
+    return HadoopConfigurationConverter.asHashedLinesInFile(config);
+  }
+
+}
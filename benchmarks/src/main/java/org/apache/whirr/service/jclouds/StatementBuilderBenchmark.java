@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.jclouds;
+
+import static org.jclouds.scriptbuilder.domain.Statements.appendFile;
+import static org.jclouds.scriptbuilder.domain.Statements.call;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.scriptbuilder.domain.OsFamily;
+import org.jclouds.scriptbuilder.domain.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for building and rendering the script that is run on every
+ * node. The statements are like those added by the Hadoop handlers: function
+ * calls, and files of a few hundred lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatementBuilderBenchmark {
+
+  /**
+   * Functions that are on the classpath, since rendering inlines the body of
+   * each function that is called.
+   */
+  private static final String[] FUNCTIONS = { "configure_hostnames",
+    "install_java", "prepare_disks", "install_hadoop", "configure_hadoop" };
+
+  @Param({"10", "50"})
+  public int statements;
+
+  @Param({"100"})
+  public int linesPerFile;
+
+  private List<Statement> statementList;
+  private StatementBuilder builder;
+
+  @Setup
+  public void setUp() {
+    statementList = Lists.newArrayList();
+    for (int i = 0; i < statements; i++) {
+      if (i % 2 == 0) {
+        statementList.add(call(FUNCTIONS[(i / 2) % FUNCTIONS.length], "-c",
+            "cloudservers", "hadoop-datanode-" + i));
+      } else {
+        List<String> lines = Lists.newArrayList();
+        for (int j = 0; j < linesPerFile; j++) {
+          lines.add(String.format("  <property><name>key.%d</name>"
+              + "<value>%d</value></property>", j, j));
+        }
+        statementList.add(appendFile("/tmp/file-" + i, lines));
+      }
+    }
+    builder = newBuilder();
+  }
+
+  private StatementBuilder newBuilder() {
+    StatementBuilder builder = new StatementBuilder();
+    for (Statement statement : statementList) {
+      builder.addStatement(statement);
+    }
+    return builder;
+  }
+
+  /**
+   * Adds every statement, as the handlers do; each addition checks for
+   * duplicates.
+   */
+  @Benchmark
+  public StatementBuilder addStatements() {
+    return newBuilder();
+  }
+
+  @Benchmark
+  public String render() {
+    return builder.render(OsFamily.UNIX);
+  }
+
+}
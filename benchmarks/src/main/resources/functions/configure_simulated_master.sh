@@ -0,0 +1,4 @@
+function configure_simulated_master() {
+  # nothing to configure: the simulated cloud never runs scripts
+  :
+}
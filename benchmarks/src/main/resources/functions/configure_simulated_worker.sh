@@ -0,0 +1,4 @@
+function configure_simulated_worker() {
+  # nothing to configure: the simulated cloud never runs scripts
+  :
+}
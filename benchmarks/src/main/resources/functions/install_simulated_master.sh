@@ -0,0 +1,4 @@
+function install_simulated_master() {
+  # nothing to install: the simulated cloud never runs scripts
+  :
+}
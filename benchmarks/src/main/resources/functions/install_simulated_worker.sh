@@ -0,0 +1,4 @@
+function install_simulated_worker() {
+  # nothing to install: the simulated cloud never runs scripts
+  :
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.whirr.cluster.actions;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.whirr.cluster.actions.FaultInjectingComputeService.Faults;
+import org.apache.whirr.cluster.actions.FaultRecoveryBenchmark.Recovery;
+import org.apache.whirr.cluster.actions.FaultRecoveryBenchmark.Scenario;
+import org.apache.whirr.service.ClusterSpec;
+import org.junit.Test;
+
+public class FaultRecoveryBenchmarkTest {
+
+  private static final int SIZE = 10;
+  private static final int FAILURES = 3;
+
+  @Test
+  public void testFailedNodesAreReplacedAndDestroyed() throws Exception {
+    // every failed node is started again, and there are enough retries for
+    // that even if all of the failures hit the same instance template
+    Configuration config = SimulatedLaunchBenchmark.newConfiguration(SIZE);
+    config.setProperty(
+        ClusterSpec.Property.MAX_STARTUP_RETRIES.getConfigName(), FAILURES);
+    config.setProperty(ClusterSpec.Property
+        .INSTANCE_TEMPLATES_MAX_PERCENT_FAILURES.getConfigName(),
+        "0 " + SimulatedLaunchBenchmark.WORKER_ROLE);
+    Scenario scenario = new Scenario("node-failures",
+        new Faults().firstNodeFailures(FAILURES), 0);
+
+    Recovery recovery = FaultRecoveryBenchmark.run(
+        new SimulatedCloud.Settings().timeScale(0), scenario,
+        ClusterSpec.withTemporaryKeys(config));
+
+    assertThat(recovery.result.failure == null, is(true));
+    assertThat(recovery.faults.get("node failure"), is((long) FAILURES));
+    assertThat(recovery.result.instances, is(SIZE));
+    assertThat(recovery.result.calls.get("destroyNode"), is((long) FAILURES));
+    assertThat(recovery.leakedNodes, is(0L));
+  }
+
+}
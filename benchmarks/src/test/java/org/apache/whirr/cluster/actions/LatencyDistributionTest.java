@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.whirr.cluster.actions;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyDistributionTest {
+
+  @Test
+  public void testFixed() {
+    LatencyDistribution latency = LatencyDistribution.parse("fixed:1000");
+    assertThat(latency.sample(new Random(0)), is(1000L));
+    assertThat(latency.toString(), is("fixed:1000"));
+  }
+
+  @Test
+  public void testUniformStaysInRange() {
+    LatencyDistribution latency =
+      LatencyDistribution.parse("uniform:500:1500");
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      long sample = latency.sample(random);
+      assertThat(sample >= 500 && sample <= 1500, is(true));
+    }
+  }
+
+  @Test
+  public void testExponentialAndLognormalAreNonNegative() {
+    Random random = new Random(0);
+    for (String spec : new String[] { "exponential:1000",
+        "lognormal:1000:0.5" }) {
+      LatencyDistribution latency = LatencyDistribution.parse(spec);
+      assertThat(latency.toString(), is(spec));
+      for (int i = 0; i < 1000; i++) {
+        assertThat(latency.sample(random) >= 0, is(true));
+      }
+    }
+  }
+
+  @Test
+  public void testSameSeedGivesSameSamples() {
+    LatencyDistribution latency =
+      LatencyDistribution.parse("lognormal:60000:0.4");
+    Random first = new Random(42);
+    Random second = new Random(42);
+    for (int i = 0; i < 10; i++) {
+      assertThat(latency.sample(first), is(latency.sample(second)));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownType() {
+    LatencyDistribution.parse("gaussian:1000");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingParameter() {
+    LatencyDistribution.parse("uniform:500");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExtraParameter() {
+    LatencyDistribution.parse("fixed:1000:2000");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRange() {
+    LatencyDistribution.parse("uniform:1500:500");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testBadNumber() {
+    LatencyDistribution.parse("fixed:soon");
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.whirr.cluster.actions;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Predicates;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.ExecResponse;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.predicates.NodePredicates;
+import org.jclouds.scriptbuilder.domain.Statements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimulatedCloudTest {
+
+  private SimulatedCloud cloud;
+  private ComputeService computeService;
+
+  private static SimulatedCloud.Settings settings() {
+    // no time passes, so the tests don't sleep
+    return new SimulatedCloud.Settings()
+      .nodeCreation(LatencyDistribution.fixed(10000))
+      .scriptRun(LatencyDistribution.fixed(1000))
+      .pollPeriod(5000)
+      .timeScale(0);
+  }
+
+  @Before
+  public void setUp() {
+    cloud = new SimulatedCloud(settings());
+    computeService = cloud.wrap(null);
+  }
+
+  @After
+  public void tearDown() {
+    cloud.shutdown();
+  }
+
+  @Test
+  public void testNodeLifecycle() throws Exception {
+    Set<? extends NodeMetadata> created =
+      computeService.createNodesInGroup("workers", 3);
+    assertThat(created.size(), is(3));
+    assertThat(cloud.getNodes().size(), is(3));
+    for (NodeMetadata node : created) {
+      assertThat(node.getGroup(), is("workers"));
+      assertThat(cloud.getNodes().get(node.getId()), is(node));
+    }
+    assertThat(computeService.listNodes().size(), is(3));
+
+    Map<? extends NodeMetadata, ExecResponse> responses =
+      computeService.runScriptOnNodesMatching(
+          Predicates.<NodeMetadata>alwaysTrue(), Statements.exec("true"));
+    assertThat(responses.size(), is(3));
+    for (ExecResponse response : responses.values()) {
+      assertThat(response.getExitCode(), is(0));
+    }
+
+    NodeMetadata first = created.iterator().next();
+    computeService.destroyNode(first.getId());
+    assertThat(cloud.getNodes().containsKey(first.getId()), is(false));
+    assertThat(computeService.destroyNodesMatching(
+        NodePredicates.inGroup("workers")).size(), is(2));
+    assertThat(cloud.getNodes().isEmpty(), is(true));
+  }
+
+  @Test
+  public void testCallsAreCounted() throws Exception {
+    computeService.createNodesInGroup("workers", 2);
+    computeService.listNodes();
+    Map<String, Long> counts = cloud.getCallCounts();
+    assertThat(counts.get("createNodesInGroup"), is(1L));
+    // each node's state is polled every 5s for the 10s it takes to create
+    assertThat(counts.get("getNodeMetadata"), is(4L));
+    assertThat(counts.get("listNodes"), is(1L));
+    assertThat(cloud.getThrottledCallCount(), is(0L));
+  }
+
+  @Test
+  public void testSeededThrottlingIsReproducible() throws Exception {
+    long[] throttled = new long[2];
+    for (int i = 0; i < throttled.length; i++) {
+      SimulatedCloud seeded = new SimulatedCloud(settings()
+          .throttling(0.5, LatencyDistribution.fixed(1000)).seed(7));
+      try {
+        seeded.wrap(null).createNodesInGroup("workers", 20);
+        throttled[i] = seeded.getThrottledCallCount();
+      } finally {
+        seeded.shutdown();
+      }
+    }
+    assertThat(throttled[0] > 0, is(true));
+    assertThat(throttled[1], is(throttled[0]));
+  }
+
+}
@@ -19,27 +19,32 @@
 package org.apache.whirr.cli.command;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Iterables;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.List;
-import java.util.Set;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
 
+import org.apache.whirr.service.ClusterRegistry;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.Service;
 import org.apache.whirr.service.ServiceFactory;
-import org.jclouds.compute.domain.NodeMetadata;
 
 /**
- * A command to list the nodes in a cluster.
+ * A command to list the nodes in a cluster. Nodes are read from the local
+ * {@link ClusterRegistry}, which is refreshed from the cloud provider when
+ * requested or when its entries are older than
+ * {@link ClusterRegistry#TTL_SECONDS}.
  */
 public class ListClusterCommand extends AbstractClusterSpecCommand {
 
+  private OptionSpec<?> refreshOption = parser
+    .accepts("refresh", "Refresh the list of nodes from the cloud provider.");
+
   public ListClusterCommand() throws IOException {
     this(new ServiceFactory());
   }
@@ -62,12 +67,16 @@ public class ListClusterCommand extends AbstractClusterSpecCommand {
       ClusterSpec clusterSpec = getClusterSpec(optionSet);
 
       Service service = createService(clusterSpec.getServiceName());
-      Set<? extends NodeMetadata> nodes = service.getNodes(clusterSpec);
-      for (NodeMetadata node : nodes) {
-        out.println(Joiner.on('\t').join(node.getId(), node.getImageId(),
-            getFirstAddress(node.getPublicAddresses()),
-            getFirstAddress(node.getPrivateAddresses()),
-            node.getState(), node.getLocation().getId()));
+      ClusterRegistry registry = new ClusterRegistry(clusterSpec);
+      long ttlMillis = 1000L * clusterSpec.getConfiguration().getLong(
+          ClusterRegistry.TTL_SECONDS, ClusterRegistry.DEFAULT_TTL_SECONDS);
+      if (optionSet.has(refreshOption) || registry.isStale(ttlMillis)) {
+        registry.recordRefresh(service.getNodes(clusterSpec));
+      }
+      for (ClusterRegistry.Entry entry : registry.getEntries()) {
+        out.println(Joiner.on('\t').join(entry.getId(), entry.getImageId(),
+            entry.getPublicAddress(), entry.getPrivateAddress(),
+            entry.getState(), entry.getLocationId()));
       }
       return 0;
     } catch (IllegalArgumentException e) {
@@ -77,10 +86,6 @@ public class ListClusterCommand extends AbstractClusterSpecCommand {
     }
   }
   
-  private String getFirstAddress(Set<String> addresses) {
-    return addresses.isEmpty() ? "" : Iterables.get(addresses, 0);
-  }
-
   private void printUsage(OptionParser parser, PrintStream stream) throws IOException {
     stream.println("Usage: whirr list-cluster [OPTIONS]");
     stream.println();
@@ -47,12 +47,17 @@ import org.apache.whirr.service.ClusterActionHandler;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ClusterSpec.InstanceTemplate;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
+import org.apache.whirr.service.HardwareProfile;
+import org.apache.whirr.service.LocationHierarchy;
+import org.apache.whirr.service.PhaseEvent;
+import org.apache.whirr.service.ReadinessBarrier;
 import org.apache.whirr.service.jclouds.StatementBuilder;
 import org.apache.whirr.service.jclouds.TemplateBuilderStrategy;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.compute.ComputeServiceContextFactory;
 import org.jclouds.compute.RunNodesException;
+import org.jclouds.compute.domain.Hardware;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.domain.Template;
 import org.jclouds.compute.domain.TemplateBuilder;
@@ -96,9 +101,11 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
   protected void doAction(Map<InstanceTemplate, ClusterActionEvent> eventMap)
       throws IOException, InterruptedException {
     LOG.info("Bootstrapping cluster");
+    long start = System.currentTimeMillis();
     
     ExecutorService executorService = Executors.newCachedThreadPool();    
     Map<InstanceTemplate, Future<Set<? extends NodeMetadata>>> futures = Maps.newHashMap();
+    Map<InstanceTemplate, Template> templates = Maps.newHashMap();
     
     // initialize startup processes per InstanceTemplates
     for (Entry<InstanceTemplate, ClusterActionEvent> entry : eventMap.entrySet()) {
@@ -110,8 +117,17 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
         ComputeServiceContextBuilder.build(getComputeServiceContextFactory(), clusterSpec);
       final ComputeService computeService =
         computeServiceContext.getComputeService();
-      final Template template = buildTemplate(clusterSpec, computeService,
-          statementBuilder, entry.getValue().getTemplateBuilderStrategy());
+      PhaseEvent templatePhase = startPhase(clusterSpec.getClusterName(),
+          PhaseEvent.BUILD_TEMPLATE, instanceTemplate.getRoles());
+      boolean built = false;
+      final Template template;
+      try {
+        template = buildTemplate(clusterSpec, computeService,
+            statementBuilder, entry.getValue().getTemplateBuilderStrategy());
+        built = true;
+      } finally {
+        completePhase(templatePhase, built);
+      }
       
       Future<Set<? extends NodeMetadata>> nodesFuture = executorService.submit(
           new StartupProcess(
@@ -122,9 +138,11 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
               instanceTemplate.getRoles(),
               computeService, template, executorService, nodeStarterFactory));
       futures.put(instanceTemplate, nodesFuture);
+      templates.put(instanceTemplate, template);
     }
     
     Set<Instance> instances = Sets.newLinkedHashSet();
+    Set<NodeMetadata> allNodes = Sets.newLinkedHashSet();
     for (Entry<InstanceTemplate, Future<Set<? extends NodeMetadata>>> entry :
         futures.entrySet()) {
       Set<? extends NodeMetadata> nodes;
@@ -138,13 +156,39 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
       }
       Set<String> roles = entry.getKey().getRoles();
       instances.addAll(getInstances(roles, nodes));
+      allNodes.addAll(nodes);
     }
     Cluster cluster = new Cluster(instances);
+    ReadinessBarrier.recordLaunchStart(cluster, start);
+    recordHardwareProfiles(cluster, templates);
+    recordLocations(cluster, allNodes);
     for (ClusterActionEvent event : eventMap.values()) {
       event.setCluster(cluster);
     }
   }
 
+  private void recordHardwareProfiles(Cluster cluster,
+      Map<InstanceTemplate, Template> templates) {
+    for (Entry<InstanceTemplate, Template> entry : templates.entrySet()) {
+      Hardware hardware = entry.getValue().getHardware();
+      if (hardware == null) {
+        continue;
+      }
+      HardwareProfile profile = HardwareProfile.fromHardware(hardware);
+      LOG.info("Hardware for roles {} is {}", entry.getKey().getRoles(),
+          profile);
+      for (String role : entry.getKey().getRoles()) {
+        profile.store(cluster.getConfiguration(), role);
+      }
+    }
+  }
+
+  private void recordLocations(Cluster cluster, Set<NodeMetadata> nodes) {
+    for (NodeMetadata node : nodes) {
+      LocationHierarchy.store(cluster.getConfiguration(), node.getLocation());
+    }
+  }
+
   private Template buildTemplate(ClusterSpec clusterSpec,
       ComputeService computeService, StatementBuilder statementBuilder,
       TemplateBuilderStrategy strategy)
@@ -173,7 +217,8 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
         return new Instance(node.getCredentials(), roles,
             InetAddress.getByName(Iterables.get(node.getPublicAddresses(), 0)),
             InetAddress.getByName(Iterables.get(node.getPrivateAddresses(), 0)),
-            node.getId());
+            node.getId(),
+            node.getLocation() == null ? null : node.getLocation().getId());
         } catch (UnknownHostException e) {
             throw new RuntimeException(e);
         }
@@ -197,6 +242,7 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
     private Map<NodeMetadata, Throwable> lostNodes = Maps.newHashMap();
     
     private Future<Set<NodeMetadata>> nodesFuture;
+    private PhaseEvent createPhase;
         
     StartupProcess(final String clusterName, final int numberOfNodes, 
         final int minNumberOfNodes, final int maxStartupRetries, final Set<String> roles, 
@@ -261,6 +307,8 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
     
     void runNodesWithTag() {
       final int num = numberOfNodes - successfulNodes.size();
+      this.createPhase = startPhase(clusterName, PhaseEvent.CREATE_NODES,
+          roles);
       this.nodesFuture = executorService.submit(starterFactory.create(
           computeService, clusterName, roles, num, template));
     }
@@ -269,6 +317,7 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
       try {
         Set<? extends NodeMetadata> nodes = nodesFuture.get();
         successfulNodes.addAll(nodes);
+        completePhase(createPhase, getIds(nodes), true);
       } catch (ExecutionException e) {
         // checking RunNodesException and collect the outcome
         Throwable th = e.getCause();
@@ -276,13 +325,16 @@ public class BootstrapClusterAction extends ScriptBasedClusterAction {
           RunNodesException rnex = (RunNodesException) th;
           successfulNodes.addAll(rnex.getSuccessfulNodes());
           lostNodes.putAll(rnex.getNodeErrors());
+          completePhase(createPhase, getIds(rnex.getSuccessfulNodes()),
+              false);
         } else {
+          completePhase(createPhase, false);
           LOG.error("Unexpected error while starting " + numberOfNodes + " nodes, minimum " 
               + minNumberOfNodes + " nodes for " + roles + " of cluster " + clusterName, e);
         }
       }
     }
-    
+
     void cleanupFailedNodes() throws InterruptedException {
       if (lostNodes.size() > 0) {
         // parallel destroy of failed nodes
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.whirr.net.HostsFile;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterActionEvent;
@@ -34,16 +35,19 @@ import org.apache.whirr.service.ClusterActionHandler;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ClusterSpec.InstanceTemplate;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
+import org.apache.whirr.service.PhaseEvent;
 import org.apache.whirr.service.RolePredicates;
 import org.apache.whirr.service.jclouds.StatementBuilder;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.compute.ComputeServiceContextFactory;
 import org.jclouds.compute.RunScriptOnNodesException;
+import org.jclouds.compute.domain.ExecResponse;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.options.RunScriptOptions;
 import org.jclouds.domain.Credentials;
 import org.jclouds.scriptbuilder.domain.OsFamily;
+import org.jclouds.scriptbuilder.domain.Statement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +70,19 @@ public class ConfigureClusterAction extends ScriptBasedClusterAction {
     return ClusterActionHandler.CONFIGURE_ACTION;
   }
   
+  /**
+   * Install a hosts file for the cluster on every instance, so that daemons
+   * don't depend on DNS to find each other.
+   */
+  @Override
+  protected Statement[] getInitialStatements(ClusterSpec clusterSpec,
+      Cluster cluster) throws IOException, InterruptedException {
+    if (cluster == null || !HostsFile.isEnabled(clusterSpec)) {
+      return new Statement[0];
+    }
+    return HostsFile.buildStatements(cluster);
+  }
+
   @Override
   protected void doAction(Map<InstanceTemplate, ClusterActionEvent> eventMap)
       throws IOException {
@@ -80,16 +97,21 @@ public class ConfigureClusterAction extends ScriptBasedClusterAction {
       Credentials credentials = new Credentials(
           Iterables.get(cluster.getInstances(), 0).getLoginCredentials().identity,
           clusterSpec.getPrivateKey());
+      PhaseEvent phase = startPhase(clusterSpec.getClusterName(),
+          PhaseEvent.RUN_SCRIPT, entry.getKey().getRoles());
       try {
         LOG.info("Running configuration script");
         if (LOG.isDebugEnabled())
           LOG.debug("Running script:\n{}", statementBuilder.render(OsFamily.UNIX));
-        computeService.runScriptOnNodesMatching(
+        Map<? extends NodeMetadata, ExecResponse> responses =
+          computeService.runScriptOnNodesMatching(
             toNodeMetadataPredicate(clusterSpec, cluster, entry.getKey().getRoles()),
             statementBuilder,
             RunScriptOptions.Builder.overrideCredentialsWith(credentials));
+        completePhase(phase, getIds(responses.keySet()), true);
         LOG.info("Configuration script run completed");
       } catch (RunScriptOnNodesException e) {
+        completePhase(phase, getIds(e.getSuccessfulNodes().keySet()), false);
         // TODO: retry
         throw new IOException(e);
       }
@@ -21,14 +21,18 @@ package org.apache.whirr.cluster.actions;
 import static org.jclouds.compute.predicates.NodePredicates.inGroup;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.ClusterAction;
 import org.apache.whirr.service.ClusterActionHandler;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
+import org.apache.whirr.service.PhaseEvent;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContextFactory;
+import org.jclouds.compute.domain.NodeMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,7 +60,19 @@ public class DestroyClusterAction extends ClusterAction {
     LOG.info("Destroying " + clusterSpec.getClusterName() + " cluster");
     ComputeService computeService =
     ComputeServiceContextBuilder.build(getComputeServiceContextFactory(), clusterSpec).getComputeService();
-    computeService.destroyNodesMatching(inGroup(clusterSpec.getClusterName()));
+    PhaseEvent phase = startPhase(clusterSpec.getClusterName(),
+        PhaseEvent.DESTROY_NODES, Collections.<String>emptySet());
+    Set<? extends NodeMetadata> nodes = null;
+    try {
+      nodes = computeService.destroyNodesMatching(
+          inGroup(clusterSpec.getClusterName()));
+    } finally {
+      if (nodes == null) {
+        completePhase(phase, false);
+      } else {
+        completePhase(phase, getIds(nodes), true);
+      }
+    }
     LOG.info("Cluster {} destroyed", clusterSpec.getClusterName());
     return null;
   }
@@ -22,16 +22,20 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 
+import org.apache.whirr.service.ActionPhases;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.ClusterAction;
 import org.apache.whirr.service.ClusterActionEvent;
 import org.apache.whirr.service.ClusterActionHandler;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ClusterSpec.InstanceTemplate;
+import org.apache.whirr.service.PhaseEvent;
 import org.apache.whirr.service.jclouds.StatementBuilder;
 import org.jclouds.compute.ComputeServiceContextFactory;
+import org.jclouds.scriptbuilder.domain.Statement;
 import org.jclouds.scriptbuilder.domain.Statements;
 
 /**
@@ -51,22 +55,58 @@ public abstract class ScriptBasedClusterAction extends ClusterAction {
   protected abstract void doAction(Map<InstanceTemplate, ClusterActionEvent> eventMap)
       throws IOException, InterruptedException;
 
+  /**
+   * @return statements to run on every instance, before those added by the
+   * handlers. The default is none.
+   */
+  protected Statement[] getInitialStatements(ClusterSpec clusterSpec,
+      Cluster cluster) throws IOException, InterruptedException {
+    return new Statement[0];
+  }
+
   public Cluster execute(ClusterSpec clusterSpec, Cluster cluster) throws IOException, InterruptedException {
-    
+    PhaseEvent actionPhase = startPhase(clusterSpec.getClusterName(),
+        PhaseEvent.ACTION, Collections.<String>emptySet());
+    ActionPhases.enter(getListener(), clusterSpec.getClusterName(),
+        getAction());
+    boolean succeeded = false;
+    try {
+      Cluster newCluster = doExecute(clusterSpec, cluster);
+      succeeded = true;
+      return newCluster;
+    } finally {
+      ActionPhases.exit();
+      completePhase(actionPhase, succeeded);
+    }
+  }
+
+  private Cluster doExecute(ClusterSpec clusterSpec, Cluster cluster)
+      throws IOException, InterruptedException {
     Map<InstanceTemplate, ClusterActionEvent> eventMap = Maps.newHashMap();
     Cluster newCluster = cluster;
+    Statement[] initialStatements = getInitialStatements(clusterSpec, cluster);
     for (InstanceTemplate instanceTemplate : clusterSpec.getInstanceTemplates()) {
       StatementBuilder statementBuilder = new StatementBuilder();
       statementBuilder.addStatement(Statements.call("install_runurl"));
+      statementBuilder.addStatements(initialStatements);
       ClusterActionEvent event = new ClusterActionEvent(getAction(),
           clusterSpec, newCluster, statementBuilder);
+      event.setListener(getListener());
       eventMap.put(instanceTemplate, event);
       for (String role : instanceTemplate.getRoles()) {
         ClusterActionHandler handler = handlerMap.get(role);
         if (handler == null) {
           throw new IllegalArgumentException("No handler for role " + role);
         }
-        handler.beforeAction(event);
+        PhaseEvent phase = startPhase(clusterSpec.getClusterName(),
+            PhaseEvent.BEFORE_ACTION, Collections.singleton(role));
+        boolean succeeded = false;
+        try {
+          handler.beforeAction(event);
+          succeeded = true;
+        } finally {
+          completePhase(phase, succeeded);
+        }
       }
       newCluster = event.getCluster(); // cluster may have been updated by handler 
     }
@@ -84,7 +124,15 @@ public abstract class ScriptBasedClusterAction extends ClusterAction {
         }
         ClusterActionEvent event = eventMap.get(instanceTemplate);
         event.setCluster(newCluster);
-        handler.afterAction(event);
+        PhaseEvent phase = startPhase(clusterSpec.getClusterName(),
+            PhaseEvent.AFTER_ACTION, Collections.singleton(role));
+        boolean succeeded = false;
+        try {
+          handler.afterAction(event);
+          succeeded = true;
+        } finally {
+          completePhase(phase, succeeded);
+        }
         newCluster = event.getCluster(); // cluster may have been updated by handler 
       }
     }
@@ -18,8 +18,13 @@
 
 package org.apache.whirr.net;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import java.io.IOException;
+import java.util.Collections;
 
+import org.apache.whirr.service.ActionPhases;
+import org.apache.whirr.service.PhaseEvent;
 import org.xbill.DNS.DClass;
 import org.xbill.DNS.ExtendedResolver;
 import org.xbill.DNS.Message;
@@ -32,6 +37,17 @@ import org.xbill.DNS.Type;
 
 public class DnsUtil {
 
+  private static volatile Resolver resolver;
+
+  /**
+   * Use <code>resolver</code> for lookups instead of the system's DNS
+   * servers, or go back to the system's servers if it is null.
+   */
+  @VisibleForTesting
+  public static void setResolver(Resolver resolver) {
+    DnsUtil.resolver = resolver;
+  }
+
   /**
    * resolve the reverse dns name for the given IP address
    * 
@@ -40,8 +56,25 @@ public class DnsUtil {
    * @throws IOException
    */
   public static String resolveAddress(String hostIp) throws IOException {
-    Resolver res = new ExtendedResolver();
-    res.setTimeout(5); // seconds
+    PhaseEvent phase = ActionPhases.start(PhaseEvent.RESOLVE_ADDRESS,
+        Collections.<String>emptySet());
+    boolean succeeded = false;
+    try {
+      String name = lookup(hostIp);
+      succeeded = true;
+      return name;
+    } finally {
+      ActionPhases.complete(phase, Collections.<String>emptySet(),
+          succeeded);
+    }
+  }
+
+  private static String lookup(String hostIp) throws IOException {
+    Resolver res = resolver;
+    if (res == null) {
+      res = new ExtendedResolver();
+      res.setTimeout(5); // seconds
+    }
 
     Name name = ReverseMap.fromAddress(hostIp);
     int type = Type.PTR;
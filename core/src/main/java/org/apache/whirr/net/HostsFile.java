@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.net;
+
+import static org.jclouds.scriptbuilder.domain.Statements.appendFile;
+import static org.jclouds.scriptbuilder.domain.Statements.call;
+import static org.jclouds.scriptbuilder.domain.Statements.exec;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.whirr.service.ActionPhases;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterSpec;
+import org.jclouds.scriptbuilder.domain.Statement;
+
+/**
+ * Builds a hosts file that maps the private address of every instance in a
+ * cluster to its host name, so that daemons can resolve each other without
+ * going to DNS.
+ * <p>
+ * The entries are installed in <code>/etc/hosts</code> by the
+ * <code>install_hosts_file</code> function, between marker lines. Only that
+ * block is replaced, and only if it has changed, so the hosts file is updated
+ * in place when the members of the cluster change.
+ */
+public class HostsFile {
+
+  /**
+   * The configuration key that controls whether a hosts file is installed
+   * on the nodes when they are configured. The default is true.
+   */
+  public static final String GENERATE_HOSTS_FILE = "whirr.generate-hosts-file";
+
+  private static final String PATH = "/tmp/whirr-hosts";
+  private static final int MAX_THREADS = 16;
+
+  private HostsFile() {
+  }
+
+  public static boolean isEnabled(ClusterSpec clusterSpec) {
+    return clusterSpec.getConfiguration().getBoolean(GENERATE_HOSTS_FILE,
+        true);
+  }
+
+  /**
+   * @return the statements that install the hosts file for
+   * <code>cluster</code> on a node, or none if no instance has a name, as
+   * happens with providers that have no reverse DNS.
+   */
+  public static Statement[] buildStatements(Cluster cluster)
+      throws IOException, InterruptedException {
+    List<String> entries = getEntries(cluster);
+    if (entries.isEmpty()) {
+      return new Statement[0];
+    }
+    return new Statement[] {
+      exec("rm -f " + PATH),
+      appendFile(PATH, entries),
+      call("install_hosts_file", PATH)
+    };
+  }
+
+  /**
+   * @return a line for each instance, with its private address followed by
+   * the reverse DNS name of its public address. The names are looked up in
+   * parallel, and an instance whose name can't be found is left out.
+   */
+  public static List<String> getEntries(Cluster cluster)
+      throws IOException, InterruptedException {
+    List<Instance> instances = Lists.newArrayList(cluster.getInstances());
+    if (instances.isEmpty()) {
+      return Lists.newArrayList();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(MAX_THREADS, instances.size()));
+    try {
+      Map<Instance, Future<String>> names = Maps.newLinkedHashMap();
+      for (final Instance instance : instances) {
+        names.put(instance, executor.submit(ActionPhases.bind(
+            new Callable<String>() {
+              @Override
+              public String call() throws IOException {
+                return DnsUtil.resolveAddress(
+                    instance.getPublicAddress().getHostAddress());
+              }
+            })));
+      }
+      List<String> entries = Lists.newArrayList();
+      for (Map.Entry<Instance, Future<String>> entry : names.entrySet()) {
+        String privateAddress =
+          entry.getKey().getPrivateAddress().getHostAddress();
+        String name = getName(entry.getValue());
+        if (name != null && !name.equals(
+            entry.getKey().getPublicAddress().getHostAddress())) {
+          entries.add(privateAddress + " " + name);
+        }
+      }
+      return entries;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String getName(Future<String> future)
+      throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.net;
+
+import java.io.IOException;
+
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterSpec;
+
+/**
+ * Chooses the addresses that the nodes in a cluster use to reach each other.
+ * <p>
+ * By default nodes are addressed by the reverse DNS name of their public
+ * address, which on some providers resolves to the private address inside
+ * the cloud. With {@link #USE_PRIVATE_ADDRESSES} set, the configuration that
+ * is installed on the nodes uses private addresses, so intra-cluster traffic
+ * never goes through public routing or NAT. The client-side files in the
+ * cluster directory always use public addresses.
+ */
+public class InternalAddresses {
+
+  public static final String USE_PRIVATE_ADDRESSES =
+    "whirr.use-private-addresses";
+
+  private InternalAddresses() {
+  }
+
+  public static boolean usePrivateAddresses(ClusterSpec clusterSpec) {
+    return clusterSpec.getConfiguration().getBoolean(USE_PRIVATE_ADDRESSES,
+        false);
+  }
+
+  /**
+   * @return the host name or address that other nodes in the cluster should
+   * use to connect to <code>instance</code>.
+   */
+  public static String getHostName(ClusterSpec clusterSpec, Instance instance)
+      throws IOException {
+    if (usePrivateAddresses(clusterSpec)) {
+      return instance.getPrivateAddress().getHostAddress();
+    }
+    return DnsUtil.resolveAddress(instance.getPublicAddress().getHostAddress());
+  }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Lets code that runs as part of a cluster action, such as the firewall and
+ * DNS utilities that handlers call, report its phases to the action's
+ * listeners without the action being passed to it.
+ * <p>
+ * The action is bound to the thread that runs it. It is not inherited by
+ * the threads that the thread creates, since some of them, such as those of
+ * jclouds, are pooled and outlive the action. Tasks that should report to
+ * the action from another thread must be wrapped with {@link #bind}.
+ * Outside an action the methods do nothing.
+ */
+public class ActionPhases {
+
+  private static class Context {
+    private final ClusterActionListener listener;
+    private final String clusterName;
+    private final String action;
+
+    Context(ClusterActionListener listener, String clusterName,
+        String action) {
+      this.listener = listener;
+      this.clusterName = clusterName;
+      this.action = action;
+    }
+  }
+
+  private static final ThreadLocal<Context> CURRENT =
+    new ThreadLocal<Context>();
+
+  private ActionPhases() {
+  }
+
+  /**
+   * Bind an action to the current thread until {@link #exit()} is called.
+   */
+  public static void enter(ClusterActionListener listener, String clusterName,
+      String action) {
+    CURRENT.set(new Context(listener, clusterName, action));
+  }
+
+  public static void exit() {
+    CURRENT.remove();
+  }
+
+  /**
+   * @return a task that runs <code>task</code> as part of the action bound
+   * to the current thread, if there is one, on whichever thread it is run.
+   */
+  public static <T> Callable<T> bind(final Callable<T> task) {
+    final Context context = CURRENT.get();
+    if (context == null) {
+      return task;
+    }
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        Context previous = CURRENT.get();
+        CURRENT.set(context);
+        try {
+          return task.call();
+        } finally {
+          if (previous == null) {
+            CURRENT.remove();
+          } else {
+            CURRENT.set(previous);
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Tell the listeners of the current action that <code>phase</code> has
+   * started for the instances with <code>roles</code>.
+   * @return the event, to pass to {@link #complete}, or null if there is no
+   * current action
+   */
+  public static PhaseEvent start(String phase, Set<String> roles) {
+    Context context = CURRENT.get();
+    if (context == null) {
+      return null;
+    }
+    PhaseEvent event = new PhaseEvent(context.clusterName, context.action,
+        phase, roles, System.currentTimeMillis());
+    context.listener.phaseStarted(event);
+    return event;
+  }
+
+  /**
+   * Tell the listeners of the current action that a phase has completed
+   * for the nodes with IDs <code>nodeIds</code>, which may be empty.
+   */
+  public static void complete(PhaseEvent started, Set<String> nodeIds,
+      boolean succeeded) {
+    Context context = CURRENT.get();
+    if (started == null || context == null) {
+      return;
+    }
+    context.listener.phaseCompleted(started.completed(nodeIds,
+        System.currentTimeMillis(), succeeded));
+  }
+
+}
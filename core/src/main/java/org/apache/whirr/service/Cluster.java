@@ -20,47 +20,83 @@ package org.apache.whirr.service;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.InetAddress;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import org.apache.whirr.service.RolePredicates.RolePredicate;
 import org.jclouds.domain.Credentials;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 
 /**
  * This class represents a real cluster of {@link Instance}s.
- *
+ * <p>
+ * The instances are indexed by role when the cluster is created, so
+ * lookups using {@link RolePredicates#role(String)} do not need to scan
+ * every instance.
  */
 public class Cluster {
   
   /**
    * This class represents a real node running in a cluster. An instance has
    * one or more roles.
+   * <p>
+   * Large clusters have many instances but only a few distinct role sets and
+   * login credentials, so these are interned and shared between instances.
+   * The address objects are kept as they were given, so a host name that
+   * has been looked up for an address is only looked up once.
    * @see org.apache.whirr.service.ClusterSpec.InstanceTemplate
    */
   public static class Instance {
+    private static final Interner<Set<String>> ROLES_INTERNER =
+      Interners.newWeakInterner();
+    private static final Interner<Credentials> CREDENTIALS_INTERNER =
+      Interners.newWeakInterner();
+
     private final Credentials loginCredentials;
     private final Set<String> roles;
     private final InetAddress publicAddress;
     private final InetAddress privateAddress;
     private final String id;
+    private final String locationId;
 
     public Instance(Credentials loginCredentials, Set<String> roles, InetAddress publicAddress,
         InetAddress privateAddress, String id) {
-      this.loginCredentials = checkNotNull(loginCredentials, "loginCredentials");
-      this.roles = checkNotNull(roles, "roles");
+      this(loginCredentials, roles, publicAddress, privateAddress, id, null);
+    }
+
+    /**
+     * @param locationId the id of the cloud provider location (such as an
+     * availability zone) that the instance is running in, or null if it is
+     * not known
+     */
+    public Instance(Credentials loginCredentials, Set<String> roles, InetAddress publicAddress,
+        InetAddress privateAddress, String id, String locationId) {
+      this.loginCredentials = CREDENTIALS_INTERNER.intern(
+          checkNotNull(loginCredentials, "loginCredentials"));
+      this.roles = ROLES_INTERNER.intern(
+          ImmutableSet.copyOf(checkNotNull(roles, "roles")));
       this.publicAddress = checkNotNull(publicAddress, "publicAddress");
       this.privateAddress = checkNotNull(privateAddress, "privateAddress");
       this.id = checkNotNull(id, "id");
+      this.locationId = locationId;
     }
 
     public Credentials getLoginCredentials() {
       return loginCredentials;
     }
     
+    /**
+     * @return an immutable set of the roles of this instance.
+     */
     public Set<String> getRoles() {
       return roles;
     }
@@ -76,6 +112,14 @@ public class Cluster {
     public String getId() {
       return id;
     }
+
+    /**
+     * @return the id of the location the instance is running in, or null if
+     * it is not known.
+     */
+    public String getLocationId() {
+      return locationId;
+    }
     
     public String toString() {
       return Objects.toStringHelper(this)
@@ -83,12 +127,14 @@ public class Cluster {
         .add("publicAddress", publicAddress)
         .add("privateAddress", privateAddress)
         .add("id", id)
+        .add("locationId", locationId)
         .toString();
     }
     
   }
   
-  private Set<Instance> instances;
+  private final Set<Instance> instances;
+  private final Map<String, Set<Instance>> instancesByRole;
   private Properties configuration;
 
   public Cluster(Set<Instance> instances) {
@@ -96,9 +142,32 @@ public class Cluster {
   }
 
   public Cluster(Set<Instance> instances, Properties configuration) {
-    this.instances = instances;
+    this.instances = ImmutableSet.copyOf(instances);
+    this.instancesByRole = indexByRole(this.instances);
     this.configuration = configuration;
   }
+
+  private static Map<String, Set<Instance>> indexByRole(
+      Set<Instance> instances) {
+    Map<String, ImmutableSet.Builder<Instance>> builders =
+      Maps.newLinkedHashMap();
+    for (Instance instance : instances) {
+      for (String role : instance.getRoles()) {
+        ImmutableSet.Builder<Instance> builder = builders.get(role);
+        if (builder == null) {
+          builder = ImmutableSet.builder();
+          builders.put(role, builder);
+        }
+        builder.add(instance);
+      }
+    }
+    ImmutableMap.Builder<String, Set<Instance>> index = ImmutableMap.builder();
+    for (Map.Entry<String, ImmutableSet.Builder<Instance>> entry :
+        builders.entrySet()) {
+      index.put(entry.getKey(), entry.getValue().build());
+    }
+    return index.build();
+  }
   
   public Set<Instance> getInstances() {
     return instances;
@@ -107,12 +176,29 @@ public class Cluster {
     return configuration;
   }
 
+  /**
+   * @return the instances that have <code>role</code>, in the order they
+   * appear in {@link #getInstances()}.
+   */
+  public Set<Instance> getInstancesInRole(String role) {
+    Set<Instance> matching = instancesByRole.get(role);
+    return matching == null ? ImmutableSet.<Instance>of() : matching;
+  }
+
   public Instance getInstanceMatching(Predicate<Instance> predicate) {
-    return Iterables.getOnlyElement(Sets.filter(instances, predicate));
+    return Iterables.getOnlyElement(getInstancesMatching(predicate));
   }
 
+  /**
+   * @return an immutable set of the instances matching
+   * <code>predicate</code>. Predicates from {@link RolePredicates#role(String)}
+   * are answered from the role index.
+   */
   public Set<Instance> getInstancesMatching(Predicate<Instance> predicate) {
-    return Sets.filter(instances, predicate);
+    if (predicate instanceof RolePredicate) {
+      return getInstancesInRole(((RolePredicate) predicate).getRole());
+    }
+    return ImmutableSet.copyOf(Iterables.filter(instances, predicate));
   }
 
   public String toString() {
@@ -18,9 +18,13 @@
 
 package org.apache.whirr.service;
 
+import com.google.common.collect.Sets;
+
 import java.io.IOException;
+import java.util.Set;
 
 import org.jclouds.compute.ComputeServiceContextFactory;
+import org.jclouds.compute.domain.ComputeMetadata;
 
 /**
  * Performs an action on a cluster. Example actions include bootstrapping
@@ -30,6 +34,7 @@ import org.jclouds.compute.ComputeServiceContextFactory;
 public abstract class ClusterAction {
   
   private final ComputeServiceContextFactory computeServiceContextFactory;
+  private final ClusterActionListeners listeners = new ClusterActionListeners();
 
   protected ClusterAction(final ComputeServiceContextFactory computeServiceContextFactory) {
     this.computeServiceContextFactory = computeServiceContextFactory;
@@ -38,6 +43,67 @@ public abstract class ClusterAction {
   protected ComputeServiceContextFactory getComputeServiceContextFactory() {
     return computeServiceContextFactory;
   }
+
+  public void addListener(ClusterActionListener listener) {
+    listeners.add(listener);
+  }
+
+  public void addListeners(Iterable<? extends ClusterActionListener> listeners) {
+    this.listeners.addAll(listeners);
+  }
+
+  /**
+   * @return a listener that passes events on to all of the listeners of this
+   * action.
+   */
+  protected ClusterActionListener getListener() {
+    return listeners;
+  }
+
+  /**
+   * Tell the listeners that <code>phase</code> has started for the
+   * instances with <code>roles</code> in the cluster named
+   * <code>clusterName</code>.
+   * @return the event, to pass to {@link #completePhase} when the phase
+   * completes
+   */
+  protected PhaseEvent startPhase(String clusterName, String phase,
+      Set<String> roles) {
+    PhaseEvent event = new PhaseEvent(clusterName, getAction(), phase, roles,
+        System.currentTimeMillis());
+    listeners.phaseStarted(event);
+    return event;
+  }
+
+  /**
+   * Tell the listeners that a phase that did not apply to particular nodes
+   * has completed.
+   */
+  protected void completePhase(PhaseEvent started, boolean succeeded) {
+    completePhase(started, null, succeeded);
+  }
+
+  /**
+   * Tell the listeners that a phase has completed for the nodes with IDs
+   * <code>nodeIds</code>.
+   */
+  protected void completePhase(PhaseEvent started, Set<String> nodeIds,
+      boolean succeeded) {
+    listeners.phaseCompleted(started.completed(nodeIds,
+        System.currentTimeMillis(), succeeded));
+  }
+
+  /**
+   * @return the IDs of <code>nodes</code>.
+   */
+  protected static Set<String> getIds(
+      Iterable<? extends ComputeMetadata> nodes) {
+    Set<String> ids = Sets.newLinkedHashSet();
+    for (ComputeMetadata node : nodes) {
+      ids.add(node.getId());
+    }
+    return ids;
+  }
   
   protected abstract String getAction();
 
@@ -29,6 +29,7 @@ public class ClusterActionEvent {
   private StatementBuilder statementBuilder;
   private TemplateBuilderStrategy templateBuilderStrategy =
     new TemplateBuilderStrategy();
+  private ClusterActionListener listener = new ClusterActionListeners();
   
   public ClusterActionEvent(String action, ClusterSpec clusterSpec,
       Cluster cluster) {
@@ -72,4 +73,16 @@ public class ClusterActionEvent {
     this.templateBuilderStrategy = templateBuilderStrategy;
   }
 
+  /**
+   * @return the listener for the action, which handlers may use to report
+   * the progress of their own phases.
+   */
+  public ClusterActionListener getListener() {
+    return listener;
+  }
+
+  public void setListener(ClusterActionListener listener) {
+    this.listener = listener;
+  }
+
 }
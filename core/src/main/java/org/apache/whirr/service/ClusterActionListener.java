@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+/**
+ * A callback interface for following the progress of cluster actions, phase
+ * by phase. The methods are called from the threads that
+ * perform the actions, so implementations must be thread-safe and should
+ * return quickly.
+ * <p>
+ * <i>Implementation note.</i> {@link ClusterActionListener} implementations
+ * are discovered using a Service Provider Interface (SPI), described in
+ * {@link java.util.ServiceLoader}, and may also be added to a
+ * {@link Service} or a {@link ClusterAction} directly.
+ */
+public abstract class ClusterActionListener {
+
+  /**
+   * Called when a phase starts.
+   */
+  public void phaseStarted(PhaseEvent event) {
+  }
+
+  /**
+   * Called once when a phase completes, with the nodes it completed for.
+   */
+  public void phaseCompleted(PhaseEvent event) {
+  }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ClusterActionListener} that passes events on to a list of
+ * listeners. A listener that throws an exception is logged and does not
+ * affect the action or the other listeners.
+ */
+public class ClusterActionListeners extends ClusterActionListener {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ClusterActionListeners.class);
+
+  private final List<ClusterActionListener> listeners =
+    new CopyOnWriteArrayList<ClusterActionListener>();
+
+  public void add(ClusterActionListener listener) {
+    listeners.add(listener);
+  }
+
+  public void addAll(Iterable<? extends ClusterActionListener> listeners) {
+    for (ClusterActionListener listener : listeners) {
+      add(listener);
+    }
+  }
+
+  @Override
+  public void phaseStarted(PhaseEvent event) {
+    for (ClusterActionListener listener : listeners) {
+      try {
+        listener.phaseStarted(event);
+      } catch (RuntimeException e) {
+        LOG.warn("Listener " + listener + " failed on " + event, e);
+      }
+    }
+  }
+
+  @Override
+  public void phaseCompleted(PhaseEvent event) {
+    for (ClusterActionListener listener : listeners) {
+      try {
+        listener.phaseCompleted(event);
+      } catch (RuntimeException e) {
+        LOG.warn("Listener " + listener + " failed on " + event, e);
+      }
+    }
+  }
+
+}
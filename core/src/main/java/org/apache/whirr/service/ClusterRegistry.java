@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.whirr.service.Cluster.Instance;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local record of the nodes in a cluster, kept in the cluster directory so
+ * that the cluster can be listed without scanning the cloud provider.
+ * <p>
+ * Node lifecycle events are appended to a journal file. The journal is
+ * replayed when the registry is loaded, and the resulting entries are
+ * indexed by role and by state. A refresh from the provider replaces the
+ * journal with a snapshot of the nodes that were found.
+ */
+public class ClusterRegistry {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ClusterRegistry.class);
+
+  public static final String JOURNAL_FILE = "registry";
+
+  /**
+   * The configuration key for the number of seconds after which registry
+   * entries are considered stale and should be refreshed from the provider.
+   */
+  public static final String TTL_SECONDS = "whirr.registry-ttl";
+  public static final long DEFAULT_TTL_SECONDS = 600;
+
+  public enum Event {
+    LAUNCHED, REFRESHED, DESTROYED
+  }
+
+  /**
+   * What is known locally about a single node in the cluster.
+   */
+  public static class Entry {
+    private final String id;
+    private final Set<String> roles;
+    private final String imageId;
+    private final String publicAddress;
+    private final String privateAddress;
+    private final NodeState state;
+    private final String locationId;
+    private final long lastUpdated;
+
+    public Entry(String id, Set<String> roles, String imageId,
+        String publicAddress, String privateAddress, NodeState state,
+        String locationId, long lastUpdated) {
+      this.id = checkNotNull(id, "id");
+      this.roles = ImmutableSet.copyOf(checkNotNull(roles, "roles"));
+      this.imageId = nullToEmpty(imageId);
+      this.publicAddress = nullToEmpty(publicAddress);
+      this.privateAddress = nullToEmpty(privateAddress);
+      this.state = checkNotNull(state, "state");
+      this.locationId = nullToEmpty(locationId);
+      this.lastUpdated = lastUpdated;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public Set<String> getRoles() {
+      return roles;
+    }
+
+    public String getImageId() {
+      return imageId;
+    }
+
+    public String getPublicAddress() {
+      return publicAddress;
+    }
+
+    public String getPrivateAddress() {
+      return privateAddress;
+    }
+
+    public NodeState getState() {
+      return state;
+    }
+
+    public String getLocationId() {
+      return locationId;
+    }
+
+    public long getLastUpdated() {
+      return lastUpdated;
+    }
+
+    public String toString() {
+      return Objects.toStringHelper(this)
+        .add("id", id)
+        .add("roles", roles)
+        .add("imageId", imageId)
+        .add("publicAddress", publicAddress)
+        .add("privateAddress", privateAddress)
+        .add("state", state)
+        .add("locationId", locationId)
+        .add("lastUpdated", lastUpdated)
+        .toString();
+    }
+  }
+
+  private static final Joiner FIELD_JOINER = Joiner.on('\t');
+  private static final Splitter FIELD_SPLITTER = Splitter.on('\t');
+  private static final Joiner ROLE_JOINER = Joiner.on(',');
+  private static final Splitter ROLE_SPLITTER =
+    Splitter.on(',').omitEmptyStrings();
+  private static final int FIELD_COUNT = 9;
+
+  private final File journal;
+  private final Map<String, Entry> entries = Maps.newLinkedHashMap();
+  private final Multimap<String, Entry> entriesByRole =
+    LinkedHashMultimap.create();
+  private final Multimap<NodeState, Entry> entriesByState =
+    LinkedHashMultimap.create();
+
+  public ClusterRegistry(ClusterSpec clusterSpec) throws IOException {
+    this(clusterSpec.getClusterDirectory());
+  }
+
+  public ClusterRegistry(File clusterDirectory) throws IOException {
+    this.journal = new File(clusterDirectory, JOURNAL_FILE);
+    if (journal.exists()) {
+      replay(Files.readLines(journal, Charsets.UTF_8));
+    }
+  }
+
+  /**
+   * @return the entries for all nodes that have not been destroyed, in the
+   * order they were first recorded.
+   */
+  public Collection<Entry> getEntries() {
+    return Collections.unmodifiableCollection(entries.values());
+  }
+
+  public Entry getEntry(String id) {
+    return entries.get(id);
+  }
+
+  public Collection<Entry> getEntriesInRole(String role) {
+    return Collections.unmodifiableCollection(entriesByRole.get(role));
+  }
+
+  public Collection<Entry> getEntriesInState(NodeState state) {
+    return Collections.unmodifiableCollection(entriesByState.get(state));
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * @param ttlMillis the maximum age of an entry
+   * @return true if the registry is empty, or if any of its entries was last
+   * updated more than <code>ttlMillis</code> ago.
+   */
+  public boolean isStale(long ttlMillis) {
+    if (entries.isEmpty()) {
+      return true;
+    }
+    long threshold = System.currentTimeMillis() - ttlMillis;
+    for (Entry entry : entries.values()) {
+      if (entry.getLastUpdated() < threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Record the instances of a newly launched cluster. The cluster doesn't
+   * know the image of each node, so that is left empty until the next
+   * {@link #recordRefresh(Set) refresh}.
+   */
+  public void recordLaunch(Cluster cluster) throws IOException {
+    long now = System.currentTimeMillis();
+    List<Entry> launched = Lists.newArrayList();
+    for (Instance instance : cluster.getInstances()) {
+      launched.add(new Entry(instance.getId(), instance.getRoles(), null,
+          instance.getPublicAddress().getHostAddress(),
+          instance.getPrivateAddress().getHostAddress(),
+          NodeState.RUNNING, instance.getLocationId(), now));
+    }
+    append(Event.LAUNCHED, launched);
+  }
+
+  /**
+   * Record that a node has been destroyed.
+   */
+  public void recordDestroy(String id) throws IOException {
+    Entry entry = entries.get(id);
+    if (entry == null) {
+      return;
+    }
+    append(Event.DESTROYED, Collections.singletonList(new Entry(id,
+        entry.getRoles(), entry.getImageId(), entry.getPublicAddress(),
+        entry.getPrivateAddress(), NodeState.TERMINATED,
+        entry.getLocationId(), System.currentTimeMillis())));
+  }
+
+  /**
+   * Replace the contents of the registry with the nodes reported by the
+   * cloud provider. Roles are not known to the provider, so they are carried
+   * over from existing entries. Nodes that are no longer reported are
+   * dropped, and the journal is compacted to a single snapshot.
+   */
+  public void recordRefresh(Set<? extends NodeMetadata> nodes)
+      throws IOException {
+    long now = System.currentTimeMillis();
+    List<Entry> refreshed = Lists.newArrayList();
+    for (NodeMetadata node : nodes) {
+      Entry previous = entries.get(node.getId());
+      Set<String> roles = previous == null ?
+          Collections.<String>emptySet() : previous.getRoles();
+      refreshed.add(new Entry(node.getId(), roles, node.getImageId(),
+          getFirstAddress(node.getPublicAddresses()),
+          getFirstAddress(node.getPrivateAddresses()),
+          node.getState(),
+          node.getLocation() == null ? null : node.getLocation().getId(),
+          now));
+    }
+    clear();
+    StringBuilder sb = new StringBuilder();
+    for (Entry entry : refreshed) {
+      apply(Event.REFRESHED, entry);
+      sb.append(format(Event.REFRESHED, entry)).append('\n');
+    }
+    File tmp = new File(journal.getParentFile(), JOURNAL_FILE + ".tmp");
+    Files.write(sb, tmp, Charsets.UTF_8);
+    if (!tmp.renameTo(journal)) {
+      Files.move(tmp, journal);
+    }
+  }
+
+  private void append(Event event, List<Entry> toAppend) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (Entry entry : toAppend) {
+      apply(event, entry);
+      sb.append(format(event, entry)).append('\n');
+    }
+    Files.append(sb, journal, Charsets.UTF_8);
+  }
+
+  private void replay(List<String> lines) {
+    for (String line : lines) {
+      if (line.length() == 0) {
+        continue;
+      }
+      List<String> fields = Lists.newArrayList(FIELD_SPLITTER.split(line));
+      if (fields.size() != FIELD_COUNT) {
+        LOG.warn("Ignoring malformed line in cluster registry {}: {}",
+            journal, line);
+        continue;
+      }
+      try {
+        Event event = Event.valueOf(fields.get(1));
+        apply(event, new Entry(fields.get(2),
+            Sets.newLinkedHashSet(ROLE_SPLITTER.split(fields.get(3))),
+            fields.get(4), fields.get(5), fields.get(6),
+            NodeState.valueOf(fields.get(7)), fields.get(8),
+            Long.parseLong(fields.get(0))));
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Ignoring malformed line in cluster registry {}: {}",
+            journal, line);
+      }
+    }
+  }
+
+  private void apply(Event event, Entry entry) {
+    Entry previous = entries.remove(entry.getId());
+    if (previous != null) {
+      for (String role : previous.getRoles()) {
+        entriesByRole.remove(role, previous);
+      }
+      entriesByState.remove(previous.getState(), previous);
+    }
+    if (event == Event.DESTROYED) {
+      return;
+    }
+    entries.put(entry.getId(), entry);
+    for (String role : entry.getRoles()) {
+      entriesByRole.put(role, entry);
+    }
+    entriesByState.put(entry.getState(), entry);
+  }
+
+  private void clear() {
+    entries.clear();
+    entriesByRole.clear();
+    entriesByState.clear();
+  }
+
+  private static String format(Event event, Entry entry) {
+    return FIELD_JOINER.join(entry.getLastUpdated(), event, entry.getId(),
+        ROLE_JOINER.join(entry.getRoles()), entry.getImageId(),
+        entry.getPublicAddress(), entry.getPrivateAddress(), entry.getState(),
+        entry.getLocationId());
+  }
+
+  private static String getFirstAddress(Set<String> addresses) {
+    return addresses.isEmpty() ? null : Iterables.get(addresses, 0);
+  }
+
+  private static String nullToEmpty(String s) {
+    return s == null ? "" : s;
+  }
+
+}
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationConverter;
+import org.apache.whirr.service.jclouds.ProviderApiMeter;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.compute.ComputeServiceContextFactory;
 import org.jclouds.logging.log4j.config.Log4JLoggingModule;
@@ -35,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A convenience class for building jclouds {@link ComputeServiceContext} objects.
+ * The calls made through the contexts are metered by {@link ProviderApiMeter}.
  */
 public class ComputeServiceContextBuilder {
   private static final Logger LOG =
@@ -57,8 +59,8 @@ public class ComputeServiceContextBuilder {
       LOG.warn("please use provider \"cloudservers-us\" instead of \"cloudservers\"");
       spec.setProvider("cloudservers-us");
     }
-    return factory.createContext(spec.getProvider(),
+    return ProviderApiMeter.wrap(factory.createContext(spec.getProvider(),
       spec.getIdentity(), spec.getCredential(),
-      wiring, ConfigurationConverter.getProperties(jcloudsConfig));
+      wiring, ConfigurationConverter.getProperties(jcloudsConfig)), spec);
   }
 }
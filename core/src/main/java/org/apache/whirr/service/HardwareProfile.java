@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.jclouds.compute.domain.Hardware;
+import org.jclouds.compute.domain.Processor;
+import org.jclouds.compute.domain.Volume;
+
+/**
+ * The resources of the hardware that the instances in a role were launched
+ * on. Profiles are recorded in the cluster's
+ * {@link Cluster#getConfiguration() properties} when the cluster is
+ * bootstrapped, so that services can size their configuration to the
+ * hardware.
+ */
+public class HardwareProfile {
+
+  private static final String PREFIX = "whirr.hardware.";
+
+  private final int cores;
+  private final int ramMb;
+  private final int disks;
+
+  public HardwareProfile(int cores, int ramMb, int disks) {
+    checkArgument(cores > 0, "cores must be positive");
+    checkArgument(ramMb > 0, "ramMb must be positive");
+    checkArgument(disks > 0, "disks must be positive");
+    this.cores = cores;
+    this.ramMb = ramMb;
+    this.disks = disks;
+  }
+
+  /**
+   * @return the profile of <code>hardware</code>. Fractional cores are
+   * rounded up, and the number of disks counts the volumes that are not boot
+   * devices, or one if every volume is a boot device.
+   */
+  public static HardwareProfile fromHardware(Hardware hardware) {
+    double cores = 0;
+    for (Processor processor : hardware.getProcessors()) {
+      cores += processor.getCores();
+    }
+    int disks = 0;
+    for (Volume volume : hardware.getVolumes()) {
+      if (!volume.isBootDevice()) {
+        disks++;
+      }
+    }
+    return new HardwareProfile(Math.max(1, (int) Math.ceil(cores)),
+        Math.max(1, hardware.getRam()), Math.max(1, disks));
+  }
+
+  /**
+   * @return the profile recorded for <code>role</code>, or null if there is
+   * none.
+   */
+  public static HardwareProfile load(Properties properties, String role) {
+    String cores = properties.getProperty(PREFIX + role + ".cores");
+    String ramMb = properties.getProperty(PREFIX + role + ".ram");
+    String disks = properties.getProperty(PREFIX + role + ".disks");
+    if (cores == null || ramMb == null || disks == null) {
+      return null;
+    }
+    return new HardwareProfile(Integer.parseInt(cores),
+        Integer.parseInt(ramMb), Integer.parseInt(disks));
+  }
+
+  public void store(Properties properties, String role) {
+    properties.setProperty(PREFIX + role + ".cores", Integer.toString(cores));
+    properties.setProperty(PREFIX + role + ".ram", Integer.toString(ramMb));
+    properties.setProperty(PREFIX + role + ".disks", Integer.toString(disks));
+  }
+
+  public int getCores() {
+    return cores;
+  }
+
+  /**
+   * @return the amount of RAM, in megabytes.
+   */
+  public int getRamMb() {
+    return ramMb;
+  }
+
+  public int getDisks() {
+    return disks;
+  }
+
+  /**
+   * @return <code>path</code> on each of the disks, which are mounted by the
+   * <code>prepare_disks</code> function at <code>/data</code>,
+   * <code>/data1</code>, <code>/data2</code> and so on. The disk count comes
+   * from the provider, and the image may not attach every disk, so the
+   * configure functions drop the directories on disks that were not mounted.
+   */
+  public List<String> getDataDirectories(String path) {
+    List<String> dirs = Lists.newArrayList();
+    for (int i = 0; i < disks; i++) {
+      dirs.add((i == 0 ? "/data" : "/data" + i) + path);
+    }
+    return dirs;
+  }
+
+  public boolean equals(Object o) {
+    if (o instanceof HardwareProfile) {
+      HardwareProfile that = (HardwareProfile) o;
+      return cores == that.cores && ramMb == that.ramMb && disks == that.disks;
+    }
+    return false;
+  }
+
+  public int hashCode() {
+    return Objects.hashCode(cores, ramMb, disks);
+  }
+
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("cores", cores)
+      .add("ramMb", ramMb)
+      .add("disks", disks)
+      .toString();
+  }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.jclouds.domain.Location;
+import org.jclouds.domain.LocationScope;
+
+/**
+ * The parents of the locations (such as regions and availability zones) that
+ * the instances in a cluster were launched in. The hierarchy is recorded in
+ * the cluster's {@link Cluster#getConfiguration() properties} when the cluster
+ * is bootstrapped, so that services can tell how close their instances are
+ * to each other from their {@link Cluster.Instance#getLocationId() location
+ * ids}. The provider itself is not part of the hierarchy.
+ */
+public class LocationHierarchy {
+
+  private static final String PREFIX = "whirr.location.";
+  private static final int MAX_DEPTH = 8;
+
+  private LocationHierarchy() {
+  }
+
+  /**
+   * Record <code>location</code> and its parents.
+   */
+  public static void store(Properties properties, Location location) {
+    for (Location l = location; l != null && l.getScope() !=
+        LocationScope.PROVIDER; l = l.getParent()) {
+      Location parent = l.getParent();
+      properties.setProperty(PREFIX + l.getId() + ".parent",
+          parent == null || parent.getScope() == LocationScope.PROVIDER ?
+          "" : parent.getId());
+    }
+  }
+
+  /**
+   * @return the ids of the location with id <code>locationId</code> and its
+   * recorded parents, outermost first. The list is empty if the location id
+   * is null.
+   */
+  public static List<String> getPath(Properties properties,
+      String locationId) {
+    List<String> path = Lists.newLinkedList();
+    for (String id = locationId; id != null && id.length() > 0 &&
+        path.size() < MAX_DEPTH;
+        id = properties.getProperty(PREFIX + id + ".parent")) {
+      path.add(0, id);
+    }
+    return path;
+  }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * A timestamped event marking the start or the end of a phase of a
+ * {@link ClusterAction}, for the instances with a given set of roles.
+ * <p>
+ * A phase is started once and completes once. The nodes are not always known
+ * when a phase starts (for example, when they are being created), so the
+ * completion event carries the IDs of the nodes that the phase ended with.
+ * The provider API works on batches of nodes, so all the nodes of a phase
+ * share its end time: it is when the last of them finished, not when each
+ * one did.
+ */
+public class PhaseEvent {
+
+  /** The whole of a cluster action. */
+  public static final String ACTION = "action";
+  /** A handler's {@link ClusterActionHandler#beforeAction} callback. */
+  public static final String BEFORE_ACTION = "before-action";
+  /** A handler's {@link ClusterActionHandler#afterAction} callback. */
+  public static final String AFTER_ACTION = "after-action";
+  /** Building the template that nodes are created from. */
+  public static final String BUILD_TEMPLATE = "build-template";
+  /**
+   * Creating nodes, which includes running the bootstrap script since it
+   * is run by the provider as the node starts.
+   */
+  public static final String CREATE_NODES = "create-nodes";
+  /** Running a script on nodes that are already running. */
+  public static final String RUN_SCRIPT = "run-script";
+  /** Destroying nodes. */
+  public static final String DESTROY_NODES = "destroy-nodes";
+  /** Opening ports in the firewall for nodes. */
+  public static final String AUTHORIZE_INGRESS = "authorize-ingress";
+  /** Looking up the DNS name of an address. */
+  public static final String RESOLVE_ADDRESS = "resolve-address";
+
+  private final String clusterName;
+  private final String action;
+  private final String phase;
+  private final Set<String> roles;
+  private final Set<String> nodeIds;
+  private final long startTime;
+  private final long endTime;
+  private final boolean succeeded;
+
+  /**
+   * Create an event for the start of a phase.
+   */
+  public PhaseEvent(String clusterName, String action, String phase,
+      Set<String> roles, long startTime) {
+    this(clusterName, action, phase, roles, null, startTime, -1, false);
+  }
+
+  private PhaseEvent(String clusterName, String action, String phase,
+      Set<String> roles, Set<String> nodeIds, long startTime, long endTime,
+      boolean succeeded) {
+    this.clusterName = clusterName;
+    this.action = action;
+    this.phase = phase;
+    this.roles = roles == null ? ImmutableSet.<String>of()
+        : ImmutableSet.copyOf(roles);
+    this.nodeIds = nodeIds == null ? ImmutableSet.<String>of()
+        : ImmutableSet.copyOf(nodeIds);
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.succeeded = succeeded;
+  }
+
+  /**
+   * @return an event for the end of this phase, which did not apply to
+   * particular nodes.
+   */
+  public PhaseEvent completed(long endTime, boolean succeeded) {
+    return completed(null, endTime, succeeded);
+  }
+
+  /**
+   * @return an event for the end of this phase, for the nodes with IDs
+   * <code>nodeIds</code>.
+   */
+  public PhaseEvent completed(Set<String> nodeIds, long endTime,
+      boolean succeeded) {
+    return new PhaseEvent(clusterName, action, phase, roles, nodeIds,
+        startTime, endTime, succeeded);
+  }
+
+  public String getClusterName() {
+    return clusterName;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  public Set<String> getRoles() {
+    return roles;
+  }
+
+  /**
+   * @return the IDs of the nodes that the phase completed for, which is
+   * empty if it did not apply to particular nodes.
+   */
+  public Set<String> getNodeIds() {
+    return nodeIds;
+  }
+
+  /**
+   * @return the time the phase started, in milliseconds since the epoch.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * @return the time the phase completed, in milliseconds since the epoch,
+   * or -1 if it has not completed.
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+
+  public boolean isCompleted() {
+    return endTime >= 0;
+  }
+
+  public boolean isSucceeded() {
+    return succeeded;
+  }
+
+  public long getDurationMillis() {
+    return isCompleted() ? endTime - startTime : 0;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("clusterName", clusterName)
+      .add("action", action)
+      .add("phase", phase)
+      .add("roles", roles)
+      .add("nodeIds", nodeIds)
+      .add("startTime", startTime)
+      .add("endTime", endTime)
+      .add("succeeded", succeeded)
+      .toString();
+  }
+
+}
@@ -0,0 +1,370 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits until the worker daemons of a newly configured cluster have
+ * registered with their masters, so that the cluster is not handed to the
+ * user with only part of its capacity available.
+ * <p>
+ * Each {@link Probe} counts the workers that a master knows about. The probes
+ * are polled in parallel. A probe is polled more often while its count is
+ * changing, and backs off while it is not. The barrier completes when every
+ * probe has reached the target percentage of its expected workers, or when
+ * the timeout expires, in which case a warning is logged and the cluster is
+ * used as it is. A probe whose master can't be connected to at all gives up
+ * sooner, after the unreachable timeout.
+ * <p>
+ * The time to ready is measured from the start of the launch, which
+ * {@link #recordLaunchStart(Cluster, long)} stores in the cluster's
+ * properties, and is stored there too, so that callers of
+ * {@link Service#launchCluster(ClusterSpec)} can read it with
+ * {@link #getTimeToReady(Cluster, String)}.
+ */
+public class ReadinessBarrier {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ReadinessBarrier.class);
+
+  /**
+   * The configuration key for the percentage of the workers that must be
+   * ready.
+   */
+  public static final String TARGET_PERCENT = "whirr.readiness-target-percent";
+  public static final int DEFAULT_TARGET_PERCENT = 95;
+
+  /**
+   * The configuration key for the number of seconds to wait for the workers.
+   */
+  public static final String TIMEOUT_SECONDS = "whirr.readiness-timeout";
+  public static final long DEFAULT_TIMEOUT_SECONDS = 600;
+
+  /**
+   * The configuration key for the number of seconds to keep trying a master
+   * that can't be connected to, for example because its port is not open to
+   * the client.
+   */
+  public static final String UNREACHABLE_TIMEOUT_SECONDS =
+    "whirr.readiness-unreachable-timeout";
+  public static final long DEFAULT_UNREACHABLE_TIMEOUT_SECONDS = 60;
+
+  private static final String LAUNCH_START = "whirr.launch-start";
+  private static final String TIME_TO_READY = "whirr.time-to-ready.";
+
+  static final long MIN_INTERVAL_MILLIS = 1000;
+  static final long MAX_INTERVAL_MILLIS = 30000;
+
+  /**
+   * Counts the workers that are ready.
+   */
+  public abstract static class Probe {
+    private final String name;
+    private final int expected;
+
+    /**
+     * @param name a description of the workers, for logging
+     * @param expected the number of workers in the cluster
+     */
+    protected Probe(String name, int expected) {
+      this.name = name;
+      this.expected = expected;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getExpected() {
+      return expected;
+    }
+
+    /**
+     * @return the number of workers that are ready
+     * @throws UnreachableException if the master can't be connected to
+     * @throws IOException if the master can't report the count, which is
+     * treated as no workers being ready
+     */
+    public abstract int getReadyCount() throws IOException;
+  }
+
+  /**
+   * Thrown by a probe that can't connect to its master, as opposed to one
+   * whose master has not started reporting yet.
+   */
+  public static class UnreachableException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public UnreachableException(String message, Throwable cause) {
+      super(message);
+      initCause(cause);
+    }
+  }
+
+  /**
+   * A probe that reads the count from a status page served by a master. The
+   * first group of <code>pattern</code> must match the count.
+   */
+  public static class HttpProbe extends Probe {
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final URL url;
+    private final Pattern pattern;
+
+    public HttpProbe(String name, int expected, URL url, Pattern pattern) {
+      super(name, expected);
+      this.url = url;
+      this.pattern = pattern;
+    }
+
+    @Override
+    public int getReadyCount() throws IOException {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(TIMEOUT_MILLIS);
+      connection.setReadTimeout(TIMEOUT_MILLIS);
+      try {
+        connection.connect();
+      } catch (IOException e) {
+        throw new UnreachableException("Could not connect to " + url, e);
+      }
+      try {
+        InputStreamReader reader = new InputStreamReader(
+            connection.getInputStream(), Charsets.UTF_8);
+        try {
+          return parseCount(pattern, CharStreams.toString(reader));
+        } finally {
+          reader.close();
+        }
+      } finally {
+        connection.disconnect();
+      }
+    }
+  }
+
+  private final int targetPercent;
+  private final long timeoutMillis;
+  private final long unreachableTimeoutMillis;
+
+  public ReadinessBarrier(ClusterSpec clusterSpec) {
+    this(clusterSpec.getConfiguration());
+  }
+
+  public ReadinessBarrier(Configuration config) {
+    this(config.getInt(TARGET_PERCENT, DEFAULT_TARGET_PERCENT),
+        config.getLong(TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS) * 1000,
+        config.getLong(UNREACHABLE_TIMEOUT_SECONDS,
+            DEFAULT_UNREACHABLE_TIMEOUT_SECONDS) * 1000);
+  }
+
+  public ReadinessBarrier(int targetPercent, long timeoutMillis) {
+    this(targetPercent, timeoutMillis,
+        DEFAULT_UNREACHABLE_TIMEOUT_SECONDS * 1000);
+  }
+
+  public ReadinessBarrier(int targetPercent, long timeoutMillis,
+      long unreachableTimeoutMillis) {
+    checkArgument(targetPercent >= 0 && targetPercent <= 100,
+        "targetPercent must be between 0 and 100");
+    this.targetPercent = targetPercent;
+    this.timeoutMillis = timeoutMillis;
+    this.unreachableTimeoutMillis = unreachableTimeoutMillis;
+  }
+
+  /**
+   * Record the time at which the launch of <code>cluster</code> started.
+   */
+  public static void recordLaunchStart(Cluster cluster, long startMillis) {
+    cluster.getConfiguration().setProperty(LAUNCH_START,
+        Long.toString(startMillis));
+  }
+
+  /**
+   * @return the milliseconds from the start of the launch until the workers
+   * of <code>service</code> were ready, or -1 if they did not become ready
+   * or were not waited for.
+   */
+  public static long getTimeToReady(Cluster cluster, String service) {
+    return Long.parseLong(cluster.getConfiguration().getProperty(
+        TIME_TO_READY + service, "-1"));
+  }
+
+  /**
+   * @return the number of ready workers needed out of <code>expected</code>.
+   */
+  public int getTarget(int expected) {
+    return (int) Math.ceil(expected * targetPercent / 100.0);
+  }
+
+  /**
+   * Wait for all of the probes of <code>service</code> to reach their
+   * target, and record the time to ready in the cluster's properties.
+   * @return true if they did so before the timeout
+   */
+  public boolean await(Cluster cluster, String service,
+      Collection<? extends Probe> probes) throws InterruptedException {
+    Properties properties = cluster.getConfiguration();
+    long start = System.currentTimeMillis();
+    long launchStart = Long.parseLong(properties.getProperty(LAUNCH_START,
+        Long.toString(start)));
+    boolean ready = await(probes);
+    if (ready) {
+      long timeToReady = System.currentTimeMillis() - launchStart;
+      properties.setProperty(TIME_TO_READY + service,
+          Long.toString(timeToReady));
+      LOG.info("{} ready {} seconds after the launch started, after waiting "
+          + "{} seconds for the workers", new Object[] { service,
+          timeToReady / 1000, (System.currentTimeMillis() - start) / 1000 });
+    }
+    return ready;
+  }
+
+  /**
+   * Wait for all of the probes to reach their target.
+   * @return true if they did so before the timeout
+   */
+  public boolean await(Collection<? extends Probe> probes)
+      throws InterruptedException {
+    if (probes.isEmpty()) {
+      return true;
+    }
+    final long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(probes.size());
+    try {
+      List<Future<Boolean>> futures = Lists.newArrayList();
+      for (final Probe probe : probes) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws InterruptedException {
+            return awaitProbe(probe, start);
+          }
+        }));
+      }
+      boolean ready = true;
+      for (Future<Boolean> future : futures) {
+        try {
+          ready &= future.get();
+        } catch (ExecutionException e) {
+          LOG.warn("Readiness probe failed", e.getCause());
+          ready = false;
+        }
+      }
+      return ready;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private boolean awaitProbe(Probe probe, long start)
+      throws InterruptedException {
+    int target = getTarget(probe.getExpected());
+    long interval = MIN_INTERVAL_MILLIS;
+    int last = -1;
+    long lastReached = start;
+    while (true) {
+      int count;
+      long now;
+      try {
+        count = probe.getReadyCount();
+        now = System.currentTimeMillis();
+        lastReached = now;
+      } catch (UnreachableException e) {
+        now = System.currentTimeMillis();
+        if (now - lastReached >= unreachableTimeoutMillis) {
+          LOG.warn("Could not connect to the master of the {} for {} "
+              + "seconds, continuing: {}", new Object[] { probe.getName(),
+              (now - lastReached) / 1000, e.getCause() });
+          return false;
+        }
+        count = 0;
+      } catch (IOException e) {
+        LOG.debug("Could not read the number of {} that are ready: {}",
+            probe.getName(), e.getMessage());
+        now = System.currentTimeMillis();
+        lastReached = now;
+        count = 0;
+      }
+      long elapsed = now - start;
+      if (count >= target) {
+        LOG.info("{} of {} {} ready after {} seconds", new Object[] {
+            count, probe.getExpected(), probe.getName(), elapsed / 1000 });
+        return true;
+      }
+      if (elapsed >= timeoutMillis) {
+        LOG.warn("Only {} of {} {} ready after {} seconds, continuing",
+            new Object[] { count, probe.getExpected(), probe.getName(),
+            elapsed / 1000 });
+        return false;
+      }
+      interval = nextInterval(interval, count != last);
+      last = count;
+      LOG.debug("{} of {} {} ready", new Object[] { count,
+          probe.getExpected(), probe.getName() });
+      Thread.sleep(Math.min(interval, timeoutMillis - elapsed));
+    }
+  }
+
+  /**
+   * Poll quickly while workers are registering, and back off while nothing
+   * is changing.
+   */
+  static long nextInterval(long interval, boolean progress) {
+    if (progress) {
+      return MIN_INTERVAL_MILLIS;
+    }
+    return Math.min(MAX_INTERVAL_MILLIS, interval * 2);
+  }
+
+  /**
+   * @return the count in the first group of the first match of
+   * <code>pattern</code> in <code>page</code>.
+   */
+  public static int parseCount(Pattern pattern, String page)
+      throws IOException {
+    Matcher matcher = pattern.matcher(page);
+    if (!matcher.find()) {
+      throw new IOException("Status page does not match " + pattern);
+    }
+    return Integer.parseInt(matcher.group(1));
+  }
+
+}
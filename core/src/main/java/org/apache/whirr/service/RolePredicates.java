@@ -19,22 +19,50 @@
 package org.apache.whirr.service;
 
 import com.google.common.base.Predicate;
-import com.google.common.collect.Sets;
 
-import java.util.Collections;
 import java.util.Set;
 
 import org.apache.whirr.service.Cluster.Instance;
 
+/**
+ * Predicates for selecting {@link Instance}s by role. None of the predicates
+ * allocate when they are applied, and {@link #role(String)} predicates are
+ * recognized by {@link Cluster} and answered from its role index.
+ */
 public class RolePredicates {
 
+  /**
+   * A {@link Predicate} that matches {@link Instance}s with a single role.
+   */
+  static class RolePredicate implements Predicate<Instance> {
+    private final String role;
+
+    RolePredicate(String role) {
+      this.role = role;
+    }
+
+    String getRole() {
+      return role;
+    }
+
+    @Override
+    public boolean apply(Instance instance) {
+      return instance.getRoles().contains(role);
+    }
+
+    @Override
+    public String toString() {
+      return "role(" + role + ")";
+    }
+  }
+
   /**
    * @param role
    * @return A {@link Predicate} that matches {@link Instance}s whose roles
    * include <code>role</code>.
    */
   public static Predicate<Instance> role(final String role) {
-    return allRolesIn(Collections.singleton(role));
+    return new RolePredicate(role);
   }
 
   /**
@@ -74,9 +102,13 @@ public class RolePredicates {
     return new Predicate<Instance>() {
       @Override
       public boolean apply(Instance instance) {
-        Set<String> copy = Sets.newLinkedHashSet(instance.getRoles());
-        copy.retainAll(roles);
-        return !copy.isEmpty();
+        Set<String> instanceRoles = instance.getRoles();
+        for (String role : roles) {
+          if (instanceRoles.contains(role)) {
+            return true;
+          }
+        }
+        return false;
       }
     };
   }
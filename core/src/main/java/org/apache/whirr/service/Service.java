@@ -21,18 +21,24 @@ package org.apache.whirr.service;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.whirr.cluster.actions.BootstrapClusterAction;
 import org.apache.whirr.cluster.actions.ConfigureClusterAction;
 import org.apache.whirr.cluster.actions.DestroyClusterAction;
 import org.apache.whirr.net.DnsUtil;
 import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.metrics.ClusterActionMetrics;
+import org.apache.whirr.service.metrics.LaunchTimeline;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContextFactory;
 import org.jclouds.compute.domain.ComputeMetadata;
@@ -49,6 +55,33 @@ public class Service {
 
   private static final Logger LOG = LoggerFactory.getLogger(Service.class);
 
+  /**
+   * The listeners registered in <code>META-INF/services</code>, resolved
+   * once, since a {@link ServiceLoader} is not safe to iterate from several
+   * threads.
+   */
+  private final List<ClusterActionListener> registeredListeners =
+    ImmutableList.copyOf(ServiceLoader.load(ClusterActionListener.class));
+  private final List<ClusterActionListener> listeners =
+    new CopyOnWriteArrayList<ClusterActionListener>();
+
+  /**
+   * Add a listener for the actions that this service performs on clusters.
+   * Listeners that are registered as services in
+   * <code>META-INF/services</code>, and the built-in
+   * {@link ClusterActionMetrics}, are always added.
+   */
+  public void addListener(ClusterActionListener listener) {
+    listeners.add(listener);
+  }
+
+  private <T extends ClusterAction> T withListeners(T action) {
+    action.addListener(ClusterActionMetrics.getInstance());
+    action.addListeners(registeredListeners);
+    action.addListeners(listeners);
+    return action;
+  }
+
   /**
    * @return the unique name of the service.
    */
@@ -71,16 +104,34 @@ public class Service {
     
     ComputeServiceContextFactory computeServiceFactory = new ComputeServiceContextFactory();
     Map<String, ClusterActionHandler> handlerMap = new HandlerMapFactory().create();
+    LaunchTimeline timeline = new LaunchTimeline();
 
-    BootstrapClusterAction bootstrapper = new BootstrapClusterAction(computeServiceFactory, handlerMap);
-    Cluster cluster = bootstrapper.execute(clusterSpec, null);
-
-    ConfigureClusterAction configurer = new ConfigureClusterAction(computeServiceFactory, handlerMap);
-    cluster = configurer.execute(clusterSpec, cluster);
-
-    createInstancesFile(clusterSpec, cluster);
+    try {
+      BootstrapClusterAction bootstrapper = withListeners(
+          new BootstrapClusterAction(computeServiceFactory, handlerMap));
+      bootstrapper.addListener(timeline);
+      Cluster cluster = bootstrapper.execute(clusterSpec, null);
+
+      ConfigureClusterAction configurer = withListeners(
+          new ConfigureClusterAction(computeServiceFactory, handlerMap));
+      configurer.addListener(timeline);
+      cluster = configurer.execute(clusterSpec, cluster);
+
+      createInstancesFile(clusterSpec, cluster);
+      recordLaunch(clusterSpec, cluster);
+
+      return cluster;
+    } finally {
+      writeTimeline(clusterSpec, timeline);
+    }
+  }
 
-    return cluster;
+  private void writeTimeline(ClusterSpec clusterSpec, LaunchTimeline timeline) {
+    try {
+      timeline.write(clusterSpec.getClusterDirectory());
+    } catch (IOException e) {
+      LOG.error("Problem writing launch timeline", e);
+    }
   }
   
   private void createInstancesFile(ClusterSpec clusterSpec, Cluster cluster)
@@ -108,6 +159,20 @@ public class Service {
     }
   }
   
+  private void recordLaunch(ClusterSpec clusterSpec, Cluster cluster)
+      throws InterruptedException {
+    try {
+      ClusterRegistry registry = new ClusterRegistry(clusterSpec);
+      registry.recordLaunch(cluster);
+      // fill in what only the provider knows, such as the image of each node,
+      // so list-cluster doesn't show blanks until the entries go stale
+      registry.recordRefresh(getNodes(clusterSpec));
+    } catch (IOException e) {
+      LOG.error("Problem recording cluster {} in registry",
+          clusterSpec.getClusterName(), e);
+    }
+  }
+  
   /**
    * Stop the cluster and destroy all resources associated with it.
    * @throws IOException if there is a problem while stopping the cluster. The
@@ -116,7 +181,8 @@ public class Service {
    */
   public void destroyCluster(ClusterSpec clusterSpec) throws IOException,
       InterruptedException {
-    DestroyClusterAction destroyer = new DestroyClusterAction(new ComputeServiceContextFactory());
+    DestroyClusterAction destroyer = withListeners(
+        new DestroyClusterAction(new ComputeServiceContextFactory()));
     destroyer.execute(clusterSpec, null);
     Files.deleteRecursively(clusterSpec.getClusterDirectory());
   }
@@ -127,6 +193,7 @@ public class Service {
     ComputeService computeService = ComputeServiceContextBuilder
       .build(clusterSpec).getComputeService();
     computeService.destroyNode(instanceId);
+    new ClusterRegistry(clusterSpec).recordDestroy(instanceId);
 
     LOG.info("Instance {} destroyed", instanceId);
   }
@@ -26,8 +26,10 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.whirr.service.ActionPhases;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.PhaseEvent;
 import org.jclouds.aws.util.AWSUtils;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.ec2.EC2Client;
@@ -35,6 +37,7 @@ import org.jclouds.ec2.domain.IpProtocol;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * Utility functions for controlling firewall settings for a cluster.
@@ -62,17 +65,46 @@ public class FirewallSettings {
   public static void authorizeIngress(ComputeServiceContext computeServiceContext,
       Instance instance, ClusterSpec clusterSpec, String ip, int... ports) {
     
-    authorizeIngress(computeServiceContext, Collections.singleton(instance),
-        clusterSpec, Lists.newArrayList(ip + "/32"), ports);
+    Set<Instance> instances = Collections.singleton(instance);
+    PhaseEvent phase = ActionPhases.start(PhaseEvent.AUTHORIZE_INGRESS,
+        instance.getRoles());
+    boolean succeeded = false;
+    try {
+      authorizeIngress(computeServiceContext, instances, clusterSpec,
+          Lists.newArrayList(ip + "/32"), ports);
+      succeeded = true;
+    } finally {
+      completePhase(phase, instances, succeeded);
+    }
   }
 
   public static void authorizeIngress(ComputeServiceContext computeServiceContext,
       Set<Instance> instances, ClusterSpec clusterSpec, int... ports) throws IOException {
-    List<String> cidrs = clusterSpec.getClientCidrs();
-    if (cidrs == null || cidrs.isEmpty()) {
-      cidrs = Lists.newArrayList(getOriginatingIp());
+    Set<String> roles = Sets.newLinkedHashSet();
+    for (Instance instance : instances) {
+      roles.addAll(instance.getRoles());
+    }
+    PhaseEvent phase = ActionPhases.start(PhaseEvent.AUTHORIZE_INGRESS, roles);
+    boolean succeeded = false;
+    try {
+      List<String> cidrs = clusterSpec.getClientCidrs();
+      if (cidrs == null || cidrs.isEmpty()) {
+        cidrs = Lists.newArrayList(getOriginatingIp());
+      }
+      authorizeIngress(computeServiceContext, instances, clusterSpec, cidrs, ports);
+      succeeded = true;
+    } finally {
+      completePhase(phase, instances, succeeded);
+    }
+  }
+
+  private static void completePhase(PhaseEvent phase, Set<Instance> instances,
+      boolean succeeded) {
+    Set<String> ids = Sets.newLinkedHashSet();
+    for (Instance instance : instances) {
+      ids.add(instance.getId());
     }
-    authorizeIngress(computeServiceContext, instances, clusterSpec, cidrs, ports);
+    ActionPhases.complete(phase, ids, succeeded);
   }
 
   private static void authorizeIngress(ComputeServiceContext computeServiceContext,
@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.jclouds;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.metrics.ProviderApiMetrics;
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.ComputeServiceContext;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.rest.RestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes the calls that Whirr makes to a cloud provider through a meter,
+ * which records the number and latency of the calls to each API in
+ * {@link ProviderApiMetrics}, limits their rate with a
+ * {@link ProviderRateLimiter} shared by every cluster on the same account,
+ * and retries calls that the provider throttled after a jittered exponential
+ * backoff.
+ * <p>
+ * The meter wraps a {@link ComputeServiceContext} in a proxy, and wraps the
+ * compute service, provider-specific API and sub-APIs that are obtained from
+ * it in turn, so callers such as {@link FirewallSettings} are metered without
+ * knowing about it. Calls that start several operations on the provider,
+ * such as starting nodes or running scripts, are not retried, since part of
+ * the work may have been done.
+ * <p>
+ * Only the calls that Whirr makes are metered. The calls that jclouds makes
+ * on its own behalf, such as polling for nodes to start while running
+ * <code>runNodesWithTag</code>, go to the provider through its internal
+ * clients, so they are neither counted nor rate limited, and a throttled
+ * poll shows up as a failure of the call that made it.
+ */
+public class ProviderApiMeter {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ProviderApiMeter.class);
+
+  /**
+   * The configuration key that controls whether provider calls are metered.
+   * The default is true.
+   */
+  public static final String ENABLED = "whirr.provider-metering";
+
+  /**
+   * The configuration key for the maximum number of calls per second to the
+   * provider. Throttling lowers the rate below this.
+   */
+  public static final String MAX_CALLS_PER_SECOND =
+    "whirr.provider-max-calls-per-second";
+  public static final double DEFAULT_MAX_CALLS_PER_SECOND = 10;
+
+  /**
+   * The configuration key for the number of times a throttled call is retried.
+   */
+  public static final String MAX_RETRIES = "whirr.provider-max-retries";
+  public static final int DEFAULT_MAX_RETRIES = 5;
+
+  static final double MIN_CALLS_PER_SECOND = 0.2;
+  static final long BASE_BACKOFF_MILLIS = 500;
+  static final long MAX_BACKOFF_MILLIS = 30000;
+
+  /**
+   * Error codes that providers use for throttled calls.
+   */
+  static final String[] THROTTLING_CODES = {
+    "RequestLimitExceeded", "Throttling", "RateLimitExceeded"
+  };
+
+  /**
+   * Calls that act on several nodes, or that create nodes, so that retrying
+   * them could repeat the part that succeeded. <code>runScriptOnNode</code>
+   * is only in later versions of jclouds.
+   */
+  static final Set<String> NOT_RETRYABLE = ImmutableSet.of(
+      "runNodesWithTag", "createNodesInGroup", "runScriptOnNodesMatching",
+      "runScriptOnNode", "destroyNodesMatching");
+
+  /**
+   * Methods that don't call the provider, besides getters that take no
+   * arguments.
+   */
+  private static final Set<String> LOCAL_METHODS = ImmutableSet.of(
+      "templateBuilder", "templateOptions", "utils", "close");
+
+  private static final Map<String, ProviderRateLimiter> LIMITERS =
+    Maps.newHashMap();
+
+  private ProviderApiMeter() {
+  }
+
+  /**
+   * @return <code>context</code> with its provider calls metered, unless
+   * {@value #ENABLED} is false.
+   */
+  public static ComputeServiceContext wrap(ComputeServiceContext context,
+      ClusterSpec clusterSpec) {
+    Configuration config = clusterSpec.getConfiguration();
+    if (!config.getBoolean(ENABLED, true)) {
+      return context;
+    }
+    ProviderRateLimiter limiter = getLimiter(
+        clusterSpec.getProvider() + "/" + clusterSpec.getIdentity(),
+        config.getDouble(MAX_CALLS_PER_SECOND, DEFAULT_MAX_CALLS_PER_SECOND));
+    return proxy(context, new Meter(limiter, ProviderApiMetrics.getInstance(),
+        config.getInt(MAX_RETRIES, DEFAULT_MAX_RETRIES)), false);
+  }
+
+  /**
+   * @return the limiter for an account. The rate of the first cluster on the
+   * account is used for all of them.
+   */
+  private static synchronized ProviderRateLimiter getLimiter(String account,
+      double maxRate) {
+    ProviderRateLimiter limiter = LIMITERS.get(account);
+    if (limiter == null) {
+      limiter = new ProviderRateLimiter(maxRate,
+          Math.min(maxRate, MIN_CALLS_PER_SECOND));
+      LIMITERS.put(account, limiter);
+    }
+    return limiter;
+  }
+
+  /**
+   * @param providerApi whether <code>target</code> is a provider-specific
+   * API, whose getters return its sub-APIs
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T proxy(T target, Meter meter, boolean providerApi) {
+    if (target == null) {
+      return null;
+    }
+    Set<Class<?>> interfaces = Sets.newLinkedHashSet();
+    for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+      for (Class<?> iface : c.getInterfaces()) {
+        if (Modifier.isPublic(iface.getModifiers())) {
+          interfaces.add(iface);
+        }
+      }
+    }
+    if (interfaces.isEmpty()) {
+      return target;
+    }
+    return (T) Proxy.newProxyInstance(target.getClass().getClassLoader(),
+        interfaces.toArray(new Class<?>[interfaces.size()]),
+        new MeteringHandler(target, meter, providerApi));
+  }
+
+  /**
+   * @return true if <code>throwable</code> or one of its causes is a
+   * throttling response.
+   */
+  static boolean isThrottled(Throwable throwable) {
+    for (Throwable t = throwable; t != null; t = t.getCause()) {
+      if (t instanceof HttpResponseException) {
+        HttpResponse response = ((HttpResponseException) t).getResponse();
+        if (response != null && (response.getStatusCode() == 503
+            || response.getStatusCode() == 429)) {
+          return true;
+        }
+      }
+      String message = t.getMessage();
+      if (message != null) {
+        for (String code : THROTTLING_CODES) {
+          if (message.contains(code)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  static class Meter {
+    private final ProviderRateLimiter limiter;
+    private final ProviderApiMetrics metrics;
+    private final int maxRetries;
+    private final Random random = new Random();
+
+    Meter(ProviderRateLimiter limiter, ProviderApiMetrics metrics,
+        int maxRetries) {
+      this.limiter = limiter;
+      this.metrics = metrics;
+      this.maxRetries = maxRetries;
+    }
+
+    Object call(Object target, Method method, Object[] args) throws Throwable {
+      String api = method.getDeclaringClass().getSimpleName() + "."
+        + method.getName();
+      for (int attempt = 0; ; attempt++) {
+        limiter.acquire();
+        long start = System.currentTimeMillis();
+        try {
+          Object result = method.invoke(target, args);
+          metrics.record(api, System.currentTimeMillis() - start, true);
+          limiter.succeeded();
+          return result;
+        } catch (InvocationTargetException e) {
+          metrics.record(api, System.currentTimeMillis() - start, false);
+          Throwable cause = e.getCause();
+          if (!isThrottled(cause)) {
+            throw cause;
+          }
+          metrics.throttled(api);
+          limiter.throttled();
+          if (attempt >= maxRetries || NOT_RETRYABLE.contains(method.getName())) {
+            throw cause;
+          }
+          long backoff = getBackoffMillis(attempt);
+          LOG.info("Call to {} was throttled, retrying in {} ms", api, backoff);
+          metrics.retried(api);
+          sleep(backoff);
+        }
+      }
+    }
+
+    /**
+     * @return a delay between half and all of an exponentially growing cap,
+     * so that clients that were throttled together don't retry together.
+     */
+    long getBackoffMillis(int attempt) {
+      long cap = Math.min(MAX_BACKOFF_MILLIS,
+          BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+      return cap / 2 + (long) (random.nextDouble() * cap / 2);
+    }
+
+    void sleep(long millis) throws InterruptedException {
+      Thread.sleep(millis);
+    }
+  }
+
+  private static class MeteringHandler implements InvocationHandler {
+    private final Object target;
+    private final Meter meter;
+    private final boolean providerApi;
+
+    MeteringHandler(Object target, Meter meter, boolean providerApi) {
+      this.target = target;
+      this.meter = meter;
+      this.providerApi = providerApi;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (!isLocal(method)) {
+        return meter.call(target, method, args);
+      }
+      Object result;
+      try {
+        result = method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+      if (result != null && isAccessor(method)) {
+        return proxy(result, meter, providerApi || isApi(method));
+      }
+      return result;
+    }
+
+    private static boolean isLocal(Method method) {
+      return method.getDeclaringClass() == Object.class
+        || method.getDeclaringClass() == ComputeServiceContext.class
+        || (method.getName().startsWith("get")
+            && method.getParameterTypes().length == 0)
+        || LOCAL_METHODS.contains(method.getName());
+    }
+
+    /**
+     * @return true for methods that return another API: the compute
+     * service, the provider-specific context and its synchronous API, and
+     * the sub-APIs of a provider-specific API, such as
+     * <code>getSecurityGroupServices()</code>. Other getters, such as
+     * <code>getUtils()</code> or <code>getCredentialStore()</code>, return
+     * local objects, and the asynchronous API is left alone, since its calls
+     * complete after they return.
+     */
+    private boolean isAccessor(Method method) {
+      if (method.getParameterTypes().length > 0) {
+        return false;
+      }
+      Class<?> type = method.getReturnType();
+      if (type == ComputeService.class || type == RestContext.class
+          || isApi(method)) {
+        return true;
+      }
+      return providerApi && method.getName().startsWith("get")
+        && type.isInterface();
+    }
+
+    private static boolean isApi(Method method) {
+      return method.getDeclaringClass() == RestContext.class
+        && method.getName().equals("getApi");
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.jclouds;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A token bucket that limits the rate of calls to a cloud provider, and
+ * adapts the rate to the throttling responses that the provider sends.
+ * <p>
+ * The rate starts at the maximum. Each throttling response halves it, down
+ * to a minimum, and each successful call raises it a little, so that the
+ * rate settles just below the limit of the account. Throttling responses
+ * that arrive within a second of a decrease are caused by calls that were
+ * already in flight, and don't decrease it again.
+ */
+public class ProviderRateLimiter {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ProviderRateLimiter.class);
+
+  static final double DECREASE_FACTOR = 0.5;
+  static final long DECREASE_INTERVAL_MILLIS = 1000;
+
+  private final double minRate;
+  private final double maxRate;
+  private final double burst;
+
+  private double rate;
+  private double tokens;
+  private long lastRefill;
+  private long lastDecrease;
+
+  /**
+   * @param maxRate the maximum number of calls per second
+   * @param minRate the rate that throttling can't push the limit below
+   */
+  public ProviderRateLimiter(double maxRate, double minRate) {
+    checkArgument(minRate > 0 && minRate <= maxRate,
+        "minRate must be positive and no more than maxRate");
+    this.maxRate = maxRate;
+    this.minRate = minRate;
+    this.burst = Math.max(1, maxRate);
+    this.rate = maxRate;
+    this.tokens = burst;
+    this.lastRefill = System.currentTimeMillis();
+    this.lastDecrease = Long.MIN_VALUE / 2;
+  }
+
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  /**
+   * Wait until a call may be made.
+   */
+  public void acquire() throws InterruptedException {
+    long delay;
+    synchronized (this) {
+      refill();
+      tokens -= 1;
+      delay = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rate * 1000);
+    }
+    if (delay > 0) {
+      sleep(delay);
+    }
+  }
+
+  /**
+   * Record a call that succeeded, which raises the rate by about one call per
+   * second every second.
+   */
+  public synchronized void succeeded() {
+    rate = Math.min(maxRate, rate + 1 / rate);
+  }
+
+  /**
+   * Record a call that the provider throttled.
+   */
+  public synchronized void throttled() {
+    long now = System.currentTimeMillis();
+    if (now - lastDecrease < DECREASE_INTERVAL_MILLIS) {
+      return;
+    }
+    lastDecrease = now;
+    refill();
+    rate = Math.max(minRate, rate * DECREASE_FACTOR);
+    tokens = Math.min(tokens, 0);
+    LOG.info("Provider is throttling calls, reducing the rate to {} per second",
+        String.format("%.2f", rate));
+  }
+
+  private void refill() {
+    long now = System.currentTimeMillis();
+    tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1000);
+    lastRefill = now;
+  }
+
+  void sleep(long millis) throws InterruptedException {
+    Thread.sleep(millis);
+  }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.whirr.service.ClusterActionListener;
+import org.apache.whirr.service.PhaseEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ClusterActionListener} that keeps a histogram of the duration of
+ * each phase of each action, over all the clusters launched in this JVM,
+ * and exposes them over JMX as {@value #OBJECT_NAME}.
+ */
+public class ClusterActionMetrics extends ClusterActionListener
+    implements ClusterActionMetricsMXBean {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ClusterActionMetrics.class);
+
+  public static final String OBJECT_NAME =
+    "org.apache.whirr:type=ClusterActionMetrics";
+
+  private static ClusterActionMetrics instance;
+
+  /**
+   * @return the metrics for this JVM, which are registered with the platform
+   * MBean server the first time this is called.
+   */
+  public static synchronized ClusterActionMetrics getInstance() {
+    if (instance == null) {
+      instance = new ClusterActionMetrics();
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+          server.registerMBean(instance, name);
+        }
+      } catch (JMException e) {
+        LOG.warn("Could not register cluster action metrics with JMX", e);
+      }
+    }
+    return instance;
+  }
+
+  private static class PhaseMetrics {
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+  }
+
+  private final ConcurrentMap<String, PhaseMetrics> phases =
+    new ConcurrentHashMap<String, PhaseMetrics>();
+
+  private PhaseMetrics getMetrics(PhaseEvent event) {
+    String key = event.getAction() + "." + event.getPhase();
+    PhaseMetrics metrics = phases.get(key);
+    if (metrics == null) {
+      phases.putIfAbsent(key, new PhaseMetrics());
+      metrics = phases.get(key);
+    }
+    return metrics;
+  }
+
+  @Override
+  public void phaseStarted(PhaseEvent event) {
+    getMetrics(event).started.incrementAndGet();
+  }
+
+  @Override
+  public void phaseCompleted(PhaseEvent event) {
+    PhaseMetrics metrics = getMetrics(event);
+    metrics.histogram.record(event.getDurationMillis());
+    if (!event.isSucceeded()) {
+      metrics.failed.incrementAndGet();
+    }
+  }
+
+  @Override
+  public String[] getPhases() {
+    return phases.keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public long getStartedCount(String phase) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? 0 : metrics.started.get();
+  }
+
+  @Override
+  public long getCompletedCount(String phase) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? 0 : metrics.histogram.getCount();
+  }
+
+  @Override
+  public long getFailedCount(String phase) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? 0 : metrics.failed.get();
+  }
+
+  @Override
+  public double getMeanMillis(String phase) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? 0 : metrics.histogram.getMean();
+  }
+
+  @Override
+  public long getMaxMillis(String phase) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? 0 : metrics.histogram.getMax();
+  }
+
+  @Override
+  public long getPercentileMillis(String phase, double percentile) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? 0 : metrics.histogram.getPercentile(percentile);
+  }
+
+  @Override
+  public Map<String, Long> getHistogram(String phase) {
+    PhaseMetrics metrics = phases.get(phase);
+    return metrics == null ? Collections.<String, Long>emptyMap()
+        : metrics.histogram.getBuckets();
+  }
+
+  @Override
+  public void reset() {
+    phases.clear();
+  }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * A histogram of latencies in milliseconds, with buckets whose upper bounds
+ * follow a 1-2-5 series from 10 milliseconds to an hour, and a final bucket
+ * for anything longer.
+ */
+public class LatencyHistogram {
+
+  private static final long[] BOUNDS = {
+    10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000,
+    200000, 500000, 1000000, 2000000, 3600000
+  };
+
+  private final long[] counts = new long[BOUNDS.length + 1];
+  private long count;
+  private long total;
+  private long max;
+
+  public synchronized void record(long millis) {
+    int bucket = 0;
+    while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+      bucket++;
+    }
+    counts[bucket]++;
+    count++;
+    total += millis;
+    max = Math.max(max, millis);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized double getMean() {
+    return count == 0 ? 0 : (double) total / count;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /**
+   * @return an upper bound on the latency that <code>percentile</code>
+   * percent of the recorded latencies did not exceed: the upper bound of
+   * the bucket that the percentile falls in, or the maximum if that is
+   * smaller.
+   */
+  public synchronized long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count - 1e-9));
+    long seen = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(BOUNDS[i], max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * @return the count in each non-empty bucket, keyed by a description of
+   * the bucket's upper bound, in increasing order.
+   */
+  public synchronized Map<String, Long> getBuckets() {
+    Map<String, Long> buckets = Maps.newLinkedHashMap();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        buckets.put(i < BOUNDS.length ? "<=" + BOUNDS[i] + "ms"
+            : ">" + BOUNDS[BOUNDS.length - 1] + "ms", counts[i]);
+      }
+    }
+    return buckets;
+  }
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.whirr.service.ClusterActionListener;
+import org.apache.whirr.service.PhaseEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ClusterActionListener} that records every completed phase of a
+ * launch, and writes them to the cluster directory as a timeline, together
+ * with the critical path: the chain of phases that determined how long the
+ * launch took.
+ * <p>
+ * The critical path is found by working back from the end of the launch.
+ * At each step it takes the phase that finished last before the current
+ * point, and moves to the start of that phase, until it reaches the start
+ * of the launch. Each phase on the path is broken down into the longest
+ * phases that ran within it, such as the firewall and DNS calls made by a
+ * handler.
+ */
+public class LaunchTimeline extends ClusterActionListener {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(LaunchTimeline.class);
+
+  public static final String FILE_NAME = "launch-timeline.json";
+
+  private static final int BREAKDOWN_SIZE = 3;
+
+  private static final Comparator<PhaseEvent> BY_DURATION =
+    new Comparator<PhaseEvent>() {
+      @Override
+      public int compare(PhaseEvent a, PhaseEvent b) {
+        long difference = b.getDurationMillis() - a.getDurationMillis();
+        return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+      }
+    };
+
+  private final List<PhaseEvent> events = Lists.newArrayList();
+
+  @Override
+  public synchronized void phaseCompleted(PhaseEvent event) {
+    events.add(event);
+  }
+
+  public synchronized List<PhaseEvent> getEvents() {
+    return Lists.newArrayList(events);
+  }
+
+  /**
+   * @return the phases on the critical path, in the order they ran.
+   */
+  public List<PhaseEvent> getCriticalPath() {
+    List<PhaseEvent> candidates = Lists.newArrayList();
+    long start = Long.MAX_VALUE;
+    long end = Long.MIN_VALUE;
+    for (PhaseEvent event : getEvents()) {
+      start = Math.min(start, event.getStartTime());
+      end = Math.max(end, event.getEndTime());
+      if (!PhaseEvent.ACTION.equals(event.getPhase())) {
+        candidates.add(event);
+      }
+    }
+    List<PhaseEvent> path = Lists.newArrayList();
+    long time = end;
+    while (time > start) {
+      PhaseEvent last = null;
+      for (PhaseEvent event : candidates) {
+        if (event.getEndTime() > time || event.getStartTime() >= time) {
+          continue;
+        }
+        if (last == null || event.getEndTime() > last.getEndTime()
+            || (event.getEndTime() == last.getEndTime()
+                && event.getDurationMillis() > last.getDurationMillis())) {
+          last = event;
+        }
+      }
+      if (last == null) {
+        break;
+      }
+      path.add(last);
+      time = last.getStartTime();
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * @return the longest phases of other kinds that ran within
+   * <code>outer</code>.
+   */
+  List<PhaseEvent> getBreakdown(PhaseEvent outer) {
+    List<PhaseEvent> inner = Lists.newArrayList();
+    for (PhaseEvent event : getEvents()) {
+      if (!event.getPhase().equals(outer.getPhase())
+          && event.getStartTime() >= outer.getStartTime()
+          && event.getEndTime() <= outer.getEndTime()
+          && event.getDurationMillis() < outer.getDurationMillis()) {
+        inner.add(event);
+      }
+    }
+    Collections.sort(inner, BY_DURATION);
+    return inner.subList(0, Math.min(BREAKDOWN_SIZE, inner.size()));
+  }
+
+  /**
+   * Write the timeline and critical path to {@value #FILE_NAME} in
+   * <code>clusterDir</code>, and log the critical path.
+   */
+  public File write(File clusterDir) throws IOException {
+    List<PhaseEvent> events = getEvents();
+    if (events.isEmpty()) {
+      return null;
+    }
+    long start = Long.MAX_VALUE;
+    long end = Long.MIN_VALUE;
+    for (PhaseEvent event : events) {
+      start = Math.min(start, event.getStartTime());
+      end = Math.max(end, event.getEndTime());
+    }
+    List<PhaseEvent> criticalPath = getCriticalPath();
+
+    StringBuilder json = new StringBuilder("{\n");
+    json.append("  \"cluster\": ")
+      .append(quote(events.get(0).getClusterName())).append(",\n");
+    json.append("  \"startTime\": ").append(start).append(",\n");
+    json.append("  \"durationMillis\": ").append(end - start).append(",\n");
+    json.append("  \"events\": [\n");
+    appendEvents(json, events, start, false);
+    json.append("  ],\n");
+    json.append("  \"criticalPath\": [\n");
+    appendEvents(json, criticalPath, start, true);
+    json.append("  ]\n}\n");
+
+    File file = new File(clusterDir, FILE_NAME);
+    Files.write(json, file, Charsets.UTF_8);
+    LOG.info("Wrote launch timeline {}", file);
+
+    StringBuilder summary = new StringBuilder();
+    for (PhaseEvent event : criticalPath) {
+      summary.append(String.format("%n  %8d ms  %s", event.getDurationMillis(),
+          describe(event)));
+      for (PhaseEvent inner : getBreakdown(event)) {
+        summary.append(String.format("%n  %8s    %6d ms  %s", "",
+            inner.getDurationMillis(), describe(inner)));
+      }
+    }
+    LOG.info("Launch took {} ms. Critical path:{}", end - start, summary);
+    return file;
+  }
+
+  private void appendEvents(StringBuilder json, List<PhaseEvent> events,
+      long start, boolean withBreakdown) {
+    for (Iterator<PhaseEvent> it = events.iterator(); it.hasNext(); ) {
+      PhaseEvent event = it.next();
+      json.append("    ");
+      appendEvent(json, event, start);
+      if (withBreakdown) {
+        json.setLength(json.length() - 1);
+        json.append(", \"breakdown\": [");
+        for (Iterator<PhaseEvent> inner = getBreakdown(event).iterator();
+            inner.hasNext(); ) {
+          appendEvent(json, inner.next(), start);
+          json.append(inner.hasNext() ? ", " : "");
+        }
+        json.append("]}");
+      }
+      json.append(it.hasNext() ? ",\n" : "\n");
+    }
+  }
+
+  private static void appendEvent(StringBuilder json, PhaseEvent event,
+      long start) {
+    json.append("{\"action\": ").append(quote(event.getAction()));
+    json.append(", \"phase\": ").append(quote(event.getPhase()));
+    json.append(", \"roles\": [");
+    for (Iterator<String> it = event.getRoles().iterator(); it.hasNext(); ) {
+      json.append(quote(it.next())).append(it.hasNext() ? ", " : "");
+    }
+    json.append("], \"nodes\": [");
+    for (Iterator<String> it = event.getNodeIds().iterator(); it.hasNext(); ) {
+      json.append(quote(it.next())).append(it.hasNext() ? ", " : "");
+    }
+    json.append("]");
+    json.append(", \"startOffsetMillis\": ")
+      .append(event.getStartTime() - start);
+    json.append(", \"durationMillis\": ").append(event.getDurationMillis());
+    json.append(", \"succeeded\": ").append(event.isSucceeded());
+    json.append("}");
+  }
+
+  static String describe(PhaseEvent event) {
+    StringBuilder description = new StringBuilder(event.getAction())
+      .append(' ').append(event.getPhase());
+    if (!event.getRoles().isEmpty()) {
+      description.append(' ').append(event.getRoles());
+    }
+    int nodes = event.getNodeIds().size();
+    if (nodes > 0) {
+      description.append(" on ").append(nodes)
+        .append(nodes == 1 ? " node" : " nodes");
+    }
+    if (!event.isSucceeded()) {
+      description.append(" (failed)");
+    }
+    return description.toString();
+  }
+
+  static String quote(String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+}
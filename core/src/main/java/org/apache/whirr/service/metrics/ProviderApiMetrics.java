@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the calls made to each cloud provider API and keeps a histogram of
+ * their latency, over all the clusters in this JVM, and exposes them over JMX
+ * as {@value #OBJECT_NAME}.
+ */
+public class ProviderApiMetrics implements ProviderApiMetricsMXBean {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ProviderApiMetrics.class);
+
+  public static final String OBJECT_NAME =
+    "org.apache.whirr:type=ProviderApiMetrics";
+
+  private static ProviderApiMetrics instance;
+
+  /**
+   * @return the metrics for this JVM, which are registered with the platform
+   * MBean server the first time this is called.
+   */
+  public static synchronized ProviderApiMetrics getInstance() {
+    if (instance == null) {
+      instance = new ProviderApiMetrics();
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+          server.registerMBean(instance, name);
+        }
+      } catch (JMException e) {
+        LOG.warn("Could not register provider API metrics with JMX", e);
+      }
+    }
+    return instance;
+  }
+
+  private static class ApiMetrics {
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+  }
+
+  private final ConcurrentMap<String, ApiMetrics> apis =
+    new ConcurrentHashMap<String, ApiMetrics>();
+
+  private ApiMetrics getMetrics(String api) {
+    ApiMetrics metrics = apis.get(api);
+    if (metrics == null) {
+      apis.putIfAbsent(api, new ApiMetrics());
+      metrics = apis.get(api);
+    }
+    return metrics;
+  }
+
+  /**
+   * Record a completed call to <code>api</code>.
+   */
+  public void record(String api, long millis, boolean succeeded) {
+    ApiMetrics metrics = getMetrics(api);
+    metrics.histogram.record(millis);
+    if (!succeeded) {
+      metrics.failed.incrementAndGet();
+    }
+  }
+
+  /**
+   * Record a call to <code>api</code> that the provider throttled.
+   */
+  public void throttled(String api) {
+    getMetrics(api).throttled.incrementAndGet();
+  }
+
+  /**
+   * Record a retry of a throttled call to <code>api</code>.
+   */
+  public void retried(String api) {
+    getMetrics(api).retries.incrementAndGet();
+  }
+
+  @Override
+  public String[] getApis() {
+    return apis.keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public long getCallCount(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.histogram.getCount();
+  }
+
+  @Override
+  public long getFailedCount(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.failed.get();
+  }
+
+  @Override
+  public long getThrottledCount(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.throttled.get();
+  }
+
+  @Override
+  public long getRetryCount(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.retries.get();
+  }
+
+  @Override
+  public double getMeanMillis(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.histogram.getMean();
+  }
+
+  @Override
+  public long getMaxMillis(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.histogram.getMax();
+  }
+
+  @Override
+  public long getPercentileMillis(String api, double percentile) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? 0 : metrics.histogram.getPercentile(percentile);
+  }
+
+  @Override
+  public Map<String, Long> getHistogram(String api) {
+    ApiMetrics metrics = apis.get(api);
+    return metrics == null ? Collections.<String, Long>emptyMap()
+        : metrics.histogram.getBuckets();
+  }
+
+  @Override
+  public void reset() {
+    apis.clear();
+  }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ProviderApiMetrics}. APIs are named
+ * <code>&lt;interface&gt;.&lt;method&gt;</code>, for example
+ * <code>ComputeService.listNodesDetailsMatching</code>.
+ */
+public interface ProviderApiMetricsMXBean {
+
+  String[] getApis();
+
+  long getCallCount(String api);
+
+  long getFailedCount(String api);
+
+  long getThrottledCount(String api);
+
+  long getRetryCount(String api);
+
+  double getMeanMillis(String api);
+
+  long getMaxMillis(String api);
+
+  long getPercentileMillis(String api, double percentile);
+
+  Map<String, Long> getHistogram(String api);
+
+  void reset();
+
+}
@@ -0,0 +1,23 @@
+function install_hosts_file() {
+  HOSTS_ENTRIES_FILE=$1
+  HOSTS_FILE=${2:-/etc/hosts}
+  BEGIN_MARKER="# BEGIN whirr cluster hosts"
+  END_MARKER="# END whirr cluster hosts"
+
+  if [ ! -f $HOSTS_ENTRIES_FILE ]; then
+    return
+  fi
+
+  echo "$BEGIN_MARKER" > /tmp/whirr-hosts.new
+  sort -u $HOSTS_ENTRIES_FILE >> /tmp/whirr-hosts.new
+  echo "$END_MARKER" >> /tmp/whirr-hosts.new
+  sed -n -e "/^$BEGIN_MARKER\$/,/^$END_MARKER\$/p" $HOSTS_FILE > /tmp/whirr-hosts.old
+
+  # Only the cluster's block is replaced, and only if it has changed
+  if ! cmp -s /tmp/whirr-hosts.new /tmp/whirr-hosts.old; then
+    sed -e "/^$BEGIN_MARKER\$/,/^$END_MARKER\$/d" $HOSTS_FILE > /tmp/whirr-hosts.all
+    cat /tmp/whirr-hosts.new >> /tmp/whirr-hosts.all
+    cat /tmp/whirr-hosts.all > $HOSTS_FILE
+  fi
+  rm -f $HOSTS_ENTRIES_FILE /tmp/whirr-hosts.new /tmp/whirr-hosts.old /tmp/whirr-hosts.all
+}
@@ -0,0 +1,104 @@
+function prepare_disks() {
+  local OPTIND
+  local OPTARG
+  
+  CLOUD_PROVIDER=
+  while getopts "c:" OPTION; do
+    case $OPTION in
+    c)
+      CLOUD_PROVIDER="$OPTARG"
+      ;;
+    esac
+  done
+  
+  # The first ephemeral disk is used as /data. Some providers mount it at
+  # /mnt, otherwise /data is on the root disk.
+  if [ ! -e /data ]; then
+    if mountpoint -q /mnt; then
+      ln -s /mnt /data
+    else
+      mkdir -p /data
+    fi
+  fi
+
+  if which mkfs.ext4 &> /dev/null; then
+    FS_TYPE=ext4
+    MKFS_OPTS="-E lazy_itable_init=1"
+  else
+    FS_TYPE=ext3
+    MKFS_OPTS=
+  fi
+
+  # On EC2 the instance metadata lists the ephemeral disks. The kernel may
+  # call a disk xvdb rather than sdb.
+  EPHEMERAL_DEVS=
+  case $CLOUD_PROVIDER in
+    ec2 | aws-ec2 )
+      metadata=http://169.254.169.254/latest/meta-data/block-device-mapping
+      for mapping in `wget -q -O - $metadata/ | grep '^ephemeral'`; do
+        name=`wget -q -O - $metadata/$mapping`
+        name=${name#/dev/}
+        for dev in /dev/$name /dev/xvd${name#sd}; do
+          [ -b $dev ] && EPHEMERAL_DEVS="$EPHEMERAL_DEVS $dev"
+        done
+      done
+      ;;
+    *)
+      ;;
+  esac
+
+  # Format the remaining disks in parallel, and mount them at /data1, /data2,
+  # and so on. The root disk (which /proc/mounts may call /dev/root) and any
+  # disk that is mounted, used for swap, or partitioned are left alone. Of the
+  # rest, only the ephemeral disks are formatted if the metadata lists them,
+  # otherwise only the disks with no filesystem, LVM or RAID signature.
+  ROOT_DEV=`mountpoint -d /`
+  MOUNTS=
+  i=1
+  for dev in `ls /dev/sd? /dev/xvd? /dev/vd? 2> /dev/null`; do
+    if [ "`mountpoint -x $dev`" == "$ROOT_DEV" ] || \
+        grep -q "^$dev[[:space:]]" /proc/mounts /proc/swaps || \
+        ls $dev[0-9]* &> /dev/null; then
+      continue
+    fi
+    signature=`blkid -o value -s TYPE $dev 2> /dev/null`
+    case $signature in
+      swap | LVM2_member | linux_raid_member )
+        continue
+        ;;
+    esac
+    if [ -n "$EPHEMERAL_DEVS" ]; then
+      echo "$EPHEMERAL_DEVS " | grep -q " $dev " || continue
+    elif [ -n "$signature" ]; then
+      continue
+    fi
+    mount_point=/data$i
+    while [ -e $mount_point ]; do
+      i=$((i+1))
+      mount_point=/data$i
+    done
+    mkdir -p $mount_point
+    # The disks hold small files such as map outputs as well as large data
+    # files, so keep the default inode density, but there is no need to
+    # reserve blocks for root
+    (mkfs.$FS_TYPE -q -F -m 0 $MKFS_OPTS $dev && \
+      mount -o noatime,nodiratime $dev $mount_point) &
+    MOUNTS="$MOUNTS $dev:$mount_point"
+    i=$((i+1))
+  done
+  wait
+
+  # Remove the mount points of disks that failed, so nothing is written to
+  # the root disk in their place
+  for mount in $MOUNTS; do
+    dev=${mount%%:*}
+    mount_point=${mount##*:}
+    if mountpoint -q $mount_point; then
+      echo "$dev $mount_point $FS_TYPE noatime,nodiratime 0 0" >> /etc/fstab
+      echo "Mounted $dev at $mount_point"
+    else
+      rmdir $mount_point
+      echo "Failed to mount $dev at $mount_point"
+    fi
+  done
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.net;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.jclouds.domain.Credentials;
+import org.junit.After;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.PTRRecord;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ReverseMap;
+import org.xbill.DNS.Section;
+
+public class HostsFileTest {
+
+  /**
+   * Answers reverse lookups from a map of addresses to names. An address
+   * that maps to null fails, and one that isn't in the map has no answer.
+   */
+  private static class FakeDns implements InvocationHandler {
+
+    private final Map<String, String> names = Maps.newHashMap();
+    private final CountDownLatch concurrentQueries;
+
+    FakeDns(int concurrentQueries) {
+      this.concurrentQueries = new CountDownLatch(concurrentQueries);
+    }
+
+    FakeDns add(String address, String name) throws IOException {
+      names.put(ReverseMap.fromAddress(address).toString(), name);
+      return this;
+    }
+
+    Resolver newResolver() {
+      return (Resolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] { Resolver.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (!method.getName().equals("send")) {
+        return null;
+      }
+      // hold each query until all the expected queries are in flight
+      concurrentQueries.countDown();
+      if (!concurrentQueries.await(5, TimeUnit.SECONDS)) {
+        throw new IOException("Queries were not sent in parallel");
+      }
+      Message query = (Message) args[0];
+      Record question = query.getQuestion();
+      Message response = new Message(query.getHeader().getID());
+      response.addRecord(question, Section.QUESTION);
+      String key = question.getName().toString();
+      if (names.containsKey(key)) {
+        String name = names.get(key);
+        if (name == null) {
+          throw new IOException("Lookup failed");
+        }
+        response.addRecord(new PTRRecord(question.getName(), DClass.IN, 60,
+            Name.fromString(name + ".")), Section.ANSWER);
+      }
+      return response;
+    }
+  }
+
+  @After
+  public void tearDown() {
+    DnsUtil.setResolver(null);
+  }
+
+  private static Instance newInstance(int i) throws IOException {
+    return new Instance(new Credentials("", ""), Sets.newHashSet("role"),
+        InetAddress.getByName("54.0.0." + i),
+        InetAddress.getByName("10.0.0." + i), "id" + i);
+  }
+
+  private static Cluster newCluster(int size) throws IOException {
+    Set<Instance> instances = Sets.newLinkedHashSet();
+    for (int i = 1; i <= size; i++) {
+      instances.add(newInstance(i));
+    }
+    return new Cluster(instances);
+  }
+
+  @Test
+  public void testNamesAreResolvedInParallel() throws Exception {
+    DnsUtil.setResolver(new FakeDns(3)
+        .add("54.0.0.1", "node1.example.com")
+        .add("54.0.0.2", "node2.example.com")
+        .add("54.0.0.3", "node3.example.com")
+        .newResolver());
+    assertThat(HostsFile.getEntries(newCluster(3)),
+        is(Arrays.asList("10.0.0.1 node1.example.com",
+            "10.0.0.2 node2.example.com", "10.0.0.3 node3.example.com")));
+  }
+
+  @Test
+  public void testInstancesWithoutNamesAreLeftOut() throws Exception {
+    DnsUtil.setResolver(new FakeDns(1)
+        .add("54.0.0.1", "node1.example.com")
+        .add("54.0.0.2", null)
+        .newResolver());
+    assertThat(HostsFile.getEntries(newCluster(3)),
+        is(Arrays.asList("10.0.0.1 node1.example.com")));
+  }
+
+  @Test
+  public void testEmptyCluster() throws Exception {
+    assertThat(HostsFile.getEntries(newCluster(0)).isEmpty(), is(true));
+  }
+
+  @Test
+  public void testNoStatementsWithoutNames() throws Exception {
+    DnsUtil.setResolver(new FakeDns(1).newResolver());
+    assertThat(HostsFile.buildStatements(newCluster(2)).length, is(0));
+  }
+
+  @Test
+  public void testInstallReplacesOnlyTheMarkerBlock() throws Exception {
+    File dir = createTempDir();
+    File hosts = new File(dir, "hosts");
+    Files.write("127.0.0.1 localhost\n", hosts, Charsets.UTF_8);
+
+    install(dir, hosts, "10.0.0.2 node2\n10.0.0.1 node1\n10.0.0.1 node1\n");
+    assertThat(Files.toString(hosts, Charsets.UTF_8),
+        is("127.0.0.1 localhost\n"
+            + "# BEGIN whirr cluster hosts\n"
+            + "10.0.0.1 node1\n10.0.0.2 node2\n"
+            + "# END whirr cluster hosts\n"));
+
+    // lines added outside the block are kept when the block is replaced
+    Files.append("192.168.0.1 other\n", hosts, Charsets.UTF_8);
+    install(dir, hosts, "10.0.0.3 node3\n");
+    assertThat(Files.toString(hosts, Charsets.UTF_8),
+        is("127.0.0.1 localhost\n"
+            + "192.168.0.1 other\n"
+            + "# BEGIN whirr cluster hosts\n"
+            + "10.0.0.3 node3\n"
+            + "# END whirr cluster hosts\n"));
+
+    // an unchanged block leaves the file alone
+    install(dir, hosts, "10.0.0.3 node3\n");
+    assertThat(Files.toString(hosts, Charsets.UTF_8),
+        is("127.0.0.1 localhost\n"
+            + "192.168.0.1 other\n"
+            + "# BEGIN whirr cluster hosts\n"
+            + "10.0.0.3 node3\n"
+            + "# END whirr cluster hosts\n"));
+  }
+
+  private static File createTempDir() throws IOException {
+    File dir = File.createTempFile("whirr-hosts", "");
+    dir.delete();
+    dir.mkdir();
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  private static void install(File dir, File hosts, String entries)
+      throws Exception {
+    File entriesFile = new File(dir, "entries");
+    Files.write(entries, entriesFile, Charsets.UTF_8);
+    File script = new File(dir, "install.sh");
+    Files.write(Resources.toString(Resources.getResource(
+        "functions/install_hosts_file.sh"), Charsets.UTF_8)
+        + "\ninstall_hosts_file " + entriesFile.getAbsolutePath() + " "
+        + hosts.getAbsolutePath() + "\n", script, Charsets.UTF_8);
+    Process process = new ProcessBuilder("bash", script.getAbsolutePath())
+        .redirectErrorStream(true).start();
+    String output = CharStreams.toString(
+        new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+    assertThat(output, process.waitFor(), is(0));
+  }
+
+}
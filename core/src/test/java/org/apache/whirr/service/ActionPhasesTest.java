@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ActionPhasesTest {
+
+  static class RecordingListener extends ClusterActionListener {
+    private final List<PhaseEvent> completed =
+      Collections.synchronizedList(Lists.<PhaseEvent>newArrayList());
+
+    @Override
+    public void phaseCompleted(PhaseEvent event) {
+      completed.add(event);
+    }
+  }
+
+  private static final Callable<PhaseEvent> REPORT =
+    new Callable<PhaseEvent>() {
+      @Override
+      public PhaseEvent call() {
+        PhaseEvent phase = ActionPhases.start(PhaseEvent.RESOLVE_ADDRESS,
+            Collections.<String>emptySet());
+        ActionPhases.complete(phase, ImmutableSet.of("node-1"), true);
+        return phase;
+      }
+    };
+
+  @After
+  public void tearDown() {
+    ActionPhases.exit();
+  }
+
+  @Test
+  public void testThreadsDoNotInheritTheAction() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ActionPhases.enter(listener, "test-cluster", "configure");
+    // a pool that creates its thread during the action, like jclouds does
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      assertThat(executor.submit(REPORT).get(), is(nullValue()));
+      ActionPhases.exit();
+      assertThat(executor.submit(REPORT).get(), is(nullValue()));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(listener.completed.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testBoundTasksReportToTheAction() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ActionPhases.enter(listener, "test-cluster", "configure");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Callable<PhaseEvent> task = ActionPhases.bind(REPORT);
+      ActionPhases.exit();
+      assertThat(executor.submit(task).get().getAction(), is("configure"));
+      // the binding does not outlive the task
+      assertThat(executor.submit(REPORT).get(), is(nullValue()));
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(listener.completed.size(), is(1));
+    assertThat(listener.completed.get(0).getNodeIds().contains("node-1"),
+        is(true));
+  }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Set;
+
+import org.apache.whirr.service.Cluster.Instance;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.compute.domain.NodeState;
+import org.jclouds.domain.Credentials;
+import org.jclouds.domain.LocationBuilder;
+import org.jclouds.domain.LocationScope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterRegistryTest {
+
+  private File clusterDir;
+
+  @Before
+  public void setUp() throws Exception {
+    clusterDir = File.createTempFile("cluster", "dir");
+    clusterDir.delete();
+    clusterDir.mkdirs();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteRecursively(clusterDir);
+  }
+
+  private Cluster newCluster() throws Exception {
+    Credentials credentials = new Credentials("user", "pass");
+    Instance master = new Instance(credentials, Sets.newHashSet("master"),
+        InetAddress.getByName("100.0.0.1"), InetAddress.getByName("10.0.0.1"),
+        "id1");
+    Instance worker = new Instance(credentials, Sets.newHashSet("worker"),
+        InetAddress.getByName("100.0.0.2"), InetAddress.getByName("10.0.0.2"),
+        "id2");
+    return new Cluster(Sets.newLinkedHashSet(Lists.newArrayList(master, worker)));
+  }
+
+  @Test
+  public void testEmptyRegistryIsStale() throws Exception {
+    ClusterRegistry registry = new ClusterRegistry(clusterDir);
+    assertThat(registry.isEmpty(), is(true));
+    assertThat(registry.isStale(Long.MAX_VALUE / 2), is(true));
+  }
+
+  @Test
+  public void testLaunchIsReplayed() throws Exception {
+    new ClusterRegistry(clusterDir).recordLaunch(newCluster());
+
+    ClusterRegistry registry = new ClusterRegistry(clusterDir);
+    assertThat(registry.getEntries().size(), is(2));
+    assertThat(registry.isStale(Long.MAX_VALUE / 2), is(false));
+    assertThat(registry.isStale(-1000), is(true));
+
+    ClusterRegistry.Entry worker =
+      Iterables.getOnlyElement(registry.getEntriesInRole("worker"));
+    assertThat(worker.getId(), is("id2"));
+    assertThat(worker.getPublicAddress(), is("100.0.0.2"));
+    assertThat(worker.getPrivateAddress(), is("10.0.0.2"));
+    assertThat(registry.getEntriesInState(NodeState.RUNNING).size(), is(2));
+  }
+
+  @Test
+  public void testDestroyIsReplayed() throws Exception {
+    ClusterRegistry registry = new ClusterRegistry(clusterDir);
+    registry.recordLaunch(newCluster());
+    registry.recordDestroy("id1");
+    assertThat(registry.getEntriesInRole("master").isEmpty(), is(true));
+
+    registry = new ClusterRegistry(clusterDir);
+    assertThat(registry.getEntries().size(), is(1));
+    assertThat(registry.getEntry("id1") == null, is(true));
+    assertThat(registry.getEntriesInRole("master").isEmpty(), is(true));
+    assertThat(registry.getEntriesInRole("worker").size(), is(1));
+  }
+
+  @Test
+  public void testRefreshKeepsRolesAndDropsMissingNodes() throws Exception {
+    ClusterRegistry registry = new ClusterRegistry(clusterDir);
+    registry.recordLaunch(newCluster());
+
+    NodeMetadata node = new NodeMetadataBuilder().name("name2").ids("id2")
+        .location(new LocationBuilder().scope(LocationScope.PROVIDER)
+          .id("location-id2").description("location-desc2").build())
+        .imageId("image-id").state(NodeState.RUNNING)
+        .publicAddresses(Lists.newArrayList("100.0.0.2"))
+        .privateAddresses(Lists.newArrayList("10.0.0.2")).build();
+    registry.recordRefresh((Set) Sets.newHashSet(node));
+
+    registry = new ClusterRegistry(clusterDir);
+    ClusterRegistry.Entry entry =
+      Iterables.getOnlyElement(registry.getEntries());
+    assertThat(entry.getId(), is("id2"));
+    assertThat(entry.getRoles(), is((Set<String>) Sets.newHashSet("worker")));
+    assertThat(entry.getImageId(), is("image-id"));
+    assertThat(entry.getLocationId(), is("location-id2"));
+    assertThat(Files.readLines(new File(clusterDir,
+        ClusterRegistry.JOURNAL_FILE), Charsets.UTF_8)
+        .size(), is(1));
+  }
+
+  @Test
+  public void testMalformedLinesAreIgnored() throws Exception {
+    new ClusterRegistry(clusterDir).recordLaunch(newCluster());
+    Files.append("truncated\tline\n", new File(clusterDir,
+        ClusterRegistry.JOURNAL_FILE), Charsets.UTF_8);
+
+    ClusterRegistry registry = new ClusterRegistry(clusterDir);
+    assertThat(registry.getEntries().size(), is(2));
+  }
+
+}
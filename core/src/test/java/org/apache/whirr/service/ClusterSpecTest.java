@@ -71,6 +71,17 @@ public class ClusterSpecTest {
     assertThat(spec.getRunUrlBase(), is("http://example.org"));
   }
 
+  @Test
+  public void testDefaultsAreNotSharedBetweenSpecs()
+  throws ConfigurationException, JSchException, IOException {
+    String key = ClusterSpec.Property.MAX_STARTUP_RETRIES.getConfigName();
+    ClusterSpec spec = ClusterSpec.withTemporaryKeys();
+    spec.getConfiguration().clearProperty(key);
+    assertThat(spec.getConfiguration().containsKey(key), is(false));
+    assertThat(ClusterSpec.withTemporaryKeys().getConfiguration()
+        .getInt(key), is(1));
+  }
+
   @Test
   public void testVersionInRunUrlbaseIsUrlEncoded()
   throws ConfigurationException, JSchException, IOException {
@@ -99,6 +110,25 @@ public class ClusterSpecTest {
     assertThat(prefixKeys.get(0), is("a.b"));
     assertThat(prefixKeys.get(1), is("a.c"));
   }
+
+  @Test
+  public void testGetConfigurationForKeysWithPrefixAfterChange()
+  throws ConfigurationException, JSchException, IOException {
+    Configuration conf = new PropertiesConfiguration();
+    conf.setProperty("a.b", 1);
+    ClusterSpec spec = ClusterSpec.withNoDefaults(conf);
+    assertThat(spec.getConfigurationForKeysWithPrefix("a").isEmpty(), is(false));
+    assertThat(spec.getConfigurationForKeysWithPrefix("c").isEmpty(), is(true));
+
+    // the spec has its own copy of the configuration it was created from
+    conf.setProperty("c.d", 2);
+    spec.getConfiguration().setProperty("c.e.f", 3);
+    Configuration prefixConf = spec.getConfigurationForKeysWithPrefix("c");
+    assertThat(prefixConf.containsKey("c.d"), is(false));
+    assertThat(prefixConf.getInt("c.e.f"), is(3));
+    assertThat(spec.getConfigurationForKeysWithPrefix("c.e").getInt("c.e.f"),
+        is(3));
+  }
   
   @Test
   public void testEnvVariableInterpolation() {
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.apache.whirr.service.RolePredicates.allRolesIn;
+import static org.apache.whirr.service.RolePredicates.anyRoleIn;
+import static org.apache.whirr.service.RolePredicates.onlyRolesIn;
+import static org.apache.whirr.service.RolePredicates.role;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.net.InetAddress;
+import java.util.Set;
+
+import org.apache.whirr.service.Cluster.Instance;
+import org.jclouds.domain.Credentials;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterTest {
+
+  private Instance master;
+  private Instance worker1;
+  private Instance worker2;
+  private Cluster cluster;
+
+  private Instance newInstance(String id, String... roles) throws Exception {
+    InetAddress address = InetAddress.getLocalHost();
+    return new Instance(new Credentials("", ""),
+        Sets.newLinkedHashSet(Lists.newArrayList(roles)), address, address, id);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    master = newInstance("id0", "nn", "jt");
+    worker1 = newInstance("id1", "dn", "tt");
+    worker2 = newInstance("id2", "dn", "tt");
+    cluster = new Cluster(Sets.newLinkedHashSet(
+        Lists.newArrayList(master, worker1, worker2)));
+  }
+
+  @Test
+  public void testRoleLookups() {
+    assertThat(cluster.getInstanceMatching(role("nn")), is(master));
+    assertThat(cluster.getInstancesMatching(role("dn")),
+        is((Set<Instance>) Sets.newHashSet(worker1, worker2)));
+    assertThat(cluster.getInstancesInRole("tt"),
+        is((Set<Instance>) Sets.newHashSet(worker1, worker2)));
+    assertThat(cluster.getInstancesMatching(role("unknown")).isEmpty(),
+        is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetInstanceMatchingFailsForMultipleInstances() {
+    cluster.getInstanceMatching(role("dn"));
+  }
+
+  @Test
+  public void testOtherPredicates() {
+    assertThat(cluster.getInstancesMatching(
+        allRolesIn(Sets.newHashSet("nn", "jt"))),
+        is((Set<Instance>) Sets.newHashSet(master)));
+    assertThat(cluster.getInstancesMatching(
+        onlyRolesIn(Sets.newHashSet("nn"))).isEmpty(), is(true));
+    assertThat(cluster.getInstancesMatching(
+        anyRoleIn(Sets.newHashSet("jt", "tt"))).size(), is(3));
+  }
+
+  @Test
+  public void testInstancesShareRolesAndCredentials() throws Exception {
+    assertThat(worker1.getRoles() == worker2.getRoles(), is(true));
+    assertThat(worker1.getLoginCredentials() == master.getLoginCredentials(),
+        is(true));
+    assertThat(worker1.getRoles(),
+        is((Set<String>) Sets.newHashSet("dn", "tt")));
+  }
+
+  @Test
+  public void testAddressesAreRetained() throws Exception {
+    Instance instance = new Instance(new Credentials("", ""),
+        Sets.newHashSet("dn"), InetAddress.getByName("100.0.0.1"),
+        InetAddress.getByName("10.0.0.1"), "id");
+    assertThat(instance.getPublicAddress().getHostAddress(), is("100.0.0.1"));
+    assertThat(instance.getPrivateAddress().getHostAddress(), is("10.0.0.1"));
+    assertThat(instance.getPublicAddress() == instance.getPublicAddress(),
+        is(true));
+  }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class HardwareProfileTest {
+
+  @Test
+  public void testStoreAndLoad() {
+    Properties properties = new Properties();
+    HardwareProfile profile = new HardwareProfile(4, 7680, 2);
+    profile.store(properties, "role1");
+    assertThat(HardwareProfile.load(properties, "role1"), is(profile));
+    assertThat(HardwareProfile.load(properties, "role2") == null, is(true));
+  }
+
+  @Test
+  public void testDataDirectories() {
+    assertThat(new HardwareProfile(4, 7680, 3).getDataDirectories("/d"),
+        is((List<String>) Lists.newArrayList("/data/d", "/data1/d",
+            "/data2/d")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsEmptyHardware() {
+    new HardwareProfile(0, 7680, 2);
+  }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.jclouds.domain.Location;
+import org.jclouds.domain.LocationBuilder;
+import org.jclouds.domain.LocationScope;
+import org.junit.Test;
+
+public class LocationHierarchyTest {
+
+  @Test
+  public void testPathExcludesProvider() {
+    Location provider = new LocationBuilder().scope(LocationScope.PROVIDER)
+        .id("aws-ec2").description("aws-ec2").build();
+    Location region = new LocationBuilder().scope(LocationScope.REGION)
+        .id("us-east-1").description("us-east-1").parent(provider).build();
+    Location zone = new LocationBuilder().scope(LocationScope.ZONE)
+        .id("us-east-1a").description("us-east-1a").parent(region).build();
+    Properties properties = new Properties();
+    LocationHierarchy.store(properties, zone);
+    assertThat(LocationHierarchy.getPath(properties, "us-east-1a"),
+        is((List<String>) Lists.newArrayList("us-east-1", "us-east-1a")));
+    assertThat(LocationHierarchy.getPath(properties, "other"),
+        is((List<String>) Lists.newArrayList("other")));
+    assertThat(LocationHierarchy.getPath(properties, null).isEmpty(),
+        is(true));
+  }
+
+}
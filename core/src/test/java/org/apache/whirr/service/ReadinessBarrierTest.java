@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class ReadinessBarrierTest {
+
+  static class CountingProbe extends ReadinessBarrier.Probe {
+    private final AtomicInteger count = new AtomicInteger();
+
+    CountingProbe(int expected) {
+      super("workers", expected);
+    }
+
+    @Override
+    public int getReadyCount() {
+      return count.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testTargetIsRoundedUp() {
+    ReadinessBarrier barrier = new ReadinessBarrier(95, 0);
+    assertThat(barrier.getTarget(5), is(5));
+    assertThat(barrier.getTarget(100), is(95));
+    assertThat(barrier.getTarget(0), is(0));
+  }
+
+  @Test
+  public void testWaitsForTarget() throws Exception {
+    CountingProbe probe1 = new CountingProbe(2);
+    CountingProbe probe2 = new CountingProbe(1);
+    assertThat(new ReadinessBarrier(100, 60000).await(
+        Lists.newArrayList(probe1, probe2)), is(true));
+    assertThat(probe1.count.get(), is(2));
+    assertThat(probe2.count.get(), is(1));
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    ReadinessBarrier.Probe unreachable = new ReadinessBarrier.Probe(
+        "workers", 3) {
+      @Override
+      public int getReadyCount() throws IOException {
+        throw new IOException("connection refused");
+      }
+    };
+    assertThat(new ReadinessBarrier(100, 0).await(
+        Collections.singletonList(unreachable)), is(false));
+  }
+
+  @Test
+  public void testUnreachableMasterFailsFast() throws Exception {
+    ReadinessBarrier.Probe unreachable = new ReadinessBarrier.Probe(
+        "workers", 3) {
+      @Override
+      public int getReadyCount() throws IOException {
+        throw new ReadinessBarrier.UnreachableException("unreachable",
+            new ConnectException("connection refused"));
+      }
+    };
+    long start = System.currentTimeMillis();
+    assertThat(new ReadinessBarrier(100, 600000, 0).await(
+        Collections.singletonList(unreachable)), is(false));
+    assertThat(System.currentTimeMillis() - start < 60000, is(true));
+  }
+
+  @Test(expected = ReadinessBarrier.UnreachableException.class)
+  public void testHttpProbeReportsRefusedConnectionAsUnreachable()
+      throws Exception {
+    // nothing listens on port 1
+    new ReadinessBarrier.HttpProbe("workers", 1,
+        new URL("http://127.0.0.1:1/"), Pattern.compile("(\\d+)"))
+        .getReadyCount();
+  }
+
+  @Test
+  public void testTimeToReadyIsMeasuredFromLaunch() throws Exception {
+    Cluster cluster = new Cluster(Sets.<Cluster.Instance>newHashSet());
+    assertThat(ReadinessBarrier.getTimeToReady(cluster, "hadoop"), is(-1L));
+    long launchStart = System.currentTimeMillis() - 120000;
+    ReadinessBarrier.recordLaunchStart(cluster, launchStart);
+    assertThat(new ReadinessBarrier(100, 60000).await(cluster, "hadoop",
+        Collections.singletonList(new CountingProbe(1))), is(true));
+    assertThat(ReadinessBarrier.getTimeToReady(cluster, "hadoop") >= 120000,
+        is(true));
+  }
+
+  @Test
+  public void testIntervalBacksOffWithoutProgress() {
+    long interval = ReadinessBarrier.MIN_INTERVAL_MILLIS;
+    for (int i = 0; i < 10; i++) {
+      interval = ReadinessBarrier.nextInterval(interval, false);
+    }
+    assertThat(interval, is(ReadinessBarrier.MAX_INTERVAL_MILLIS));
+    assertThat(ReadinessBarrier.nextInterval(interval, true),
+        is(ReadinessBarrier.MIN_INTERVAL_MILLIS));
+  }
+
+  @Test
+  public void testParseCount() throws Exception {
+    assertThat(ReadinessBarrier.parseCount(Pattern.compile("servers: (\\d+)"),
+        "<td>servers: 12</td>"), is(12));
+  }
+
+}
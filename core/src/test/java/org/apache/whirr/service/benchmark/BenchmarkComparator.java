@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.benchmark;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares a {@link BenchmarkResult} with a baseline result, and flags the
+ * phases whose mean time has regressed by more than a threshold.
+ */
+public class BenchmarkComparator {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(BenchmarkComparator.class);
+
+  /**
+   * The system property naming the baseline result file, or a directory in
+   * which the latest result for the same benchmark is used.
+   */
+  public static final String BASELINE = "benchmarkBaseline";
+
+  /**
+   * The system property for the fraction by which a phase may be slower
+   * than the baseline before it is flagged. The default is 0.1.
+   */
+  public static final String THRESHOLD = "benchmarkRegressionThreshold";
+
+  /**
+   * The system property that makes a benchmark fail if it has regressed.
+   */
+  public static final String FAIL_ON_REGRESSION = "benchmarkFailOnRegression";
+
+  /**
+   * Results can only be compared if these properties are the same.
+   */
+  private static final String[] SHAPE_KEYS = { "cluster.instance-templates",
+    "cluster.provider", "cluster.hardware-id", "cluster.image-id" };
+
+  private final double threshold;
+
+  public BenchmarkComparator(double threshold) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * @return a description of each difference in the shape of the clusters
+   * the results were measured on, in their tuning, or in the settings of
+   * their clients.
+   */
+  public List<String> getShapeDifferences(Properties baseline,
+      Properties current) {
+    List<String> differences = Lists.newArrayList();
+    for (String key : SHAPE_KEYS) {
+      addDifference(differences, key, baseline, current);
+    }
+    for (String prefix : new String[] {
+        BenchmarkResult.TUNING_PREFIX, BenchmarkResult.CLIENT_PREFIX }) {
+      Set<String> keys = Sets.newTreeSet();
+      for (String key : Sets.union(baseline.stringPropertyNames(),
+          current.stringPropertyNames())) {
+        if (key.startsWith(prefix)) {
+          keys.add(key);
+        }
+      }
+      for (String key : keys) {
+        addDifference(differences, key, baseline, current);
+      }
+    }
+    return differences;
+  }
+
+  private static void addDifference(List<String> differences, String key,
+      Properties baseline, Properties current) {
+    String expected = baseline.getProperty(key);
+    String actual = current.getProperty(key);
+    if (!Objects.equal(expected, actual)) {
+      differences.add(String.format("%s is %s, but was %s in the baseline",
+          key, actual, expected));
+    }
+  }
+
+  /**
+   * @return a description of each phase that is slower than in the
+   * baseline by more than the threshold.
+   */
+  public List<String> getRegressions(Properties baseline,
+      Properties current) {
+    List<String> regressions = Lists.newArrayList();
+    Map<String, Double> expected =
+      BenchmarkResult.getMeanPhaseTimes(baseline);
+    for (Map.Entry<String, Double> entry :
+        BenchmarkResult.getMeanPhaseTimes(current).entrySet()) {
+      Double base = expected.get(entry.getKey());
+      if (base == null || base == 0) {
+        continue;
+      }
+      double change = (entry.getValue() - base) / base;
+      if (change > threshold) {
+        regressions.add(String.format(
+            "%s took %.0f ms, %.0f%% longer than the baseline of %.0f ms",
+            entry.getKey(), entry.getValue(), change * 100, base));
+      }
+    }
+    return regressions;
+  }
+
+  /**
+   * Compare <code>result</code> with the baseline given by the
+   * {@value #BASELINE} system property, if there is one, and log any
+   * regressions.
+   * @throws AssertionError if there are regressions and the
+   * {@value #FAIL_ON_REGRESSION} system property is true
+   */
+  public static void checkAgainstBaseline(BenchmarkResult result)
+      throws IOException {
+    String path = System.getProperty(BASELINE);
+    if (path == null) {
+      return;
+    }
+    Properties current = result.getProperties();
+    File file = findBaseline(new File(path),
+        current.getProperty("benchmark"));
+    if (file == null) {
+      LOG.warn("No baseline found in {}", path);
+      return;
+    }
+    Properties baseline = BenchmarkResult.load(file);
+    BenchmarkComparator comparator = new BenchmarkComparator(
+        Double.parseDouble(System.getProperty(THRESHOLD, "0.1")));
+    for (String difference : comparator.getShapeDifferences(baseline,
+        current)) {
+      LOG.warn("Result may not be comparable with {}: {}", file, difference);
+    }
+    List<String> regressions = comparator.getRegressions(baseline, current);
+    for (String regression : regressions) {
+      LOG.warn("Regression: {}", regression);
+    }
+    if (regressions.isEmpty()) {
+      LOG.info("No regressions against baseline {}", file);
+    } else if (Boolean.getBoolean(FAIL_ON_REGRESSION)) {
+      throw new AssertionError("Regressions against baseline " + file + ": "
+          + regressions);
+    }
+  }
+
+  /**
+   * @return <code>path</code> if it is a file, or the latest result for
+   * <code>benchmark</code> if it is a directory.
+   */
+  static File findBaseline(File path, String benchmark) {
+    if (!path.isDirectory()) {
+      return path.isFile() ? path : null;
+    }
+    File latest = null;
+    File[] files = path.listFiles();
+    for (File file : files == null ? new File[0] : files) {
+      // the timestamp in the name sorts chronologically
+      String name = file.getName();
+      if (name.startsWith(benchmark + "-") && name.endsWith(".properties")
+          && (latest == null || name.compareTo(latest.getName()) > 0)) {
+        latest = file;
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Compare two result files, exiting with a non-zero status if there are
+   * regressions.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BenchmarkComparator <baseline> <result> "
+          + "[threshold]");
+      System.exit(2);
+    }
+    Properties baseline = BenchmarkResult.load(new File(args[0]));
+    Properties current = BenchmarkResult.load(new File(args[1]));
+    BenchmarkComparator comparator = new BenchmarkComparator(
+        args.length > 2 ? Double.parseDouble(args[2]) : 0.1);
+    for (String difference : comparator.getShapeDifferences(baseline,
+        current)) {
+      System.out.println("Warning: " + difference);
+    }
+    List<String> regressions = comparator.getRegressions(baseline, current);
+    for (String regression : regressions) {
+      System.out.println("Regression: " + regression);
+    }
+    System.exit(regressions.isEmpty() ? 0 : 1);
+  }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class BenchmarkComparatorTest {
+
+  private static Properties result(String hardwareId, long... sortTimes) {
+    BenchmarkResult result = new BenchmarkResult("terasort");
+    result.getProperties().setProperty("cluster.hardware-id", hardwareId);
+    for (int i = 0; i < sortTimes.length; i++) {
+      result.recordPhase("TeraSort", i, sortTimes[i]);
+      result.recordPhase("TeraGen", i, 1000);
+    }
+    return result.getProperties();
+  }
+
+  @Test
+  public void testMeanPhaseTimes() {
+    Properties result = result("m1.large", 1000, 2000, 3000);
+    assertThat(BenchmarkResult.getMeanPhaseTimes(result).get("TeraSort"),
+        is(2000.0));
+    assertThat(BenchmarkResult.getPhaseTimes(result).get("TeraGen").size(),
+        is(3));
+  }
+
+  @Test
+  public void testRegressionsAboveThresholdAreFlagged() {
+    BenchmarkComparator comparator = new BenchmarkComparator(0.1);
+    Properties baseline = result("m1.large", 1000, 1000);
+    assertThat(comparator.getRegressions(baseline,
+        result("m1.large", 1050, 1100)).size(), is(0));
+    assertThat(comparator.getRegressions(baseline,
+        result("m1.large", 1200, 1200)).get(0),
+        is("TeraSort took 1200 ms, 20% longer than the baseline of 1000 ms"));
+  }
+
+  @Test
+  public void testShapeDifferences() {
+    BenchmarkComparator comparator = new BenchmarkComparator(0.1);
+    assertThat(comparator.getShapeDifferences(result("m1.large", 1000),
+        result("m1.large", 1000)).size(), is(0));
+    assertThat(comparator.getShapeDifferences(result("m1.large", 1000),
+        result("c1.xlarge", 1000)).get(0),
+        is("cluster.hardware-id is c1.xlarge, but was m1.large in the "
+            + "baseline"));
+  }
+
+  @Test
+  public void testTuningDifferences() {
+    BenchmarkComparator comparator = new BenchmarkComparator(0.1);
+    Properties baseline = result("m1.large", 1000);
+    baseline.setProperty("tuning.io.sort.mb", "100");
+    Properties current = result("m1.large", 1000);
+    current.setProperty("tuning.io.sort.mb", "200");
+    assertThat(comparator.getShapeDifferences(baseline, current).get(0),
+        is("tuning.io.sort.mb is 200, but was 100 in the baseline"));
+  }
+
+  @Test
+  public void testClientOverrideDifferences() {
+    BenchmarkComparator comparator = new BenchmarkComparator(0.1);
+    Properties baseline = result("m1.large", 1000);
+    Properties current = result("m1.large", 1000);
+    current.setProperty("client.io.sort.factor", "100");
+    assertThat(comparator.getShapeDifferences(baseline, current).get(0),
+        is("client.io.sort.factor is 100, but was null in the baseline"));
+  }
+
+}
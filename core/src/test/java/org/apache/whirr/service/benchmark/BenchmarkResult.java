@@ -0,0 +1,298 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.benchmark;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.ClusterSpec.InstanceTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The result of a benchmark run, which is written to a properties file so
+ * that it can be compared with other runs by {@link BenchmarkComparator}.
+ * <p>
+ * The file records the shape of the cluster, its hardware, the service
+ * configuration that was set in the cluster spec, and the time taken by each
+ * phase of each run. The keys are:
+ * <ul>
+ * <li><code>benchmark</code>, <code>timestamp</code></li>
+ * <li><code>cluster.instance-templates</code>,
+ * <code>cluster.provider</code>, <code>cluster.hardware-id</code>,
+ * <code>cluster.image-id</code>, <code>cluster.location-id</code></li>
+ * <li><code>config.&lt;key&gt;</code> for each property of the service</li>
+ * <li><code>tuning.&lt;key&gt;</code> for settings the cluster was
+ * launched with that were not in the cluster spec, such as those derived
+ * from the hardware</li>
+ * <li><code>client.&lt;key&gt;</code> for settings that the benchmark's
+ * clients were run with, rather than the cluster</li>
+ * <li><code>phase.&lt;phase&gt;.&lt;run&gt;</code> - the time in
+ * milliseconds</li>
+ * <li><code>latency.&lt;phase&gt;.&lt;statistic&gt;</code> - the mean,
+ * 50th, 90th, 99th and 99.9th percentile and maximum latency in
+ * microseconds, for phases measured with a {@link LatencyRecorder}</li>
+ * <li><code>throughput.&lt;phase&gt;</code> - operations per second, for
+ * phases measured with a {@link LatencyRecorder}</li>
+ * </ul>
+ * Services may add keys of their own.
+ */
+public class BenchmarkResult {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(BenchmarkResult.class);
+
+  /**
+   * The system property naming the directory that results are written to.
+   */
+  public static final String RESULTS_DIR = "benchmarkResultsDir";
+
+  static final String PHASE_PREFIX = "phase.";
+  public static final String TUNING_PREFIX = "tuning.";
+  public static final String CLIENT_PREFIX = "client.";
+
+  /**
+   * Two-sided 95% critical values of Student's t distribution, by degrees of
+   * freedom.
+   */
+  private static final double[] T_95 = {
+    Double.NaN, 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306,
+    2.262, 2.228, 2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101,
+    2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048,
+    2.045, 2.042
+  };
+  private static final double Z_95 = 1.960;
+
+  private final String benchmark;
+  private final Properties properties = new Properties();
+
+  public BenchmarkResult(String benchmark) {
+    this.benchmark = benchmark;
+    properties.setProperty("benchmark", benchmark);
+    properties.setProperty("timestamp",
+        new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+  }
+
+  public Properties getProperties() {
+    return properties;
+  }
+
+  /**
+   * Record the shape of the cluster and the properties in its configuration
+   * whose keys start with <code>configPrefix</code>.
+   */
+  public void recordCluster(ClusterSpec clusterSpec, String configPrefix) {
+    StringBuilder templates = new StringBuilder();
+    for (InstanceTemplate template : clusterSpec.getInstanceTemplates()) {
+      if (templates.length() > 0) {
+        templates.append(',');
+      }
+      templates.append(template.getNumberOfInstances()).append(' ');
+      Iterator<String> roles = template.getRoles().iterator();
+      while (roles.hasNext()) {
+        templates.append(roles.next()).append(roles.hasNext() ? "+" : "");
+      }
+    }
+    set("cluster.instance-templates", templates);
+    set("cluster.provider", clusterSpec.getProvider());
+    set("cluster.hardware-id", clusterSpec.getHardwareId());
+    set("cluster.image-id", clusterSpec.getImageId());
+    set("cluster.location-id", clusterSpec.getLocationId());
+
+    Configuration config = clusterSpec.getConfigurationForKeysWithPrefix(
+        configPrefix);
+    for (@SuppressWarnings("unchecked")
+        Iterator<String> it = config.getKeys(); it.hasNext(); ) {
+      String key = it.next();
+      set("config." + key, config.getProperty(key));
+    }
+  }
+
+  public void recordPhase(String phase, int run, long millis) {
+    set(PHASE_PREFIX + phase + "." + run, millis);
+  }
+
+  /**
+   * Record the operations timed by <code>recorder</code> as a single run of
+   * the phase <code>operation</code>, with their latencies and throughput.
+   */
+  public void recordLatencies(String operation, LatencyRecorder recorder) {
+    recordPhase(operation, 0, recorder.getElapsedNanos() / 1000000);
+    set("throughput." + operation,
+        String.format("%.1f", recorder.getThroughput()));
+    String prefix = "latency." + operation + ".";
+    set(prefix + "count", recorder.getCount());
+    set(prefix + "mean", Math.round(recorder.getMeanNanos() / 1000));
+    set(prefix + "p50", recorder.getPercentileNanos(50) / 1000);
+    set(prefix + "p90", recorder.getPercentileNanos(90) / 1000);
+    set(prefix + "p99", recorder.getPercentileNanos(99) / 1000);
+    set(prefix + "p999", recorder.getPercentileNanos(99.9) / 1000);
+    set(prefix + "max", recorder.getPercentileNanos(100) / 1000);
+    LOG.info("{}: {} operations, {} ops/s, p50 {} us, p99 {} us", new Object[] {
+        operation, recorder.getCount(),
+        properties.getProperty("throughput." + operation),
+        properties.getProperty(prefix + "p50"),
+        properties.getProperty(prefix + "p99") });
+  }
+
+  /**
+   * Record <code>value</code> under <code>key</code>, unless it is null.
+   */
+  protected void set(String key, Object value) {
+    if (value != null) {
+      properties.setProperty(key, value.toString());
+    }
+  }
+
+  /**
+   * Write the result to the directory given by the
+   * {@value #RESULTS_DIR} system property, by default
+   * <code>target/benchmark-results</code>.
+   */
+  public File write() throws IOException {
+    File dir = new File(System.getProperty(RESULTS_DIR,
+        "target/benchmark-results"));
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create " + dir);
+    }
+    File file = new File(dir, benchmark + "-"
+        + properties.getProperty("timestamp") + ".properties");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      properties.store(out, "Whirr " + benchmark + " benchmark result");
+    } finally {
+      out.close();
+    }
+    LOG.info("Wrote benchmark result to {}", file);
+    return file;
+  }
+
+  public static Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    return properties;
+  }
+
+  /**
+   * @return the times of each run of each phase in <code>result</code>, by
+   * phase name.
+   */
+  public static SortedMap<String, List<Long>> getPhaseTimes(
+      Properties result) {
+    SortedMap<String, List<Long>> times = Maps.newTreeMap();
+    for (String key : result.stringPropertyNames()) {
+      if (!key.startsWith(PHASE_PREFIX)) {
+        continue;
+      }
+      String phase = key.substring(PHASE_PREFIX.length(),
+          key.lastIndexOf('.'));
+      List<Long> phaseTimes = times.get(phase);
+      if (phaseTimes == null) {
+        phaseTimes = Lists.newArrayList();
+        times.put(phase, phaseTimes);
+      }
+      phaseTimes.add(Long.parseLong(result.getProperty(key)));
+    }
+    return times;
+  }
+
+  /**
+   * @return the mean of each run, by phase name.
+   */
+  public static SortedMap<String, Double> getMeanPhaseTimes(
+      Properties result) {
+    SortedMap<String, Double> means = Maps.newTreeMap();
+    for (Map.Entry<String, List<Long>> entry :
+        getPhaseTimes(result).entrySet()) {
+      double total = 0;
+      for (long time : entry.getValue()) {
+        total += time;
+      }
+      means.put(entry.getKey(), total / entry.getValue().size());
+    }
+    return means;
+  }
+
+  /**
+   * @return the times of each phase in the results in <code>dir</code>, by
+   * benchmark and phase name, for example <code>terasort.TeraSort</code>.
+   */
+  public static SortedMap<String, List<Long>> loadPhaseTimes(File dir)
+      throws IOException {
+    SortedMap<String, List<Long>> times = Maps.newTreeMap();
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return times;
+    }
+    for (File file : files) {
+      Properties result = load(file);
+      for (Map.Entry<String, List<Long>> entry :
+          getPhaseTimes(result).entrySet()) {
+        times.put(result.getProperty("benchmark") + "." + entry.getKey(),
+            entry.getValue());
+      }
+    }
+    return times;
+  }
+
+  /**
+   * @return the mean of <code>values</code> and the half-width of its 95%
+   * confidence interval, which is NaN for a single value.
+   */
+  public static double[] getConfidenceInterval(List<Long> values) {
+    int n = values.size();
+    double total = 0;
+    for (long value : values) {
+      total += value;
+    }
+    double mean = total / n;
+    if (n < 2) {
+      return new double[] { mean, Double.NaN };
+    }
+    double squares = 0;
+    for (long value : values) {
+      squares += (value - mean) * (value - mean);
+    }
+    double standardError = Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+    double t = n - 1 < T_95.length ? T_95[n - 1] : Z_95;
+    return new double[] { mean, t * standardError };
+  }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.whirr.service.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+public class BenchmarkResultTest {
+
+  @Test
+  public void testLoadPhaseTimes() throws IOException {
+    File dir = File.createTempFile("whirr-benchmark", "");
+    dir.delete();
+    dir.mkdir();
+    dir.deleteOnExit();
+
+    String previous = System.setProperty(BenchmarkResult.RESULTS_DIR,
+        dir.getPath());
+    try {
+      BenchmarkResult terasort = new BenchmarkResult("terasort");
+      terasort.recordPhase("TeraSort", 0, 100);
+      terasort.recordPhase("TeraSort", 1, 120);
+      terasort.write().deleteOnExit();
+      BenchmarkResult dfsio = new BenchmarkResult("dfsio");
+      dfsio.recordPhase("Write", 0, 50);
+      dfsio.write().deleteOnExit();
+    } finally {
+      if (previous == null) {
+        System.clearProperty(BenchmarkResult.RESULTS_DIR);
+      } else {
+        System.setProperty(BenchmarkResult.RESULTS_DIR, previous);
+      }
+    }
+
+    SortedMap<String, List<Long>> times = BenchmarkResult.loadPhaseTimes(dir);
+    assertThat(times.keySet().toString(),
+        is("[dfsio.Write, terasort.TeraSort]"));
+    assertThat(times.get("dfsio.Write").size(), is(1));
+    assertThat(times.get("terasort.TeraSort").size(), is(2));
+  }
+
+  @Test
+  public void testConfidenceInterval() {
+    double[] interval = BenchmarkResult.getConfidenceInterval(
+        Lists.newArrayList(90L, 100L, 110L));
+    assertThat(interval[0], is(100.0));
+    // s = 10, n = 3, t = 4.303
+    assertThat(Math.round(interval[1] * 1000), is(24843L));
+    assertThat(Double.isNaN(BenchmarkResult.getConfidenceInterval(
+        Lists.newArrayList(100L))[1]), is(true));
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Records the latency of each operation in a benchmark, and the wall clock
+ * time over which they were made, so that percentiles and throughput can be
+ * reported. Operations may be recorded from several threads.
+ */
+public class LatencyRecorder {
+
+  private long[] latencies = new long[1024];
+  private int count;
+  private long startNanos = -1;
+  private long stopNanos = -1;
+
+  /**
+   * Mark the start of the operations. If this is not called, the time of
+   * the first recorded operation is used.
+   */
+  public synchronized void start() {
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * Mark the end of the operations. If this is not called, the time of the
+   * last recorded operation is used.
+   */
+  public synchronized void stop() {
+    stopNanos = System.nanoTime();
+  }
+
+  /**
+   * Record an operation that started at <code>startNanos</code>, as returned
+   * by {@link System#nanoTime()}, and has just finished.
+   */
+  public void record(long startNanos) {
+    long now = System.nanoTime();
+    synchronized (this) {
+      if (this.startNanos < 0) {
+        this.startNanos = startNanos;
+      }
+      add(now - startNanos);
+    }
+  }
+
+  synchronized void add(long nanos) {
+    if (count == latencies.length) {
+      latencies = Arrays.copyOf(latencies, count * 2);
+    }
+    latencies[count++] = nanos;
+  }
+
+  public synchronized int getCount() {
+    return count;
+  }
+
+  /**
+   * @return the time between the start and the end of the operations, in
+   * nanoseconds.
+   */
+  public synchronized long getElapsedNanos() {
+    if (startNanos < 0) {
+      return 0;
+    }
+    return (stopNanos < 0 ? System.nanoTime() : stopNanos) - startNanos;
+  }
+
+  /**
+   * @return the number of operations per second over the elapsed time.
+   */
+  public synchronized double getThroughput() {
+    long elapsed = getElapsedNanos();
+    return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+  }
+
+  public synchronized double getMeanNanos() {
+    if (count == 0) {
+      return 0;
+    }
+    double total = 0;
+    for (int i = 0; i < count; i++) {
+      total += latencies[i];
+    }
+    return total / count;
+  }
+
+  /**
+   * @return the latency in nanoseconds that <code>percentile</code> percent
+   * of the operations took no longer than, using the nearest-rank method.
+   */
+  public synchronized long getPercentileNanos(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+    // Allow for rounding error, so that the 99.9th percentile of 2000
+    // operations is the 1998th rather than the 1999th
+    int rank = (int) Math.ceil(percentile / 100 * count - 1e-9);
+    return sorted[Math.max(0, Math.min(count, rank) - 1)];
+  }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    for (int i = 2000; i > 0; i--) {
+      recorder.add(i);
+    }
+    assertThat(recorder.getCount(), is(2000));
+    assertThat(recorder.getPercentileNanos(50), is(1000L));
+    assertThat(recorder.getPercentileNanos(99), is(1980L));
+    assertThat(recorder.getPercentileNanos(99.9), is(1998L));
+    assertThat(recorder.getPercentileNanos(100), is(2000L));
+    assertThat(recorder.getMeanNanos(), is(1000.5));
+  }
+
+  @Test
+  public void testEmpty() {
+    LatencyRecorder recorder = new LatencyRecorder();
+    assertThat(recorder.getPercentileNanos(99), is(0L));
+    assertThat(recorder.getThroughput(), is(0.0));
+  }
+
+}
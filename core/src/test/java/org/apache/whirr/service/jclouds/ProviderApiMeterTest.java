@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.jclouds;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.whirr.service.metrics.ProviderApiMetrics;
+import org.jclouds.compute.ComputeService;
+import org.jclouds.domain.Credentials;
+import org.jclouds.rest.RestContext;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProviderApiMeterTest {
+
+  public interface Api {
+    Api getSubApi();
+    String describe();
+    void runNodesWithTag();
+  }
+
+  private static class ThrottledApi implements Api {
+    private int throttledCalls;
+    private int calls;
+
+    ThrottledApi(int throttledCalls) {
+      this.throttledCalls = throttledCalls;
+    }
+
+    @Override
+    public Api getSubApi() {
+      return this;
+    }
+
+    @Override
+    public String describe() {
+      calls++;
+      if (calls <= throttledCalls) {
+        throw new IllegalStateException(
+            "request failed with code RequestLimitExceeded");
+      }
+      return "described";
+    }
+
+    @Override
+    public void runNodesWithTag() {
+      calls++;
+      throw new IllegalStateException("RequestLimitExceeded");
+    }
+  }
+
+  private static class RecordingMeter extends ProviderApiMeter.Meter {
+    private final List<Long> sleeps = Lists.newArrayList();
+
+    RecordingMeter(ProviderApiMetrics metrics, int maxRetries) {
+      super(new ProviderRateLimiter(1000, 1), metrics, maxRetries);
+    }
+
+    @Override
+    void sleep(long millis) {
+      sleeps.add(millis);
+    }
+  }
+
+  private ProviderApiMetrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new ProviderApiMetrics();
+  }
+
+  @Test
+  public void testThrottledCallIsRetried() {
+    ThrottledApi target = new ThrottledApi(2);
+    RecordingMeter meter = new RecordingMeter(metrics, 5);
+    Api api = ProviderApiMeter.proxy((Api) target, meter, true);
+
+    assertThat(api.getSubApi().describe(), is("described"));
+    assertThat(target.calls, is(3));
+    assertThat(meter.sleeps.size(), is(2));
+    assertThat(metrics.getApis(), is(new String[] { "Api.describe" }));
+    assertThat(metrics.getCallCount("Api.describe"), is(3L));
+    assertThat(metrics.getFailedCount("Api.describe"), is(2L));
+    assertThat(metrics.getThrottledCount("Api.describe"), is(2L));
+    assertThat(metrics.getRetryCount("Api.describe"), is(2L));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOnlyApisAreProxied() {
+    final ThrottledApi target = new ThrottledApi(0);
+    final Map<String, Credentials> credentials = Maps.newHashMap();
+    RestContext<Api, Object> context = (RestContext<Api, Object>)
+      Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { RestContext.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return method.getName().equals("getApi") ? target : credentials;
+          }
+        });
+    RestContext<Api, Object> metered = ProviderApiMeter.proxy(context,
+        new RecordingMeter(metrics, 5), false);
+
+    assertThat(metered.getCredentialStore() == credentials, is(true));
+    assertThat(metered.getApi().getSubApi().describe(), is("described"));
+    assertThat(metrics.getCallCount("Api.describe"), is(1L));
+
+    Api api = ProviderApiMeter.proxy((Api) target,
+        new RecordingMeter(metrics, 5), false);
+    assertThat(api.getSubApi() == target, is(true));
+  }
+
+  @Test
+  public void testRetriesAreLimited() {
+    ThrottledApi target = new ThrottledApi(10);
+    Api api = ProviderApiMeter.proxy((Api) target,
+        new RecordingMeter(metrics, 2), true);
+    try {
+      api.describe();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertThat(target.calls, is(3));
+  }
+
+  @Test
+  public void testNodeStartsAreNotRetried() {
+    ThrottledApi target = new ThrottledApi(0);
+    Api api = ProviderApiMeter.proxy((Api) target,
+        new RecordingMeter(metrics, 5), true);
+    try {
+      api.runNodesWithTag();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertThat(target.calls, is(1));
+    assertThat(metrics.getThrottledCount("Api.runNodesWithTag"), is(1L));
+  }
+
+  @Test
+  public void testComputeServiceNodeOperationsAreNotRetried() {
+    for (Method method : ComputeService.class.getMethods()) {
+      String name = method.getName();
+      if (name.startsWith("run") || name.startsWith("create")
+          || name.equals("destroyNodesMatching")) {
+        assertThat(name, ProviderApiMeter.NOT_RETRYABLE.contains(name),
+            is(true));
+      }
+    }
+  }
+
+  @Test
+  public void testNotRetryableMethodsExist() {
+    for (String name : ProviderApiMeter.NOT_RETRYABLE) {
+      if (name.equals("runScriptOnNode")) {
+        continue; // not in this version of jclouds
+      }
+      boolean found = false;
+      for (Method method : ComputeService.class.getMethods()) {
+        found |= method.getName().equals(name);
+      }
+      assertThat(name, found, is(true));
+    }
+  }
+
+  @Test
+  public void testBackoffIsJitteredAndCapped() {
+    ProviderApiMeter.Meter meter = new RecordingMeter(metrics, 5);
+    for (int attempt = 0; attempt < 20; attempt++) {
+      long cap = Math.min(ProviderApiMeter.MAX_BACKOFF_MILLIS,
+          ProviderApiMeter.BASE_BACKOFF_MILLIS << attempt);
+      long backoff = meter.getBackoffMillis(attempt);
+      assertThat(backoff, greaterThanOrEqualTo(cap / 2));
+      assertThat(backoff, lessThanOrEqualTo(cap));
+    }
+  }
+
+  @Test
+  public void testIsThrottled() {
+    assertThat(ProviderApiMeter.isThrottled(new RuntimeException(
+        new IllegalStateException("Throttling: Rate exceeded"))), is(true));
+    assertThat(ProviderApiMeter.isThrottled(
+        new IllegalStateException("InvalidGroup.NotFound")), is(false));
+  }
+
+}
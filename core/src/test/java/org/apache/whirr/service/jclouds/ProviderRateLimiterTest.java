@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.jclouds;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProviderRateLimiterTest {
+
+  private static class RecordingLimiter extends ProviderRateLimiter {
+    private final List<Long> sleeps = Lists.newArrayList();
+
+    RecordingLimiter(double maxRate, double minRate) {
+      super(maxRate, minRate);
+    }
+
+    @Override
+    void sleep(long millis) {
+      sleeps.add(millis);
+    }
+  }
+
+  @Test
+  public void testBurstDoesNotWait() throws Exception {
+    RecordingLimiter limiter = new RecordingLimiter(5, 1);
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire();
+    }
+    assertThat(limiter.sleeps.size(), is(0));
+    limiter.acquire();
+    assertThat(limiter.sleeps.size(), is(1));
+  }
+
+  @Test
+  public void testThrottlingHalvesRateDownToMinimum() {
+    ProviderRateLimiter limiter = new ProviderRateLimiter(8, 3);
+    limiter.throttled();
+    assertThat(limiter.getRate(), is(4.0));
+    // a second response from a call that was in flight is ignored
+    limiter.throttled();
+    assertThat(limiter.getRate(), is(4.0));
+
+    limiter = new ProviderRateLimiter(4, 3);
+    limiter.throttled();
+    assertThat(limiter.getRate(), is(3.0));
+  }
+
+  @Test
+  public void testSuccessRaisesRateUpToMaximum() {
+    ProviderRateLimiter limiter = new ProviderRateLimiter(8, 1);
+    limiter.throttled();
+    limiter.succeeded();
+    assertThat(limiter.getRate(), is(4.25));
+    for (int i = 0; i < 100; i++) {
+      limiter.succeeded();
+    }
+    assertThat(limiter.getRate(), is(8.0));
+  }
+
+}
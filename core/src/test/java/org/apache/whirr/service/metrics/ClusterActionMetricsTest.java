@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.apache.whirr.service.ClusterActionHandler;
+import org.apache.whirr.service.PhaseEvent;
+import org.junit.Test;
+
+public class ClusterActionMetricsTest {
+
+  private static PhaseEvent createNodes(long start) {
+    return new PhaseEvent("test-cluster",
+        ClusterActionHandler.BOOTSTRAP_ACTION, PhaseEvent.CREATE_NODES,
+        ImmutableSet.of("role"), start);
+  }
+
+  @Test
+  public void testPhaseCompletionsAreRecorded() {
+    ClusterActionMetrics metrics = new ClusterActionMetrics();
+    PhaseEvent started = createNodes(1000);
+    metrics.phaseStarted(started);
+    metrics.phaseCompleted(started.completed(
+        ImmutableSet.of("node-1", "node-2"), 61000, true));
+    started = createNodes(1000);
+    metrics.phaseStarted(started);
+    metrics.phaseCompleted(started.completed(ImmutableSet.of("node-3"),
+        91000, false));
+
+    String phase = "bootstrap.create-nodes";
+    assertThat(metrics.getPhases(), is(new String[] { phase }));
+    assertThat(metrics.getStartedCount(phase), is(2L));
+    assertThat(metrics.getCompletedCount(phase), is(2L));
+    assertThat(metrics.getFailedCount(phase), is(1L));
+    assertThat(metrics.getMeanMillis(phase), is(75000.0));
+    assertThat(metrics.getMaxMillis(phase), is(90000L));
+    assertThat(metrics.getCompletedCount("configure.run-script"), is(0L));
+
+    metrics.reset();
+    assertThat(metrics.getPhases().length, is(0));
+  }
+
+  @Test
+  public void testRegisteredWithJmx() throws Exception {
+    ClusterActionMetrics.getInstance();
+    assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(
+        new ObjectName(ClusterActionMetrics.OBJECT_NAME)), is(true));
+  }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentilesAreBucketUpperBounds() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(150);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(40000);
+    }
+    assertThat(histogram.getCount(), is(100L));
+    assertThat(histogram.getPercentile(50), is(200L));
+    assertThat(histogram.getPercentile(90), is(200L));
+    assertThat(histogram.getPercentile(95), is(40000L));
+    assertThat(histogram.getMax(), is(40000L));
+    assertThat(histogram.getMean(), is(4135.0));
+    assertThat(histogram.getBuckets().get("<=200ms"), is(90L));
+    assertThat(histogram.getBuckets().get("<=50000ms"), is(10L));
+  }
+
+  @Test
+  public void testLongLatencies() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(7200000);
+    assertThat(histogram.getPercentile(99), is(7200000L));
+    assertThat(histogram.getBuckets().get(">3600000ms"), is(1L));
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.metrics;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.whirr.service.ClusterActionHandler;
+import org.apache.whirr.service.PhaseEvent;
+import org.junit.Test;
+
+public class LaunchTimelineTest {
+
+  private static void record(LaunchTimeline timeline, String action,
+      String phase, String role, String nodeIds, long start, long end) {
+    PhaseEvent event = new PhaseEvent("test-cluster", action, phase,
+        role == null ? null : ImmutableSet.of(role), start);
+    timeline.phaseStarted(event);
+    timeline.phaseCompleted(event.completed(nodeIds == null ? null
+        : ImmutableSet.copyOf(nodeIds.split(",")), end, true));
+  }
+
+  private static LaunchTimeline launch() {
+    String bootstrap = ClusterActionHandler.BOOTSTRAP_ACTION;
+    String configure = ClusterActionHandler.CONFIGURE_ACTION;
+    LaunchTimeline timeline = new LaunchTimeline();
+    record(timeline, bootstrap, PhaseEvent.ACTION, null, null, 0, 1000);
+    record(timeline, bootstrap, PhaseEvent.BUILD_TEMPLATE, "master", null,
+        0, 100);
+    // the workers are created in parallel with the master, and take longer
+    record(timeline, bootstrap, PhaseEvent.CREATE_NODES, "master", "m1",
+        100, 600);
+    record(timeline, bootstrap, PhaseEvent.CREATE_NODES, "worker", "w1,w2",
+        100, 900);
+    record(timeline, configure, PhaseEvent.RUN_SCRIPT, "master", "m1",
+        1000, 1200);
+    record(timeline, configure, PhaseEvent.AFTER_ACTION, "master", null,
+        1200, 1500);
+    record(timeline, configure, PhaseEvent.AUTHORIZE_INGRESS, "master", "m1",
+        1250, 1450);
+    return timeline;
+  }
+
+  @Test
+  public void testCriticalPath() {
+    LaunchTimeline timeline = launch();
+    List<PhaseEvent> path = timeline.getCriticalPath();
+    assertThat(path.size(), is(4));
+    assertThat(path.get(0).getPhase(), is(PhaseEvent.BUILD_TEMPLATE));
+    assertThat(path.get(1).getPhase(), is(PhaseEvent.CREATE_NODES));
+    assertThat(path.get(1).getRoles().contains("worker"), is(true));
+    // the step is the batch of workers, not one of its nodes
+    assertThat(LaunchTimeline.describe(path.get(1)),
+        is("bootstrap create-nodes [worker] on 2 nodes"));
+    assertThat(path.get(2).getPhase(), is(PhaseEvent.RUN_SCRIPT));
+    assertThat(path.get(3).getPhase(), is(PhaseEvent.AFTER_ACTION));
+    assertThat(timeline.getBreakdown(path.get(3)).get(0).getPhase(),
+        is(PhaseEvent.AUTHORIZE_INGRESS));
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    File dir = File.createTempFile("cluster", "dir");
+    dir.delete();
+    dir.mkdirs();
+    try {
+      File file = launch().write(dir);
+      String json = Files.toString(file, Charsets.UTF_8);
+      assertThat(json, containsString("\"durationMillis\": 1500"));
+      assertThat(json, containsString("\"phase\": \"authorize-ingress\", "
+          + "\"roles\": [\"master\"], \"nodes\": [\"m1\"], "
+          + "\"startOffsetMillis\": 1250, \"durationMillis\": 200"));
+    } finally {
+      Files.deleteRecursively(dir);
+    }
+  }
+
+  @Test
+  public void testQuote() {
+    assertThat(LaunchTimeline.quote("a\"b\\c\n"), is("\"a\\\"b\\\\c\\u000a\""));
+    assertThat(LaunchTimeline.quote(null), is("null"));
+  }
+
+}
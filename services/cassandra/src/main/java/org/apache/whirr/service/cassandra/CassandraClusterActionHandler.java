@@ -20,12 +20,17 @@ package org.apache.whirr.service.cassandra;
 
 import static org.jclouds.scriptbuilder.domain.Statements.call;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.configuration.Configuration;
@@ -35,6 +40,7 @@ import org.apache.whirr.service.ClusterActionEvent;
 import org.apache.whirr.service.ClusterActionHandlerSupport;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
+import org.apache.whirr.service.HardwareProfile;
 import org.apache.whirr.service.jclouds.FirewallSettings;
 import org.jclouds.compute.ComputeServiceContext;
 import org.slf4j.Logger;
@@ -51,6 +57,16 @@ public class CassandraClusterActionHandler extends ClusterActionHandlerSupport {
 
   public static final String BIN_TARBALL = "whirr.cassandra.tarball.url";
   public static final String MAJOR_VERSION = "whirr.cassandra.version.major";
+  public static final String PARTITIONER = "whirr.cassandra.partitioner";
+
+  public static final String RANDOM_PARTITIONER =
+    "org.apache.cassandra.dht.RandomPartitioner";
+
+  /**
+   * The size of the token space of the {@link #RANDOM_PARTITIONER}, 2^127.
+   */
+  private static final BigInteger RANDOM_PARTITIONER_RANGE =
+    BigInteger.valueOf(2).pow(127);
 
   @Override
   public String getRole() {
@@ -60,6 +76,8 @@ public class CassandraClusterActionHandler extends ClusterActionHandlerSupport {
   @Override
   protected void beforeBootstrap(ClusterActionEvent event) throws IOException {
     addStatement(event, call("install_java"));
+    addStatement(event, call("prepare_disks", "-c",
+        event.getClusterSpec().getProvider()));
     Configuration config = event.getClusterSpec().getConfiguration();
     String tarball = config.getString(BIN_TARBALL, null);
     String major = config.getString(MAJOR_VERSION, null);
@@ -85,8 +103,116 @@ public class CassandraClusterActionHandler extends ClusterActionHandlerSupport {
     
     List<Instance> seeds = getSeeds(cluster.getInstances());
     String servers = Joiner.on(' ').join(getPrivateIps(seeds));
-    addStatement(event, call("configure_cassandra", "-c",
-        clusterSpec.getProvider(), servers));
+    String partitioner = clusterSpec.getConfiguration().getString(PARTITIONER,
+        RANDOM_PARTITIONER);
+    Map<Instance, BigInteger> tokens = getInitialTokens(cluster.getInstances(),
+        partitioner);
+    List<String> args = Lists.newArrayList("-c", clusterSpec.getProvider(),
+        "-p", partitioner);
+    if (tokens.isEmpty()) {
+      LOG.info("Not assigning initial tokens for partitioner {}", partitioner);
+    } else {
+      args.add("-t");
+      args.add(formatTokens(tokens));
+    }
+    HardwareProfile profile = HardwareProfile.load(cluster.getConfiguration(),
+        CASSANDRA_ROLE);
+    if (profile != null && profile.getDisks() > 1) {
+      List<String> dirs = profile.getDataDirectories("/cassandra");
+      args.add("-l");
+      args.add(getCommitLogDirectory(dirs));
+      args.add("-d");
+      args.add(Joiner.on(',').join(getDataFileDirectories(dirs)));
+    }
+    args.add(servers);
+    addStatement(event, call("configure_cassandra",
+        args.toArray(new String[args.size()])));
+  }
+
+  /**
+   * The commit log is written sequentially and synced often, so it gets the
+   * first disk to itself, and the data files are spread across the others.
+   */
+  @VisibleForTesting
+  static String getCommitLogDirectory(List<String> dirs) {
+    return dirs.get(0) + "/commitlog";
+  }
+
+  @VisibleForTesting
+  static List<String> getDataFileDirectories(List<String> dirs) {
+    List<String> dataDirs = Lists.newArrayList();
+    for (String dir : dirs.subList(Math.min(1, dirs.size() - 1), dirs.size())) {
+      dataDirs.add(dir + "/data");
+    }
+    return dataDirs;
+  }
+
+  /**
+   * @return the tokens as a comma-separated list of
+   * <code>private-ip:token</code> pairs, from which each node picks its own.
+   */
+  @VisibleForTesting
+  static String formatTokens(Map<Instance, BigInteger> tokens) {
+    List<String> entries = Lists.newArrayList();
+    for (Map.Entry<Instance, BigInteger> entry : tokens.entrySet()) {
+      entries.add(entry.getKey().getPrivateAddress().getHostAddress() + ":"
+          + entry.getValue());
+    }
+    return Joiner.on(',').join(entries);
+  }
+
+  /**
+   * Compute evenly spaced initial tokens for the nodes, so that each node
+   * owns an equal share of the ring. Nodes are placed on the ring alternating
+   * between locations, so that neighbouring nodes, which hold each other's
+   * replicas, are in different locations where possible.
+   * <p>
+   * Tokens can only be computed for the {@link #RANDOM_PARTITIONER}. With
+   * order preserving partitioners the balance depends on the keys, so an
+   * empty map is returned and Cassandra picks the tokens.
+   */
+  @VisibleForTesting
+  static Map<Instance, BigInteger> getInitialTokens(Set<Instance> instances,
+      String partitioner) {
+    Map<Instance, BigInteger> tokens = Maps.newLinkedHashMap();
+    if (!RANDOM_PARTITIONER.equals(partitioner)) {
+      return tokens;
+    }
+    List<Instance> ring = interleaveByLocation(instances);
+    BigInteger size = BigInteger.valueOf(ring.size());
+    for (int i = 0; i < ring.size(); i++) {
+      tokens.put(ring.get(i), RANDOM_PARTITIONER_RANGE
+          .multiply(BigInteger.valueOf(i)).divide(size));
+    }
+    return tokens;
+  }
+
+  /**
+   * @return the instances taken in turn from each location, keeping the
+   * original order within a location. Instances with no known location are
+   * treated as being in a single location.
+   */
+  @VisibleForTesting
+  static List<Instance> interleaveByLocation(Collection<Instance> instances) {
+    Map<String, List<Instance>> lists = Maps.newLinkedHashMap();
+    for (Instance instance : instances) {
+      String location = String.valueOf(instance.getLocationId());
+      List<Instance> list = lists.get(location);
+      if (list == null) {
+        list = Lists.newArrayList();
+        lists.put(location, list);
+      }
+      list.add(instance);
+    }
+    List<Instance> interleaved = Lists.newArrayListWithCapacity(instances.size());
+    for (int i = 0; interleaved.size() < instances.size(); i++) {
+      for (List<Instance> list : lists.values()) {
+        if (i < list.size()) {
+          interleaved.add(list.get(i));
+        }
+      }
+    }
+    return interleaved;
   }
 
   private List<String> getPrivateIps(List<Instance> instances) {
@@ -100,16 +226,17 @@ public class CassandraClusterActionHandler extends ClusterActionHandlerSupport {
   }
   
   /**
-   * Pick a selection of the nodes that are to become seeds. TODO improve
-   * selection method. Right now it picks 20% of the nodes as seeds, or a
-   * minimum of one node if it is a small cluster.
+   * Pick a selection of the nodes that are to become seeds. It picks 20% of
+   * the nodes as seeds, or a minimum of one node if it is a small cluster.
+   * Seeds are taken from each location in turn, so that every location has
+   * a seed if there are enough of them.
    * 
    * @param nodes
    *          all nodes in cluster
    * @return list of seeds
    */
   protected List<Instance> getSeeds(Set<Instance> instances) {
-    List<Instance> nodes = Lists.newArrayList(instances);
+    List<Instance> nodes = interleaveByLocation(instances);
     int seeds = (int) Math.ceil(Math.max(1, instances.size() * 0.2));
     List<Instance> rv = Lists.newArrayList();
     for (int i = 0; i < seeds; i++) {
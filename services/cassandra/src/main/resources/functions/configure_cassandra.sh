@@ -5,12 +5,32 @@ function configure_cassandra() {
   . /etc/profile
   
   CLOUD_PROVIDER=
-  while getopts "c:" OPTION; do
+  PARTITIONER=
+  TOKENS=
+  COMMIT_LOG_DIR=
+  DATA_DIRS=
+  while getopts "c:p:t:l:d:" OPTION; do
     case $OPTION in
     c)
       CLOUD_PROVIDER="$OPTARG"
       shift $((OPTIND-1)); OPTIND=1
       ;;
+    p)
+      PARTITIONER="$OPTARG"
+      shift $((OPTIND-1)); OPTIND=1
+      ;;
+    t)
+      TOKENS="$OPTARG"
+      shift $((OPTIND-1)); OPTIND=1
+      ;;
+    l)
+      COMMIT_LOG_DIR="$OPTARG"
+      shift $((OPTIND-1)); OPTIND=1
+      ;;
+    d)
+      DATA_DIRS="$OPTARG"
+      shift $((OPTIND-1)); OPTIND=1
+      ;;
     esac
   done
   
@@ -29,6 +49,30 @@ function configure_cassandra() {
       ;;
   esac
   
+  # Drop data directories on disks that prepare_disks did not mount, so their
+  # data does not end up on the root disk. The commit log is always on /data.
+  mounted_dirs=""
+  for dir in $(echo "$DATA_DIRS" | tr "," "\n"); do
+    disk=`echo $dir | grep -o '^/data[0-9][0-9]*'`
+    if [ -z "$disk" ] || mountpoint -q $disk; then
+      mounted_dirs="${mounted_dirs:+$mounted_dirs,}$dir"
+    else
+      echo "Not using $dir, which is not on a mounted disk"
+    fi
+  done
+  if [[ -n "$DATA_DIRS" && -z "$mounted_dirs" ]]; then
+    mounted_dirs="${COMMIT_LOG_DIR%/*}/data"
+  fi
+  DATA_DIRS=$mounted_dirs
+  
+  # Pick this node's token from the list of private-ip:token pairs
+  INITIAL_TOKEN=
+  for entry in $(echo "$TOKENS" | tr "," "\n"); do
+    if [ "${entry%%:*}" == "$PRIVATE_SELF_HOST" ]; then
+      INITIAL_TOKEN="${entry##*:}"
+    fi
+  done
+  
   OH_SIX_CONFIG="/etc/cassandra/conf/storage-conf.xml"
   
   if [[ -e "$OH_SIX_CONFIG" ]] ; then 
@@ -42,6 +86,22 @@ function configure_cassandra() {
     sed -i -e "s|<Seed>127.0.0.1</Seed>|$seeds|" $config_file
     sed -i -e "s|<ListenAddress>localhost</ListenAddress>|<ListenAddress>$PRIVATE_SELF_HOST</ListenAddress>|" $config_file
     sed -i -e "s|<ThriftAddress>localhost</ThriftAddress>|<ThriftAddress>$PUBLIC_SELF_HOST</ThriftAddress>|" $config_file
+    if [[ -n "$PARTITIONER" ]] ; then
+      sed -i -e "s|<Partitioner>.*</Partitioner>|<Partitioner>$PARTITIONER</Partitioner>|" $config_file
+    fi
+    if [[ -n "$INITIAL_TOKEN" ]] ; then
+      sed -i -e "s|<InitialToken>.*</InitialToken>|<InitialToken>$INITIAL_TOKEN</InitialToken>|" $config_file
+    fi
+    if [[ -n "$COMMIT_LOG_DIR" ]] ; then
+      sed -i -e "s|<CommitLogDirectory>.*</CommitLogDirectory>|<CommitLogDirectory>$COMMIT_LOG_DIR</CommitLogDirectory>|" $config_file
+    fi
+    if [[ -n "$DATA_DIRS" ]] ; then
+      data_dirs=""
+      for dir in $(echo "$DATA_DIRS" | tr "," "\n"); do
+        data_dirs="${data_dirs}<DataFileDirectory>${dir}</DataFileDirectory>"
+      done
+      sed -i -e "/<DataFileDirectories>/,/<\/DataFileDirectories>/c\<DataFileDirectories>${data_dirs}</DataFileDirectories>" $config_file
+    fi
   else
     config_file="/etc/cassandra/conf/cassandra.yaml"
     if [[ "x"`grep -e '^seeds:' $config_file` == "x" ]]; then
@@ -61,6 +121,23 @@ function configure_cassandra() {
   
     sed -i -e "s|listen_address: localhost|listen_address: $PRIVATE_SELF_HOST|" $config_file
     sed -i -e "s|rpc_address: localhost|rpc_address: $PUBLIC_SELF_HOST|" $config_file
+    if [[ -n "$PARTITIONER" ]] ; then
+      sed -i -e "s|^partitioner:.*|partitioner: $PARTITIONER|" $config_file
+    fi
+    if [[ -n "$INITIAL_TOKEN" ]] ; then
+      sed -i -e "s|^initial_token:.*|initial_token: $INITIAL_TOKEN|" $config_file
+    fi
+    if [[ -n "$COMMIT_LOG_DIR" ]] ; then
+      sed -i -e "s|^commitlog_directory:.*|commitlog_directory: $COMMIT_LOG_DIR|" $config_file
+    fi
+    if [[ -n "$DATA_DIRS" ]] ; then
+      data_dirs=""
+      for dir in $(echo "$DATA_DIRS" | tr "," "\n"); do
+        data_dirs="${data_dirs}\n    - ${dir}"
+      done
+      sed -i -e "/^data_file_directories:/,/^[^ ]/{/^ /d}" $config_file
+      sed -i -e "s|^data_file_directories:.*|data_file_directories:${data_dirs}|" $config_file
+    fi
   fi
   
   # Now that it's configured, start Cassandra
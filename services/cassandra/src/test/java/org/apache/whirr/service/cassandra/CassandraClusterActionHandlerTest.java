@@ -20,14 +20,18 @@ package org.apache.whirr.service.cassandra;
 
 import static org.junit.Assert.assertEquals;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.HardwareProfile;
 import org.jclouds.domain.Credentials;
 import org.junit.Test;
 
@@ -37,6 +41,12 @@ public class CassandraClusterActionHandlerTest {
     return new Instance(new Credentials("", ""), Sets.newHashSet(""),
         InetAddress.getLocalHost(), InetAddress.getLocalHost(), id); 
   }
+
+  private Instance getInstance(String id, String ip, String location)
+      throws UnknownHostException {
+    return new Instance(new Credentials("", ""), Sets.newHashSet(""),
+        InetAddress.getByName(ip), InetAddress.getByName(ip), id, location);
+  }
   
   @Test()
   public void testGetSeeds() throws UnknownHostException {
@@ -63,4 +73,68 @@ public class CassandraClusterActionHandlerTest {
     assertEquals(one, seeds2.get(0));
     assertEquals(two, seeds2.get(1));
   }
+
+  @Test
+  public void testSeedsAreSpreadAcrossLocations() throws UnknownHostException {
+    Set<Instance> instances = Sets.newLinkedHashSet();
+    for (int i = 0; i < 5; i++) {
+      instances.add(getInstance("a" + i, "10.0.0." + i, "zone-a"));
+    }
+    for (int i = 0; i < 5; i++) {
+      instances.add(getInstance("b" + i, "10.0.1." + i, "zone-b"));
+    }
+
+    List<Instance> seeds = new CassandraClusterActionHandler()
+      .getSeeds(instances);
+    assertEquals(2, seeds.size());
+    assertEquals("a0", seeds.get(0).getId());
+    assertEquals("b0", seeds.get(1).getId());
+  }
+
+  @Test
+  public void testInitialTokensAreEvenlySpaced() throws UnknownHostException {
+    Set<Instance> instances = Sets.newLinkedHashSet();
+    instances.add(getInstance("a0", "10.0.0.1", "zone-a"));
+    instances.add(getInstance("a1", "10.0.0.2", "zone-a"));
+    instances.add(getInstance("b0", "10.0.1.1", "zone-b"));
+    instances.add(getInstance("b1", "10.0.1.2", "zone-b"));
+
+    Map<Instance, BigInteger> tokens = CassandraClusterActionHandler
+      .getInitialTokens(instances,
+          CassandraClusterActionHandler.RANDOM_PARTITIONER);
+    assertEquals(4, tokens.size());
+    BigInteger quarter = BigInteger.valueOf(2).pow(125);
+    List<Instance> ring = Lists.newArrayList(tokens.keySet());
+    assertEquals(Lists.newArrayList("a0", "b0", "a1", "b1"),
+        Lists.newArrayList(ring.get(0).getId(), ring.get(1).getId(),
+            ring.get(2).getId(), ring.get(3).getId()));
+    for (int i = 0; i < 4; i++) {
+      assertEquals(quarter.multiply(BigInteger.valueOf(i)),
+          tokens.get(ring.get(i)));
+    }
+    assertEquals("10.0.0.1:0,10.0.1.1:" + quarter + ",10.0.0.2:"
+        + quarter.shiftLeft(1) + ",10.0.1.2:" + quarter.multiply(
+            BigInteger.valueOf(3)),
+        CassandraClusterActionHandler.formatTokens(tokens));
+  }
+
+  @Test
+  public void testNoTokensForOrderPreservingPartitioner()
+      throws UnknownHostException {
+    Set<Instance> instances = Sets.newLinkedHashSet();
+    instances.add(getInstance("1"));
+    assertEquals(0, CassandraClusterActionHandler.getInitialTokens(instances,
+        "org.apache.cassandra.dht.ByteOrderedPartitioner").size());
+  }
+
+  @Test
+  public void testCommitLogHasADiskToItself() {
+    List<String> dirs = new HardwareProfile(4, 15360, 3)
+        .getDataDirectories("/cassandra");
+    assertEquals("/data/cassandra/commitlog",
+        CassandraClusterActionHandler.getCommitLogDirectory(dirs));
+    assertEquals(Lists.newArrayList("/data1/cassandra/data",
+        "/data2/cassandra/data"),
+        CassandraClusterActionHandler.getDataFileDirectories(dirs));
+  }
 }
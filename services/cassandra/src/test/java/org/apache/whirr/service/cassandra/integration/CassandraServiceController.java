@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.cassandra.integration;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.Service;
+import org.apache.whirr.service.cassandra.CassandraClusterActionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CassandraServiceController {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CassandraServiceController.class);
+
+  private static final CassandraServiceController INSTANCE =
+    new CassandraServiceController();
+
+  private static final String UNREACHABLE = "UNREACHABLE";
+
+  public static CassandraServiceController getInstance() {
+    return INSTANCE;
+  }
+
+  private boolean running;
+  private ClusterSpec clusterSpec;
+  private Service service;
+  private Cluster cluster;
+
+  private CassandraServiceController() {
+  }
+
+  public synchronized boolean ensureClusterRunning() throws Exception {
+    if (running) {
+      LOG.info("Cluster already running.");
+      return false;
+    } else {
+      startup();
+      return true;
+    }
+  }
+
+  public synchronized void startup() throws Exception {
+    LOG.info("Starting up cluster...");
+    CompositeConfiguration config = new CompositeConfiguration();
+    if (System.getProperty("config") != null) {
+      config.addConfiguration(new PropertiesConfiguration(System.getProperty("config")));
+    }
+    config.addConfiguration(new PropertiesConfiguration("whirr-cassandra-test.properties"));
+    clusterSpec = ClusterSpec.withTemporaryKeys(config);
+    service = new Service();
+
+    cluster = service.launchCluster(clusterSpec);
+    waitForCassandra();
+    running = true;
+  }
+
+  /**
+   * @return a client that is connected to <code>instance</code>. The caller
+   * should close its transport when it is done.
+   */
+  public Cassandra.Client getClient(Instance instance) throws TException {
+    TTransport trans = new TFramedTransport(new TSocket(
+        instance.getPublicAddress().getHostAddress(),
+        CassandraClusterActionHandler.CLIENT_PORT));
+    trans.open();
+    TBinaryProtocol protocol = new TBinaryProtocol(trans);
+    return new Cassandra.Client(protocol);
+  }
+
+  private void waitForCassandra() throws InterruptedException {
+    LOG.info("Waiting for Cassandra...");
+    for (Instance instance : cluster.getInstances()) {
+      while (true) {
+        try {
+          Cassandra.Client client = getClient(instance);
+          client.describe_cluster_name();
+          client.getOutputProtocol().getTransport().close();
+          break;
+        } catch (TException e) {
+          Thread.sleep(1000);
+        }
+      }
+    }
+    LOG.info("Cassandra is up. Continuing.");
+  }
+
+  /**
+   * Wait until every reachable node has the same schema version, which is
+   * needed after the schema is changed.
+   */
+  public void waitForSchemaAgreement(Cassandra.Client client)
+      throws TException, InvalidRequestException, InterruptedException {
+    while (true) {
+      Map<String, List<String>> versions = client.describe_schema_versions();
+      versions.remove(UNREACHABLE);
+      if (versions.size() <= 1) {
+        return;
+      }
+      Thread.sleep(1000);
+    }
+  }
+
+  public synchronized void shutdown() throws IOException, InterruptedException {
+    LOG.info("Shutting down cluster...");
+    if (service != null) {
+      service.destroyCluster(clusterSpec);
+    }
+    running = false;
+  }
+
+  public ClusterSpec getClusterSpec() {
+    return clusterSpec;
+  }
+
+  public Cluster getCluster() {
+    return cluster;
+  }
+
+}
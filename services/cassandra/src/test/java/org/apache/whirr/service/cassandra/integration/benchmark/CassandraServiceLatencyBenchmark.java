@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.cassandra.integration.benchmark;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ColumnPath;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.benchmark.BenchmarkComparator;
+import org.apache.whirr.service.benchmark.BenchmarkResult;
+import org.apache.whirr.service.benchmark.LatencyRecorder;
+import org.apache.whirr.service.cassandra.integration.CassandraServiceController;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the latency of single-column inserts and reads. The operations
+ * are sent to each node of the cluster in turn, so that every node acts as
+ * a coordinator.
+ */
+public class CassandraServiceLatencyBenchmark {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CassandraServiceLatencyBenchmark.class);
+
+  private static final String KEYSPACE = "WhirrBenchmark";
+  private static final String COLUMN_FAMILY = "Standard1";
+  private static final ByteBuffer COLUMN =
+    ByteBuffer.wrap("value".getBytes(Charsets.UTF_8));
+
+  private static boolean shutdownClusterOnTearDown;
+  private static CassandraServiceController controller =
+    CassandraServiceController.getInstance();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    shutdownClusterOnTearDown = controller.ensureClusterRunning();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    if (shutdownClusterOnTearDown) {
+      controller.shutdown();
+    }
+  }
+
+  @Test
+  public void testLatency() throws Exception {
+    int operations = Integer.parseInt(
+        System.getProperty("cassandraOperations", "10000"));
+    int dataSize = Integer.parseInt(
+        System.getProperty("cassandraDataSize", "100"));
+    ConsistencyLevel consistency = ConsistencyLevel.valueOf(
+        System.getProperty("cassandraConsistencyLevel", "ONE"));
+    List<Cassandra.Client> clients = Lists.newArrayList();
+    for (Instance instance : controller.getCluster().getInstances()) {
+      clients.add(controller.getClient(instance));
+    }
+    int replicationFactor = Math.min(3, clients.size());
+
+    BenchmarkResult result = new BenchmarkResult("cassandra");
+    result.recordCluster(controller.getClusterSpec(), "whirr.cassandra.");
+    result.getProperties().setProperty("cassandra.operations",
+        Integer.toString(operations));
+    result.getProperties().setProperty("cassandra.data-size",
+        Integer.toString(dataSize));
+    result.getProperties().setProperty("cassandra.consistency-level",
+        consistency.name());
+    result.getProperties().setProperty("cassandra.replication-factor",
+        Integer.toString(replicationFactor));
+
+    try {
+      createKeyspace(clients.get(0), replicationFactor);
+      for (Cassandra.Client client : clients) {
+        client.set_keyspace(KEYSPACE);
+      }
+      LOG.info("Running {} operations of each type", operations);
+
+      byte[] data = new byte[dataSize];
+      Random random = new Random();
+      random.nextBytes(data);
+      ColumnParent parent = new ColumnParent(COLUMN_FAMILY);
+      LatencyRecorder insert = new LatencyRecorder();
+      insert.start();
+      for (int i = 0; i < operations; i++) {
+        Column column = new Column();
+        column.setName(COLUMN);
+        column.setValue(ByteBuffer.wrap(data));
+        column.setTimestamp(System.currentTimeMillis() * 1000);
+        long start = System.nanoTime();
+        clients.get(i % clients.size()).insert(key(i), parent, column,
+            consistency);
+        insert.record(start);
+      }
+      insert.stop();
+      result.recordLatencies("insert", insert);
+
+      ColumnPath path = new ColumnPath(COLUMN_FAMILY);
+      path.setColumn(COLUMN);
+      LatencyRecorder read = new LatencyRecorder();
+      read.start();
+      for (int i = 0; i < operations; i++) {
+        long start = System.nanoTime();
+        clients.get(i % clients.size()).get(key(random.nextInt(operations)),
+            path, consistency);
+        read.record(start);
+      }
+      read.stop();
+      result.recordLatencies("read", read);
+
+      clients.get(0).system_drop_keyspace(KEYSPACE);
+    } finally {
+      for (Cassandra.Client client : clients) {
+        client.getOutputProtocol().getTransport().close();
+      }
+    }
+    BenchmarkComparator.checkAgainstBaseline(result);
+    result.write();
+  }
+
+  private static void createKeyspace(Cassandra.Client client,
+      int replicationFactor) throws Exception {
+    KsDef keyspace = new KsDef();
+    keyspace.setName(KEYSPACE);
+    keyspace.setStrategy_class("org.apache.cassandra.locator.SimpleStrategy");
+    keyspace.setReplication_factor(replicationFactor);
+    keyspace.setCf_defs(Lists.newArrayList(
+        new CfDef(KEYSPACE, COLUMN_FAMILY)));
+    client.system_add_keyspace(keyspace);
+    controller.waitForSchemaAgreement(client);
+  }
+
+  private static ByteBuffer key(int i) {
+    return ByteBuffer.wrap(("key" + i).getBytes(Charsets.UTF_8));
+  }
+
+}
@@ -21,84 +21,454 @@ package org.apache.whirr.service.hadoop;
 import static org.apache.whirr.service.RolePredicates.role;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.configuration.CompositeConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
-import org.apache.whirr.net.DnsUtil;
+import org.apache.whirr.net.InternalAddresses;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.HardwareProfile;
+import org.apache.whirr.service.LocationHierarchy;
 import org.jclouds.scriptbuilder.domain.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Builds the Hadoop site configuration files for the nodes in a cluster.
+ * <p>
+ * The site configuration is computed once per cluster from the defaults, the
+ * cluster spec and the cluster's instances, and is stored in the cluster's
+ * {@link Cluster#getConfiguration() properties} so that it is shared by all
+ * of the Hadoop roles. Properties prefixed with a role name, such as
+ * <code>hadoop-datanode.hadoop-hdfs.dfs.datanode.handler.count</code>, are
+ * layered on top of it for the nodes with that role.
+ */
 public class HadoopConfigurationBuilder {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HadoopConfigurationBuilder.class);
   
   private static final String WHIRR_HADOOP_DEFAULT_PROPERTIES =
     "whirr-hadoop-default.properties";
 
+  static final String COMMON_PREFIX = "hadoop-common";
+  static final String HDFS_PREFIX = "hadoop-hdfs";
+  static final String MAPREDUCE_PREFIX = "hadoop-mapreduce";
+
+  /**
+   * The cluster property that records the members of the cluster that the
+   * site configuration stored in the cluster's properties was computed for.
+   */
+  static final String SITE_CONFIGURATION_MEMBERS =
+    "whirr.hadoop-site-configuration-members";
+
+  private static final String[] SITE_PREFIXES = {
+    COMMON_PREFIX, HDFS_PREFIX, MAPREDUCE_PREFIX
+  };
+
+  /**
+   * Properties that are derived from the cluster, and can't be overridden.
+   */
+  private static final Set<String> DYNAMIC_PROPERTIES =
+    ImmutableSet.of("fs.default.name", "mapred.job.tracker");
+
+  /**
+   * The script that maps hosts to racks, installed by
+   * <code>install_hadoop_topology</code>.
+   */
+  static final String TOPOLOGY_SCRIPT = "/etc/hadoop/topology.sh";
+  static final String DEFAULT_RACK = "/default-rack";
+
+  static final int MIN_CHILD_HEAP_MB = 400;
+  private static final Pattern MAX_HEAP =
+    Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+  private static final int MAX_CHILD_HEAP_MB = 2048;
+  private static final int MIN_IO_SORT_MB = 100;
+  private static final int MAX_IO_SORT_MB = 512;
+
+  private static Configuration defaults;
+
+  private static synchronized Configuration getDefaults()
+      throws ConfigurationException {
+    if (defaults == null) {
+      defaults = new PropertiesConfiguration(WHIRR_HADOOP_DEFAULT_PROPERTIES);
+    }
+    return defaults;
+  }
+
   private static Configuration build(ClusterSpec clusterSpec, Cluster cluster,
       Configuration defaults, String prefix)
       throws ConfigurationException {
+    return build(clusterSpec, cluster, defaults, prefix,
+        new PropertiesConfiguration());
+  }
+
+  /**
+   * @param derived properties derived from the cluster, which take precedence
+   * over the defaults but not over properties set in the cluster spec
+   */
+  private static Configuration build(ClusterSpec clusterSpec, Cluster cluster,
+      Configuration defaults, String prefix, Configuration derived)
+      throws ConfigurationException {
     CompositeConfiguration config = new CompositeConfiguration();
     Configuration sub = clusterSpec.getConfigurationForKeysWithPrefix(prefix);
     config.addConfiguration(sub.subset(prefix)); // remove prefix
+    config.addConfiguration(derived);
     config.addConfiguration(defaults.subset(prefix));
     return config;
   }
 
   public static Statement buildCommon(String path, ClusterSpec clusterSpec,
-      Cluster cluster) throws ConfigurationException, IOException {
-    Configuration config = buildCommonConfiguration(clusterSpec, cluster,
-        new PropertiesConfiguration(WHIRR_HADOOP_DEFAULT_PROPERTIES));
+      Cluster cluster, String... roles)
+      throws ConfigurationException, IOException {
+    Configuration config = getSiteConfiguration(clusterSpec, cluster,
+        getDefaults(), COMMON_PREFIX, roles);
     return HadoopConfigurationConverter.asCreateFileStatement(path, config);
   }
   
   public static Statement buildHdfs(String path, ClusterSpec clusterSpec,
-      Cluster cluster) throws ConfigurationException, IOException {
-    Configuration config = buildHdfsConfiguration(clusterSpec, cluster,
-        new PropertiesConfiguration(WHIRR_HADOOP_DEFAULT_PROPERTIES));
+      Cluster cluster, String... roles)
+      throws ConfigurationException, IOException {
+    Configuration config = getSiteConfiguration(clusterSpec, cluster,
+        getDefaults(), HDFS_PREFIX, roles);
     return HadoopConfigurationConverter.asCreateFileStatement(path, config);
   }
   
   public static Statement buildMapReduce(String path, ClusterSpec clusterSpec,
-      Cluster cluster) throws ConfigurationException, IOException {
-    Configuration config = buildMapReduceConfiguration(clusterSpec, cluster,
-        new PropertiesConfiguration(WHIRR_HADOOP_DEFAULT_PROPERTIES));
+      Cluster cluster, String... roles)
+      throws ConfigurationException, IOException {
+    Configuration config = getSiteConfiguration(clusterSpec, cluster,
+        getDefaults(), MAPREDUCE_PREFIX, roles);
     return HadoopConfigurationConverter.asCreateFileStatement(path, config);
   }
+
+  /**
+   * @return a statement that writes the rack of every instance in the
+   * cluster to <code>path</code>, for use by {@link #TOPOLOGY_SCRIPT}.
+   */
+  public static Statement buildTopology(String path, Cluster cluster) {
+    return HadoopConfigurationConverter.createFile(path, getTopology(cluster));
+  }
+
+  /**
+   * @return the site configuration for the file identified by
+   * <code>prefix</code>, with any overrides for <code>roles</code> applied.
+   * The shared configuration is computed and stored in the cluster's
+   * properties on first use, and computed again if the members of the
+   * cluster have changed since.
+   */
+  @VisibleForTesting
+  static Configuration getSiteConfiguration(ClusterSpec clusterSpec,
+      Cluster cluster, Configuration defaults, String prefix, String... roles)
+      throws ConfigurationException, IOException {
+    Properties properties = cluster.getConfiguration();
+    PropertiesConfiguration shared = new PropertiesConfiguration();
+    shared.setDelimiterParsingDisabled(true);
+    synchronized (properties) {
+      String members = getMembers(cluster);
+      if (!members.equals(properties.getProperty(SITE_CONFIGURATION_MEMBERS))) {
+        clear(properties);
+        store(properties, COMMON_PREFIX,
+            buildCommonConfiguration(clusterSpec, cluster, defaults));
+        store(properties, HDFS_PREFIX,
+            buildHdfsConfiguration(clusterSpec, cluster, defaults));
+        store(properties, MAPREDUCE_PREFIX,
+            buildMapReduceConfiguration(clusterSpec, cluster, defaults));
+        properties.setProperty(SITE_CONFIGURATION_MEMBERS, members);
+      }
+      String keyPrefix = prefix + ".";
+      for (String key : Sets.newTreeSet(properties.stringPropertyNames())) {
+        if (key.startsWith(keyPrefix)) {
+          shared.setProperty(key.substring(keyPrefix.length()),
+              properties.getProperty(key));
+        }
+      }
+    }
+    if (roles.length == 0) {
+      return shared;
+    }
+    CompositeConfiguration config = new CompositeConfiguration();
+    for (String role : roles) {
+      String rolePrefix = role + "." + prefix;
+      Configuration overrides = clusterSpec
+        .getConfigurationForKeysWithPrefix(rolePrefix).subset(rolePrefix);
+      for (String key : DYNAMIC_PROPERTIES) {
+        overrides.clearProperty(key);
+      }
+      config.addConfiguration(overrides);
+    }
+    config.addConfiguration(shared);
+    return config;
+  }
+
+  /**
+   * @return a digest of the ids and roles of the instances in
+   * <code>cluster</code>.
+   */
+  private static String getMembers(Cluster cluster) {
+    Set<String> members = Sets.newTreeSet();
+    for (Instance instance : cluster.getInstances()) {
+      members.add(instance.getId() + "="
+          + Sets.newTreeSet(instance.getRoles()));
+    }
+    return members.size() + ":"
+      + HadoopConfigurationConverter.md5Hex(Joiner.on(',').join(members));
+  }
+
+  private static void clear(Properties properties) {
+    for (String key : properties.stringPropertyNames()) {
+      for (String prefix : SITE_PREFIXES) {
+        if (key.startsWith(prefix + ".")) {
+          properties.remove(key);
+        }
+      }
+    }
+  }
+
+  private static void store(Properties properties, String prefix,
+      Configuration config) {
+    for (@SuppressWarnings("unchecked")
+        Iterator<String> it = config.getKeys(); it.hasNext(); ) {
+      String key = it.next();
+      Object value = config.getProperty(key);
+      properties.setProperty(prefix + "." + key, value instanceof Collection ?
+          Joiner.on(',').join((Collection<?>) value) : String.valueOf(value));
+    }
+  }
   
   @VisibleForTesting
   static Configuration buildCommonConfiguration(ClusterSpec clusterSpec,
       Cluster cluster, Configuration defaults) throws ConfigurationException, IOException {
+    Configuration derived = new PropertiesConfiguration();
+    if (hasLocations(cluster)) {
+      derived.setProperty("topology.script.file.name", TOPOLOGY_SCRIPT);
+    }
     Configuration config = build(clusterSpec, cluster, defaults,
-        "hadoop-common");
+        COMMON_PREFIX, derived);
 
     Instance namenode = cluster
         .getInstanceMatching(role(HadoopNameNodeClusterActionHandler.ROLE));
     config.setProperty("fs.default.name", String.format("hdfs://%s:8020/",
-        DnsUtil.resolveAddress(namenode.getPublicAddress().getHostAddress())));
+        InternalAddresses.getHostName(clusterSpec, namenode)));
     return config;
   }
   
+  /**
+   * @return lines mapping the private and public addresses of each instance
+   * to its rack.
+   */
+  @VisibleForTesting
+  static List<String> getTopology(Cluster cluster) {
+    Set<String> lines = Sets.newLinkedHashSet();
+    for (Map.Entry<Instance, String> entry : getRacks(cluster).entrySet()) {
+      Instance instance = entry.getKey();
+      lines.add(instance.getPrivateAddress().getHostAddress() + " "
+          + entry.getValue());
+      lines.add(instance.getPublicAddress().getHostAddress() + " "
+          + entry.getValue());
+    }
+    return Lists.newArrayList(lines);
+  }
+
+  /**
+   * A rack is the path of an instance's location in the provider's location
+   * hierarchy, such as <code>/us-east-1/us-east-1a</code>. Hadoop requires
+   * all racks to be at the same depth, so if the paths differ in length, or
+   * some locations are not known, then only the innermost location is used,
+   * and instances whose location is not known are put in
+   * {@link #DEFAULT_RACK}.
+   */
+  @VisibleForTesting
+  static Map<Instance, String> getRacks(Cluster cluster) {
+    Map<Instance, List<String>> paths = Maps.newLinkedHashMap();
+    Set<Integer> depths = Sets.newHashSet();
+    for (Instance instance : cluster.getInstances()) {
+      List<String> path = LocationHierarchy.getPath(
+          cluster.getConfiguration(), instance.getLocationId());
+      paths.put(instance, path);
+      depths.add(path.size());
+    }
+    boolean fullPaths = depths.size() == 1 && !depths.contains(0);
+    Map<Instance, String> racks = Maps.newLinkedHashMap();
+    for (Map.Entry<Instance, List<String>> entry : paths.entrySet()) {
+      List<String> path = entry.getValue();
+      if (path.isEmpty()) {
+        racks.put(entry.getKey(), DEFAULT_RACK);
+      } else if (fullPaths) {
+        racks.put(entry.getKey(), "/" + Joiner.on('/').join(path));
+      } else {
+        racks.put(entry.getKey(), "/" + path.get(path.size() - 1));
+      }
+    }
+    return racks;
+  }
+
+  private static boolean hasLocations(Cluster cluster) {
+    for (Instance instance : cluster.getInstances()) {
+      if (instance.getLocationId() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @VisibleForTesting
   static Configuration buildHdfsConfiguration(ClusterSpec clusterSpec,
       Cluster cluster, Configuration defaults) throws ConfigurationException {
-    return build(clusterSpec, cluster, defaults, "hadoop-hdfs");
+    Configuration derived = new PropertiesConfiguration();
+    setDataDirectories(derived, "dfs.data.dir", cluster,
+        HadoopDataNodeClusterActionHandler.ROLE, "/hadoop/hdfs/data");
+    return build(clusterSpec, cluster, defaults, HDFS_PREFIX, derived);
   }
 
   @VisibleForTesting
   static Configuration buildMapReduceConfiguration(ClusterSpec clusterSpec,
       Cluster cluster, Configuration defaults) throws ConfigurationException, IOException {
+    Configuration derived = new PropertiesConfiguration();
+    MemoryBudget budget = MemoryBudget.forRole(clusterSpec.getConfiguration(),
+        cluster, HadoopTaskTrackerClusterActionHandler.ROLE);
+    if (budget != null) {
+      int taskTrackers = cluster.getInstancesInRole(
+          HadoopTaskTrackerClusterActionHandler.ROLE).size();
+      derived = buildMapReduceTuning(budget, taskTrackers);
+    }
+    setDataDirectories(derived, "mapred.local.dir", cluster,
+        HadoopTaskTrackerClusterActionHandler.ROLE, "/hadoop/mapred/local");
     Configuration config = build(clusterSpec, cluster, defaults,
-        "hadoop-mapreduce");
+        MAPREDUCE_PREFIX, derived);
+    // the virtual memory limit (in KB) must leave room above the heap that
+    // tasks are actually started with, and the sort buffer must fit in it.
+    // These go in the derived properties, since setting them on the
+    // composite would clear them from the shared defaults.
+    int heapMb = getMaxHeapMb(config.getString("mapred.child.java.opts"));
+    if (heapMb > 0 && !clusterSpec.getConfiguration().containsKey(
+        MAPREDUCE_PREFIX + ".mapred.child.ulimit")) {
+      derived.setProperty("mapred.child.ulimit", 2 * 1024 * heapMb);
+    }
+    if (heapMb > 0 && !clusterSpec.getConfiguration().containsKey(
+        MAPREDUCE_PREFIX + ".io.sort.mb")
+        && config.getInt("io.sort.mb", 0) > getMaxIoSortMb(heapMb)) {
+      derived.setProperty("io.sort.mb", getMaxIoSortMb(heapMb));
+    }
 
     Instance jobtracker = cluster
         .getInstanceMatching(role(HadoopJobTrackerClusterActionHandler.ROLE));
     config.setProperty("mapred.job.tracker", String.format("%s:8021",
-        DnsUtil.resolveAddress(jobtracker.getPublicAddress().getHostAddress())));
+        InternalAddresses.getHostName(clusterSpec, jobtracker)));
+    return config;
+  }
+
+  /**
+   * Spread <code>key</code> across all of the disks of the nodes in
+   * <code>role</code>, if they have more than one.
+   */
+  private static void setDataDirectories(Configuration config, String key,
+      Cluster cluster, String role, String path) {
+    HardwareProfile profile = HardwareProfile.load(cluster.getConfiguration(),
+        role);
+    if (profile != null && profile.getDisks() > 1) {
+      config.setProperty(key, profile.getDataDirectories(path));
+    }
+  }
+
+  /**
+   * @return the maximum heap size set by the <code>-Xmx</code> option in
+   * <code>opts</code>, in megabytes, or 0 if there is none.
+   */
+  @VisibleForTesting
+  static int getMaxHeapMb(String opts) {
+    if (opts == null) {
+      return 0;
+    }
+    Matcher matcher = MAX_HEAP.matcher(opts);
+    int heapMb = 0;
+    while (matcher.find()) {
+      long size = Long.parseLong(matcher.group(1));
+      String unit = matcher.group(2).toLowerCase();
+      if (unit.equals("g")) {
+        heapMb = (int) (size * 1024);
+      } else if (unit.equals("m")) {
+        heapMb = (int) size;
+      } else if (unit.equals("k")) {
+        heapMb = (int) (size / 1024);
+      } else {
+        heapMb = (int) (size / (1024 * 1024));
+      }
+    }
+    return heapMb;
+  }
+
+  /**
+   * @return the largest sort buffer for tasks with a heap of
+   * <code>heapMb</code>, which leaves half of the heap for the task itself.
+   */
+  private static int getMaxIoSortMb(int heapMb) {
+    return Math.max(1, heapMb / 2);
+  }
+
+  /**
+   * @return MapReduce task slot, heap and reducer settings sized for
+   * tasktrackers with the given memory budget, which leaves out the memory
+   * for the operating system, the datanode and tasktracker daemons and any
+   * region server on the node. The task memory is divided between the task
+   * slots. There is a map slot per core, up to
+   * two per disk, and a reduce slot per two map slots. If that would leave
+   * less than {@link #MIN_CHILD_HEAP_MB} per task then the number of slots is
+   * reduced, down to one map and one reduce slot. The sort buffer is kept
+   * below half of the task heap. The number of reduce tasks is 95% of the
+   * cluster's reduce slots, so that all reduces can run in a single wave.
+   */
+  @VisibleForTesting
+  static Configuration buildMapReduceTuning(MemoryBudget budget,
+      int taskTrackers) {
+    HardwareProfile profile = budget.getProfile();
+    int taskRamMb = budget.getTaskRamMb();
+
+    int mapSlots = Math.max(1,
+        Math.min(profile.getCores(), 2 * profile.getDisks()));
+    int reduceSlots = Math.max(1, mapSlots / 2);
+    int maxSlots = taskRamMb / MIN_CHILD_HEAP_MB;
+    if (mapSlots + reduceSlots > maxSlots) {
+      reduceSlots = Math.max(1, maxSlots / 3);
+      mapSlots = Math.max(1, maxSlots - reduceSlots);
+    }
+    int childHeapMb = Math.min(MAX_CHILD_HEAP_MB,
+        taskRamMb / (mapSlots + reduceSlots));
+    if (childHeapMb < MIN_CHILD_HEAP_MB) {
+      LOG.warn("Tasktrackers with {} MB of memory leave only {} MB for " +
+          "each task, which is less than the {} MB that tasks need",
+          new Object[] { profile.getRamMb(), childHeapMb, MIN_CHILD_HEAP_MB });
+    }
+    int ioSortMb = Math.min(getMaxIoSortMb(childHeapMb),
+        Math.max(MIN_IO_SORT_MB, Math.min(MAX_IO_SORT_MB, childHeapMb / 4)));
+    int reduceTasks = Math.max(1,
+        (int) (0.95 * Math.max(1, taskTrackers) * reduceSlots));
+
+    Configuration config = new PropertiesConfiguration();
+    config.setProperty("mapred.tasktracker.map.tasks.maximum", mapSlots);
+    config.setProperty("mapred.tasktracker.reduce.tasks.maximum", reduceSlots);
+    config.setProperty("mapred.child.java.opts",
+        String.format("-Xmx%dm", childHeapMb));
+    config.setProperty("io.sort.mb", ioSortMb);
+    config.setProperty("mapred.reduce.tasks", reduceTasks);
     return config;
   }
 
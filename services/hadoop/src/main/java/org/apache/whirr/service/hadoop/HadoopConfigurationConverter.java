@@ -19,8 +19,13 @@
 package org.apache.whirr.service.hadoop;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.List;
 
@@ -59,9 +64,51 @@ public class HadoopConfigurationConverter {
     return lines;
   }
   
+  /**
+   * @return the lines of the file, preceded by a comment containing a hash
+   * of the content. The configure scripts compare the first line of the
+   * installed file with that of the generated one, so that a file whose
+   * content has not changed is not rewritten.
+   */
+  @VisibleForTesting
+  static List<String> asHashedLinesInFile(Configuration hadoopConfig) {
+    List<String> lines = asLinesInFile(hadoopConfig);
+    List<String> hashedLines = Lists.newArrayListWithCapacity(lines.size() + 1);
+    hashedLines.add(String.format("<!-- content-hash: %s -->",
+        md5Hex(Joiner.on('\n').join(lines))));
+    hashedLines.addAll(lines);
+    return hashedLines;
+  }
+
+  static String md5Hex(String content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5")
+        .digest(content.getBytes(Charsets.UTF_8.name()));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+  
   public static Statement asCreateFileStatement(String path, 
       Configuration hadoopConfig) {
-    return Statements.appendFile(path, asLinesInFile(hadoopConfig));
+    return createFile(path, asHashedLinesInFile(hadoopConfig));
+  }
+
+  /**
+   * @return a statement that writes <code>lines</code> to a new file at
+   * <code>path</code>. A file left there by an earlier run is removed first,
+   * since the lines would otherwise be appended to it.
+   */
+  static Statement createFile(String path, Iterable<String> lines) {
+    return Statements.newStatementList(Statements.exec("rm -f " + path),
+        Statements.appendFile(path, lines));
   }
 
 }
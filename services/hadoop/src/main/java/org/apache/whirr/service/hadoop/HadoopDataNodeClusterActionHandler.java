@@ -22,6 +22,7 @@ import static org.apache.whirr.service.RolePredicates.role;
 import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildCommon;
 import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildHdfs;
 import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildMapReduce;
+import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildTopology;
 import static org.jclouds.scriptbuilder.domain.Statements.call;
 
 import java.io.IOException;
@@ -38,6 +39,12 @@ import org.apache.whirr.service.ClusterSpec;
 public class HadoopDataNodeClusterActionHandler extends ClusterActionHandlerSupport {
 
   public static final String ROLE = "hadoop-datanode";
+
+  /**
+   * The roles whose site configuration overrides apply to this node.
+   */
+  private static final String[] SITE_ROLES =
+    { ROLE, HadoopTaskTrackerClusterActionHandler.ROLE };
   
   @Override
   public String getRole() {
@@ -51,6 +58,7 @@ public class HadoopDataNodeClusterActionHandler extends ClusterActionHandlerSupp
     String hadoopInstallFunction = clusterSpec.getConfiguration().getString(
         "whirr.hadoop-install-function", "install_hadoop");
     addStatement(event, call("install_java"));
+    addStatement(event, call("prepare_disks", "-c", clusterSpec.getProvider()));
     addStatement(event, call(hadoopInstallFunction, "-c", clusterSpec.getProvider()));
     event.setTemplateBuilderStrategy(new HadoopTemplateBuilderStrategy());
   }
@@ -68,14 +76,16 @@ public class HadoopDataNodeClusterActionHandler extends ClusterActionHandlerSupp
     
     try {
       event.getStatementBuilder().addStatements(
-        buildCommon("/tmp/core-site.xml", clusterSpec, cluster),
-        buildHdfs("/tmp/hdfs-site.xml", clusterSpec, cluster),
-        buildMapReduce("/tmp/mapred-site.xml", clusterSpec, cluster)
+        buildCommon("/tmp/core-site.xml", clusterSpec, cluster, SITE_ROLES),
+        buildHdfs("/tmp/hdfs-site.xml", clusterSpec, cluster, SITE_ROLES),
+        buildMapReduce("/tmp/mapred-site.xml", clusterSpec, cluster, SITE_ROLES),
+        buildTopology("/tmp/topology.data", cluster)
       );
     } catch (ConfigurationException e) {
       throw new IOException(e);
     }
 
+    addStatement(event, call("install_hadoop_topology", "/tmp/topology.data"));
     String hadoopConfigureFunction = clusterSpec.getConfiguration().getString(
         "whirr.hadoop-configure-function", "configure_hadoop");
     addStatement(event, call(hadoopConfigureFunction,
@@ -22,17 +22,22 @@ import static org.apache.whirr.service.RolePredicates.role;
 import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildCommon;
 import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildHdfs;
 import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildMapReduce;
+import static org.apache.whirr.service.hadoop.HadoopConfigurationBuilder.buildTopology;
 import static org.jclouds.scriptbuilder.domain.Statements.call;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.URL;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.whirr.net.DnsUtil;
@@ -42,6 +47,7 @@ import org.apache.whirr.service.ClusterActionEvent;
 import org.apache.whirr.service.ClusterActionHandlerSupport;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
+import org.apache.whirr.service.ReadinessBarrier;
 import org.apache.whirr.service.jclouds.FirewallSettings;
 import org.jclouds.compute.ComputeServiceContext;
 import org.slf4j.Logger;
@@ -53,11 +59,29 @@ public class HadoopNameNodeClusterActionHandler extends ClusterActionHandlerSupp
     LoggerFactory.getLogger(HadoopNameNodeClusterActionHandler.class);
   
   public static final String ROLE = "hadoop-namenode";
+
+  /**
+   * The roles whose site configuration overrides apply to this node.
+   */
+  private static final String[] SITE_ROLES =
+    { ROLE, HadoopJobTrackerClusterActionHandler.ROLE };
   
   public static final int NAMENODE_PORT = 8020;
   public static final int JOBTRACKER_PORT = 8021;
   public static final int NAMENODE_WEB_UI_PORT = 50070;
   public static final int JOBTRACKER_WEB_UI_PORT = 50030;
+
+  /**
+   * Matches the number of live datanodes on the namenode status page.
+   */
+  static final Pattern LIVE_DATANODES =
+    Pattern.compile("Live Nodes</a>(?:\\s*<[^>]*>|\\s*:)*\\s*(\\d+)");
+
+  /**
+   * Matches the number of active tasktrackers on the jobtracker status page.
+   */
+  static final Pattern ACTIVE_TASKTRACKERS =
+    Pattern.compile("machines\\.jsp\\?type=active\">(\\d+)</a>");
     
   @Override
   public String getRole() {
@@ -71,6 +95,7 @@ public class HadoopNameNodeClusterActionHandler extends ClusterActionHandlerSupp
     String hadoopInstallFunction = clusterSpec.getConfiguration().getString(
         "whirr.hadoop-install-function", "install_hadoop");
     addStatement(event, call("install_java"));
+    addStatement(event, call("prepare_disks", "-c", clusterSpec.getProvider()));
     addStatement(event, call(hadoopInstallFunction, "-c", clusterSpec.getProvider()));
     event.setTemplateBuilderStrategy(new HadoopTemplateBuilderStrategy());
   }
@@ -104,14 +129,16 @@ public class HadoopNameNodeClusterActionHandler extends ClusterActionHandlerSupp
     
     try {
       event.getStatementBuilder().addStatements(
-        buildCommon("/tmp/core-site.xml", clusterSpec, cluster),
-        buildHdfs("/tmp/hdfs-site.xml", clusterSpec, cluster),
-        buildMapReduce("/tmp/mapred-site.xml", clusterSpec, cluster)
+        buildCommon("/tmp/core-site.xml", clusterSpec, cluster, SITE_ROLES),
+        buildHdfs("/tmp/hdfs-site.xml", clusterSpec, cluster, SITE_ROLES),
+        buildMapReduce("/tmp/mapred-site.xml", clusterSpec, cluster, SITE_ROLES),
+        buildTopology("/tmp/topology.data", cluster)
       );
     } catch (ConfigurationException e) {
       throw new IOException(e);
     }
     
+    addStatement(event, call("install_hadoop_topology", "/tmp/topology.data"));
     String hadoopConfigureFunction = clusterSpec.getConfiguration().getString(
         "whirr.hadoop-configure-function", "configure_hadoop");
     addStatement(event, call(hadoopConfigureFunction,
@@ -125,13 +152,20 @@ public class HadoopNameNodeClusterActionHandler extends ClusterActionHandlerSupp
     ClusterSpec clusterSpec = event.getClusterSpec();
     Cluster cluster = event.getCluster();
     
-    // TODO: wait for TTs to come up (done in test for the moment)
-    
     LOG.info("Completed configuration of {}", clusterSpec.getClusterName());
     Instance instance = cluster.getInstanceMatching(role(ROLE));
     InetAddress namenodePublicAddress = instance.getPublicAddress();
     InetAddress jobtrackerPublicAddress = namenodePublicAddress;
 
+    try {
+      waitForWorkers(clusterSpec, cluster,
+          DnsUtil.resolveAddress(namenodePublicAddress.getHostAddress()),
+          DnsUtil.resolveAddress(jobtrackerPublicAddress.getHostAddress()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+
     LOG.info("Namenode web UI available at http://{}:{}",
       DnsUtil.resolveAddress(namenodePublicAddress.getHostAddress()),
       NAMENODE_WEB_UI_PORT);
@@ -141,7 +175,34 @@ public class HadoopNameNodeClusterActionHandler extends ClusterActionHandlerSupp
     Properties config = createClientSideProperties(clusterSpec, namenodePublicAddress, jobtrackerPublicAddress);
     createClientSideHadoopSiteFile(clusterSpec, config);
     createProxyScript(clusterSpec, cluster);
-    event.setCluster(new Cluster(cluster.getInstances(), config));
+    // keep what earlier handlers stored in the cluster's properties, such as
+    // the hardware, locations and site configuration
+    cluster.getConfiguration().putAll(config);
+  }
+
+  /**
+   * Wait until enough datanodes and tasktrackers have registered with the
+   * namenode and jobtracker for the cluster to be used.
+   */
+  private void waitForWorkers(ClusterSpec clusterSpec, Cluster cluster,
+      String namenode, String jobtracker)
+      throws IOException, InterruptedException {
+    List<ReadinessBarrier.Probe> probes = Lists.newArrayList();
+    int datanodes = cluster.getInstancesInRole(
+        HadoopDataNodeClusterActionHandler.ROLE).size();
+    if (datanodes > 0) {
+      probes.add(new ReadinessBarrier.HttpProbe("datanodes", datanodes,
+          new URL(String.format("http://%s:%d/dfshealth.jsp", namenode,
+              NAMENODE_WEB_UI_PORT)), LIVE_DATANODES));
+    }
+    int tasktrackers = cluster.getInstancesInRole(
+        HadoopTaskTrackerClusterActionHandler.ROLE).size();
+    if (tasktrackers > 0) {
+      probes.add(new ReadinessBarrier.HttpProbe("tasktrackers", tasktrackers,
+          new URL(String.format("http://%s:%d/jobtracker.jsp", jobtracker,
+              JOBTRACKER_WEB_UI_PORT)), ACTIVE_TASKTRACKERS));
+    }
+    new ReadinessBarrier(clusterSpec).await(cluster, "hadoop", probes);
   }
 
   private Properties createClientSideProperties(ClusterSpec clusterSpec,
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop;
+
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.HardwareProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Divides the memory of a node between the daemons that run on it, so that
+ * the task slots and any region server that share a node size their heaps
+ * from one budget. The HBase service builds on this module and uses the same
+ * budget for its region servers.
+ * <p>
+ * On a node with a tasktracker, memory is first set aside for the operating
+ * system and the datanode and tasktracker daemons. If a region server shares
+ * the node it gets 40% of the rest, but always leaves enough for one map and
+ * one reduce slot, and the task slots get what is left. A region server that
+ * has a node to itself gets 60% of the node's memory.
+ */
+public class MemoryBudget {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(MemoryBudget.class);
+
+  public static final String REGIONSERVER_ROLE = "hbase-regionserver";
+
+  /**
+   * The configuration key for the region server heap size, in megabytes,
+   * which overrides the size derived from the hardware.
+   */
+  public static final String REGIONSERVER_HEAP =
+    "whirr.hbase.regionserver.heap";
+
+  static final int MAX_DAEMON_RAM_MB = 2048;
+  static final int MIN_TASK_RAM_MB =
+    2 * HadoopConfigurationBuilder.MIN_CHILD_HEAP_MB;
+  static final int MIN_REGIONSERVER_HEAP_MB = 1000;
+  static final int MAX_REGIONSERVER_HEAP_MB = 16000;
+  static final double SHARED_REGIONSERVER_FRACTION = 0.4;
+  static final double DEDICATED_REGIONSERVER_FRACTION = 0.6;
+
+  private final HardwareProfile profile;
+  private final int regionServerHeapMb;
+  private final int taskRamMb;
+
+  /**
+   * @param roles the roles that run on the node
+   * @param regionServerHeapMb the region server heap size, or 0 to derive
+   * it from the hardware
+   */
+  public MemoryBudget(HardwareProfile profile, Set<String> roles,
+      int regionServerHeapMb) {
+    this.profile = profile;
+    boolean taskTracker = roles.contains(
+        HadoopTaskTrackerClusterActionHandler.ROLE);
+    boolean regionServer = roles.contains(REGIONSERVER_ROLE);
+    int availableMb = profile.getRamMb();
+    if (taskTracker) {
+      availableMb -= Math.min(MAX_DAEMON_RAM_MB, availableMb / 3);
+    }
+    if (regionServer && regionServerHeapMb <= 0) {
+      int maxHeapMb = taskTracker
+        ? Math.max(0, availableMb - MIN_TASK_RAM_MB) : availableMb;
+      regionServerHeapMb = (int) (availableMb * (taskTracker
+          ? SHARED_REGIONSERVER_FRACTION : DEDICATED_REGIONSERVER_FRACTION));
+      regionServerHeapMb = Math.min(maxHeapMb, Math.max(
+          MIN_REGIONSERVER_HEAP_MB,
+          Math.min(MAX_REGIONSERVER_HEAP_MB, regionServerHeapMb)));
+      if (regionServerHeapMb < MIN_REGIONSERVER_HEAP_MB) {
+        LOG.warn("Nodes with {} MB of memory are too small for a region " +
+            "server{}; its heap is limited to {} MB", new Object[] {
+            profile.getRamMb(), taskTracker ? " and task slots" : "",
+            regionServerHeapMb });
+      }
+    }
+    this.regionServerHeapMb = regionServer ? regionServerHeapMb : 0;
+    this.taskRamMb = taskTracker
+      ? Math.max(0, availableMb - this.regionServerHeapMb) : 0;
+  }
+
+  /**
+   * @return the budget for the nodes in <code>role</code>, or null if there
+   * is no hardware profile for them.
+   */
+  public static MemoryBudget forRole(Configuration config, Cluster cluster,
+      String role) {
+    HardwareProfile profile = HardwareProfile.load(cluster.getConfiguration(),
+        role);
+    if (profile == null) {
+      return null;
+    }
+    Set<String> roles = Sets.newHashSet(role);
+    for (Instance instance : cluster.getInstancesInRole(role)) {
+      roles.addAll(instance.getRoles());
+    }
+    return new MemoryBudget(profile, roles,
+        config.getInt(REGIONSERVER_HEAP, 0));
+  }
+
+  public HardwareProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * @return the region server heap size, in megabytes, or 0 if there is no
+   * region server on the node.
+   */
+  public int getRegionServerHeapMb() {
+    return regionServerHeapMb;
+  }
+
+  /**
+   * @return the memory for MapReduce task slots, in megabytes, or 0 if there
+   * is no tasktracker on the node.
+   */
+  public int getTaskRamMb() {
+    return taskRamMb;
+  }
+
+}
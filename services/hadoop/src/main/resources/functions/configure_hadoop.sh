@@ -16,8 +16,8 @@ function configure_hadoop() {
   
   case $CLOUD_PROVIDER in
     ec2 | aws-ec2 )
-      # Alias /mnt as /data
-      ln -s /mnt /data
+      # Alias /mnt as /data, unless prepare_disks has done so already
+      [ -e /data ] || ln -s /mnt /data
       ;;
     *)
       ;;
@@ -27,17 +27,38 @@ function configure_hadoop() {
   HADOOP_HOME=/usr/local/hadoop-$HADOOP_VERSION
   HADOOP_CONF_DIR=$HADOOP_HOME/conf
 
-  mkdir -p /data/hadoop
-  chown hadoop:hadoop /data/hadoop
+  # There is a data directory on each disk mounted by prepare_disks
+  for data_dir in /data /data[0-9]*; do
+    if [ -d $data_dir ]; then
+      mkdir -p $data_dir/hadoop
+      chown hadoop:hadoop $data_dir/hadoop
+    fi
+  done
   if [ ! -e /data/tmp ]; then
     mkdir /data/tmp
     chmod a+rwxt /data/tmp
   fi
-  mkdir /etc/hadoop
+  mkdir -p /etc/hadoop
   ln -s $HADOOP_CONF_DIR /etc/hadoop/conf
 
-  # Copy generated configuration files in place
-  cp /tmp/{core,hdfs,mapred}-site.xml $HADOOP_CONF_DIR
+  # Copy generated configuration files in place. The first line of each file
+  # holds a hash of its content, so files that have not changed are left alone.
+  for site_file in core-site.xml hdfs-site.xml mapred-site.xml; do
+    if [ "$(head -n 1 /tmp/$site_file)" != "$(head -n 1 $HADOOP_CONF_DIR/$site_file 2> /dev/null)" ]; then
+      cp /tmp/$site_file $HADOOP_CONF_DIR
+    fi
+  done
+
+  # The directories are configured for every disk the hardware profile lists.
+  # Drop those on disks that prepare_disks did not mount, so their data does
+  # not end up on the root disk.
+  for disk in `grep -ho '/data[0-9][0-9]*/' $HADOOP_CONF_DIR/hdfs-site.xml $HADOOP_CONF_DIR/mapred-site.xml | sort -u`; do
+    disk=${disk%/}
+    if ! mountpoint -q $disk; then
+      echo "Not using $disk, which is not mounted"
+      sed -i -e "s|,$disk/[^,<]*||g" $HADOOP_CONF_DIR/hdfs-site.xml $HADOOP_CONF_DIR/mapred-site.xml
+    fi
+  done
 
   # Keep PID files in a non-temporary directory
   sed -i -e "s|# export HADOOP_PID_DIR=.*|export HADOOP_PID_DIR=/var/run/hadoop|" \
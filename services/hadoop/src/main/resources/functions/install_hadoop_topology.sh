@@ -0,0 +1,30 @@
+function install_hadoop_topology() {
+  TOPOLOGY_DATA_FILE=$1
+
+  mkdir -p /etc/hadoop
+  if [ -f $TOPOLOGY_DATA_FILE ]; then
+    # The file may have been written more than once for nodes with several
+    # Hadoop roles
+    sort -u $TOPOLOGY_DATA_FILE > /etc/hadoop/topology.data
+    rm -f $TOPOLOGY_DATA_FILE
+  fi
+
+  # Print the rack of each host given as an argument. Hosts may be given by
+  # address or by name; names are looked up by their address.
+  cat > /etc/hadoop/topology.sh <<'EOF'
+#!/usr/bin/env bash
+DATA_FILE=/etc/hadoop/topology.data
+for host in "$@"; do
+  rack=`awk -v host=$host '$1 == host { print $2; exit }' $DATA_FILE 2> /dev/null`
+  if [ -z "$rack" ]; then
+    address=`getent hosts $host | awk '{ print $1; exit }'`
+    if [ -n "$address" ]; then
+      rack=`awk -v host=$address '$1 == host { print $2; exit }' $DATA_FILE 2> /dev/null`
+    fi
+  fi
+  echo -n "${rack:-/default-rack} "
+done
+echo
+EOF
+  chmod +x /etc/hadoop/topology.sh
+}
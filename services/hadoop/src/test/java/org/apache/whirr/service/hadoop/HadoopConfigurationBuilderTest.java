@@ -22,18 +22,25 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.HardwareProfile;
+import org.apache.whirr.service.LocationHierarchy;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.jclouds.domain.Credentials;
+import org.jclouds.domain.LocationBuilder;
+import org.jclouds.domain.LocationScope;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -108,6 +115,77 @@ public class HadoopConfigurationBuilderTest {
         conf.getString("fs.default.name"), matches("hdfs://.+:8020/"));
   }
 
+  private Instance newWorker(String address, String locationId)
+      throws Exception {
+    return new Instance(new Credentials("", ""),
+        Sets.newHashSet(HadoopDataNodeClusterActionHandler.ROLE),
+        InetAddress.getByName(address), InetAddress.getByName(address),
+        address, locationId);
+  }
+
+  @Test
+  public void testRacksFollowLocationHierarchy() throws Exception {
+    Instance worker1 = newWorker("10.0.0.1", "us-east-1a");
+    Instance worker2 = newWorker("10.0.0.2", "us-east-1b");
+    cluster = new Cluster(Sets.newLinkedHashSet(
+        Lists.newArrayList(worker1, worker2)));
+    LocationBuilder region = new LocationBuilder()
+        .scope(LocationScope.REGION).id("us-east-1").description("");
+    LocationHierarchy.store(cluster.getConfiguration(), new LocationBuilder()
+        .scope(LocationScope.ZONE).id("us-east-1a").description("")
+        .parent(region.build()).build());
+    LocationHierarchy.store(cluster.getConfiguration(), new LocationBuilder()
+        .scope(LocationScope.ZONE).id("us-east-1b").description("")
+        .parent(region.build()).build());
+    assertThat(HadoopConfigurationBuilder.getTopology(cluster),
+        is((List<String>) Lists.newArrayList("10.0.0.1 /us-east-1/us-east-1a",
+            "10.0.0.2 /us-east-1/us-east-1b")));
+  }
+
+  @Test
+  public void testRacksWithUnknownLocations() throws Exception {
+    Instance worker1 = newWorker("10.0.0.1", "us-east-1a");
+    Instance worker2 = newWorker("10.0.0.2", null);
+    cluster = new Cluster(Sets.newLinkedHashSet(
+        Lists.newArrayList(worker1, worker2)));
+    assertThat(HadoopConfigurationBuilder.getRacks(cluster).get(worker1),
+        is("/us-east-1a"));
+    assertThat(HadoopConfigurationBuilder.getRacks(cluster).get(worker2),
+        is(HadoopConfigurationBuilder.DEFAULT_RACK));
+  }
+
+  @Test
+  public void testTopologyScriptIsSetWhenLocationsAreKnown() throws Exception {
+    Instance master = new Instance(new Credentials("", ""),
+        Sets.newHashSet(HadoopNameNodeClusterActionHandler.ROLE),
+        InetAddress.getLocalHost(), InetAddress.getLocalHost(), "id",
+        "us-east-1a");
+    cluster = new Cluster(Sets.newHashSet(master));
+    Configuration conf = HadoopConfigurationBuilder.buildCommonConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(conf.getString("topology.script.file.name"),
+        is(HadoopConfigurationBuilder.TOPOLOGY_SCRIPT));
+  }
+
+  @Test
+  public void testPrivateAddresses() throws Exception {
+    Configuration overrides = new PropertiesConfiguration();
+    overrides.addProperty("whirr.use-private-addresses", "true");
+    clusterSpec = ClusterSpec.withNoDefaults(overrides);
+    Instance master = new Instance(new Credentials("", ""),
+        Sets.newHashSet(HadoopNameNodeClusterActionHandler.ROLE,
+            HadoopJobTrackerClusterActionHandler.ROLE),
+        InetAddress.getByName("100.0.0.1"), InetAddress.getByName("10.0.0.1"),
+        "id");
+    cluster = new Cluster(Sets.newHashSet(master));
+    Configuration conf = HadoopConfigurationBuilder.buildCommonConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(conf.getString("fs.default.name"), is("hdfs://10.0.0.1:8020/"));
+    conf = HadoopConfigurationBuilder.buildMapReduceConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(conf.getString("mapred.job.tracker"), is("10.0.0.1:8021"));
+  }
+
   @Test
   public void testHdfs() throws Exception {
     Configuration conf = HadoopConfigurationBuilder.buildHdfsConfiguration(
@@ -116,6 +194,17 @@ public class HadoopConfigurationBuilderTest {
     assertThat(conf.getString("p1"), is("hdfs1"));
   }
 
+  @Test
+  public void testHdfsDataSpreadAcrossDisks() throws Exception {
+    new HardwareProfile(2, 7680, 2).store(cluster.getConfiguration(),
+        HadoopDataNodeClusterActionHandler.ROLE);
+    Configuration conf = HadoopConfigurationBuilder.buildHdfsConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(conf.getStringArray("dfs.data.dir"),
+        is(new String[] { "/data/hadoop/hdfs/data",
+            "/data1/hadoop/hdfs/data" }));
+  }
+
   @Test
   public void testMapReduce() throws Exception {
     Configuration conf = HadoopConfigurationBuilder
@@ -125,4 +214,152 @@ public class HadoopConfigurationBuilderTest {
     assertThat(conf.getString("mapred.job.tracker"), matches(".+:8021"));
   }
 
+  @Test
+  public void testMapReduceTunedToHardware() throws Exception {
+    new HardwareProfile(8, 15360, 4).store(cluster.getConfiguration(),
+        HadoopTaskTrackerClusterActionHandler.ROLE);
+    Configuration conf = HadoopConfigurationBuilder
+        .buildMapReduceConfiguration(clusterSpec, cluster, defaults);
+    assertThat(conf.getInt("mapred.tasktracker.map.tasks.maximum"), is(8));
+    assertThat(conf.getInt("mapred.tasktracker.reduce.tasks.maximum"), is(4));
+    assertThat(conf.getString("mapred.child.java.opts"), is("-Xmx1109m"));
+    assertThat(conf.getInt("io.sort.mb"), is(277));
+    assertThat(conf.getStringArray("mapred.local.dir").length, is(4));
+    assertThat(conf.getString("p1"), is("mapred1"));
+  }
+
+  @Test
+  public void testMapReduceTuningForSmallHardware() throws Exception {
+    Configuration conf = tuning(new HardwareProfile(1, 1740, 1), 10);
+    assertThat(conf.getInt("mapred.tasktracker.map.tasks.maximum"), is(1));
+    assertThat(conf.getInt("mapred.tasktracker.reduce.tasks.maximum"), is(1));
+    assertThat(conf.getString("mapred.child.java.opts"), is("-Xmx580m"));
+    assertThat(conf.getInt("mapred.reduce.tasks"), is(9));
+
+    // too little memory for a slot per core
+    conf = tuning(new HardwareProfile(8, 3000, 4), 1);
+    assertThat(conf.getInt("mapred.tasktracker.map.tasks.maximum"), is(4));
+    assertThat(conf.getInt("mapred.tasktracker.reduce.tasks.maximum"), is(1));
+  }
+
+  @Test
+  public void testMapReduceTuningDoesNotOverrideUserSettings()
+      throws Exception {
+    Configuration overrides = new PropertiesConfiguration();
+    overrides.addProperty("hadoop-mapreduce.mapred.child.java.opts",
+        "-Xmx200m");
+    clusterSpec = ClusterSpec.withNoDefaults(overrides);
+    new HardwareProfile(8, 15360, 4).store(cluster.getConfiguration(),
+        HadoopTaskTrackerClusterActionHandler.ROLE);
+    Configuration conf = HadoopConfigurationBuilder
+        .buildMapReduceConfiguration(clusterSpec, cluster, defaults);
+    assertThat(conf.getString("mapred.child.java.opts"), is("-Xmx200m"));
+    assertThat(conf.getInt("mapred.child.ulimit"), is(2 * 1024 * 200));
+    assertThat(conf.getInt("mapred.tasktracker.map.tasks.maximum"), is(8));
+  }
+
+  @Test
+  public void testMapReduceTuningLeavesRoomForRegionServers()
+      throws Exception {
+    Instance worker = new Instance(new Credentials("", ""),
+        Sets.newHashSet(HadoopDataNodeClusterActionHandler.ROLE,
+            HadoopTaskTrackerClusterActionHandler.ROLE,
+            MemoryBudget.REGIONSERVER_ROLE),
+        InetAddress.getLocalHost(), InetAddress.getLocalHost(), "worker");
+    Set<Instance> instances = Sets.newHashSet(cluster.getInstances());
+    instances.add(worker);
+    cluster = new Cluster(instances);
+    HardwareProfile profile = new HardwareProfile(2, 7680, 2);
+    profile.store(cluster.getConfiguration(),
+        HadoopTaskTrackerClusterActionHandler.ROLE);
+
+    Configuration conf = HadoopConfigurationBuilder
+        .buildMapReduceConfiguration(clusterSpec, cluster, defaults);
+    int slots = conf.getInt("mapred.tasktracker.map.tasks.maximum")
+      + conf.getInt("mapred.tasktracker.reduce.tasks.maximum");
+    int childHeapMb = HadoopConfigurationBuilder.getMaxHeapMb(
+        conf.getString("mapred.child.java.opts"));
+    MemoryBudget budget = MemoryBudget.forRole(clusterSpec.getConfiguration(),
+        cluster, HadoopTaskTrackerClusterActionHandler.ROLE);
+    assertThat(slots * childHeapMb + budget.getRegionServerHeapMb()
+        <= profile.getRamMb() - 2048, is(true));
+    assertThat(budget.getRegionServerHeapMb() > 0, is(true));
+  }
+
+  @Test
+  public void testGetMaxHeapMb() {
+    assertThat(HadoopConfigurationBuilder.getMaxHeapMb("-Xmx1g -Xmx2048m"),
+        is(2048));
+    assertThat(HadoopConfigurationBuilder.getMaxHeapMb("-Xmx1048576k"),
+        is(1024));
+    assertThat(HadoopConfigurationBuilder.getMaxHeapMb("-server"), is(0));
+  }
+
+  private static Configuration tuning(HardwareProfile profile,
+      int taskTrackers) {
+    return HadoopConfigurationBuilder.buildMapReduceTuning(
+        new MemoryBudget(profile,
+            Sets.newHashSet(HadoopTaskTrackerClusterActionHandler.ROLE), 0),
+        taskTrackers);
+  }
+
+  @Test
+  public void testSiteConfigurationIsStoredInCluster() throws Exception {
+    Configuration conf = HadoopConfigurationBuilder.getSiteConfiguration(
+        clusterSpec, cluster, defaults, HadoopConfigurationBuilder.HDFS_PREFIX);
+    assertThat(conf.getString("p1"), is("hdfs1"));
+    assertThat(cluster.getConfiguration().getProperty("hadoop-hdfs.p1"),
+        is("hdfs1"));
+
+    // later lookups are answered from the cluster, not the defaults
+    defaults.setProperty("hadoop-hdfs.p1", "changed");
+    conf = HadoopConfigurationBuilder.getSiteConfiguration(
+        clusterSpec, cluster, defaults, HadoopConfigurationBuilder.HDFS_PREFIX);
+    assertThat(conf.getString("p1"), is("hdfs1"));
+    conf = HadoopConfigurationBuilder.getSiteConfiguration(clusterSpec,
+        cluster, defaults, HadoopConfigurationBuilder.COMMON_PREFIX);
+    assertThat(Iterators.size(conf.getKeys()), is(3));
+    assertThat(conf.getString("fs.default.name"), matches("hdfs://.+:8020/"));
+  }
+
+  @Test
+  public void testSiteConfigurationIsRebuiltWhenMembersChange()
+      throws Exception {
+    HadoopConfigurationBuilder.getSiteConfiguration(clusterSpec, cluster,
+        defaults, HadoopConfigurationBuilder.HDFS_PREFIX);
+    defaults.setProperty("hadoop-hdfs.p1", "changed");
+
+    Set<Instance> instances = Sets.newHashSet(cluster.getInstances());
+    instances.add(new Instance(new Credentials("", ""),
+        Sets.newHashSet(HadoopDataNodeClusterActionHandler.ROLE),
+        InetAddress.getLocalHost(), InetAddress.getLocalHost(), "worker"));
+    Cluster resized = new Cluster(instances, cluster.getConfiguration());
+    Configuration conf = HadoopConfigurationBuilder.getSiteConfiguration(
+        clusterSpec, resized, defaults, HadoopConfigurationBuilder.HDFS_PREFIX);
+    assertThat(conf.getString("p1"), is("changed"));
+  }
+
+  @Test
+  public void testRoleOverrides() throws Exception {
+    Configuration overrides = new PropertiesConfiguration();
+    overrides.addProperty("hadoop-datanode.hadoop-hdfs.p1", "datanode1");
+    overrides.addProperty("hadoop-datanode.hadoop-mapreduce.mapred.job.tracker",
+        "not-overridden");
+    clusterSpec = ClusterSpec.withNoDefaults(overrides);
+
+    Configuration conf = HadoopConfigurationBuilder.getSiteConfiguration(
+        clusterSpec, cluster, defaults, HadoopConfigurationBuilder.HDFS_PREFIX,
+        HadoopDataNodeClusterActionHandler.ROLE);
+    assertThat(conf.getString("p1"), is("datanode1"));
+    conf = HadoopConfigurationBuilder.getSiteConfiguration(clusterSpec,
+        cluster, defaults, HadoopConfigurationBuilder.MAPREDUCE_PREFIX,
+        HadoopDataNodeClusterActionHandler.ROLE);
+    assertThat(conf.getString("mapred.job.tracker"), matches(".+:8021"));
+
+    conf = HadoopConfigurationBuilder.getSiteConfiguration(
+        clusterSpec, cluster, defaults, HadoopConfigurationBuilder.HDFS_PREFIX,
+        HadoopNameNodeClusterActionHandler.ROLE);
+    assertThat(conf.getString("p1"), is("hdfs1"));
+  }
+
 }
@@ -27,6 +27,7 @@ import java.util.List;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.jclouds.scriptbuilder.domain.OsFamily;
 import org.junit.Test;
 
 public class HadoopConfigurationConverterTest {
@@ -73,4 +74,35 @@ public class HadoopConfigurationConverterTest {
     )));
   }
 
+  @Test
+  public void testContentHash() {
+    Configuration conf = new PropertiesConfiguration();
+    conf.setProperty("p1", "v1");
+    List<String> lines = HadoopConfigurationConverter.asHashedLinesInFile(conf);
+    assertThat(lines.size(), is(7));
+    assertThat(lines.get(0).matches("<!-- content-hash: [0-9a-f]{32} -->"),
+        is(true));
+    assertThat(lines.subList(1, lines.size()),
+        is(HadoopConfigurationConverter.asLinesInFile(conf)));
+
+    Configuration same = new PropertiesConfiguration();
+    same.setProperty("p1", "v1");
+    assertThat(HadoopConfigurationConverter.asHashedLinesInFile(same).get(0),
+        is(lines.get(0)));
+    same.setProperty("p1", "v2");
+    assertThat(HadoopConfigurationConverter.asHashedLinesInFile(same).get(0)
+        .equals(lines.get(0)), is(false));
+  }
+
+  @Test
+  public void testFileIsReplaced() {
+    Configuration conf = new PropertiesConfiguration();
+    conf.setProperty("p1", "v1");
+    String script = HadoopConfigurationConverter.asCreateFileStatement(
+        "/tmp/core-site.xml", conf).render(OsFamily.UNIX);
+    assertThat(script.startsWith("rm -f /tmp/core-site.xml\n"
+        + "cat >> /tmp/core-site.xml <<'END_OF_FILE'\n<!-- content-hash: "),
+        is(true));
+  }
+
 }
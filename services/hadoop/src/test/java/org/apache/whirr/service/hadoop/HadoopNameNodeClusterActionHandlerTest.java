@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.whirr.service.ReadinessBarrier;
+import org.junit.Test;
+
+public class HadoopNameNodeClusterActionHandlerTest {
+
+  @Test
+  public void testLiveDatanodesAreParsed() throws Exception {
+    String page = "<tr class=\"rowAlt\"><td id=\"col1\"> " +
+        "<a href=\"dfsnodelist.jsp?whatNodes=LIVE\">Live Nodes</a> " +
+        "<td id=\"col2\"> :<td id=\"col3\"> 12<tr class=\"rowNormal\">";
+    assertThat(ReadinessBarrier.parseCount(
+        HadoopNameNodeClusterActionHandler.LIVE_DATANODES, page), is(12));
+  }
+
+  @Test
+  public void testActiveTasktrackersAreParsed() throws Exception {
+    String page = "<tr><td>0</td><td>0</td><td>16</td><td>8</td>" +
+        "<td><a href=\"machines.jsp?type=active\">7</a></td>" +
+        "<td><a href=\"machines.jsp?type=blacklisted\">0</a></td></tr>";
+    assertThat(ReadinessBarrier.parseCount(
+        HadoopNameNodeClusterActionHandler.ACTIVE_TASKTRACKERS, page), is(7));
+  }
+
+}
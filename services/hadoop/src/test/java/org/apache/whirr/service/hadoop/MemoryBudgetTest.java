@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Sets;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.whirr.service.HardwareProfile;
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+  private static final HardwareProfile SMALL = new HardwareProfile(1, 1740, 1);
+  private static final HardwareProfile LARGE = new HardwareProfile(2, 7680, 2);
+
+  @Test
+  public void testTaskTrackerOnly() {
+    MemoryBudget budget = new MemoryBudget(LARGE,
+        Sets.newHashSet(HadoopTaskTrackerClusterActionHandler.ROLE), 0);
+    assertThat(budget.getTaskRamMb(), is(7680 - 2048));
+    assertThat(budget.getRegionServerHeapMb(), is(0));
+  }
+
+  @Test
+  public void testSharedNodeFitsInMemory() {
+    MemoryBudget budget = new MemoryBudget(LARGE,
+        Sets.newHashSet(HadoopTaskTrackerClusterActionHandler.ROLE,
+            MemoryBudget.REGIONSERVER_ROLE), 0);
+    assertThat(budget.getRegionServerHeapMb(), is(2252));
+    assertThat(budget.getTaskRamMb(), is(7680 - 2048 - 2252));
+  }
+
+  @Test
+  public void testExplicitRegionServerHeap() {
+    MemoryBudget budget = new MemoryBudget(LARGE,
+        Sets.newHashSet(HadoopTaskTrackerClusterActionHandler.ROLE,
+            MemoryBudget.REGIONSERVER_ROLE), 3000);
+    assertThat(budget.getRegionServerHeapMb(), is(3000));
+    assertThat(budget.getTaskRamMb(), is(7680 - 2048 - 3000));
+  }
+
+  @Test
+  public void testDedicatedRegionServer() {
+    MemoryBudget budget = new MemoryBudget(LARGE,
+        Sets.newHashSet(MemoryBudget.REGIONSERVER_ROLE), 0);
+    assertThat(budget.getRegionServerHeapMb(), is(4608));
+    assertThat(budget.getTaskRamMb(), is(0));
+  }
+
+  @Test
+  public void testSmallSharedNodeLeavesRoomForTasks() {
+    MemoryBudget budget = new MemoryBudget(SMALL,
+        Sets.newHashSet(HadoopTaskTrackerClusterActionHandler.ROLE,
+            MemoryBudget.REGIONSERVER_ROLE), 0);
+    assertThat(budget.getRegionServerHeapMb(), is(1740 - 580 - 800));
+    assertThat(budget.getTaskRamMb(), is(800));
+
+    Configuration conf = HadoopConfigurationBuilder.buildMapReduceTuning(
+        budget, 1);
+    assertThat(conf.getInt("mapred.tasktracker.map.tasks.maximum"), is(1));
+    assertThat(conf.getInt("mapred.tasktracker.reduce.tasks.maximum"), is(1));
+    assertThat(conf.getString("mapred.child.java.opts"), is("-Xmx400m"));
+    assertThat(conf.getInt("io.sort.mb") < 400, is(true));
+  }
+
+}
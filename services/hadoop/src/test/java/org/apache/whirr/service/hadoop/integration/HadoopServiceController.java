@@ -18,10 +18,15 @@
 
 package org.apache.whirr.service.hadoop.integration;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
 import java.io.IOException;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -54,6 +59,8 @@ public class HadoopServiceController {
   private Service service;
   private HadoopProxy proxy;
   private Cluster cluster;
+  private org.apache.commons.configuration.Configuration overrides;
+  private Map<String, String> clientOverrides = Maps.newHashMap();
   
   private HadoopServiceController() {
   }
@@ -71,10 +78,10 @@ public class HadoopServiceController {
   public synchronized void startup() throws Exception {
     LOG.info("Starting up cluster...");
     CompositeConfiguration config = new CompositeConfiguration();
-    if (System.getProperty("config") != null) {
-      config.addConfiguration(new PropertiesConfiguration(System.getProperty("config")));
+    if (overrides != null) {
+      config.addConfiguration(overrides);
     }
-    config.addConfiguration(new PropertiesConfiguration("whirr-hadoop-test.properties"));
+    config.addConfiguration(getBaseConfiguration());
     clusterSpec = ClusterSpec.withTemporaryKeys(config);
     service = new Service();
     
@@ -90,6 +97,45 @@ public class HadoopServiceController {
     running = true;
   }
   
+  /**
+   * @return the configuration that clusters are launched with, before any
+   * overrides are applied.
+   */
+  public CompositeConfiguration getBaseConfiguration()
+      throws ConfigurationException {
+    CompositeConfiguration config = new CompositeConfiguration();
+    if (System.getProperty("config") != null) {
+      config.addConfiguration(new PropertiesConfiguration(System.getProperty("config")));
+    }
+    config.addConfiguration(new PropertiesConfiguration("whirr-hadoop-test.properties"));
+    return config;
+  }
+
+  /**
+   * Set properties that take precedence over the test configuration when
+   * the cluster is next started.
+   */
+  public synchronized void setConfigurationOverrides(
+      org.apache.commons.configuration.Configuration overrides) {
+    this.overrides = overrides;
+  }
+
+  /**
+   * Set Hadoop properties that are added to the client-side configuration,
+   * and so apply to the jobs and file system operations of the benchmarks.
+   */
+  public synchronized void setClientOverrides(Map<String, String> overrides) {
+    this.clientOverrides = Maps.newHashMap(overrides);
+  }
+
+  public synchronized Map<String, String> getClientOverrides() {
+    return ImmutableMap.copyOf(clientOverrides);
+  }
+
+  public ClusterSpec getClusterSpec() {
+    return clusterSpec;
+  }
+
   public Cluster getCluster() {
     return cluster;
   }
@@ -99,6 +145,9 @@ public class HadoopServiceController {
     for (Entry<Object, Object> entry : cluster.getConfiguration().entrySet()) {
       conf.set(entry.getKey().toString(), entry.getValue().toString());
     }
+    for (Entry<String, String> entry : clientOverrides.entrySet()) {
+      conf.set(entry.getKey(), entry.getValue());
+    }
     return conf;
   }
   
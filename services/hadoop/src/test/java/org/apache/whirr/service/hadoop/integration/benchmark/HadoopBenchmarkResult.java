@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop.integration.benchmark;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.ClusterStatus;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobStatus;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.benchmark.BenchmarkResult;
+
+/**
+ * The result of a Hadoop benchmark run. In addition to the keys of a
+ * {@link BenchmarkResult} it records:
+ * <ul>
+ * <li><code>cluster.tasktrackers</code>, <code>cluster.max-map-tasks</code>,
+ * <code>cluster.max-reduce-tasks</code></li>
+ * <li><code>tuning.&lt;key&gt;</code> for each of the {@link #TUNING_KEYS}
+ * that the cluster was launched with, including those derived from the
+ * hardware</li>
+ * <li><code>client.&lt;key&gt;</code> for each Hadoop property that was
+ * overridden in the client-side configuration of the benchmark's jobs</li>
+ * <li><code>counter.&lt;phase&gt;.&lt;run&gt;.&lt;group&gt;.&lt;counter&gt;</code></li>
+ * </ul>
+ */
+public class HadoopBenchmarkResult extends BenchmarkResult {
+
+  /**
+   * The MapReduce settings that are derived from the tasktracker hardware
+   * when they are not set in the cluster spec.
+   */
+  static final String[] TUNING_KEYS = {
+    "mapred.tasktracker.map.tasks.maximum",
+    "mapred.tasktracker.reduce.tasks.maximum",
+    "mapred.child.java.opts", "mapred.child.ulimit", "io.sort.mb",
+    "mapred.reduce.tasks"
+  };
+
+  /**
+   * The prefix of the MapReduce site configuration in the cluster's
+   * properties.
+   */
+  private static final String MAPREDUCE_SITE_PREFIX = "hadoop-mapreduce.";
+
+  public HadoopBenchmarkResult(String benchmark) {
+    super(benchmark);
+  }
+
+  /**
+   * @param clientOverrides the Hadoop properties that the benchmark's jobs
+   * are run with in addition to the cluster's configuration
+   */
+  public void recordCluster(ClusterSpec clusterSpec, Cluster cluster,
+      JobClient client, Map<String, String> clientOverrides)
+      throws IOException {
+    recordCluster(clusterSpec, "hadoop-");
+
+    ClusterStatus status = client.getClusterStatus();
+    set("cluster.tasktrackers", status.getTaskTrackers());
+    set("cluster.max-map-tasks", status.getMaxMapTasks());
+    set("cluster.max-reduce-tasks", status.getMaxReduceTasks());
+
+    Properties site = cluster.getConfiguration();
+    for (String key : TUNING_KEYS) {
+      set(TUNING_PREFIX + key, site.getProperty(MAPREDUCE_SITE_PREFIX + key));
+    }
+    for (Map.Entry<String, String> entry : clientOverrides.entrySet()) {
+      set(CLIENT_PREFIX + entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Record the counters of the most recently started job.
+   */
+  public void recordCounters(String phase, int run, JobClient client)
+      throws IOException {
+    JobStatus latest = null;
+    for (JobStatus status : client.getAllJobs()) {
+      if (latest == null || status.getStartTime() > latest.getStartTime()) {
+        latest = status;
+      }
+    }
+    if (latest == null) {
+      return;
+    }
+    RunningJob job = client.getJob(latest.getJobID());
+    if (job == null || job.getCounters() == null) {
+      return;
+    }
+    for (Counters.Group group : job.getCounters()) {
+      for (Counters.Counter counter : group) {
+        set(String.format("counter.%s.%d.%s.%s", phase, run,
+            group.getName(), counter.getName()), counter.getValue());
+      }
+    }
+  }
+
+}
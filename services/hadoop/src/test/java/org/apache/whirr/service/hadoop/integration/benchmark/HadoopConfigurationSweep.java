@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop.integration.benchmark;
+
+import static junit.framework.Assert.assertNotNull;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.benchmark.BenchmarkResult;
+import org.apache.whirr.service.hadoop.integration.HadoopServiceController;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the benchmarks in {@link HadoopBenchmarkSuite} once for every point
+ * in a grid of Hadoop configuration settings, and reports the mean time and
+ * 95% confidence interval of each phase at each point.
+ * <p>
+ * The grid is given by the <code>sweepGrid</code> system property as a list
+ * of dimensions separated by semicolons, each a Whirr Hadoop property and
+ * its comma-separated values, for example
+ * <pre>
+ * -Dtest=HadoopConfigurationSweep \
+ * -DsweepGrid="hadoop-mapreduce.io.sort.mb=100,200;hadoop-mapreduce.mapred.tasktracker.reduce.tasks.maximum=2,4"
+ * </pre>
+ * The settings in {@link #CLIENT_PROPERTIES} are read from the configuration
+ * that a job is submitted with, so they are applied to the client
+ * configuration of the benchmark jobs and the points that only differ in
+ * them share a cluster. Any other setting may be read by a daemon when it
+ * starts, so the cluster is relaunched with it whenever it changes. The grid
+ * is ordered so that these settings change as rarely as possible. Keys must
+ * be <code>hadoop-common</code>, <code>hadoop-hdfs</code> or
+ * <code>hadoop-mapreduce</code> properties.
+ * <p>
+ * The result files for each point are written to a subdirectory of the
+ * {@value BenchmarkResult#RESULTS_DIR} directory, and a summary is written
+ * next to them. The best point is the one with the lowest mean time for the
+ * phase named by <code>sweepObjective</code>, by default
+ * <code>terasort.TeraSort</code>.
+ */
+public class HadoopConfigurationSweep {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HadoopConfigurationSweep.class);
+
+  private static final String[] SITE_PREFIXES = {
+    "hadoop-common.", "hadoop-hdfs.", "hadoop-mapreduce."
+  };
+
+  /**
+   * Hadoop properties that take effect for a job when they are set in the
+   * configuration it is submitted with, or for a file when set in the
+   * configuration of the client that writes it.
+   */
+  static final Set<String> CLIENT_PROPERTIES = ImmutableSet.of(
+    "io.sort.mb", "io.sort.factor", "io.sort.record.percent",
+    "io.sort.spill.percent", "mapred.map.tasks", "mapred.reduce.tasks",
+    "mapred.child.java.opts", "mapred.child.ulimit",
+    "mapred.compress.map.output", "mapred.map.output.compression.codec",
+    "mapred.output.compress", "mapred.output.compression.type",
+    "mapred.output.compression.codec", "mapred.reduce.parallel.copies",
+    "mapred.job.shuffle.input.buffer.percent",
+    "mapred.job.shuffle.merge.percent", "mapred.inmem.merge.threshold",
+    "mapred.job.reduce.input.buffer.percent",
+    "mapred.reduce.slowstart.completed.maps",
+    "mapred.map.tasks.speculative.execution",
+    "mapred.reduce.tasks.speculative.execution",
+    "mapred.job.reuse.jvm.num.tasks", "mapred.min.split.size",
+    "dfs.block.size", "dfs.replication");
+
+  private HadoopServiceController controller =
+    HadoopServiceController.getInstance();
+
+  @Test
+  public void sweep() throws Exception {
+    String grid = System.getProperty("sweepGrid");
+    assertNotNull("Set sweepGrid to the settings to sweep", grid);
+    String objective = System.getProperty("sweepObjective",
+        "terasort.TeraSort");
+    List<Map<String, String>> points = parseGrid(grid);
+    String resultsDir = System.getProperty(BenchmarkResult.RESULTS_DIR,
+        "target/benchmark-results");
+    File sweepDir = new File(resultsDir,
+        "sweep-" + System.currentTimeMillis());
+    LOG.info("Sweeping {} configurations", points.size());
+
+    List<SortedMap<String, List<Long>>> times = Lists.newArrayList();
+    Map<String, String> daemonSettings = null;
+    try {
+      for (int i = 0; i < points.size(); i++) {
+        Map<String, String> point = points.get(i);
+        LOG.info("Running configuration {} of {}: {}", new Object[] {
+            i + 1, points.size(), point });
+        Map<String, String> settings = getDaemonSettings(point);
+        if (!settings.equals(daemonSettings)) {
+          if (daemonSettings != null) {
+            controller.shutdown();
+          }
+          controller.setConfigurationOverrides(toConfiguration(settings));
+          controller.startup();
+          daemonSettings = settings;
+        }
+        controller.setClientOverrides(getClientSettings(point));
+
+        File pointDir = new File(sweepDir, "point-" + i);
+        System.setProperty(BenchmarkResult.RESULTS_DIR, pointDir.getPath());
+        Result result = JUnitCore.runClasses(
+            HadoopServiceTestDFSIOBenchmark.class,
+            HadoopServiceTeraSortBenchmark.class);
+        for (Failure failure : result.getFailures()) {
+          LOG.warn("Benchmark failed for " + point, failure.getException());
+        }
+        times.add(BenchmarkResult.loadPhaseTimes(pointDir));
+      }
+    } finally {
+      System.setProperty(BenchmarkResult.RESULTS_DIR, resultsDir);
+      controller.setClientOverrides(Maps.<String, String>newHashMap());
+      controller.setConfigurationOverrides(null);
+      controller.shutdown();
+    }
+
+    String summary = summarize(points, times, objective);
+    LOG.info("Configuration sweep results:\n{}", summary);
+    Files.write(summary, new File(sweepDir, "summary.txt"), Charsets.UTF_8);
+  }
+
+  /**
+   * @return every combination of the values in <code>grid</code>, with the
+   * daemon settings varying slowest.
+   */
+  static List<Map<String, String>> parseGrid(String grid) {
+    List<String> keys = Lists.newArrayList();
+    Map<String, List<String>> dimensions = Maps.newHashMap();
+    for (String dimension : Splitter.on(';').trimResults().omitEmptyStrings()
+        .split(grid)) {
+      int equals = dimension.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("Grid dimension " + dimension
+            + " is not of the form key=value1,value2");
+      }
+      String key = dimension.substring(0, equals).trim();
+      if (getHadoopName(key).equals(key)) {
+        throw new IllegalArgumentException("Grid key " + key + " is not a "
+            + "hadoop-common, hadoop-hdfs or hadoop-mapreduce property");
+      }
+      if (isDaemonProperty(key)) {
+        keys.add(daemonKeyCount(keys), key);
+      } else {
+        keys.add(key);
+      }
+      dimensions.put(key, Lists.newArrayList(Splitter.on(',').trimResults()
+          .omitEmptyStrings().split(dimension.substring(equals + 1))));
+    }
+    List<Map<String, String>> points = Lists.newArrayList();
+    points.add(Maps.<String, String>newLinkedHashMap());
+    for (String key : keys) {
+      List<Map<String, String>> expanded = Lists.newArrayList();
+      for (Map<String, String> point : points) {
+        for (String value : dimensions.get(key)) {
+          Map<String, String> next = Maps.newLinkedHashMap(point);
+          next.put(key, value);
+          expanded.add(next);
+        }
+      }
+      points = expanded;
+    }
+    return points;
+  }
+
+  private static int daemonKeyCount(List<String> keys) {
+    int count = 0;
+    for (String key : keys) {
+      if (isDaemonProperty(key)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return true unless the Whirr Hadoop property <code>key</code> is known
+   * to take effect without restarting the daemons.
+   */
+  static boolean isDaemonProperty(String key) {
+    return !CLIENT_PROPERTIES.contains(getHadoopName(key));
+  }
+
+  /**
+   * @return the Hadoop property name for a Whirr property such as
+   * <code>hadoop-mapreduce.io.sort.mb</code>, or <code>key</code> if it is
+   * not one.
+   */
+  static String getHadoopName(String key) {
+    for (String prefix : SITE_PREFIXES) {
+      if (key.startsWith(prefix)) {
+        return key.substring(prefix.length());
+      }
+    }
+    return key;
+  }
+
+  private static Map<String, String> getDaemonSettings(
+      Map<String, String> point) {
+    Map<String, String> settings = Maps.newTreeMap();
+    for (Map.Entry<String, String> entry : point.entrySet()) {
+      if (isDaemonProperty(entry.getKey())) {
+        settings.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return settings;
+  }
+
+  private static Map<String, String> getClientSettings(
+      Map<String, String> point) {
+    Map<String, String> settings = Maps.newHashMap();
+    for (Map.Entry<String, String> entry : point.entrySet()) {
+      if (!isDaemonProperty(entry.getKey())) {
+        settings.put(getHadoopName(entry.getKey()), entry.getValue());
+      }
+    }
+    return settings;
+  }
+
+  private static PropertiesConfiguration toConfiguration(
+      Map<String, String> settings) {
+    PropertiesConfiguration config = new PropertiesConfiguration();
+    for (Map.Entry<String, String> entry : settings.entrySet()) {
+      config.setProperty(entry.getKey(), entry.getValue());
+    }
+    return config;
+  }
+
+  static String summarize(List<Map<String, String>> points,
+      List<SortedMap<String, List<Long>>> times, String objective) {
+    StringBuilder summary = new StringBuilder();
+    int best = -1;
+    double bestTime = Double.MAX_VALUE;
+    for (int i = 0; i < points.size(); i++) {
+      summary.append(String.format("point-%d %s%n", i,
+          Joiner.on(' ').withKeyValueSeparator("=").join(points.get(i))));
+      if (times.get(i).isEmpty()) {
+        summary.append("  no results\n");
+      }
+      for (Map.Entry<String, List<Long>> entry : times.get(i).entrySet()) {
+        double[] interval = BenchmarkResult.getConfidenceInterval(entry.getValue());
+        summary.append(String.format("  %-24s %10.0f ms +/- %.0f ms (n=%d)%n",
+            entry.getKey(), interval[0], interval[1],
+            entry.getValue().size()));
+        if (entry.getKey().equals(objective) && interval[0] < bestTime) {
+          best = i;
+          bestTime = interval[0];
+        }
+      }
+    }
+    if (best >= 0) {
+      summary.append(String.format("Best %s: point-%d at %.0f ms%n",
+          objective, best, bestTime));
+    } else {
+      summary.append("No results for " + objective + "\n");
+    }
+    return summary.toString();
+  }
+
+}
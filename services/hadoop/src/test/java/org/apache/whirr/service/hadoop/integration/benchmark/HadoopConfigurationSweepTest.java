@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop.integration.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HadoopConfigurationSweepTest {
+
+  @Test
+  public void testGridVariesDaemonSettingsSlowest() {
+    List<Map<String, String>> points = HadoopConfigurationSweep.parseGrid(
+        "hadoop-mapreduce.io.sort.mb=100,200; "
+        + "hadoop-mapreduce.mapred.tasktracker.map.tasks.maximum=2,4");
+    assertThat(points.size(), is(4));
+    assertThat(points.get(0).get(
+        "hadoop-mapreduce.mapred.tasktracker.map.tasks.maximum"), is("2"));
+    assertThat(points.get(1).get(
+        "hadoop-mapreduce.mapred.tasktracker.map.tasks.maximum"), is("2"));
+    assertThat(points.get(1).get("hadoop-mapreduce.io.sort.mb"), is("200"));
+    assertThat(points.get(2).get(
+        "hadoop-mapreduce.mapred.tasktracker.map.tasks.maximum"), is("4"));
+  }
+
+  @Test
+  public void testDaemonProperties() {
+    assertThat(HadoopConfigurationSweep.isDaemonProperty(
+        "hadoop-hdfs.dfs.datanode.handler.count"), is(true));
+    assertThat(HadoopConfigurationSweep.isDaemonProperty(
+        "hadoop-mapreduce.io.sort.mb"), is(false));
+    // read by the tasktracker, despite its prefix
+    assertThat(HadoopConfigurationSweep.isDaemonProperty(
+        "hadoop-mapreduce.mapred.local.dir"), is(true));
+    assertThat(HadoopConfigurationSweep.isDaemonProperty(
+        "hadoop-common.io.file.buffer.size"), is(true));
+    assertThat(HadoopConfigurationSweep.isDaemonProperty(
+        "hadoop-hdfs.dfs.replication"), is(false));
+    assertThat(HadoopConfigurationSweep.getHadoopName(
+        "hadoop-mapreduce.io.sort.mb"), is("io.sort.mb"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGridRejectsOtherProperties() {
+    HadoopConfigurationSweep.parseGrid("whirr.hardware-id=m1.large");
+  }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop.integration.benchmark;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.benchmark.BenchmarkResult;
+import org.apache.whirr.service.hadoop.integration.HadoopServiceController;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the benchmarks in {@link HadoopBenchmarkSuite} on clusters of
+ * increasing size, and reports how efficiently each phase scales.
+ * <p>
+ * The base cluster is the one that {@link HadoopServiceController} launches.
+ * For each worker count in the <code>scalingWorkerCounts</code> system
+ * property (by default <code>2,4,8,16,32,64</code>), the instance templates
+ * with a <code>hadoop-tasktracker</code> role are resized to that count and
+ * a new cluster is launched, since Whirr can't resize a running cluster.
+ * <pre>
+ * -Dtest=HadoopScalingStudy -DscalingWorkerCounts=2,4,8
+ * </pre>
+ * The efficiency of a phase at <i>n</i> workers is measured against the
+ * smallest cluster. TeraSort generates a fixed amount of data per node, so
+ * its phases should take constant time, and the efficiency is
+ * <i>T(n<sub>0</sub>) / T(n)</i>. TestDFSIO does a fixed amount of work, so
+ * its phases should speed up linearly, and the efficiency is
+ * <i>n<sub>0</sub> T(n<sub>0</sub>) / n T(n)</i>.
+ * <p>
+ * The result files for each size are written to a subdirectory of the
+ * {@value BenchmarkResult#RESULTS_DIR} directory, and the curve is written
+ * next to them as <code>scaling.csv</code>.
+ */
+public class HadoopScalingStudy {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HadoopScalingStudy.class);
+
+  private static final String WORKER_ROLE = "hadoop-tasktracker";
+
+  /**
+   * Benchmarks whose work grows with the number of workers.
+   */
+  private static final Set<String> WEAK_SCALING_BENCHMARKS =
+    Sets.newHashSet("terasort");
+
+  private HadoopServiceController controller =
+    HadoopServiceController.getInstance();
+
+  @Test
+  public void study() throws Exception {
+    List<Integer> workerCounts = parseWorkerCounts(
+        System.getProperty("scalingWorkerCounts", "2,4,8,16,32,64"));
+    String[] templates = controller.getBaseConfiguration().getStringArray(
+        ClusterSpec.Property.INSTANCE_TEMPLATES.getConfigName());
+    String resultsDir = System.getProperty(BenchmarkResult.RESULTS_DIR,
+        "target/benchmark-results");
+    File studyDir = new File(resultsDir,
+        "scaling-" + System.currentTimeMillis());
+
+    SortedMap<Integer, SortedMap<String, List<Long>>> times =
+      Maps.newTreeMap();
+    try {
+      for (int workers : workerCounts) {
+        PropertiesConfiguration overrides = new PropertiesConfiguration();
+        overrides.setProperty(
+            ClusterSpec.Property.INSTANCE_TEMPLATES.getConfigName(),
+            Joiner.on(',').join(resize(templates, workers)));
+        LOG.info("Launching a cluster with {} workers", workers);
+        controller.setConfigurationOverrides(overrides);
+        try {
+          controller.startup();
+          File sizeDir = new File(studyDir, "workers-" + workers);
+          System.setProperty(BenchmarkResult.RESULTS_DIR, sizeDir.getPath());
+          Result result = JUnitCore.runClasses(
+              HadoopServiceTestDFSIOBenchmark.class,
+              HadoopServiceTeraSortBenchmark.class);
+          for (Failure failure : result.getFailures()) {
+            LOG.warn("Benchmark failed with " + workers + " workers",
+                failure.getException());
+          }
+          times.put(workers,
+              BenchmarkResult.loadPhaseTimes(sizeDir));
+        } catch (Exception e) {
+          LOG.warn("Could not launch a cluster with " + workers + " workers",
+              e);
+        } finally {
+          controller.shutdown();
+        }
+      }
+    } finally {
+      System.setProperty(BenchmarkResult.RESULTS_DIR, resultsDir);
+      controller.setConfigurationOverrides(null);
+    }
+
+    String curve = getScalingCurve(times);
+    LOG.info("Scaling results:\n{}", curve);
+    Files.write(curve, new File(studyDir, "scaling.csv"), Charsets.UTF_8);
+  }
+
+  static List<Integer> parseWorkerCounts(String counts) {
+    List<Integer> workerCounts = Lists.newArrayList();
+    for (String count : Splitter.on(',').trimResults().omitEmptyStrings()
+        .split(counts)) {
+      workerCounts.add(Integer.parseInt(count));
+    }
+    return workerCounts;
+  }
+
+  /**
+   * @return <code>templates</code> with the number of instances in each
+   * template that has a {@value #WORKER_ROLE} role set to
+   * <code>workers</code>.
+   */
+  static List<String> resize(String[] templates, int workers) {
+    List<String> resized = Lists.newArrayList();
+    for (String template : templates) {
+      String[] parts = template.trim().split(" +", 2);
+      if (parts.length == 2 && Lists.newArrayList(parts[1].split("\\+"))
+          .contains(WORKER_ROLE)) {
+        resized.add(workers + " " + parts[1]);
+      } else {
+        resized.add(template.trim());
+      }
+    }
+    return resized;
+  }
+
+  /**
+   * @return a CSV table of the mean time, confidence interval and
+   * efficiency of each phase at each size.
+   */
+  static String getScalingCurve(
+      SortedMap<Integer, SortedMap<String, List<Long>>> times) {
+    StringBuilder curve = new StringBuilder(
+        "phase,workers,mean_ms,ci_ms,efficiency\n");
+    Map<String, double[]> reference = Maps.newHashMap();
+    for (Map.Entry<Integer, SortedMap<String, List<Long>>> size :
+        times.entrySet()) {
+      int workers = size.getKey();
+      for (Map.Entry<String, List<Long>> phase : size.getValue().entrySet()) {
+        double[] interval = BenchmarkResult.getConfidenceInterval(
+            phase.getValue());
+        double[] base = reference.get(phase.getKey());
+        if (base == null) {
+          base = new double[] { workers, interval[0] };
+          reference.put(phase.getKey(), base);
+        }
+        curve.append(String.format("%s,%d,%.0f,%.0f,%.3f%n", phase.getKey(),
+            workers, interval[0], interval[1],
+            getEfficiency(phase.getKey(), base[0], base[1], workers,
+                interval[0])));
+      }
+    }
+    return curve.toString();
+  }
+
+  static double getEfficiency(String phase, double baseWorkers,
+      double baseTime, double workers, double time) {
+    String benchmark = phase.substring(0, phase.indexOf('.'));
+    if (WEAK_SCALING_BENCHMARKS.contains(benchmark)) {
+      return baseTime / time;
+    }
+    return (baseWorkers * baseTime) / (workers * time);
+  }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hadoop.integration.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class HadoopScalingStudyTest {
+
+  @Test
+  public void testResizeOnlyChangesWorkerTemplates() {
+    List<String> templates = HadoopScalingStudy.resize(new String[] {
+        "1 hadoop-jobtracker+hadoop-namenode",
+        " 1 hadoop-datanode+hadoop-tasktracker" }, 16);
+    assertThat(templates.size(), is(2));
+    assertThat(templates.get(0), is("1 hadoop-jobtracker+hadoop-namenode"));
+    assertThat(templates.get(1), is("16 hadoop-datanode+hadoop-tasktracker"));
+  }
+
+  @Test
+  public void testEfficiency() {
+    // TeraSort has a fixed amount of data per worker
+    assertThat(HadoopScalingStudy.getEfficiency("terasort.TeraSort",
+        2, 1000, 8, 1250), is(0.8));
+    // TestDFSIO has a fixed amount of data in total
+    assertThat(HadoopScalingStudy.getEfficiency("testdfsio.write",
+        2, 1000, 8, 500), is(0.5));
+  }
+
+}
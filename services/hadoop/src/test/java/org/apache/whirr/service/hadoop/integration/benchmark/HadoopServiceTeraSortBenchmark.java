@@ -31,6 +31,8 @@ import org.apache.hadoop.examples.terasort.TeraValidate;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.whirr.service.benchmark.BenchmarkComparator;
 import org.apache.whirr.service.hadoop.integration.HadoopServiceController;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -66,11 +68,20 @@ public class HadoopServiceTeraSortBenchmark {
   @Test
   public void testTeraSort() throws Exception {
     int runs = Integer.parseInt(System.getProperty("terasortRuns", "3"));
+    JobClient client = new JobClient(controller.getJobConf());
+    HadoopBenchmarkResult result = new HadoopBenchmarkResult("terasort");
+    result.recordCluster(controller.getClusterSpec(),
+        controller.getCluster(), client, controller.getClientOverrides());
+    result.getProperties().setProperty("terasort.bytes-per-node",
+        System.getProperty("terasortBytesPerNode", "1000000000"));
     for (int i = 0; i < runs; i++) {
       LOG.info("Starting TeraSort run {} of {}", i + 1, runs);
-      runTeraGen();
-      runTeraSort();
-      runTeraValidate();
+      result.recordPhase("TeraGen", i, runTeraGen());
+      result.recordCounters("TeraGen", i, client);
+      result.recordPhase("TeraSort", i, runTeraSort());
+      result.recordCounters("TeraSort", i, client);
+      result.recordPhase("TeraValidate", i, runTeraValidate());
+      result.recordCounters("TeraValidate", i, client);
           
       FileSystem fs = FileSystem.get(controller.getConfiguration());
       FSDataInputStream in = fs.open(new Path("report/part-00000"));
@@ -90,9 +101,12 @@ public class HadoopServiceTeraSortBenchmark {
       fs.delete(new Path("report"), true);
       LOG.info("Completed TeraSort run {} of {}", i + 1, runs);
     }
+    // compare before writing, so the baseline can't be this result
+    BenchmarkComparator.checkAgainstBaseline(result);
+    result.write();
   }
 
-  private void runTeraGen() throws IOException {
+  private long runTeraGen() throws IOException {
     int numTaskTrackers = controller.getCluster().getInstances().size() - 1;
     long bytesPerNode =
       Long.parseLong(System.getProperty("terasortBytesPerNode", "1000000000"));
@@ -106,9 +120,10 @@ public class HadoopServiceTeraSortBenchmark {
     teraGen.run(new String[] { "" + rows, "input" });
     stopWatch.stop();
     LOG.info("TeraGen took {} ms", stopWatch.getTime());
+    return stopWatch.getTime();
   }
 
-  private void runTeraSort() throws Exception {
+  private long runTeraSort() throws Exception {
     StopWatch stopWatch = new StopWatch();
     TeraSort teraSort = new TeraSort();
     teraSort.setConf(controller.getJobConf());
@@ -117,9 +132,10 @@ public class HadoopServiceTeraSortBenchmark {
     teraSort.run(new String[] { "input", "output" });
     stopWatch.stop();
     LOG.info("TeraSort took {} ms", stopWatch.getTime());
+    return stopWatch.getTime();
   }
 
-  private void runTeraValidate() throws Exception {
+  private long runTeraValidate() throws Exception {
     StopWatch stopWatch = new StopWatch();
     TeraValidate teraValidate = new TeraValidate();
     teraValidate.setConf(controller.getJobConf());
@@ -128,5 +144,6 @@ public class HadoopServiceTeraSortBenchmark {
     teraValidate.run(new String[] { "output", "report" });
     stopWatch.stop();
     LOG.info("TeraValidate took {} ms", stopWatch.getTime());
+    return stopWatch.getTime();
   }
 }
@@ -17,8 +17,11 @@
  */
 package org.apache.whirr.service.hadoop.integration.benchmark;
 
+import org.apache.commons.lang.time.StopWatch;
 import org.apache.hadoop.fs.TestDFSIO;
+import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.whirr.service.benchmark.BenchmarkComparator;
 import org.apache.whirr.service.hadoop.integration.HadoopServiceController;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -30,6 +33,8 @@ public class HadoopServiceTestDFSIOBenchmark {
   private static final Logger LOG =
     LoggerFactory.getLogger(HadoopServiceTestDFSIOBenchmark.class);
 
+  private static final String OPTIONS = "-nrFiles 10 -fileSize 1000";
+
   private static boolean shutdownClusterOnTearDown;
   private static HadoopServiceController controller =
     HadoopServiceController.getInstance();
@@ -54,16 +59,35 @@ public class HadoopServiceTestDFSIOBenchmark {
     // (https://issues.apache.org/jira/browse/MAPREDUCE-1832)
     // so we use a local copy of TestDFSIO with this patch
     int runs = Integer.parseInt(System.getProperty("testDFSIORuns", "3"));
+    JobClient client = new JobClient(controller.getJobConf());
+    HadoopBenchmarkResult result = new HadoopBenchmarkResult("testdfsio");
+    result.recordCluster(controller.getClusterSpec(),
+        controller.getCluster(), client, controller.getClientOverrides());
+    result.getProperties().setProperty("testdfsio.options", OPTIONS);
     for (int i = 0; i < runs; i++) {
       LOG.info("Starting TestDFSIO run {} of {}", i + 1, runs);
       TestDFSIO testDFSIO = new TestDFSIO();
       JobConf jobConf = controller.getJobConf();
       jobConf.set("test.build.data", "/user/root/benchmark/TestDFSIO");
       testDFSIO.setConf(jobConf);
-      testDFSIO.run("-write -nrFiles 10 -fileSize 1000".split(" "));
-      testDFSIO.run("-read -nrFiles 10 -fileSize 1000".split(" "));
+      result.recordPhase("write", i, run(testDFSIO, "-write " + OPTIONS));
+      result.recordCounters("write", i, client);
+      result.recordPhase("read", i, run(testDFSIO, "-read " + OPTIONS));
+      result.recordCounters("read", i, client);
       testDFSIO.run(new String[] { "-clean" });
       LOG.info("Completed TestDFSIO run {} of {}", i + 1, runs);
     }
+    // compare before writing, so the baseline can't be this result
+    BenchmarkComparator.checkAgainstBaseline(result);
+    result.write();
+  }
+
+  private long run(TestDFSIO testDFSIO, String args) throws Exception {
+    StopWatch stopWatch = new StopWatch();
+    stopWatch.start();
+    testDFSIO.run(args.split(" "));
+    stopWatch.stop();
+    LOG.info("TestDFSIO {} took {} ms", args, stopWatch.getTime());
+    return stopWatch.getTime();
   }
 }
@@ -18,10 +18,13 @@
 
 package org.apache.whirr.service.hbase;
 
+import java.io.IOException;
+
 import org.apache.commons.configuration.CompositeConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.ClusterActionEvent;
 import org.apache.whirr.service.ClusterActionHandlerSupport;
 import org.apache.whirr.service.ClusterSpec;
 import org.slf4j.Logger;
@@ -62,4 +65,30 @@ public abstract class HBaseClusterActionHandler
     }
     return config;
   }
+
+  /**
+   * Adds a statement that writes the generated <code>hbase-site.xml</code>
+   * for <code>role</code> to a temporary file, and returns the arguments
+   * that pass it and the region server heap size to the configure function.
+   * Each role gets its own file, since several HBase roles may share a node.
+   */
+  protected String[] addHBaseSiteStatement(ClusterActionEvent event,
+      String role) throws IOException {
+    String path = String.format("/tmp/%s-%s", role,
+        HBaseConstants.FILE_HBASE_SITE_XML);
+    try {
+      event.getStatementBuilder().addStatement(
+          HBaseConfigurationBuilder.buildHBaseSite(path,
+              event.getClusterSpec(), event.getCluster()));
+    } catch (ConfigurationException e) {
+      throw new IOException(e);
+    }
+    int heapMb = HBaseConfigurationBuilder.getRegionServerHeapMb(
+        getConfiguration(event.getClusterSpec()), event.getCluster());
+    if (heapMb > 0) {
+      return new String[] { HBaseConstants.PARAM_SITE_FILE, path,
+          HBaseConstants.PARAM_REGIONSERVER_HEAP, Integer.toString(heapMb) };
+    }
+    return new String[] { HBaseConstants.PARAM_SITE_FILE, path };
+  }
 }
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hbase;
+
+import static org.apache.whirr.service.RolePredicates.role;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.IOException;
+
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.net.InternalAddresses;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.hadoop.HadoopConfigurationConverter;
+import org.apache.whirr.service.hadoop.MemoryBudget;
+import org.apache.whirr.service.zookeeper.ZooKeeperCluster;
+import org.jclouds.scriptbuilder.domain.Statement;
+
+/**
+ * Builds the <code>hbase-site.xml</code> file and the region server heap size
+ * for the nodes in an HBase cluster.
+ * <p>
+ * Properties prefixed with <code>hbase-site</code> in the cluster spec
+ * override both the defaults and the settings derived from the region server
+ * hardware.
+ */
+public class HBaseConfigurationBuilder {
+
+  private static final int MIN_HANDLER_COUNT = 30;
+  private static final int MAX_HANDLER_COUNT = 200;
+
+  private static Configuration defaults;
+
+  private static synchronized Configuration getDefaults()
+      throws ConfigurationException {
+    if (defaults == null) {
+      defaults = new PropertiesConfiguration(
+          HBaseConstants.FILE_HBASE_DEFAULT_PROPERTIES);
+    }
+    return defaults;
+  }
+
+  public static Statement buildHBaseSite(String path, ClusterSpec clusterSpec,
+      Cluster cluster) throws ConfigurationException, IOException {
+    Configuration config = buildHBaseSiteConfiguration(clusterSpec, cluster,
+        getDefaults());
+    return HadoopConfigurationConverter.asCreateFileStatement(path, config);
+  }
+
+  @VisibleForTesting
+  static Configuration buildHBaseSiteConfiguration(ClusterSpec clusterSpec,
+      Cluster cluster, Configuration defaults)
+      throws ConfigurationException, IOException {
+    String prefix = HBaseConstants.PREFIX_HBASE_SITE;
+    CompositeConfiguration config = new CompositeConfiguration();
+    Configuration sub = clusterSpec.getConfigurationForKeysWithPrefix(prefix);
+    config.addConfiguration(sub.subset(prefix)); // remove prefix
+    MemoryBudget budget = getRegionServerBudget(
+        clusterSpec.getConfiguration(), cluster);
+    if (budget != null) {
+      config.addConfiguration(buildHBaseSiteTuning(budget));
+    }
+    config.addConfiguration(defaults.subset(prefix));
+
+    Instance master = cluster.getInstanceMatching(
+        role(HBaseMasterClusterActionHandler.ROLE));
+    config.setProperty("hbase.rootdir", String.format("hdfs://%s:8020/hbase",
+        InternalAddresses.getHostName(clusterSpec, master)));
+    config.setProperty(HBaseConstants.PROP_HBASE_ZOOKEEPER_QUORUM,
+        ZooKeeperCluster.getHosts(cluster,
+            InternalAddresses.usePrivateAddresses(clusterSpec)));
+    config.setProperty("hbase.tmp.dir", String.format("%s/tmp/hbase-${user.name}",
+        clusterSpec.getProvider().endsWith("ec2") ? "/mnt" : "/data"));
+    return config;
+  }
+
+  /**
+   * @return the heap size for the region servers, in megabytes, or 0 if
+   * there is no hardware profile for them and the script default should be
+   * used. An explicit {@link HBaseConstants#KEY_REGIONSERVER_HEAP} wins.
+   */
+  public static int getRegionServerHeapMb(Configuration config,
+      Cluster cluster) {
+    if (config.containsKey(HBaseConstants.KEY_REGIONSERVER_HEAP)) {
+      return config.getInt(HBaseConstants.KEY_REGIONSERVER_HEAP);
+    }
+    MemoryBudget budget = getRegionServerBudget(config, cluster);
+    return budget == null ? 0 : budget.getRegionServerHeapMb();
+  }
+
+  /**
+   * @return block cache, memstore and handler settings for region servers
+   * with the given memory budget, which is shared with any tasktracker on the
+   * same nodes. Larger heaps give a bigger share to the block
+   * cache, keeping the block cache and memstore under 80% of the heap
+   * together. There are 25 handlers per core.
+   */
+  @VisibleForTesting
+  static Configuration buildHBaseSiteTuning(MemoryBudget budget) {
+    Configuration config = new PropertiesConfiguration();
+    int heapMb = budget.getRegionServerHeapMb();
+    if (heapMb >= 4000) {
+      config.setProperty("hfile.block.cache.size", "0.3");
+      config.setProperty("hbase.regionserver.global.memstore.upperLimit", "0.4");
+      config.setProperty("hbase.regionserver.global.memstore.lowerLimit", "0.35");
+    } else {
+      config.setProperty("hfile.block.cache.size", "0.2");
+      config.setProperty("hbase.regionserver.global.memstore.upperLimit", "0.35");
+      config.setProperty("hbase.regionserver.global.memstore.lowerLimit", "0.3");
+    }
+    config.setProperty("hbase.regionserver.handler.count",
+        Math.max(MIN_HANDLER_COUNT,
+            Math.min(MAX_HANDLER_COUNT, 25 * budget.getProfile().getCores())));
+    return config;
+  }
+
+  private static MemoryBudget getRegionServerBudget(Configuration config,
+      Cluster cluster) {
+    return MemoryBudget.forRole(config, cluster,
+        HBaseRegionServerClusterActionHandler.ROLE);
+  }
+
+}
@@ -18,11 +18,15 @@
 
 package org.apache.whirr.service.hbase;
 
+import org.apache.whirr.service.hadoop.MemoryBudget;
+
 public final class HBaseConstants {
 
   public static final String KEY_INSTALL_FUNCTION = "whirr.hbase.install-function";
   public static final String KEY_CONFIGURE_FUNCTION = "whirr.hbase.configure-function";
   public static final String KEY_TARBALL_URL = "whirr.hbase.tarball.url";
+  public static final String KEY_REGIONSERVER_HEAP =
+    MemoryBudget.REGIONSERVER_HEAP;
 
   public static final String FUNCTION_INSTALL = "install_hbase";
   public static final String FUNCTION_POST_CONFIGURE = "configure_hbase";
@@ -32,6 +36,10 @@ public final class HBaseConstants {
   public static final String PARAM_QUORUM = "-q";
   public static final String PARAM_PORT = "-p";
   public static final String PARAM_TARBALL_URL = "-u";
+  public static final String PARAM_SITE_FILE = "-s";
+  public static final String PARAM_REGIONSERVER_HEAP = "-r";
+
+  public static final String PREFIX_HBASE_SITE = "hbase-site";
 
   public static final String PROP_HBASE_ZOOKEEPER_QUORUM = "hbase.zookeeper.quorum";
   public static final String PROP_HBASE_ZOOKEEPER_CLIENTPORT = "hbase.zookeeper.property.clientPort";
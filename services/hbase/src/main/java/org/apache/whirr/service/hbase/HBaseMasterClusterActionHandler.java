@@ -23,20 +23,26 @@ import static org.jclouds.scriptbuilder.domain.Statements.call;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ObjectArrays;
 import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.URL;
+import java.util.Collections;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 import org.apache.whirr.net.DnsUtil;
+import org.apache.whirr.net.InternalAddresses;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterActionEvent;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
+import org.apache.whirr.service.ReadinessBarrier;
 import org.apache.whirr.service.hadoop.HadoopProxy;
 import org.apache.whirr.service.jclouds.FirewallSettings;
 import org.apache.whirr.service.zookeeper.ZooKeeperCluster;
@@ -54,6 +60,11 @@ public class HBaseMasterClusterActionHandler extends HBaseClusterActionHandler {
   public static final int MASTER_PORT = 60000;
   public static final int MASTER_WEB_UI_PORT = 60010;
 
+  /**
+   * Matches the number of region servers on the master status page.
+   */
+  static final Pattern REGION_SERVERS = Pattern.compile("servers: (\\d+)");
+
   @Override
   public String getRole() {
     return ROLE;
@@ -82,7 +93,6 @@ public class HBaseMasterClusterActionHandler extends HBaseClusterActionHandler {
 
     LOG.info("Authorizing firewall");
     Instance instance = cluster.getInstanceMatching(role(ROLE));
-    InetAddress masterPublicAddress = instance.getPublicAddress();
 
     ComputeServiceContext computeServiceContext =
       ComputeServiceContextBuilder.build(clusterSpec);
@@ -93,15 +103,19 @@ public class HBaseMasterClusterActionHandler extends HBaseClusterActionHandler {
 
     String hbaseConfigureFunction = getConfiguration(clusterSpec).getString(
       HBaseConstants.KEY_CONFIGURE_FUNCTION, HBaseConstants.FUNCTION_POST_CONFIGURE);
-    String master = DnsUtil.resolveAddress(masterPublicAddress.getHostAddress());
-    String quorum = ZooKeeperCluster.getHosts(cluster);
+    String master = InternalAddresses.getHostName(clusterSpec, instance);
+    String quorum = ZooKeeperCluster.getHosts(cluster,
+      InternalAddresses.usePrivateAddresses(clusterSpec));
     String tarurl = getConfiguration(clusterSpec).getString(
       HBaseConstants.KEY_TARBALL_URL);  
-    addStatement(event, call(hbaseConfigureFunction, ROLE,
-      HBaseConstants.PARAM_MASTER, master,
-      HBaseConstants.PARAM_QUORUM, quorum,
-      HBaseConstants.PARAM_PROVIDER, clusterSpec.getProvider(),
-      HBaseConstants.PARAM_TARBALL_URL, tarurl));
+    String[] siteArgs = addHBaseSiteStatement(event, ROLE);
+    addStatement(event, call(hbaseConfigureFunction, ObjectArrays.concat(
+      new String[] { ROLE,
+        HBaseConstants.PARAM_MASTER, master,
+        HBaseConstants.PARAM_QUORUM, quorum,
+        HBaseConstants.PARAM_PROVIDER, clusterSpec.getProvider(),
+        HBaseConstants.PARAM_TARBALL_URL, tarurl },
+      siteArgs, String.class)));
   }
 
   @Override
@@ -109,19 +123,46 @@ public class HBaseMasterClusterActionHandler extends HBaseClusterActionHandler {
     ClusterSpec clusterSpec = event.getClusterSpec();
     Cluster cluster = event.getCluster();
 
-    // TODO: wait for regionservers to come up?
-
     LOG.info("Completed configuration of {}", clusterSpec.getClusterName());
     Instance instance = cluster.getInstanceMatching(role(ROLE));
     InetAddress masterPublicAddress = instance.getPublicAddress();
 
+    try {
+      waitForRegionServers(clusterSpec, cluster,
+          DnsUtil.resolveAddress(masterPublicAddress.getHostAddress()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+
     LOG.info("Web UI available at http://{}",
       DnsUtil.resolveAddress(masterPublicAddress.getHostAddress()));
     String quorum = ZooKeeperCluster.getHosts(cluster);
     Properties config = createClientSideProperties(masterPublicAddress, quorum);
     createClientSideHadoopSiteFile(clusterSpec, config);
     createProxyScript(clusterSpec, cluster);
-    event.setCluster(new Cluster(cluster.getInstances(), config));
+    // keep what earlier handlers stored in the cluster's properties, such as
+    // the hardware profiles
+    cluster.getConfiguration().putAll(config);
+  }
+
+  /**
+   * Wait until enough region servers have checked in with the master for the
+   * cluster to be used.
+   */
+  private void waitForRegionServers(ClusterSpec clusterSpec, Cluster cluster,
+      String master) throws IOException, InterruptedException {
+    int regionServers = cluster.getInstancesInRole(
+        HBaseRegionServerClusterActionHandler.ROLE).size();
+    if (regionServers == 0) {
+      return;
+    }
+    ReadinessBarrier.Probe probe = new ReadinessBarrier.HttpProbe(
+        "region servers", regionServers, new URL(String.format(
+            "http://%s:%d/master.jsp", master, MASTER_WEB_UI_PORT)),
+        REGION_SERVERS);
+    new ReadinessBarrier(clusterSpec).await(cluster, "hbase",
+        Collections.singletonList(probe));
   }
 
   private Properties createClientSideProperties(InetAddress master, String quorum) throws IOException {
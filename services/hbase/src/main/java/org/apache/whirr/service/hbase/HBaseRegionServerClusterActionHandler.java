@@ -21,10 +21,11 @@ package org.apache.whirr.service.hbase;
 import static org.apache.whirr.service.RolePredicates.role;
 import static org.jclouds.scriptbuilder.domain.Statements.call;
 
+import com.google.common.collect.ObjectArrays;
+
 import java.io.IOException;
-import java.net.InetAddress;
 
-import org.apache.whirr.net.DnsUtil;
+import org.apache.whirr.net.InternalAddresses;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterActionEvent;
@@ -70,7 +71,6 @@ public class HBaseRegionServerClusterActionHandler extends HBaseClusterActionHan
 
     Instance instance = cluster.getInstanceMatching(
       role(HBaseMasterClusterActionHandler.ROLE));
-    InetAddress masterPublicAddress = instance.getPublicAddress();
 
     ComputeServiceContext computeServiceContext =
       ComputeServiceContextBuilder.build(clusterSpec);
@@ -82,15 +82,19 @@ public class HBaseRegionServerClusterActionHandler extends HBaseClusterActionHan
     String hbaseConfigureFunction = getConfiguration(clusterSpec).getString(
       HBaseConstants.KEY_CONFIGURE_FUNCTION,
       HBaseConstants.FUNCTION_POST_CONFIGURE);
-    String master = DnsUtil.resolveAddress(masterPublicAddress.getHostAddress());
-    String quorum = ZooKeeperCluster.getHosts(cluster);
+    String master = InternalAddresses.getHostName(clusterSpec, instance);
+    String quorum = ZooKeeperCluster.getHosts(cluster,
+      InternalAddresses.usePrivateAddresses(clusterSpec));
     String tarurl = getConfiguration(clusterSpec).getString(
       HBaseConstants.KEY_TARBALL_URL);   
-    addStatement(event, call(hbaseConfigureFunction, ROLE,
-      HBaseConstants.PARAM_MASTER, master,
-      HBaseConstants.PARAM_QUORUM, quorum,
-      HBaseConstants.PARAM_PROVIDER, clusterSpec.getProvider(),
-      HBaseConstants.PARAM_TARBALL_URL, tarurl));
+    String[] siteArgs = addHBaseSiteStatement(event, ROLE);
+    addStatement(event, call(hbaseConfigureFunction, ObjectArrays.concat(
+      new String[] { ROLE,
+        HBaseConstants.PARAM_MASTER, master,
+        HBaseConstants.PARAM_QUORUM, quorum,
+        HBaseConstants.PARAM_PROVIDER, clusterSpec.getProvider(),
+        HBaseConstants.PARAM_TARBALL_URL, tarurl },
+      siteArgs, String.class)));
   }
 
 }
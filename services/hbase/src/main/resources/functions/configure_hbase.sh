@@ -11,7 +11,9 @@ function configure_hbase() {
   PORT=
   CLOUD_PROVIDER=
   HBASE_TAR_URL=
-  while getopts "m:q:p:c:u:" OPTION; do
+  HBASE_SITE_FILE=
+  REGIONSERVER_HEAP=
+  while getopts "m:q:p:c:u:s:r:" OPTION; do
     case $OPTION in
     m)
       MASTER_HOST="$OPTARG"
@@ -28,6 +30,12 @@ function configure_hbase() {
     u)
       HBASE_TAR_URL="$OPTARG"
       ;;
+    s)
+      HBASE_SITE_FILE="$OPTARG"
+      ;;
+    r)
+      REGIONSERVER_HEAP="$OPTARG"
+      ;;
     esac
   done
   
@@ -75,48 +83,17 @@ function configure_hbase() {
   mkdir /etc/hbase
   ln -s $HBASE_CONF_DIR /etc/hbase/conf
 
-  ##############################################################################
-  # Modify this section to customize your HBase cluster.
-  ##############################################################################
-  cat > $HBASE_CONF_DIR/hbase-site.xml <<EOF
-<?xml version="1.0"?>
-<?xml-stylesheet type="text/xsl" href="configuration.xsl"?>
-<configuration>
-<property>
- <name>hbase.rootdir</name>
- <value>hdfs://$MASTER_HOST:8020/hbase</value>
-</property>
-<property>
- <name>hbase.cluster.distributed</name>
- <value>true</value>
-</property>
-<property>
- <name>hbase.zookeeper.quorum</name>
- <value>$ZOOKEEPER_QUORUM</value>
-</property>
-<property>
- <name>hbase.regionserver.handler.count</name>
- <value>100</value>
-</property>
-<property>
- <name>dfs.replication</name>
- <value>3</value>
-</property>
-<property>
- <name>zookeeper.session.timeout</name>
- <value>60000</value>
-</property>
-<property>
- <name>hbase.tmp.dir</name>
- <value>$MOUNT/tmp/hbase-\${user.name}</value>
-</property>
-</configuration>
-EOF
+  # Copy the generated site file in place. Its first line holds a hash of its
+  # content, so an unchanged file is left alone.
+  if [ -n "$HBASE_SITE_FILE" ] && [ "$(head -n 1 $HBASE_SITE_FILE)" != "$(head -n 1 $HBASE_CONF_DIR/hbase-site.xml 2> /dev/null)" ]; then
+    cp $HBASE_SITE_FILE $HBASE_CONF_DIR/hbase-site.xml
+  fi
 
-  # override JVM options
+  # override JVM options, sizing the region server heap to the hardware
+  REGIONSERVER_HEAP=${REGIONSERVER_HEAP:-2000}
   cat >> $HBASE_CONF_DIR/hbase-env.sh <<EOF
 export HBASE_MASTER_OPTS="-Xms1000m -Xmx1000m -Xmn256m -XX:+UseConcMarkSweepGC -XX:+AggressiveOpts -verbose:gc -XX:+PrintGCDetails -XX:+PrintGCTimeStamps -Xloggc:/mnt/hbase/logs/hbase-master-gc.log"
-export HBASE_REGIONSERVER_OPTS="-Xms2000m -Xmx2000m -Xmn256m -XX:+UseConcMarkSweepGC -XX:CMSInitiatingOccupancyFraction=88 -XX:+AggressiveOpts -verbose:gc -XX:+PrintGCDetails -XX:+PrintGCTimeStamps -Xloggc:/mnt/hbase/logs/hbase-regionserver-gc.log"
+export HBASE_REGIONSERVER_OPTS="-Xms${REGIONSERVER_HEAP}m -Xmx${REGIONSERVER_HEAP}m -Xmn256m -XX:+UseConcMarkSweepGC -XX:CMSInitiatingOccupancyFraction=88 -XX:+AggressiveOpts -verbose:gc -XX:+PrintGCDetails -XX:+PrintGCTimeStamps -Xloggc:/mnt/hbase/logs/hbase-regionserver-gc.log"
 EOF
 
   # configure hbase for ganglia
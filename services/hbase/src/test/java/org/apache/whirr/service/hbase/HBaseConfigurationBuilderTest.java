@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hbase;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Sets;
+
+import java.net.InetAddress;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.HardwareProfile;
+import org.apache.whirr.service.hadoop.HadoopTaskTrackerClusterActionHandler;
+import org.apache.whirr.service.hadoop.MemoryBudget;
+import org.apache.whirr.service.zookeeper.ZooKeeperClusterActionHandler;
+import org.jclouds.domain.Credentials;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HBaseConfigurationBuilderTest {
+
+  private Configuration defaults;
+  private ClusterSpec clusterSpec;
+  private Cluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    defaults = new PropertiesConfiguration();
+    defaults.addProperty("hbase-site.p1", "hbase1");
+    defaults.addProperty("hbase-site.hbase.regionserver.handler.count", "100");
+
+    Configuration conf = new PropertiesConfiguration();
+    conf.addProperty("whirr.provider", "aws-ec2");
+    clusterSpec = ClusterSpec.withNoDefaults(conf);
+    InetAddress address = InetAddress.getLocalHost();
+    Instance master = new Instance(new Credentials("", ""),
+        Sets.newHashSet(HBaseMasterClusterActionHandler.ROLE,
+            ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE),
+        address, address, "id0");
+    Instance regionserver = new Instance(new Credentials("", ""),
+        Sets.newHashSet(HBaseRegionServerClusterActionHandler.ROLE,
+            HadoopTaskTrackerClusterActionHandler.ROLE),
+        address, address, "id1");
+    cluster = new Cluster(Sets.newHashSet(master, regionserver));
+  }
+
+  @Test
+  public void testDefaultsAndDynamicProperties() throws Exception {
+    Configuration conf = HBaseConfigurationBuilder.buildHBaseSiteConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(conf.getString("p1"), is("hbase1"));
+    assertThat(conf.getInt("hbase.regionserver.handler.count"), is(100));
+    assertThat(conf.getString("hbase.rootdir").matches("hdfs://.+:8020/hbase"),
+        is(true));
+    assertThat(conf.getString("hbase.zookeeper.quorum").endsWith(":2181"),
+        is(true));
+    assertThat((String) conf.getProperty("hbase.tmp.dir"),
+        is("/mnt/tmp/hbase-${user.name}"));
+    assertThat(HBaseConfigurationBuilder.getRegionServerHeapMb(
+        new PropertiesConfiguration(), cluster), is(0));
+  }
+
+  @Test
+  public void testTunedToHardware() throws Exception {
+    new HardwareProfile(8, 15360, 4).store(cluster.getConfiguration(),
+        HBaseRegionServerClusterActionHandler.ROLE);
+    Configuration conf = HBaseConfigurationBuilder.buildHBaseSiteConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(conf.getInt("hbase.regionserver.handler.count"), is(200));
+    assertThat(conf.getString("hfile.block.cache.size"), is("0.3"));
+    assertThat(conf.getString("hbase.regionserver.global.memstore.upperLimit"),
+        is("0.4"));
+    // the region servers share their nodes with tasktrackers
+    assertThat(HBaseConfigurationBuilder.getRegionServerHeapMb(
+        new PropertiesConfiguration(), cluster), is(5324));
+  }
+
+  @Test
+  public void testSmallHardware() {
+    HardwareProfile profile = new HardwareProfile(1, 1740, 1);
+    MemoryBudget dedicated = new MemoryBudget(profile,
+        Sets.newHashSet(HBaseRegionServerClusterActionHandler.ROLE), 0);
+    Configuration conf = HBaseConfigurationBuilder.buildHBaseSiteTuning(
+        dedicated);
+    assertThat(conf.getInt("hbase.regionserver.handler.count"), is(30));
+    assertThat(conf.getString("hfile.block.cache.size"), is("0.2"));
+    assertThat(dedicated.getRegionServerHeapMb(), is(1044));
+    MemoryBudget shared = new MemoryBudget(profile,
+        Sets.newHashSet(HBaseRegionServerClusterActionHandler.ROLE,
+            HadoopTaskTrackerClusterActionHandler.ROLE), 0);
+    assertThat(shared.getRegionServerHeapMb(), is(360));
+  }
+
+  @Test
+  public void testUserSettingsWin() throws Exception {
+    Configuration conf = new PropertiesConfiguration();
+    conf.addProperty("whirr.provider", "aws-ec2");
+    conf.addProperty("hbase-site.hbase.regionserver.handler.count", "50");
+    conf.addProperty(HBaseConstants.KEY_REGIONSERVER_HEAP, "3000");
+    clusterSpec = ClusterSpec.withNoDefaults(conf);
+    new HardwareProfile(8, 15360, 4).store(cluster.getConfiguration(),
+        HBaseRegionServerClusterActionHandler.ROLE);
+    Configuration site = HBaseConfigurationBuilder.buildHBaseSiteConfiguration(
+        clusterSpec, cluster, defaults);
+    assertThat(site.getInt("hbase.regionserver.handler.count"), is(50));
+    assertThat(HBaseConfigurationBuilder.getRegionServerHeapMb(
+        clusterSpec.getConfiguration(), cluster), is(3000));
+  }
+
+}
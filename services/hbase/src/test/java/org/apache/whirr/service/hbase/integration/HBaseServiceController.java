@@ -132,6 +132,10 @@ public class HBaseServiceController {
     running = false;
   }
 
+  public ClusterSpec getClusterSpec() {
+    return clusterSpec;
+  }
+
   public RemoteAdmin getRemoteAdmin() {
     return remoteAdmin;
   }
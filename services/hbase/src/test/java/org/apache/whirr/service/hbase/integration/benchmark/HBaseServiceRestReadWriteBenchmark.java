@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.hbase.integration.benchmark;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.rest.client.RemoteAdmin;
+import org.apache.hadoop.hbase.rest.client.RemoteHTable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.whirr.service.benchmark.BenchmarkComparator;
+import org.apache.whirr.service.benchmark.BenchmarkResult;
+import org.apache.whirr.service.benchmark.LatencyRecorder;
+import org.apache.whirr.service.hbase.integration.HBaseServiceController;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the throughput and latency of random writes and reads of single
+ * rows through the HBase REST server, from several concurrent clients.
+ * Every row in the key range is written first, so that each random read
+ * finds a row.
+ * <p>
+ * The clients use {@link RemoteHTable}, like the other HBase integration
+ * tests, because the native client needs to reach the ZooKeeper quorum and
+ * the region servers directly, which the SOCKS proxy does not allow. So the
+ * results measure the REST server as well as HBase, and are recorded under
+ * the <code>hbase-rest</code> benchmark name to keep them apart from any
+ * native client results.
+ */
+public class HBaseServiceRestReadWriteBenchmark {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(HBaseServiceRestReadWriteBenchmark.class);
+
+  private static final String TABLE = "benchmarktable";
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private static boolean shutdownClusterOnTearDown;
+  private static HBaseServiceController controller =
+    HBaseServiceController.getInstance();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    shutdownClusterOnTearDown = controller.ensureClusterRunning();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    if (shutdownClusterOnTearDown) {
+      controller.shutdown();
+    }
+  }
+
+  @Test
+  public void testRestRandomReadWrite() throws Exception {
+    final int rows = Integer.parseInt(
+        System.getProperty("hbaseRows", "10000"));
+    final int valueSize = Integer.parseInt(
+        System.getProperty("hbaseValueSize", "1000"));
+    int clients = Integer.parseInt(System.getProperty("hbaseClients", "4"));
+    BenchmarkResult result = new BenchmarkResult("hbase-rest");
+    result.recordCluster(controller.getClusterSpec(), "hbase-");
+    result.getProperties().setProperty("hbase-rest.rows",
+        Integer.toString(rows));
+    result.getProperties().setProperty("hbase-rest.value-size",
+        Integer.toString(valueSize));
+    result.getProperties().setProperty("hbase-rest.clients",
+        Integer.toString(clients));
+
+    RemoteAdmin admin = controller.getRemoteAdmin();
+    HTableDescriptor table = new HTableDescriptor(TABLE);
+    table.addFamily(new HColumnDescriptor(FAMILY));
+    admin.createTable(table);
+    LOG.info("Running {} random writes and reads through REST with {} "
+        + "clients", rows, clients);
+
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    try {
+      final LatencyRecorder load = new LatencyRecorder();
+      run(executor, clients, load, new Operation() {
+        @Override
+        public void run(RemoteHTable table, Random random, int index)
+            throws Exception {
+          table.put(put(row(index), random, valueSize));
+        }
+      }, rows);
+      result.recordLatencies("load", load);
+
+      final LatencyRecorder write = new LatencyRecorder();
+      run(executor, clients, write, new Operation() {
+        @Override
+        public void run(RemoteHTable table, Random random, int index)
+            throws Exception {
+          table.put(put(row(random.nextInt(rows)), random, valueSize));
+        }
+      }, rows);
+      result.recordLatencies("write", write);
+
+      final LatencyRecorder read = new LatencyRecorder();
+      run(executor, clients, read, new Operation() {
+        @Override
+        public void run(RemoteHTable table, Random random, int index)
+            throws Exception {
+          table.get(new Get(row(random.nextInt(rows))));
+        }
+      }, rows);
+      result.recordLatencies("read", read);
+    } finally {
+      executor.shutdownNow();
+      admin.deleteTable(TABLE);
+    }
+    BenchmarkComparator.checkAgainstBaseline(result);
+    result.write();
+  }
+
+  interface Operation {
+    /**
+     * Run the operation numbered <code>index</code>, counting from 0 across
+     * all of the clients.
+     */
+    void run(RemoteHTable table, Random random, int index) throws Exception;
+  }
+
+  /**
+   * Run <code>operations</code> operations, shared between
+   * <code>clients</code> clients that each have their own table and each
+   * run a contiguous range of operation numbers.
+   */
+  private static void run(ExecutorService executor, int clients,
+      final LatencyRecorder recorder, final Operation operation,
+      int operations) throws Exception {
+    List<Future<Void>> futures = Lists.newArrayList();
+    recorder.start();
+    int first = 0;
+    for (int i = 0; i < clients; i++) {
+      final int start = first;
+      final int count = operations / clients
+        + (i < operations % clients ? 1 : 0);
+      first += count;
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          RemoteHTable table = controller.getRemoteHTable(TABLE);
+          Random random = new Random();
+          for (int j = 0; j < count; j++) {
+            long begin = System.nanoTime();
+            operation.run(table, random, start + j);
+            recorder.record(begin);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    recorder.stop();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%010d", i));
+  }
+
+  private static Put put(byte[] row, Random random, int valueSize) {
+    byte[] value = new byte[valueSize];
+    random.nextBytes(value);
+    Put put = new Put(row);
+    put.add(FAMILY, QUALIFIER, value);
+    return put;
+  }
+
+}
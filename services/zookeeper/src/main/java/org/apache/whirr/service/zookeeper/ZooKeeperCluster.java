@@ -19,14 +19,33 @@
 package org.apache.whirr.service.zookeeper;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Sets;
+
+import java.util.Set;
 
 import org.apache.whirr.service.Cluster;
-import org.apache.whirr.service.RolePredicates;
+import org.apache.whirr.service.Cluster.Instance;
 
 public class ZooKeeperCluster {
+  /**
+   * @return the client connect string for the ensemble, including any
+   * observers so that clients can spread their reads over them.
+   */
   public static String getHosts(Cluster cluster) {
+    return getHosts(cluster, false);
+  }
+
+  /**
+   * @param privateAddresses whether to use private addresses, for clients
+   * running inside the cluster, or public host names
+   * @return the client connect string for the ensemble
+   */
+  public static String getHosts(Cluster cluster, boolean privateAddresses) {
+    Set<Instance> instances = Sets.newLinkedHashSet(cluster.getInstancesInRole(
+        ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE));
+    instances.addAll(cluster.getInstancesInRole(
+        ZooKeeperClusterActionHandler.ZOOKEEPER_OBSERVER_ROLE));
     return Joiner.on(',').join(
-      ZooKeeperClusterActionHandler.getHosts(cluster.getInstancesMatching(
-      RolePredicates.role(ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE))));
+      ZooKeeperClusterActionHandler.getHosts(instances, privateAddresses));
   }
 }
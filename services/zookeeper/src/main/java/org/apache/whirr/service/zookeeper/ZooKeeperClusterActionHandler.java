@@ -17,23 +17,33 @@ package org.apache.whirr.service.zookeeper;
  * limitations under the License.
  */
 
+import static org.jclouds.scriptbuilder.domain.Statements.appendFile;
 import static org.jclouds.scriptbuilder.domain.Statements.call;
+import static org.jclouds.scriptbuilder.domain.Statements.exec;
+import static org.jclouds.scriptbuilder.domain.Statements.newStatementList;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.whirr.service.Cluster;
 import org.apache.whirr.service.Cluster.Instance;
 import org.apache.whirr.service.ClusterActionEvent;
 import org.apache.whirr.service.ClusterActionHandlerSupport;
 import org.apache.whirr.service.ClusterSpec;
 import org.apache.whirr.service.ComputeServiceContextBuilder;
-import org.apache.whirr.service.RolePredicates;
+import org.apache.whirr.service.HardwareProfile;
 import org.apache.whirr.service.jclouds.FirewallSettings;
 import org.jclouds.compute.ComputeServiceContext;
 import org.slf4j.Logger;
@@ -45,8 +55,25 @@ public class ZooKeeperClusterActionHandler extends ClusterActionHandlerSupport {
     LoggerFactory.getLogger(ZooKeeperClusterActionHandler.class);
     
   public static final String ZOOKEEPER_ROLE = "zookeeper";
+  public static final String ZOOKEEPER_OBSERVER_ROLE = "zookeeper-observer";
   private static final int CLIENT_PORT = 2181;
 
+  private static final String ZOOKEEPER_PREFIX = "zookeeper";
+  private static final String WHIRR_ZOOKEEPER_DEFAULT_PROPERTIES =
+    "whirr-zookeeper-default.properties";
+  private static final String CONFIG_FILE = "/tmp/zoo.cfg";
+
+  private static Configuration defaults;
+
+  private static synchronized Configuration getDefaults()
+      throws ConfigurationException {
+    if (defaults == null) {
+      defaults = new PropertiesConfiguration(
+          WHIRR_ZOOKEEPER_DEFAULT_PROPERTIES);
+    }
+    return defaults;
+  }
+
   @Override
   public String getRole() {
     return ZOOKEEPER_ROLE;
@@ -55,6 +82,8 @@ public class ZooKeeperClusterActionHandler extends ClusterActionHandlerSupport {
   @Override
   protected void beforeBootstrap(ClusterActionEvent event) throws IOException {
     addStatement(event, call("install_java"));
+    addStatement(event, call("prepare_disks", "-c",
+        event.getClusterSpec().getProvider()));
     addStatement(event, call("install_zookeeper"));
   }
 
@@ -68,12 +97,78 @@ public class ZooKeeperClusterActionHandler extends ClusterActionHandlerSupport {
     FirewallSettings.authorizeIngress(computeServiceContext,
         cluster.getInstances(), clusterSpec, CLIENT_PORT);
     
-    // Pass list of all servers in ensemble to configure script.
-    // Position is significant: i-th server has id i.
-    String servers = Joiner.on(' ').join(getPrivateIps(cluster.getInstancesMatching(
-      RolePredicates.role(ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE))));
+    try {
+      // a file left by an earlier configure run is replaced, not appended to
+      addStatement(event, newStatementList(exec("rm -f " + CONFIG_FILE),
+          appendFile(CONFIG_FILE, asLinesInFile(buildConfiguration(
+              clusterSpec,
+              HardwareProfile.load(cluster.getConfiguration(), getRole()),
+              getDefaults())))));
+    } catch (ConfigurationException e) {
+      throw new IOException(e);
+    }
     addStatement(event, call("configure_zookeeper", "-c",
-        clusterSpec.getProvider(), servers));
+        clusterSpec.getProvider(), getServers(cluster)));
+  }
+
+  /**
+   * @return the server configuration, made up of the properties in the
+   * cluster spec that start with <code>zookeeper.</code>, with the prefix
+   * removed, and the defaults. If the servers have more than one disk then
+   * the transaction log gets a disk of its own. The client port can't be
+   * overridden, since the firewall is opened for it.
+   */
+  @VisibleForTesting
+  static Configuration buildConfiguration(ClusterSpec clusterSpec,
+      HardwareProfile profile, Configuration defaults) {
+    // fixed properties go in a layer of their own, since setting them on the
+    // composite would clear them from the shared defaults
+    Configuration fixed = new PropertiesConfiguration();
+    fixed.setProperty("clientPort", CLIENT_PORT);
+    CompositeConfiguration config = new CompositeConfiguration();
+    config.addConfiguration(fixed);
+    config.addConfiguration(clusterSpec.getConfigurationForKeysWithPrefix(
+        ZOOKEEPER_PREFIX).subset(ZOOKEEPER_PREFIX)); // remove prefix
+    if (profile != null && profile.getDisks() > 1) {
+      Configuration derived = new PropertiesConfiguration();
+      derived.setProperty("dataLogDir",
+          profile.getDataDirectories("/zookeeper/txlog").get(1));
+      config.addConfiguration(derived);
+    }
+    config.addConfiguration(defaults.subset(ZOOKEEPER_PREFIX));
+    return config;
+  }
+
+  @VisibleForTesting
+  static List<String> asLinesInFile(Configuration config) {
+    List<String> lines = Lists.newArrayList();
+    for (@SuppressWarnings("unchecked")
+        Iterator<String> it = config.getKeys(); it.hasNext(); ) {
+      String key = it.next();
+      Object value = config.getProperty(key);
+      if (value instanceof Collection) {
+        // list values were split on commas when they were read
+        value = Joiner.on(',').join((Collection<?>) value);
+      }
+      lines.add(String.format("%s=%s", key, value));
+    }
+    return lines;
+  }
+
+  /**
+   * Pass list of all servers in ensemble to configure script.
+   * Position is significant: i-th server has id i. Voting members come first,
+   * followed by observers, which are marked with an <code>:observer</code>
+   * suffix.
+   */
+  static String getServers(Cluster cluster) {
+    List<String> servers = Lists.newArrayList(getPrivateIps(
+        cluster.getInstancesInRole(ZOOKEEPER_ROLE)));
+    for (String observer : getPrivateIps(
+        cluster.getInstancesInRole(ZOOKEEPER_OBSERVER_ROLE))) {
+      servers.add(observer + ":observer");
+    }
+    return Joiner.on(' ').join(servers);
   }
   
   @Override
@@ -81,12 +176,10 @@ public class ZooKeeperClusterActionHandler extends ClusterActionHandlerSupport {
     ClusterSpec clusterSpec = event.getClusterSpec();
     Cluster cluster = event.getCluster();
     LOG.info("Completed configuration of {}", clusterSpec.getClusterName());
-    String hosts = Joiner.on(',').join(getHosts(cluster.getInstancesMatching(
-      RolePredicates.role(ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE))));
-    LOG.info("Hosts: {}", hosts);
+    LOG.info("Hosts: {}", ZooKeeperCluster.getHosts(cluster));
   }
 
-  private List<String> getPrivateIps(Set<Instance> instances) {
+  private static List<String> getPrivateIps(Set<Instance> instances) {
     return Lists.transform(Lists.newArrayList(instances),
         new Function<Instance, String>() {
       @Override
@@ -96,13 +189,16 @@ public class ZooKeeperClusterActionHandler extends ClusterActionHandlerSupport {
     });
   }
   
-  static List<String> getHosts(Set<Instance> instances) {
+  static List<String> getHosts(Set<Instance> instances,
+      final boolean privateAddresses) {
     return Lists.transform(Lists.newArrayList(instances),
         new Function<Instance, String>() {
       @Override
       public String apply(Instance instance) {
-        String publicIp = instance.getPublicAddress().getHostName();
-        return String.format("%s:%d", publicIp, CLIENT_PORT);
+        String host = privateAddresses ?
+            instance.getPrivateAddress().getHostAddress() :
+            instance.getPublicAddress().getHostName();
+        return String.format("%s:%d", host, CLIENT_PORT);
       }
     });
   }
@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.zookeeper;
+
+/**
+ * A ZooKeeper server that is an observer of the ensemble rather than a
+ * voting member. Observers serve reads and forward writes, so they add read
+ * capacity without slowing down writes by growing the quorum.
+ */
+public class ZooKeeperObserverClusterActionHandler
+    extends ZooKeeperClusterActionHandler {
+
+  @Override
+  public String getRole() {
+    return ZOOKEEPER_OBSERVER_ROLE;
+  }
+
+}
@@ -23,10 +23,13 @@ function configure_zookeeper() {
       ;;
   esac
   
-  myid_file=/var/log/zookeeper/txlog/myid
   config_file=/etc/zookeeper/conf/zoo.cfg
   
-  cat > $config_file <<EOF
+  if [ -f /tmp/zoo.cfg ]; then
+    # Use the configuration built by whirr from the zookeeper.* properties
+    cp /tmp/zoo.cfg $config_file
+  else
+    cat > $config_file <<EOF
 # The number of milliseconds of each tick
 tickTime=2000
 # The number of ticks that the initial
@@ -39,16 +42,41 @@ syncLimit=5
 dataDir=/var/log/zookeeper/txlog
 # The port at which the clients will connect
 clientPort=2181
-# The servers in the ensemble
 EOF
+  fi
+  
+  # Snapshots and the transaction log may be on separate disks
+  DATA_DIR=`sed -n -e 's|^dataDir=||p' $config_file`
+  DATA_LOG_DIR=`sed -n -e 's|^dataLogDir=||p' $config_file`
+  # Keep the transaction log with the snapshots if its disk was not mounted
+  # by prepare_disks, rather than on the root disk
+  LOG_DISK=`echo $DATA_LOG_DIR | grep -o '^/data[0-9][0-9]*'`
+  if [ -n "$LOG_DISK" ] && ! mountpoint -q $LOG_DISK; then
+    echo "Not using $DATA_LOG_DIR, which is not on a mounted disk"
+    sed -i -e '/^dataLogDir=/d' $config_file
+    DATA_LOG_DIR=
+  fi
+  DATA_LOG_DIR=${DATA_LOG_DIR:-$DATA_DIR}
+  mkdir -p $DATA_DIR $DATA_LOG_DIR
+  myid_file=$DATA_DIR/myid
   
+  # The servers in the ensemble
   if [[ $# -gt 1 ]]; then
     id=1
     for server in "$@"; do
-      if [ $server == $SELF_HOST ]; then
+      # Observers are passed as <host>:observer
+      host=${server%%:*}
+      if [ $host == $SELF_HOST ]; then
         myid=$id
       fi
-      echo "server.$id=$server:2888:3888" >> $config_file
+      if [ $host != $server ]; then
+        echo "server.$id=$host:2888:3888:observer" >> $config_file
+        if [ $host == $SELF_HOST ]; then
+          echo "peerType=observer" >> $config_file
+        fi
+      else
+        echo "server.$id=$server:2888:3888" >> $config_file
+      fi
       id=$((id+1))
     done
   
@@ -59,6 +87,25 @@ EOF
     echo $myid > $myid_file
   fi
   
+  # Purge old snapshots and transaction logs. ZooKeeper 3.4 does this itself
+  # using the autopurge settings, earlier versions need a cron task.
+  PURGE_INTERVAL=`sed -n -e 's|^autopurge.purgeInterval=||p' $config_file`
+  RETAIN_COUNT=`sed -n -e 's|^autopurge.snapRetainCount=||p' $config_file`
+  if [ ${PURGE_INTERVAL:-0} -gt 0 ]; then
+    . /etc/profile
+    ZK_JAR=`ls $ZOOKEEPER_HOME/zookeeper-*.jar | head -1`
+    ZK_LOG4J_JAR=`echo $ZOOKEEPER_HOME/lib/log4j-*.jar`
+    # cron can't step hours past a day, so longer intervals are rounded down
+    # to whole days
+    if [ $PURGE_INTERVAL -lt 24 ]; then
+      SCHEDULE="0 */$PURGE_INTERVAL * * *"
+    else
+      SCHEDULE="0 0 */$((PURGE_INTERVAL / 24)) * *"
+    fi
+    CRON="$SCHEDULE java -cp $ZK_JAR:$ZK_LOG4J_JAR:/etc/zookeeper/conf org.apache.zookeeper.server.PurgeTxnLog $DATA_LOG_DIR $DATA_DIR -n ${RETAIN_COUNT:-3}"
+    crontab -l 2>/dev/null | grep -v PurgeTxnLog | { cat; echo "$CRON"; } | crontab -
+  fi
+  
   # Now that it's configured, start ZooKeeper
   nohup /etc/rc.local &
 
@@ -43,13 +43,6 @@ function install_zookeeper() {
          -e "s|log4j.appender.ROLLINGFILE.File=zookeeper.log|log4j.appender.ROLLINGFILE.File=$ZK_LOG_DIR/zookeeper.log|" \
       $ZK_CONF_DIR/log4j.properties
   
-  # Install a CRON task for data directory cleanup
-  ZK_JAR=$ZOOKEEPER_HOME/zookeeper-$ZK_VERSION.jar
-  ZK_LOG4J_JAR=`echo $ZOOKEEPER_HOME/lib/log4j-*.jar`
-  
-  CRON="0 0 * * * java -cp $ZK_JAR:$ZK_LOG4J_JAR:$ZK_CONF_DIR org.apache.zookeeper.server.PurgeTxnLog $ZK_DATA_DIR $ZK_DATA_DIR -n 10"
-  crontab -l 2>/dev/null | { cat; echo "$CRON"; } | sort | uniq | crontab -
-      
   # Ensure ZooKeeper starts on boot
   sed -i -e "s/exit 0//" /etc/rc.local
 cat >> /etc/rc.local <<EOF
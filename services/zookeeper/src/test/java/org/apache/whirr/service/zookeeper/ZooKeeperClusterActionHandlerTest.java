@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.zookeeper;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.Cluster.Instance;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.HardwareProfile;
+import org.jclouds.domain.Credentials;
+import org.junit.Test;
+
+public class ZooKeeperClusterActionHandlerTest {
+
+  private Instance newInstance(String id, String ip, String role)
+      throws Exception {
+    return new Instance(new Credentials("", ""), Sets.newHashSet(role),
+        InetAddress.getByName(ip), InetAddress.getByName(ip), id);
+  }
+
+  @Test
+  public void testObserversFollowVotingMembers() throws Exception {
+    Cluster cluster = new Cluster(Sets.newLinkedHashSet(Lists.newArrayList(
+        newInstance("1", "10.0.0.1",
+            ZooKeeperClusterActionHandler.ZOOKEEPER_OBSERVER_ROLE),
+        newInstance("2", "10.0.0.2",
+            ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE),
+        newInstance("3", "10.0.0.3",
+            ZooKeeperClusterActionHandler.ZOOKEEPER_ROLE))));
+    assertThat(ZooKeeperClusterActionHandler.getServers(cluster),
+        is("10.0.0.2 10.0.0.3 10.0.0.1:observer"));
+    assertThat(ZooKeeperCluster.getHosts(cluster).split(",").length, is(3));
+  }
+
+  @Test
+  public void testOverridesAndDefaults() throws Exception {
+    Configuration overrides = new PropertiesConfiguration();
+    overrides.setProperty("zookeeper.tickTime", "3000");
+    overrides.setProperty("zookeeper.clientPort", "2000");
+    Configuration defaults = new PropertiesConfiguration();
+    defaults.setProperty("zookeeper.tickTime", "2000");
+    defaults.setProperty("zookeeper.syncLimit", "5");
+    Configuration config = ZooKeeperClusterActionHandler.buildConfiguration(
+        ClusterSpec.withTemporaryKeys(overrides), null, defaults);
+    assertThat(config.getString("tickTime"), is("3000"));
+    assertThat(config.getString("syncLimit"), is("5"));
+    assertThat(config.getInt("clientPort"), is(2181));
+    assertThat(defaults.getString("zookeeper.tickTime"), is("2000"));
+  }
+
+  @Test
+  public void testTransactionLogIsKeptWithSnapshotsOnOneDisk()
+      throws Exception {
+    Configuration config = ZooKeeperClusterActionHandler.buildConfiguration(
+        ClusterSpec.withTemporaryKeys(), new HardwareProfile(1, 1740, 1),
+        new PropertiesConfiguration("whirr-zookeeper-default.properties"));
+    assertThat(config.containsKey("dataDir"), is(true));
+    assertThat(config.containsKey("dataLogDir"), is(false));
+  }
+
+  @Test
+  public void testTransactionLogOnItsOwnDisk() throws Exception {
+    Configuration config = ZooKeeperClusterActionHandler.buildConfiguration(
+        ClusterSpec.withTemporaryKeys(), new HardwareProfile(2, 7680, 2),
+        new PropertiesConfiguration("whirr-zookeeper-default.properties"));
+    assertThat(config.getString("dataLogDir"), is("/data1/zookeeper/txlog"));
+  }
+
+  @Test
+  public void testAsLinesInFile() throws Exception {
+    Configuration config = new PropertiesConfiguration();
+    config.setProperty("tickTime", "2000");
+    config.setProperty("clientPort", 2181);
+    config.setProperty("authProvider.1", "a,b");
+    assertThat(ZooKeeperClusterActionHandler.asLinesInFile(config),
+        is((List<String>) Lists.newArrayList("tickTime=2000",
+            "clientPort=2181", "authProvider.1=a,b")));
+  }
+
+}
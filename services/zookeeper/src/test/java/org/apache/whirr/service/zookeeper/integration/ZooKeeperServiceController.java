@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.zookeeper.integration;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.whirr.service.Cluster;
+import org.apache.whirr.service.ClusterSpec;
+import org.apache.whirr.service.Service;
+import org.apache.whirr.service.zookeeper.ZooKeeperCluster;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ZooKeeperServiceController {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ZooKeeperServiceController.class);
+
+  private static final ZooKeeperServiceController INSTANCE =
+    new ZooKeeperServiceController();
+
+  private static final int SESSION_TIMEOUT_MILLIS = 5000;
+
+  public static ZooKeeperServiceController getInstance() {
+    return INSTANCE;
+  }
+
+  private boolean running;
+  private ClusterSpec clusterSpec;
+  private Service service;
+  private Cluster cluster;
+  private String hosts;
+
+  private ZooKeeperServiceController() {
+  }
+
+  public synchronized boolean ensureClusterRunning() throws Exception {
+    if (running) {
+      LOG.info("Cluster already running.");
+      return false;
+    } else {
+      startup();
+      return true;
+    }
+  }
+
+  public synchronized void startup() throws Exception {
+    LOG.info("Starting up cluster...");
+    CompositeConfiguration config = new CompositeConfiguration();
+    if (System.getProperty("config") != null) {
+      config.addConfiguration(new PropertiesConfiguration(System.getProperty("config")));
+    }
+    config.addConfiguration(new PropertiesConfiguration("whirr-zookeeper-test.properties"));
+    clusterSpec = ClusterSpec.withTemporaryKeys(config);
+    service = new Service();
+
+    cluster = service.launchCluster(clusterSpec);
+    hosts = ZooKeeperCluster.getHosts(cluster);
+    running = true;
+  }
+
+  /**
+   * @return a client that is connected to the ensemble.
+   */
+  public ZooKeeper connect() throws IOException, InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    ZooKeeper zk = new ZooKeeper(hosts, SESSION_TIMEOUT_MILLIS, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getState() == KeeperState.SyncConnected) {
+          latch.countDown();
+        }
+      }
+    });
+    if (!latch.await(SESSION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      zk.close();
+      throw new IOException("Could not connect to " + hosts);
+    }
+    return zk;
+  }
+
+  public synchronized void shutdown() throws IOException, InterruptedException {
+    LOG.info("Shutting down cluster...");
+    if (service != null) {
+      service.destroyCluster(clusterSpec);
+    }
+    running = false;
+  }
+
+  public ClusterSpec getClusterSpec() {
+    return clusterSpec;
+  }
+
+  public Cluster getCluster() {
+    return cluster;
+  }
+
+  public String getHosts() {
+    return hosts;
+  }
+
+}
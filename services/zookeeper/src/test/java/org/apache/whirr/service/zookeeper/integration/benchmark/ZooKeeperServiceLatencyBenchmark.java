@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.whirr.service.zookeeper.integration.benchmark;
+
+import java.util.Random;
+
+import org.apache.whirr.service.benchmark.BenchmarkComparator;
+import org.apache.whirr.service.benchmark.BenchmarkResult;
+import org.apache.whirr.service.benchmark.LatencyRecorder;
+import org.apache.whirr.service.zookeeper.integration.ZooKeeperServiceController;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the latency of synchronous create, get and set operations on
+ * znodes from a single client.
+ */
+public class ZooKeeperServiceLatencyBenchmark {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(ZooKeeperServiceLatencyBenchmark.class);
+
+  private static final String ROOT = "/benchmark";
+
+  private static boolean shutdownClusterOnTearDown;
+  private static ZooKeeperServiceController controller =
+    ZooKeeperServiceController.getInstance();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    shutdownClusterOnTearDown = controller.ensureClusterRunning();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    if (shutdownClusterOnTearDown) {
+      controller.shutdown();
+    }
+  }
+
+  @Test
+  public void testLatency() throws Exception {
+    int operations = Integer.parseInt(
+        System.getProperty("zookeeperOperations", "10000"));
+    int dataSize = Integer.parseInt(
+        System.getProperty("zookeeperDataSize", "100"));
+    BenchmarkResult result = new BenchmarkResult("zookeeper");
+    result.recordCluster(controller.getClusterSpec(), "zookeeper.");
+    result.getProperties().setProperty("zookeeper.operations",
+        Integer.toString(operations));
+    result.getProperties().setProperty("zookeeper.data-size",
+        Integer.toString(dataSize));
+
+    byte[] data = new byte[dataSize];
+    new Random().nextBytes(data);
+    ZooKeeper zk = controller.connect();
+    try {
+      zk.create(ROOT, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+      LOG.info("Running {} operations of each type", operations);
+
+      LatencyRecorder create = new LatencyRecorder();
+      create.start();
+      for (int i = 0; i < operations; i++) {
+        long start = System.nanoTime();
+        zk.create(path(i), data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        create.record(start);
+      }
+      create.stop();
+      result.recordLatencies("create", create);
+
+      Random random = new Random();
+      LatencyRecorder get = new LatencyRecorder();
+      get.start();
+      for (int i = 0; i < operations; i++) {
+        long start = System.nanoTime();
+        zk.getData(path(random.nextInt(operations)), false, null);
+        get.record(start);
+      }
+      get.stop();
+      result.recordLatencies("get", get);
+
+      LatencyRecorder set = new LatencyRecorder();
+      set.start();
+      for (int i = 0; i < operations; i++) {
+        long start = System.nanoTime();
+        zk.setData(path(random.nextInt(operations)), data, -1);
+        set.record(start);
+      }
+      set.stop();
+      result.recordLatencies("set", set);
+
+      for (int i = 0; i < operations; i++) {
+        zk.delete(path(i), -1);
+      }
+      zk.delete(ROOT, -1);
+    } finally {
+      zk.close();
+    }
+    BenchmarkComparator.checkAgainstBaseline(result);
+    result.write();
+  }
+
+  private static String path(int i) {
+    return ROOT + "/node" + i;
+  }
+
+}